@@ -19,22 +19,27 @@ import org.apache.commons.logging.LogFactory;
 import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
 import org.pentaho.reporting.libraries.base.config.Configuration;
+import pt.webdetails.cda.dataaccess.CursorDataAccess;
 import pt.webdetails.cda.dataaccess.DataAccess;
 import pt.webdetails.cda.dataaccess.QueryException;
 import pt.webdetails.cda.dataaccess.kettle.DataAccessKettleAdapter;
 import pt.webdetails.cda.dataaccess.kettle.DataAccessKettleAdapterFactory;
 import pt.webdetails.cda.exporter.AbstractKettleExporter;
+import pt.webdetails.cda.exporter.CursorExporter;
+import pt.webdetails.cda.exporter.CursorStreamExporter;
 import pt.webdetails.cda.exporter.DefaultStreamExporter;
 import pt.webdetails.cda.exporter.ExportOptions;
 import pt.webdetails.cda.exporter.ExportedQueryResult;
 import pt.webdetails.cda.exporter.ExportedStreamQueryResult;
 import pt.webdetails.cda.exporter.ExportedTableQueryResult;
 import pt.webdetails.cda.exporter.ExporterEngine;
+import pt.webdetails.cda.exporter.ExporterEngine.OutputType;
 import pt.webdetails.cda.exporter.ExporterException;
 import pt.webdetails.cda.exporter.StreamExporter;
 import pt.webdetails.cda.exporter.TableExporter;
 import pt.webdetails.cda.exporter.UnsupportedExporterException;
 import pt.webdetails.cda.query.QueryOptions;
+import pt.webdetails.cda.query.QueryPriority;
 import pt.webdetails.cda.settings.CdaSettings;
 import pt.webdetails.cda.settings.SettingsManager;
 import pt.webdetails.cda.settings.UnknownDataAccessException;
@@ -59,6 +64,7 @@ import java.util.concurrent.Executors;
 public class CdaEngine {
 
   private static final Log logger = LogFactory.getLog( CdaEngine.class );
+  private static final String STREAMING_EXPORT_PROPERTY = "pt.webdetails.cda.exporter.streaming";
   private static CdaEngine _instance;
   private final ICdaEnvironment environment;
 
@@ -146,6 +152,10 @@ public class CdaEngine {
     DataAccess dataAccess = cdaSettings.getDataAccess( queryOptions.getDataAccessId() );
     TableExporter exporter = getExporter( queryOptions );
 
+    if ( queryOptions.getPriority() == QueryPriority.INTERACTIVE && isBulkExport( queryOptions ) ) {
+      queryOptions.setPriority( QueryPriority.EXPORT );
+    }
+
     if ( isLegacyStreamingExport( queryOptions, dataAccess, exporter ) ) {
       // Try to initiate a streaming Kettle transformation:
       DataAccessKettleAdapter dataAccessKettleAdapter =
@@ -155,10 +165,36 @@ public class CdaEngine {
       }
     }
 
+    if ( isCursorExport( queryOptions, dataAccess, exporter ) ) {
+      final CursorStreamExporter cursorExporter =
+        new CursorStreamExporter( (CursorExporter) exporter, (CursorDataAccess) dataAccess, queryOptions );
+      // fail before the response is committed if the query is rejected or can't run
+      cursorExporter.open();
+      return new ExportedStreamQueryResult( cursorExporter );
+    }
+
     TableModel table = doQuery( cdaSettings, queryOptions );
     return new ExportedTableQueryResult( exporter, table );
   }
 
+  /**
+   * @return if rows can be exported as they are read, without keeping them all in memory
+   */
+  private boolean isCursorExport( QueryOptions queryOptions, DataAccess dataAccess, TableExporter exporter )
+    throws QueryException {
+    return exporter instanceof CursorExporter && dataAccess instanceof CursorDataAccess
+      && CdaPropertiesHelper.getBoolProperty( STREAMING_EXPORT_PROPERTY, true )
+      && ( (CursorDataAccess) dataAccess ).canOpenCursor( queryOptions );
+  }
+
+  /**
+   * @return if the results are meant to be downloaded as a file rather than shown to the user
+   */
+  private boolean isBulkExport( QueryOptions queryOptions ) {
+    final OutputType outputType = OutputType.parse( queryOptions.getOutputType() );
+    return ( outputType == OutputType.CSV || outputType == OutputType.XLS ) && !queryOptions.isPaginate();
+  }
+
   private boolean isLegacyStreamingExport( QueryOptions queryOptions, DataAccess dataAccess, TableExporter exporter )
     throws QueryException {
     //[CDA-124] - Exporting queries with parameters and output indexes was failing when done with a
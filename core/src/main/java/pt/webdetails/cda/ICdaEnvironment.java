@@ -31,6 +31,7 @@ import pt.webdetails.cpf.session.IUserSession;
 
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 
 public interface ICdaEnvironment {
@@ -84,5 +85,16 @@ public interface ICdaEnvironment {
 
   public IUserSession getUserSession();
 
+  /**
+   * Wraps a task that will run in another thread on behalf of the current one, so that it sees the same user session
+   * and logging context. The default implementation returns the task as is.
+   *
+   * @param task task to run elsewhere
+   * @return task to submit in its place
+   */
+  default <T> Callable<T> inCurrentContext( Callable<T> task ) {
+    return task;
+  }
+
   public boolean canCreateContent();
 }
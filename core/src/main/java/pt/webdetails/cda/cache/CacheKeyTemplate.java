@@ -0,0 +1,113 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.reporting.libraries.formula.FormulaContext;
+
+import pt.webdetails.cda.dataaccess.InvalidParameterException;
+import pt.webdetails.cda.utils.FormulaTemplate;
+
+/**
+ * Pre-parsed extra cache key. Values are formula templates evaluated per request; if none of them has a formula the
+ * key is computed only once.
+ */
+public class CacheKeyTemplate {
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private volatile CacheKey constantKey;
+  private boolean constant = true;
+
+  private static class Entry {
+    private final String name;
+    private final FormulaTemplate value;
+    private final String defaultValue;
+
+    Entry( String name, FormulaTemplate value, String defaultValue ) {
+      this.name = name;
+      this.value = value;
+      this.defaultValue = defaultValue;
+    }
+  }
+
+  /**
+   * Adds a key, unless one with the same name was already added.
+   *
+   * @param name         key name
+   * @param value        value, may contain a formula
+   * @param defaultValue used when the value evaluates to nothing; may be <code>null</code>
+   */
+  public void add( String name, String value, String defaultValue ) {
+    if ( StringUtils.isEmpty( name ) ) {
+      return;
+    }
+    for ( Entry entry : entries ) {
+      if ( name.equals( entry.name ) ) {
+        return;
+      }
+    }
+    FormulaTemplate template = new FormulaTemplate( value );
+    entries.add( new Entry( name, template, defaultValue ) );
+    constant &= template.isConstant();
+    constantKey = null;
+  }
+
+  /**
+   * Adds every key of <code>other</code> whose name isn't taken yet.
+   */
+  public void addAll( CacheKeyTemplate other ) {
+    for ( Entry entry : other.entries ) {
+      add( entry.name, entry.value.getText(), entry.defaultValue );
+    }
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  public boolean isConstant() {
+    return constant;
+  }
+
+  /**
+   * @param context formula context for this request
+   * @return a new cache key
+   */
+  public CacheKey evaluate( FormulaContext context ) throws InvalidParameterException {
+    if ( constant ) {
+      CacheKey key = constantKey;
+      if ( key == null ) {
+        key = constantKey = doEvaluate( context );
+      }
+      return key.clone();
+    }
+    return doEvaluate( context );
+  }
+
+  private CacheKey doEvaluate( FormulaContext context ) throws InvalidParameterException {
+    CacheKey cacheKey = new CacheKey();
+    for ( Entry entry : entries ) {
+      String value = entry.value.evaluate( context );
+      // if no value was fetched from formula AND user defined a default-value, we apply it
+      if ( entry.defaultValue != null && ( StringUtils.isEmpty( value ) || value.trim().equals( "null" ) ) ) {
+        value = entry.defaultValue;
+      }
+      cacheKey.addKeyValuePair( entry.name, value );
+    }
+    return cacheKey;
+  }
+}
@@ -17,7 +17,6 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
-import pt.webdetails.cda.utils.FormulaEvaluator;
 import pt.webdetails.cda.utils.Util;
 
 import java.util.List;
@@ -33,8 +32,12 @@ public class DataAccessCacheElementParser {
   private static final String ATTR_KEY_NAME = "name"; //$NON-NLS-1$
   private static final String ATTR_KEY_VALUE = "value"; //$NON-NLS-1$
   private static final String ATTR_KEY_DEFAULT_VALUE = "default"; //$NON-NLS-1$
+  private static final String ATTR_BUCKET_START = "start"; //$NON-NLS-1$
+  private static final String ATTR_BUCKET_END = "end"; //$NON-NLS-1$
+  private static final String ATTR_BUCKET_GRANULARITY = "granularity"; //$NON-NLS-1$
+  private static final String ATTR_BUCKET_MAX = "maxBuckets"; //$NON-NLS-1$
   private Integer cacheDuration;
-  private CacheKey cacheKey; // DataAccess/Cache/Key nodes
+  private DateRangeBuckets buckets; // DataAccess/Cache/Buckets node
   private Element element; // DataAccess/Cache node
 
 
@@ -59,6 +62,11 @@ public class DataAccessCacheElementParser {
         setCacheDuration( Integer.parseInt( element.attributeValue( ATTR_DURATION ).toString() ) );
       }
 
+      Element bucketsNode = (Element) element.selectSingleNode( "Buckets" );
+      if ( bucketsNode != null ) {
+        setBuckets( parseBuckets( bucketsNode ) );
+      }
+
       success = true;
 
     } catch ( Exception e ) {
@@ -68,45 +76,41 @@ public class DataAccessCacheElementParser {
     return success;
   }
 
-  public boolean parseKeys() {
-    boolean success = false;
-
-    try {
-      cacheKey = new CacheKey();
-
-      List<Element> keyNodes = Util.selectElements( element, "Key" );
-
-      if ( keyNodes != null ) {
-        for ( Element keyNode : keyNodes ) {
-          buildKeyValuePair( keyNode );
+  /**
+   * Parses Key nodes without evaluating their formulas.
+   *
+   * @return template to evaluate per request
+   */
+  public CacheKeyTemplate parseKeyTemplate() {
+    CacheKeyTemplate template = new CacheKeyTemplate();
+    List<Element> keyNodes = Util.selectElements( element, "Key" );
+    if ( keyNodes != null ) {
+      for ( Element keyNode : keyNodes ) {
+        // minimum required: name and value
+        if ( contains( keyNode, ATTR_KEY_NAME ) && contains( keyNode, ATTR_KEY_VALUE ) ) {
+          template.add( keyNode.attributeValue( ATTR_KEY_NAME ), keyNode.attributeValue( ATTR_KEY_VALUE ),
+            keyNode.attributeValue( ATTR_KEY_DEFAULT_VALUE ) );
         }
       }
-      success = true;
-
-    } catch ( Exception e ) {
-      logger.error( e.getMessage(), e );
     }
-
-    return success;
+    return template;
   }
 
-  private void buildKeyValuePair( Element keyNode ) {
-
-    // minimum required: name and value
-    if ( keyNode != null && contains( keyNode, ATTR_KEY_NAME ) && contains( keyNode, ATTR_KEY_VALUE ) ) {
-
-      String key = keyNode.attributeValue( ATTR_KEY_NAME ).toString();
-
-      String value = FormulaEvaluator.replaceFormula( keyNode.attributeValue( ATTR_KEY_VALUE ).toString() );
-
-      // if no value was fetched from formula AND user defined a default-value, we apply it
-      if ( StringUtils.isEmpty( value ) || value.trim().equals( "null" )
-        && keyNode.attributeValue( ATTR_KEY_DEFAULT_VALUE ) != null ) {
-        value = keyNode.attributeValue( ATTR_KEY_DEFAULT_VALUE ).toString();
-      }
-
-      cacheKey.addKeyValuePair( key, value );
+  private DateRangeBuckets parseBuckets( Element bucketsNode ) {
+    DateRangeBuckets.Granularity granularity =
+      DateRangeBuckets.Granularity.parse( bucketsNode.attributeValue( ATTR_BUCKET_GRANULARITY ) );
+    if ( !contains( bucketsNode, ATTR_BUCKET_START ) || !contains( bucketsNode, ATTR_BUCKET_END )
+      || granularity == null ) {
+      logger.error( "Ignoring Buckets: start, end and a valid granularity (day|month|year) are required." );
+      return null;
+    }
+    int maxBuckets = DateRangeBuckets.DEFAULT_MAX_BUCKETS;
+    if ( contains( bucketsNode, ATTR_BUCKET_MAX )
+      && isValidPositiveInteger( bucketsNode.attributeValue( ATTR_BUCKET_MAX ) ) ) {
+      maxBuckets = Integer.parseInt( bucketsNode.attributeValue( ATTR_BUCKET_MAX ) );
     }
+    return new DateRangeBuckets( bucketsNode.attributeValue( ATTR_BUCKET_START ).trim(),
+      bucketsNode.attributeValue( ATTR_BUCKET_END ).trim(), granularity, maxBuckets );
   }
 
   private boolean contains( Element elem, String attr ) {
@@ -137,7 +141,14 @@ public class DataAccessCacheElementParser {
     this.cacheDuration = cacheDuration;
   }
 
-  public CacheKey getCacheKey() {
-    return cacheKey;
+  /**
+   * @return date range buckets, <code>null</code> if not declared
+   */
+  public DateRangeBuckets getBuckets() {
+    return buckets;
+  }
+
+  public void setBuckets( DateRangeBuckets buckets ) {
+    this.buckets = buckets;
   }
 }
@@ -0,0 +1,212 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.dataaccess.InvalidParameterException;
+import pt.webdetails.cda.dataaccess.Parameter;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Splits a date range query into aligned time buckets so that each bucket can be cached on its own.<br>
+ * Declared in a DataAccess/Cache node as:
+ * <pre>
+ *   &lt;Cache enabled="true" duration="3600"&gt;
+ *     &lt;Buckets start="startDate" end="endDate" granularity="day" maxBuckets="400"/&gt;
+ *   &lt;/Cache&gt;
+ * </pre>
+ * Both range ends are treated as inclusive; the query is expected to filter with
+ * <code>date &gt;= ${start} AND date &lt;= ${end}</code> (or <code>BETWEEN</code>).
+ */
+public class DateRangeBuckets {
+
+  private static final Log logger = LogFactory.getLog( DateRangeBuckets.class );
+
+  public static final int DEFAULT_MAX_BUCKETS = 400;
+
+  public enum Granularity {
+    DAY, MONTH, YEAR;
+
+    public static Granularity parse( String text ) {
+      for ( Granularity granularity : values() ) {
+        if ( granularity.name().equalsIgnoreCase( text != null ? text.trim() : null ) ) {
+          return granularity;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final String startParameter;
+  private final String endParameter;
+  private final Granularity granularity;
+  private final int maxBuckets;
+
+  public DateRangeBuckets( String startParameter, String endParameter, Granularity granularity, int maxBuckets ) {
+    if ( startParameter == null || endParameter == null || granularity == null ) {
+      throw new IllegalArgumentException( "Buckets need start and end parameters and a granularity" );
+    }
+    this.startParameter = startParameter;
+    this.endParameter = endParameter;
+    this.granularity = granularity;
+    this.maxBuckets = maxBuckets;
+  }
+
+  public String getStartParameter() {
+    return startParameter;
+  }
+
+  public String getEndParameter() {
+    return endParameter;
+  }
+
+  public Granularity getGranularity() {
+    return granularity;
+  }
+
+  public int getMaxBuckets() {
+    return maxBuckets;
+  }
+
+  /**
+   * Splits filled parameters into one parameter list per bucket, in chronological order.
+   *
+   * @param parameters filled parameters of a query
+   * @return parameter lists for each bucket, or <code>null</code> if the query can't be split (missing or non-date
+   * range parameters, inverted range or too many buckets)
+   */
+  public List<List<Parameter>> split( List<Parameter> parameters ) {
+    int startIdx = -1;
+    int endIdx = -1;
+    for ( int i = 0; i < parameters.size(); i++ ) {
+      String name = parameters.get( i ).getName();
+      if ( startParameter.equals( name ) ) {
+        startIdx = i;
+      } else if ( endParameter.equals( name ) ) {
+        endIdx = i;
+      }
+    }
+    if ( startIdx < 0 || endIdx < 0 ) {
+      logger.debug( "Range parameters not found, skipping buckets." );
+      return null;
+    }
+
+    final Date rangeStart;
+    final Date rangeEnd;
+    try {
+      Object start = parameters.get( startIdx ).getValue();
+      Object end = parameters.get( endIdx ).getValue();
+      if ( !( start instanceof Date ) || !( end instanceof Date ) ) {
+        logger.debug( "Range parameters are not dates, skipping buckets." );
+        return null;
+      }
+      rangeStart = (Date) start;
+      rangeEnd = (Date) end;
+    } catch ( InvalidParameterException e ) {
+      logger.warn( "Unable to evaluate range parameters, skipping buckets.", e );
+      return null;
+    }
+    if ( rangeStart.after( rangeEnd ) ) {
+      return null;
+    }
+
+    List<Date[]> ranges = getBucketRanges( rangeStart, rangeEnd );
+    if ( ranges == null ) {
+      logger.debug( "Range spans more than " + maxBuckets + " buckets, skipping buckets." );
+      return null;
+    }
+
+    List<List<Parameter>> result = new ArrayList<List<Parameter>>( ranges.size() );
+    for ( Date[] range : ranges ) {
+      List<Parameter> bucketParameters = new ArrayList<Parameter>( parameters );
+      bucketParameters.set( startIdx, withValue( parameters.get( startIdx ), range[ 0 ] ) );
+      bucketParameters.set( endIdx, withValue( parameters.get( endIdx ), range[ 1 ] ) );
+      result.add( bucketParameters );
+    }
+    return result;
+  }
+
+  /**
+   * @return inclusive [start, end] pairs covering the range, clipped at both ends; <code>null</code> if more than
+   * <code>maxBuckets</code> would be needed
+   */
+  List<Date[]> getBucketRanges( Date rangeStart, Date rangeEnd ) {
+    List<Date[]> ranges = new ArrayList<Date[]>();
+    Calendar bucketStart = Calendar.getInstance();
+    bucketStart.setTime( rangeStart );
+    truncate( bucketStart );
+
+    while ( !bucketStart.getTime().after( rangeEnd ) ) {
+      if ( ranges.size() >= maxBuckets ) {
+        return null;
+      }
+      Calendar nextStart = (Calendar) bucketStart.clone();
+      advance( nextStart );
+      // last instant of this bucket
+      Date bucketEnd = new Date( nextStart.getTimeInMillis() - 1 );
+
+      Date start = bucketStart.getTime().before( rangeStart ) ? rangeStart : bucketStart.getTime();
+      Date end = bucketEnd.after( rangeEnd ) ? rangeEnd : bucketEnd;
+      ranges.add( new Date[] { start, end } );
+      bucketStart = nextStart;
+    }
+    return ranges;
+  }
+
+  private void truncate( Calendar cal ) {
+    switch ( granularity ) {
+      case YEAR:
+        cal.set( Calendar.MONTH, Calendar.JANUARY );
+        // fall through
+      case MONTH:
+        cal.set( Calendar.DAY_OF_MONTH, 1 );
+        // fall through
+      default:
+        cal.set( Calendar.HOUR_OF_DAY, 0 );
+        cal.set( Calendar.MINUTE, 0 );
+        cal.set( Calendar.SECOND, 0 );
+        cal.set( Calendar.MILLISECOND, 0 );
+    }
+  }
+
+  private void advance( Calendar cal ) {
+    switch ( granularity ) {
+      case YEAR:
+        cal.add( Calendar.YEAR, 1 );
+        break;
+      case MONTH:
+        cal.add( Calendar.MONTH, 1 );
+        break;
+      default:
+        cal.add( Calendar.DAY_OF_MONTH, 1 );
+    }
+  }
+
+  private static Parameter withValue( Parameter parameter, Date value ) {
+    Parameter copy = new Parameter( parameter );
+    copy.setValue( value );
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    return DateRangeBuckets.class.getSimpleName() + " [" + startParameter + ", " + endParameter + ", "
+      + granularity + "]";
+  }
+}
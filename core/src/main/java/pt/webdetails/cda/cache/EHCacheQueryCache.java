@@ -25,8 +25,10 @@ import mondrian.olap.InvalidArgumentException;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -35,9 +37,10 @@ import org.apache.commons.logging.LogFactory;
 
 import pt.webdetails.cda.CdaEngine;
 import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 
-public class EHCacheQueryCache implements IQueryCache {
+public class EHCacheQueryCache implements IExportableQueryCache {
 
   private static final Log logger = LogFactory.getLog( EHCacheQueryCache.class );
   private static final String CACHE_NAME = "pentaho-cda-dataaccess";
@@ -136,10 +139,70 @@ public class EHCacheQueryCache implements IQueryCache {
     System.setProperty( CacheManager.ENABLE_SHUTDOWN_HOOK_PROPERTY, "true" );
   }
 
+  /**
+   * Keeps statistics in sync with every change to the cache, including expiry and eviction.
+   */
+  private static class StatisticsListener extends CacheEventListenerAdapter {
+
+    private final CacheStatistics statistics;
+
+    public StatisticsListener( CacheStatistics statistics ) {
+      this.statistics = statistics;
+    }
+
+    @Override
+    public void notifyElementPut( Ehcache cache, Element element ) {
+      put( element );
+    }
+
+    @Override
+    public void notifyElementUpdated( Ehcache cache, Element element ) {
+      put( element );
+    }
+
+    @Override
+    public void notifyElementRemoved( Ehcache cache, Element element ) {
+      remove( element );
+    }
+
+    @Override
+    public void notifyElementExpired( Ehcache cache, Element element ) {
+      remove( element );
+    }
+
+    @Override
+    public void notifyElementEvicted( Ehcache cache, Element element ) {
+      remove( element );
+    }
+
+    @Override
+    public void notifyRemoveAll( Ehcache cache ) {
+      statistics.clear();
+    }
+
+    private void put( Element element ) {
+      if ( element != null && element.getObjectKey() instanceof TableCacheKey
+        && element.getObjectValue() instanceof CacheElement ) {
+        ExtraCacheInfo info = ( (CacheElement) element.getObjectValue() ).getInfo();
+        if ( info != null ) {
+          statistics.put( (TableCacheKey) element.getObjectKey(), info, info.getByteSize() );
+        }
+      }
+    }
+
+    private void remove( Element element ) {
+      if ( element != null && element.getObjectKey() instanceof TableCacheKey ) {
+        statistics.remove( (TableCacheKey) element.getObjectKey() );
+      }
+    }
+  }
+
   Cache cache = null;
+  private final CacheStatistics statistics = new CacheStatistics();
 
   public EHCacheQueryCache( final Cache cache ) {
     this.cache = cache;
+    initStatistics();
   }
 
   public EHCacheQueryCache() {
@@ -162,6 +225,20 @@ public class EHCacheQueryCache implements IQueryCache {
       + cache.getDiskStoreSize() + " in disk" );
   }
 
+  /**
+   * Counts entries already in cache (e.g. restored from disk) and starts listening to changes.
+   */
+  private void initStatistics() {
+    if ( cache == null ) {
+      return;
+    }
+    StatisticsListener listener = new StatisticsListener( statistics );
+    cache.getCacheEventNotificationService().registerListener( listener );
+    for ( Object key : cache.getKeys() ) {
+      listener.put( cache.getQuiet( key ) );
+    }
+  }
+
   @Override
   public TableModel getTableModel( TableCacheKey key ) {
     ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
@@ -180,9 +257,11 @@ public class EHCacheQueryCache implements IQueryCache {
             logger.debug( "Cache status: " + cache.getMemoryStoreSize() + " in memory, "
               + cache.getDiskStoreSize() + " in disk" );
           }
+          statistics.hit( key );
           return cachedTableModel;
         }
       }
+      statistics.miss();
       return null;
     } catch ( Exception e ) {
       logger.error( "Error while attempting to load from cache, bypassing cache (cause: " + e.getClass() + ")", e );
@@ -201,6 +280,11 @@ public class EHCacheQueryCache implements IQueryCache {
     return this.cache;
   }
 
+  @Override
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
   @Override
   public boolean remove( TableCacheKey key ) {
     return cache.remove( key );
@@ -231,6 +315,15 @@ public class EHCacheQueryCache implements IQueryCache {
     }
   }
 
+  @Override
+  public long getExpirationTime( TableCacheKey key ) {
+    Element element = cache.getQuiet( key );
+    if ( element == null || element.isExpired() ) {
+      return -1;
+    }
+    return element.isEternal() ? 0 : element.getExpirationTime();
+  }
+
   @Override
   public CacheElementInfo getElementInfo( TableCacheKey key ) {
 
@@ -0,0 +1,142 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short lived, in-memory cache of failed queries.<br>
+ * A failing key is blocked for <code>ttl</code> milliseconds; each consecutive failure doubles that period, up to
+ * <code>maxTtl</code>. A successful execution forgets the key.
+ */
+public class FailedQueryCache {
+
+  private static final int MAX_ENTRIES = 10000;
+
+  private final long ttlMs;
+  private final long maxTtlMs;
+  private final Map<TableCacheKey, Failure> failures = new ConcurrentHashMap<TableCacheKey, Failure>();
+
+  /**
+   * A recorded failure.
+   */
+  public static class Failure {
+
+    private final Throwable cause;
+    private final int count;
+    private final long blockedUntil;
+
+    Failure( Throwable cause, int count, long blockedUntil ) {
+      this.cause = cause;
+      this.count = count;
+      this.blockedUntil = blockedUntil;
+    }
+
+    public Throwable getCause() {
+      return cause;
+    }
+
+    /**
+     * @return number of consecutive failures
+     */
+    public int getCount() {
+      return count;
+    }
+
+    public long getBlockedUntil() {
+      return blockedUntil;
+    }
+  }
+
+  /**
+   * @param ttlMs    how long a first failure is remembered; 0 disables the cache
+   * @param maxTtlMs upper bound for the backoff
+   */
+  public FailedQueryCache( long ttlMs, long maxTtlMs ) {
+    this.ttlMs = ttlMs;
+    this.maxTtlMs = Math.max( ttlMs, maxTtlMs );
+  }
+
+  public boolean isEnabled() {
+    return ttlMs > 0;
+  }
+
+  /**
+   * @return the failure blocking this key, or <code>null</code> if it may be executed
+   */
+  public Failure getFailure( TableCacheKey key ) {
+    return getFailure( key, System.currentTimeMillis() );
+  }
+
+  Failure getFailure( TableCacheKey key, long now ) {
+    if ( !isEnabled() ) {
+      return null;
+    }
+    Failure failure = failures.get( key );
+    return failure != null && failure.getBlockedUntil() > now ? failure : null;
+  }
+
+  public Failure putFailure( TableCacheKey key, Throwable cause ) {
+    return putFailure( key, cause, System.currentTimeMillis() );
+  }
+
+  Failure putFailure( TableCacheKey key, Throwable cause, long now ) {
+    if ( !isEnabled() ) {
+      return null;
+    }
+    if ( failures.size() >= MAX_ENTRIES ) {
+      purge( now );
+    }
+    Failure previous = failures.get( key );
+    // keep backing off only while failures are consecutive
+    int count = previous != null && previous.getBlockedUntil() + maxTtlMs > now ? previous.getCount() + 1 : 1;
+    long ttl = ttlMs;
+    for ( int i = 1; i < count && ttl < maxTtlMs; i++ ) {
+      ttl *= 2;
+    }
+    Failure failure = new Failure( cause, count, now + Math.min( ttl, maxTtlMs ) );
+    failures.put( key, failure );
+    return failure;
+  }
+
+  /**
+   * Forgets previous failures for this key.
+   */
+  public void remove( TableCacheKey key ) {
+    if ( !failures.isEmpty() ) {
+      failures.remove( key );
+    }
+  }
+
+  public void clear() {
+    failures.clear();
+  }
+
+  public int size() {
+    return failures.size();
+  }
+
+  private void purge( long now ) {
+    for ( Iterator<Failure> it = failures.values().iterator(); it.hasNext(); ) {
+      if ( it.next().getBlockedUntil() + maxTtlMs <= now ) {
+        it.remove();
+      }
+    }
+    if ( failures.size() >= MAX_ENTRIES ) {
+      failures.clear();
+    }
+  }
+}
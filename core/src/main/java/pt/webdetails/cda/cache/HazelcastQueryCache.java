@@ -14,9 +14,6 @@
 package pt.webdetails.cda.cache;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -28,7 +25,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import pt.webdetails.cda.CdaPropertiesHelper;
+import pt.webdetails.cda.cache.TableCacheKey.Fingerprint;
 import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 
 import com.hazelcast.core.EntryEvent;
@@ -39,14 +38,13 @@ import com.hazelcast.core.IMap;
 import com.hazelcast.core.LifecycleService;
 import com.hazelcast.core.MapEntry;
 import com.hazelcast.impl.base.DataRecordEntry;
-import com.hazelcast.query.SqlPredicate;
 
 import java.util.concurrent.TimeUnit;
 
 /**
  * Hazelcast implementation of CDA query cache
  */
-public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQueryCache {
+public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IExportableQueryCache {
 
   private static final Log logger = LogFactory.getLog( HazelcastQueryCache.class );
 
@@ -68,17 +66,20 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
   private static int timeoutsReached = 0;
   private static boolean active = true;
 
+  // entries are counted cluster-wide from map events, hits and misses are local to this node
+  private static final CacheStatistics statistics = new CacheStatistics();
+
   /**
    * @return main cache (will hold actual values)
    */
-  private static IMap<TableCacheKey, TableModel> getCache() {
+  private static IMap<Fingerprint, TableModel> getCache() {
     return getHazelcast().getMap( MAP_NAME );
   }
 
   /**
    * @return used for holding extra info
    */
-  private static IMap<TableCacheKey, ExtraCacheInfo> getCacheStats() {
+  private static IMap<Fingerprint, ExtraCacheInfo> getCacheStats() {
     return getHazelcast().getMap( AUX_MAP_NAME );
   }
 
@@ -124,11 +125,21 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     ClassLoader cdaPluginClassLoader = Thread.currentThread().getContextClassLoader();
     SyncRemoveStatsEntryListener syncRemoveStats = new SyncRemoveStatsEntryListener( cdaPluginClassLoader );
 
-    IMap<TableCacheKey, TableModel> cache = hzInstance.getMap( MAP_NAME );
+    IMap<Fingerprint, TableModel> cache = hzInstance.getMap( MAP_NAME );
 
     cache.removeEntryListener( syncRemoveStats );
     cache.addEntryListener( syncRemoveStats, false );
 
+    IMap<Fingerprint, ExtraCacheInfo> cacheStats = hzInstance.getMap( AUX_MAP_NAME );
+    StatisticsEntryListener statisticsListener = new StatisticsEntryListener( cdaPluginClassLoader );
+    cacheStats.removeEntryListener( statisticsListener );
+    cacheStats.addEntryListener( statisticsListener, true );
+    // one-off count of entries already in the cluster
+    statistics.clear();
+    for ( ExtraCacheInfo info : cacheStats.values() ) {
+      statistics.put( info.getCacheKey(), info, info.getByteSize() );
+    }
+
     if ( debugCache ) {
       logger.debug( "Added logging entry listener" );
       cache.addEntryListener( new LoggingEntryListener( cdaPluginClassLoader ), false );
@@ -140,12 +151,14 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
   }
 
   public void putTableModel( TableCacheKey key, TableModel table, int ttlSec, ExtraCacheInfo info ) {
-    getCache().putAsync( key, table );
+    // maps are keyed by fingerprint, the full key only travels with the info for diagnostics
+    getCache().putAsync( key.getFingerprint(), table );
     // TODO:async version of :?
     //    getCache().put(key, table, ttlSec, TimeUnit.SECONDS);
     info.setEntryTime( System.currentTimeMillis() );
     info.setTimeToLive( ttlSec * 1000 );
-    getCacheStats().putAsync( key, info );
+    info.setCacheKey( key );
+    getCacheStats().putAsync( key.getFingerprint(), info );
   }
 
   private <K, V> V getWithTimeout( K key, IMap<K, V> map ) {
@@ -196,7 +209,8 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
   }
 
   @Override
-  public TableModel getTableModel( TableCacheKey key ) {
+  public TableModel getTableModel( TableCacheKey tableCacheKey ) {
+    Fingerprint key = tableCacheKey.getFingerprint();
     try {
       ExtraCacheInfo info = getWithTimeout( key, getCacheStats() );
       if ( info != null ) {
@@ -213,9 +227,11 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
             return null;
           }
           logger.info( "Table found in cache. Returning." );
+          statistics.hit( tableCacheKey );
           return tm;
         }
       }
+      statistics.miss();
       return null;
     } catch ( ClassCastException e ) {
       //handle issue when map would return a dataRecordEntry instead of element type
@@ -242,7 +258,7 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
       return null;
     } catch ( Exception e ) {
       if ( e.getCause() instanceof IOException ) { // most likely a StreamCorruptedException
-        logger.error( "IO error while attempting to get key " + key + "(" + e.getCause().getMessage()
+        logger.error( "IO error while attempting to get key " + tableCacheKey + "(" + e.getCause().getMessage()
           + "), removing from cache!", e );
         getCache().removeAsync( key );
       } else {
@@ -261,51 +277,69 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
 
   @Override
   public boolean remove( TableCacheKey key ) {
-    return getCache().remove( key ) != null;
+    return getCache().remove( key.getFingerprint() ) != null;
   }
 
 
   @Override
   public Iterable<TableCacheKey> getKeys() {
-    return getCache().keySet();
+    // full keys aren't stored in the main map
+    return statistics.getKeys();
   }
 
   public Iterable<TableCacheKey> getKeys( String cdaSettingsId, String dataAccessId ) {
-    return getCacheStats().keySet(
-      new SqlPredicate( "cdaSettingsId = " + cdaSettingsId + " AND dataAccessId = " + dataAccessId ) );
+    return statistics.getKeys( cdaSettingsId, dataAccessId, 0, -1 );
   }
 
   @Override
   public ExtraCacheInfo getCacheEntryInfo( TableCacheKey key ) {
-    return getCacheStats().get( key );
+    return getCacheStats().get( key.getFingerprint() );
+  }
+
+  @Override
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public long getExpirationTime( TableCacheKey key ) {
+    ExtraCacheInfo info = getCacheStats().get( key.getFingerprint() );
+    if ( info == null ) {
+      return -1;
+    }
+    if ( info.getTimeToLive() <= 0 ) {
+      return 0;
+    }
+    long expirationTime = info.getEntryTime() + info.getTimeToLive();
+    return expirationTime < System.currentTimeMillis() ? -1 : expirationTime;
   }
 
   /**
    * Synchronizes both maps' removals and evictions
    */
   private static final class SyncRemoveStatsEntryListener
-    extends ClassLoaderAwareCaller implements EntryListener<TableCacheKey, TableModel> {
+    extends ClassLoaderAwareCaller implements EntryListener<Fingerprint, TableModel> {
     public SyncRemoveStatsEntryListener( ClassLoader classLoader ) {
       super( classLoader );
     }
 
     @Override
-    public void entryAdded( EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryAdded( EntryEvent<Fingerprint, TableModel> event ) {
       // ignore
     }
 
     @Override
-    public void entryUpdated( EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryUpdated( EntryEvent<Fingerprint, TableModel> event ) {
       // ignore
     }
 
     @Override
-    public void entryRemoved( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryRemoved( final EntryEvent<Fingerprint, TableModel> event ) {
 
       runInClassLoader( new Runnable() {
 
         public void run() {
-          TableCacheKey key = event.getKey();
+          Fingerprint key = event.getKey();
           logger.debug( "entry removed, removing stats for query " + key );
           getCacheStats().remove( key );
         }
@@ -315,12 +349,12 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     }
 
     @Override
-    public void entryEvicted( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryEvicted( final EntryEvent<Fingerprint, TableModel> event ) {
 
       runInClassLoader( new Runnable() {
 
         public void run() {
-          TableCacheKey key = event.getKey();
+          Fingerprint key = event.getKey();
           logger.debug( "entry evicted, removing stats for query " + key );
           getCacheStats().remove( key );
         }
@@ -335,7 +369,65 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
 
   }
 
-  static class LoggingEntryListener extends ClassLoaderAwareCaller implements EntryListener<TableCacheKey, TableModel> {
+  /**
+   * Keeps statistics in sync with the info map, which is updated along with the main one
+   */
+  private static final class StatisticsEntryListener
+    extends ClassLoaderAwareCaller implements EntryListener<Fingerprint, ExtraCacheInfo> {
+    public StatisticsEntryListener( ClassLoader classLoader ) {
+      super( classLoader );
+    }
+
+    @Override
+    public void entryAdded( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      put( event );
+    }
+
+    @Override
+    public void entryUpdated( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      put( event );
+    }
+
+    @Override
+    public void entryRemoved( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      remove( event );
+    }
+
+    @Override
+    public void entryEvicted( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      remove( event );
+    }
+
+    private void put( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      runInClassLoader( new Runnable() {
+        public void run() {
+          ExtraCacheInfo info = event.getValue();
+          if ( info != null ) {
+            statistics.put( info.getCacheKey(), info, info.getByteSize() );
+          }
+        }
+      } );
+    }
+
+    private void remove( final EntryEvent<Fingerprint, ExtraCacheInfo> event ) {
+      runInClassLoader( new Runnable() {
+        public void run() {
+          ExtraCacheInfo info = event.getValue();
+          if ( info != null ) {
+            statistics.remove( info.getCacheKey() );
+          }
+        }
+      } );
+    }
+
+    @Override
+    public boolean equals( Object other ) {
+      return other instanceof StatisticsEntryListener;
+    }
+
+  }
+
+  static class LoggingEntryListener extends ClassLoaderAwareCaller implements EntryListener<Fingerprint, TableModel> {
 
     private static final Log logger = LogFactory.getLog( HazelcastQueryCache.class );
 
@@ -344,7 +436,7 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     }
 
     @Override
-    public void entryAdded( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryAdded( final EntryEvent<Fingerprint, TableModel> event ) {
       runInClassLoader( new Runnable() {
 
         public void run() {
@@ -355,7 +447,7 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     }
 
     @Override
-    public void entryRemoved( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryRemoved( final EntryEvent<Fingerprint, TableModel> event ) {
       runInClassLoader( new Runnable() {
         public void run() {
           logger.debug( "CDA ENTRY REMOVED " + event );
@@ -364,7 +456,7 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     }
 
     @Override
-    public void entryUpdated( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryUpdated( final EntryEvent<Fingerprint, TableModel> event ) {
       runInClassLoader( new Runnable() {
         public void run() {
           logger.debug( "CDA ENTRY UPDATED " + event );
@@ -373,7 +465,7 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     }
 
     @Override
-    public void entryEvicted( final EntryEvent<TableCacheKey, TableModel> event ) {
+    public void entryEvicted( final EntryEvent<Fingerprint, TableModel> event ) {
       runInClassLoader( new Runnable() {
         public void run() {
           logger.debug( "CDA ENTRY EVICTED " + event );
@@ -395,11 +487,9 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
       return callInClassLoader( new Callable<Integer>() {
         public Integer call() {
           int size = 0;
-          Iterable<Map.Entry<TableCacheKey, ExtraCacheInfo>> entries =
-            getCacheStatsEntries( cdaSettingsId, dataAccessId );
-          if ( entries != null ) {
-            for ( Map.Entry<TableCacheKey, ExtraCacheInfo> entry : entries ) {
-              getCache().remove( entry.getKey() );
+          // a copy, removals update the statistics as they go
+          for ( TableCacheKey key : statistics.getKeys( cdaSettingsId, dataAccessId, 0, -1 ) ) {
+            if ( getCache().remove( key.getFingerprint() ) != null ) {
               size++;
             }
           }
@@ -414,8 +504,8 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
 
   @Override
   public CacheElementInfo getElementInfo( TableCacheKey key ) {
-    ExtraCacheInfo info = getCacheStats().get( key );
-    MapEntry<TableCacheKey, TableModel> entry = getCache().getMapEntry( key );
+    ExtraCacheInfo info = getCacheStats().get( key.getFingerprint() );
+    MapEntry<Fingerprint, TableModel> entry = getCache().getMapEntry( key.getFingerprint() );
     final long NO_DATE = 0L;
     CacheElementInfo ceInfo = new CacheElementInfo();
     long creationTime = entry.getCreationTime();
@@ -437,26 +527,4 @@ public class HazelcastQueryCache extends ClassLoaderAwareCaller implements IQuer
     return ceInfo;
   }
 
-  /**
-   * (Make sure right class loader is set when accessing the iterator)
-   *
-   * @param cdaSettingsId
-   * @param dataAccessId
-   * @return
-   */
-  public Iterable<Map.Entry<TableCacheKey, ExtraCacheInfo>>
-  getCacheStatsEntries( final String cdaSettingsId, final String dataAccessId ) {
-    //sql predicate would need to instantiate extraCacheInfo in host classloader
-    //return getCacheStats().entrySet(new SqlPredicate("cdaSettingsId = " + cdaSettingsId + ((dataAccessId != null)?
-    // " AND dataAccessId = " + dataAccessId : "")));
-    ArrayList<Entry<TableCacheKey, ExtraCacheInfo>> result = new ArrayList<Entry<TableCacheKey, ExtraCacheInfo>>();
-    for ( Entry<TableCacheKey, ExtraCacheInfo> entry : getCacheStats().entrySet() ) {
-      if ( entry.getValue().getCdaSettingsId().equals( cdaSettingsId )
-        && ( dataAccessId == null || dataAccessId.equals( entry.getValue().getDataAccessId() ) ) ) {
-        result.add( entry );
-      }
-    }
-    return result;
-  }
-
 }
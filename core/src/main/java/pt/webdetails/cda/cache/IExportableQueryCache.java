@@ -0,0 +1,29 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+/**
+ * Query cache whose entries can be dumped to and loaded from a snapshot.
+ *
+ * @see QueryCacheSnapshot
+ */
+public interface IExportableQueryCache extends IQueryCache {
+
+  /**
+   * @param key cache key
+   * @return time in milliseconds at which the entry expires, <code>0</code> if it never does or <code>-1</code> if
+   * it is no longer in cache
+   */
+  public long getExpirationTime( TableCacheKey key );
+
+}
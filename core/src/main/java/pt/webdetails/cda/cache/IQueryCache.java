@@ -16,6 +16,7 @@ package pt.webdetails.cda.cache;
 import javax.swing.table.TableModel;
 
 import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 
 /**
@@ -70,6 +71,11 @@ public interface IQueryCache {
 
   public ExtraCacheInfo getCacheEntryInfo( TableCacheKey key );
 
+  /**
+   * @return counters kept up to date by the cache
+   */
+  public CacheStatistics getStatistics();
+
   public void shutdownIfRunning();
 
 }
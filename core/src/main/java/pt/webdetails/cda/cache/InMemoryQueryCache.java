@@ -0,0 +1,323 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.swing.table.TableModel;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
+import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
+import pt.webdetails.cda.utils.TableModelUtils;
+
+/**
+ * Query cache held in the heap of this process, with per entry TTL and a byte budget.<br>
+ * Lookups don't lock; when the budget is exceeded, expired entries and then the least recently accessed ones are
+ * evicted until usage drops to 90% of the budget. Entry sizes are estimates.
+ */
+public class InMemoryQueryCache implements IExportableQueryCache {
+
+  private static final Log logger = LogFactory.getLog( InMemoryQueryCache.class );
+
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+  private static final double EVICTION_TARGET = 0.9;
+  private static final long PURGE_INTERVAL_MS = 60 * 1000;
+
+  private final long maxBytes;
+  private final Map<TableCacheKey, Entry> entries = new ConcurrentHashMap<TableCacheKey, Entry>();
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final CacheStatistics statistics = new CacheStatistics();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private volatile long nextPurge;
+
+  private static class Entry {
+    private final TableModel table;
+    private final ExtraCacheInfo info;
+    private final long byteSize;
+    private final long insertTime;
+    /**
+     * 0 if it doesn't expire
+     */
+    private final long expirationTime;
+    private volatile long accessTime;
+    private final AtomicLong hits = new AtomicLong();
+
+    Entry( TableModel table, ExtraCacheInfo info, long byteSize, long insertTime, long expirationTime ) {
+      this.table = table;
+      this.info = info;
+      this.byteSize = byteSize;
+      this.insertTime = insertTime;
+      this.expirationTime = expirationTime;
+      this.accessTime = insertTime;
+    }
+
+    boolean isExpired( long now ) {
+      return expirationTime > 0 && expirationTime <= now;
+    }
+  }
+
+  /**
+   * Eviction candidate, ordered by access time as of when it was picked.
+   */
+  private static class Candidate implements Comparable<Candidate> {
+    private final TableCacheKey key;
+    private final Entry entry;
+    private final long accessTime;
+
+    Candidate( TableCacheKey key, Entry entry ) {
+      this.key = key;
+      this.entry = entry;
+      this.accessTime = entry.accessTime;
+    }
+
+    @Override
+    public int compareTo( Candidate other ) {
+      return accessTime < other.accessTime ? -1 : ( accessTime == other.accessTime ? 0 : 1 );
+    }
+  }
+
+  public InMemoryQueryCache() {
+    this( DEFAULT_MAX_BYTES );
+  }
+
+  /**
+   * @param maxBytes memory budget for cached tables
+   */
+  public InMemoryQueryCache( long maxBytes ) {
+    this.maxBytes = maxBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return estimated size of cached tables
+   */
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void putTableModel( TableCacheKey key, TableModel table, int ttlSec, ExtraCacheInfo cacheInfo ) {
+    long now = currentTimeMillis();
+    long byteSize = cacheInfo != null && cacheInfo.getByteSize() > 0
+      ? cacheInfo.getByteSize() : TableModelUtils.estimateByteSize( table );
+    if ( byteSize > maxBytes ) {
+      logger.debug( "Table too large for cache (" + byteSize + " bytes), not caching." );
+      remove( key );
+      return;
+    }
+    if ( cacheInfo != null ) {
+      cacheInfo.setEntryTime( now );
+      cacheInfo.setTimeToLive( ttlSec * 1000 );
+    }
+    Entry entry = new Entry( table, cacheInfo, byteSize, now, ttlSec > 0 ? now + ttlSec * 1000L : 0 );
+    Entry previous = entries.put( key, entry );
+    usedBytes.addAndGet( byteSize - ( previous != null ? previous.byteSize : 0 ) );
+    statistics.put( key, cacheInfo, byteSize );
+
+    if ( usedBytes.get() > maxBytes ) {
+      evict( now );
+    } else if ( now >= nextPurge ) {
+      purgeExpired( now );
+    }
+  }
+
+  @Override
+  public TableModel getTableModel( TableCacheKey key ) {
+    Entry entry = entries.get( key );
+    if ( entry != null ) {
+      long now = currentTimeMillis();
+      if ( !entry.isExpired( now ) ) {
+        entry.accessTime = now;
+        entry.hits.incrementAndGet();
+        statistics.hit( key );
+        return entry.table;
+      }
+      remove( key, entry );
+    }
+    statistics.miss();
+    return null;
+  }
+
+  @Override
+  public boolean remove( TableCacheKey key ) {
+    Entry entry = entries.remove( key );
+    if ( entry != null ) {
+      removed( key, entry );
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public int removeAll( String cdaSettingsId, String dataAccessId ) {
+    if ( cdaSettingsId == null ) {
+      int size = entries.size();
+      clearCache();
+      return size;
+    }
+    int deleteCount = 0;
+    for ( Map.Entry<TableCacheKey, Entry> mapEntry : entries.entrySet() ) {
+      ExtraCacheInfo info = mapEntry.getValue().info;
+      if ( info != null && StringUtils.equals( cdaSettingsId, info.getCdaSettingsId() )
+        && ( dataAccessId == null || StringUtils.equals( dataAccessId, info.getDataAccessId() ) ) ) {
+        if ( remove( mapEntry.getKey(), mapEntry.getValue() ) ) {
+          deleteCount++;
+        }
+      }
+    }
+    return deleteCount;
+  }
+
+  @Override
+  public void clearCache() {
+    for ( TableCacheKey key : entries.keySet() ) {
+      remove( key );
+    }
+    statistics.clear();
+  }
+
+  @Override
+  public Iterable<TableCacheKey> getKeys() {
+    return Collections.unmodifiableSet( entries.keySet() );
+  }
+
+  @Override
+  public CacheElementInfo getElementInfo( TableCacheKey key ) {
+    Entry entry = entries.get( key );
+    CacheElementInfo info = new CacheElementInfo();
+    info.setKey( key );
+    if ( entry != null ) {
+      info.setInsertTime( entry.insertTime );
+      info.setAccessTime( entry.accessTime );
+      info.setHits( entry.hits.get() );
+      info.setByteSize( entry.byteSize );
+      info.setRows( entry.table.getRowCount() );
+      if ( entry.info != null ) {
+        info.setDuration( entry.info.getQueryDurationMs() );
+        info.setTimeToLive( entry.info.getTimeToLive() );
+      }
+    }
+    return info;
+  }
+
+  @Override
+  public ExtraCacheInfo getCacheEntryInfo( TableCacheKey key ) {
+    Entry entry = entries.get( key );
+    return entry != null && !entry.isExpired( currentTimeMillis() ) ? entry.info : null;
+  }
+
+  @Override
+  public long getExpirationTime( TableCacheKey key ) {
+    Entry entry = entries.get( key );
+    return entry == null || entry.isExpired( currentTimeMillis() ) ? -1 : entry.expirationTime;
+  }
+
+  @Override
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public void shutdownIfRunning() {
+    clearCache();
+  }
+
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Removes the entry only if it wasn't replaced meanwhile.
+   */
+  private boolean remove( TableCacheKey key, Entry entry ) {
+    if ( entries.remove( key, entry ) ) {
+      removed( key, entry );
+      return true;
+    }
+    return false;
+  }
+
+  private void removed( TableCacheKey key, Entry entry ) {
+    usedBytes.addAndGet( -entry.byteSize );
+    statistics.remove( key );
+  }
+
+  private void purgeExpired( long now ) {
+    if ( !evictionLock.tryLock() ) {
+      return;
+    }
+    try {
+      nextPurge = now + PURGE_INTERVAL_MS;
+      for ( Iterator<Map.Entry<TableCacheKey, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<TableCacheKey, Entry> mapEntry = it.next();
+        if ( mapEntry.getValue().isExpired( now ) ) {
+          remove( mapEntry.getKey(), mapEntry.getValue() );
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void evict( long now ) {
+    // another thread is already making room
+    if ( !evictionLock.tryLock() ) {
+      return;
+    }
+    try {
+      long target = (long) ( maxBytes * EVICTION_TARGET );
+      List<Candidate> candidates = new ArrayList<Candidate>();
+      for ( Map.Entry<TableCacheKey, Entry> mapEntry : entries.entrySet() ) {
+        if ( mapEntry.getValue().isExpired( now ) ) {
+          remove( mapEntry.getKey(), mapEntry.getValue() );
+        } else {
+          candidates.add( new Candidate( mapEntry.getKey(), mapEntry.getValue() ) );
+        }
+      }
+      nextPurge = now + PURGE_INTERVAL_MS;
+      if ( usedBytes.get() <= target ) {
+        return;
+      }
+      Collections.sort( candidates );
+      int evicted = 0;
+      for ( Iterator<Candidate> it = candidates.iterator(); it.hasNext() && usedBytes.get() > target; ) {
+        Candidate candidate = it.next();
+        if ( remove( candidate.key, candidate.entry ) ) {
+          evicted++;
+        }
+      }
+      logger.debug( "Evicted " + evicted + " entries, " + usedBytes.get() + " of " + maxBytes + " bytes in use." );
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.table.TableModel;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import pt.webdetails.cda.CdaPropertiesHelper;
+import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
+
+/**
+ * Streams query cache contents to and from a file, one entry at a time.<br>
+ * Format: a header followed by <code>(true, key, expirationTime, info, table)</code> records, terminated by
+ * <code>false</code>. Entries already expired when loaded are skipped.<br>
+ * Snapshot files live in the directory set by {@link #DIRECTORY_PROPERTY}, and only cache keys, cache entry info and
+ * table models, with the values they hold, are read back from them.
+ */
+public class QueryCacheSnapshot {
+
+  private static final Log logger = LogFactory.getLog( QueryCacheSnapshot.class );
+
+  private static final String HEADER = "CDA-CACHE-SNAPSHOT";
+  private static final int VERSION = 1;
+
+  public static final String DIRECTORY_PROPERTY = "pt.webdetails.cda.cache.snapshot.directory";
+  private static final String DEFAULT_DIRECTORY = "cda-cache-snapshots";
+
+  /**
+   * Classes that may be read from a snapshot: cache keys, cache entry info, cached table models and their values.
+   */
+  private static final Set<String> ALLOWED_CLASSES = new HashSet<String>( Arrays.asList(
+    "java.lang.Object", "java.lang.Number", "java.lang.Enum", "java.lang.String", "java.lang.Boolean",
+    "java.lang.Character", "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+    "java.lang.Float", "java.lang.Double", "java.math.BigDecimal", "java.math.BigInteger", "java.util.Date",
+    "java.sql.Date", "java.sql.Time", "java.sql.Timestamp", "java.util.ArrayList", "java.util.HashMap",
+    "java.util.LinkedHashMap", "java.util.BitSet", "javax.swing.table.AbstractTableModel",
+    "javax.swing.event.EventListenerList", "org.pentaho.reporting.engine.classic.core.util.TypedTableModel",
+    "org.pentaho.reporting.libraries.base.util.GenericObjectTable", "pt.webdetails.cda.cache.TableCacheKey",
+    "pt.webdetails.cda.cache.CacheKey", "pt.webdetails.cda.cache.CacheKey$KeyValuePair",
+    "pt.webdetails.cda.cache.monitor.ExtraCacheInfo", "pt.webdetails.cda.dataaccess.Parameter$Type",
+    "pt.webdetails.cda.utils.mondrian.MdxResultTableModel",
+    "pt.webdetails.cda.utils.mondrian.MdxResultTableModel$Column",
+    "pt.webdetails.cda.utils.mondrian.MdxResultTableModel$DoubleColumn",
+    "pt.webdetails.cda.utils.mondrian.MdxResultTableModel$DictionaryColumn",
+    "pt.webdetails.cda.utils.mondrian.MdxResultTableModel$ObjectColumn" ) );
+
+  private QueryCacheSnapshot() {
+  }
+
+  /**
+   * @param name snapshot file name, relative to the snapshot directory
+   * @return the snapshot file
+   * @throws IOException if the name is absolute or leaves the snapshot directory
+   */
+  public static File getFile( String name ) throws IOException {
+    if ( StringUtils.isBlank( name ) || new File( name ).isAbsolute() || name.startsWith( "/" )
+      || name.startsWith( "\\" ) || Arrays.asList( name.split( "[/\\\\]" ) ).contains( ".." ) ) {
+      throw new IOException( "Invalid snapshot file name: " + name );
+    }
+    File directory = getDirectory().getCanonicalFile();
+    File file = new File( directory, name ).getCanonicalFile();
+    if ( !file.getPath().startsWith( directory.getPath() + File.separator ) ) {
+      throw new IOException( "Invalid snapshot file name: " + name );
+    }
+    return file;
+  }
+
+  private static File getDirectory() {
+    String directory = CdaPropertiesHelper.getStringProperty( DIRECTORY_PROPERTY, null );
+    return StringUtils.isBlank( directory )
+      ? new File( System.getProperty( "java.io.tmpdir" ), DEFAULT_DIRECTORY )
+      : new File( directory.trim() );
+  }
+
+  /**
+   * Writes every live entry in <code>cache</code> to <code>out</code>. The stream is not closed.
+   *
+   * @return number of entries written
+   */
+  public static int write( IExportableQueryCache cache, OutputStream out ) throws IOException {
+    ObjectOutputStream objOut = new ObjectOutputStream( new BufferedOutputStream( out ) );
+    objOut.writeUTF( HEADER );
+    objOut.writeInt( VERSION );
+
+    int count = 0;
+    for ( TableCacheKey key : cache.getKeys() ) {
+      long expirationTime = cache.getExpirationTime( key );
+      if ( expirationTime < 0 ) {
+        continue;
+      }
+      ExtraCacheInfo info = cache.getCacheEntryInfo( key );
+      TableModel table = cache.getTableModel( key );
+      if ( info == null || table == null ) {
+        // removed meanwhile
+        continue;
+      }
+      objOut.writeBoolean( true );
+      objOut.writeObject( key );
+      objOut.writeLong( expirationTime );
+      objOut.writeObject( info );
+      objOut.writeObject( table );
+      // don't keep references to written entries
+      objOut.reset();
+      count++;
+    }
+    objOut.writeBoolean( false );
+    objOut.flush();
+    logger.info( "Exported " + count + " cache entries." );
+    return count;
+  }
+
+  /**
+   * Puts all entries read from <code>in</code> that haven't expired yet into <code>cache</code>. The stream is not
+   * closed.
+   *
+   * @return number of entries loaded
+   */
+  public static int read( IQueryCache cache, InputStream in ) throws IOException, ClassNotFoundException {
+    return read( cache, in, System.currentTimeMillis() );
+  }
+
+  static int read( IQueryCache cache, InputStream in, long now ) throws IOException, ClassNotFoundException {
+    ObjectInputStream objIn = new SnapshotInputStream( new BufferedInputStream( in ) );
+    if ( !HEADER.equals( objIn.readUTF() ) ) {
+      throw new IOException( "Not a cache snapshot" );
+    }
+    int version = objIn.readInt();
+    if ( version != VERSION ) {
+      throw new IOException( "Unsupported cache snapshot version " + version );
+    }
+
+    int count = 0;
+    int expired = 0;
+    while ( objIn.readBoolean() ) {
+      TableCacheKey key = (TableCacheKey) objIn.readObject();
+      long expirationTime = objIn.readLong();
+      ExtraCacheInfo info = (ExtraCacheInfo) objIn.readObject();
+      TableModel table = (TableModel) objIn.readObject();
+
+      int ttlSec = 0;
+      if ( expirationTime > 0 ) {
+        long remaining = expirationTime - now;
+        if ( remaining <= 0 ) {
+          expired++;
+          continue;
+        }
+        ttlSec = (int) Math.min( Integer.MAX_VALUE, ( remaining + 999 ) / 1000 );
+      }
+      cache.putTableModel( key, table, ttlSec, info );
+      count++;
+    }
+    logger.info( "Imported " + count + " cache entries, skipped " + expired + " expired." );
+    return count;
+  }
+
+  static boolean isAllowed( String className ) {
+    String name = className;
+    if ( name.startsWith( "[" ) ) {
+      name = name.replaceFirst( "^\\[+", "" );
+      if ( name.length() == 1 ) {
+        // primitive array
+        return true;
+      }
+      name = name.startsWith( "L" ) && name.endsWith( ";" ) ? name.substring( 1, name.length() - 1 ) : name;
+    }
+    return ALLOWED_CLASSES.contains( name );
+  }
+
+  /**
+   * Refuses any class not expected in a snapshot before it is loaded.
+   */
+  private static class SnapshotInputStream extends ObjectInputStream {
+
+    SnapshotInputStream( InputStream in ) throws IOException {
+      super( in );
+    }
+
+    @Override
+    protected Class<?> resolveClass( ObjectStreamClass desc ) throws IOException, ClassNotFoundException {
+      if ( !isAllowed( desc.getName() ) ) {
+        throw new InvalidClassException( desc.getName(), "not allowed in cache snapshots" );
+      }
+      return super.resolveClass( desc );
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass( String[] interfaces ) throws IOException, ClassNotFoundException {
+      throw new InvalidClassException( "Proxy classes not allowed in cache snapshots" );
+    }
+  }
+}
@@ -14,6 +14,7 @@
 package pt.webdetails.cda.cache;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.reporting.engine.classic.core.ParameterDataRow;
 import pt.webdetails.cda.connections.Connection;
@@ -26,6 +27,10 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -34,6 +39,7 @@ import java.util.List;
 public class TableCacheKey implements Serializable {
 
   private static final long serialVersionUID = 5L; //5: hazelcast version
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
 
   private int connectionHash;
   private String query;
@@ -42,10 +48,62 @@ public class TableCacheKey implements Serializable {
 
   private Serializable extraCacheKey;
 
+  /**
+   * Digest of all the above, kept up to date by the constructors, setters and deserialization
+   */
+  private transient Fingerprint fingerprint;
+
+  /**
+   * Compact, stable 128-bit digest of a cache key. Two keys are considered equal if their fingerprints are.
+   */
+  public static final class Fingerprint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long high;
+    private final long low;
+
+    public Fingerprint( long high, long low ) {
+      this.high = high;
+      this.low = low;
+    }
+
+    public long getHigh() {
+      return high;
+    }
+
+    public long getLow() {
+      return low;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof Fingerprint ) ) {
+        return false;
+      }
+      Fingerprint that = (Fingerprint) o;
+      return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) ( low ^ ( low >>> 32 ) );
+    }
+
+    @Override
+    public String toString() {
+      return String.format( "%016x%016x", high, low );
+    }
+  }
+
   /**
    * For serialization
    */
   protected TableCacheKey() {
+    fingerprint = computeFingerprint();
   }
 
 
@@ -66,6 +124,7 @@ public class TableCacheKey implements Serializable {
     this.parameters = parameters.toArray( new Parameter[ parameters.size() ] );
     sortParameters( this.parameters );
     this.extraCacheKey = extraCacheKey;
+    this.fingerprint = computeFingerprint();
   }
 
   public TableCacheKey( final Connection connection, final String query, final String queryType,
@@ -86,6 +145,7 @@ public class TableCacheKey implements Serializable {
     this.parameters = parameters.toArray( new Parameter[ parameters.size() ] );
     sortParameters( this.parameters );
     this.extraCacheKey = extraCacheKey;
+    this.fingerprint = computeFingerprint();
   }
 
   public int getConnectionHash() {
@@ -95,6 +155,7 @@ public class TableCacheKey implements Serializable {
 
   public void setConnectionHash( int connectionHash ) {
     this.connectionHash = connectionHash;
+    this.fingerprint = computeFingerprint();
   }
 
 
@@ -105,6 +166,7 @@ public class TableCacheKey implements Serializable {
 
   public void setQuery( String query ) {
     this.query = query;
+    this.fingerprint = computeFingerprint();
   }
 
   public String getQueryType() {
@@ -113,20 +175,25 @@ public class TableCacheKey implements Serializable {
 
   public void setQueryType( String queryType ) {
     this.queryType = queryType;
+    this.fingerprint = computeFingerprint();
   }
 
   //    public ParameterDataRow getParameterDataRow() {
   //      return Parameter.createParameterDataRowFromParameters(parameters);
   //    }
 
+  /**
+   * @return a copy, the fingerprint depends on the parameters
+   */
   public Parameter[] getParameters() {
-    return parameters;
+    return parameters != null ? parameters.clone() : null;
   }
 
 
   public void setParameterDataRow( ParameterDataRow parameterDataRow ) {
     //this.parameterDataRow = parameterDataRow;
     this.parameters = createParametersFromParameterDataRow( parameterDataRow );
+    this.fingerprint = computeFingerprint();
   }
 
 
@@ -137,6 +204,7 @@ public class TableCacheKey implements Serializable {
 
   public void setExtraCacheKey( Serializable extraCacheKey ) {
     this.extraCacheKey = extraCacheKey;
+    this.fingerprint = computeFingerprint();
   }
 
   //Hazelcast will use serialized version to perform comparisons and hashcodes
@@ -161,6 +229,7 @@ public class TableCacheKey implements Serializable {
     }
     parameters = params;
     extraCacheKey = (Serializable) in.readObject();
+    fingerprint = computeFingerprint();
   }
 
   //Hazelcast will use serialized version to perform comparisons and hashcodes
@@ -204,41 +273,85 @@ public class TableCacheKey implements Serializable {
     return cacheKey;
   }
 
-  public boolean equals( final Object o ) {
-    if ( this == o ) {
-      return true;
+  /**
+   * @return digest of connection, query, query type, parameters and extra key
+   */
+  public Fingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  private Fingerprint computeFingerprint() {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance( "MD5" );
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
     }
-    if ( o == null || getClass() != o.getClass() ) {
-      return false;
+    updateDigest( digest, connectionHash );
+    updateDigest( digest, query );
+    updateDigest( digest, queryType );
+    if ( parameters != null ) {
+      updateDigest( digest, parameters.length );
+      for ( Parameter param : parameters ) {
+        updateDigest( digest, param.getName() );
+        updateDigest( digest, param.getType() != null ? param.getType().getName() : null );
+        updateDigest( digest, param.getStringValue() );
+      }
+    } else {
+      updateDigest( digest, -1 );
+    }
+    if ( extraCacheKey != null ) {
+      try {
+        ObjectOutputStream out =
+          new ObjectOutputStream( new DigestOutputStream( new NullOutputStream(), digest ) );
+        out.writeObject( extraCacheKey );
+        out.flush();
+      } catch ( IOException e ) {
+        throw new IllegalStateException( "Unable to serialize extra cache key", e );
+      }
+    }
+    byte[] hash = digest.digest();
+    long high = 0;
+    long low = 0;
+    for ( int i = 0; i < 8; i++ ) {
+      high = ( high << 8 ) | ( hash[ i ] & 0xff );
+      low = ( low << 8 ) | ( hash[ i + 8 ] & 0xff );
     }
+    return new Fingerprint( high, low );
+  }
 
-    final TableCacheKey that = (TableCacheKey) o;
+  private static void updateDigest( MessageDigest digest, int value ) {
+    digest.update( (byte) ( value >>> 24 ) );
+    digest.update( (byte) ( value >>> 16 ) );
+    digest.update( (byte) ( value >>> 8 ) );
+    digest.update( (byte) value );
+  }
 
-    if ( connectionHash != that.connectionHash ) {
-      return false;
-    }
-    if ( parameters != null ? !Arrays.equals( parameters, that.parameters ) : that.parameters != null ) {
-      return false;
+  private static void updateDigest( MessageDigest digest, String value ) {
+    // length prefix so that adjacent values can't be confused
+    if ( value == null ) {
+      updateDigest( digest, -1 );
+    } else {
+      byte[] bytes = value.getBytes( UTF_8 );
+      updateDigest( digest, bytes.length );
+      digest.update( bytes );
     }
-    if ( query != null ? !query.equals( that.query ) : that.query != null ) {
-      return false;
+  }
+
+  public boolean equals( final Object o ) {
+    if ( this == o ) {
+      return true;
     }
-    if ( extraCacheKey != null ? !extraCacheKey.equals( that.extraCacheKey ) : that.extraCacheKey != null ) {
+    if ( o == null || getClass() != o.getClass() ) {
       return false;
     }
-
-    return true;
+    return getFingerprint().equals( ( (TableCacheKey) o ).getFingerprint() );
   }
 
 
   @Override
   public int hashCode() {
-    int result = connectionHash;
-    result = 31 * result + ( query != null ? query.hashCode() : 0 );
-    result = 31 * result + ( queryType != null ? queryType.hashCode() : 0 );
-    result = 31 * result + ( parameters != null ? Arrays.hashCode( parameters ) : 0 );
-    result = 31 * result + ( extraCacheKey != null ? extraCacheKey.hashCode() : 0 );
-    return result;
+    return getFingerprint().hashCode();
   }
 
   @Override
@@ -248,8 +361,9 @@ public class TableCacheKey implements Serializable {
         + "\tConnectionHash:[" + getConnectionHash() + "]\n"
         + "\tQuery:[" + getQuery() + "]\n"
         + "\tQueryType:[" + getQueryType() + "]\n"
-        + "\tParameters: [" + StringUtils.join( getParameters(), ", " ) + "]\n"
-        + "\tExtra: [" + getExtraCacheKey() + "]\n";
+        + "\tParameters: [" + StringUtils.join( parameters, ", " ) + "]\n"
+        + "\tExtra: [" + getExtraCacheKey() + "]\n"
+        + "\tFingerprint: [" + getFingerprint() + "]\n";
   }
 
   private static void sortParameters( Parameter[] params ) {
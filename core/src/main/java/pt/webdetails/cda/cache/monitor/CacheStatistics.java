@@ -0,0 +1,313 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pt.webdetails.cda.cache.TableCacheKey;
+
+/**
+ * Cache counters kept up to date as entries are added, removed and hit, so that monitoring doesn't need to go through
+ * every cache entry.<br>
+ * Entries are grouped by CDA file and data access.
+ */
+public class CacheStatistics {
+
+  private final ConcurrentMap<String, ConcurrentMap<String, Group>> groups =
+    new ConcurrentHashMap<String, ConcurrentMap<String, Group>>();
+  private final ConcurrentMap<TableCacheKey, Group> keyGroups = new ConcurrentHashMap<TableCacheKey, Group>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Entries of a data access.
+   */
+  private static class Group {
+    private final String cdaSettingsId;
+    private final String dataAccessId;
+    private final ConcurrentMap<TableCacheKey, Long> entries = new ConcurrentHashMap<TableCacheKey, Long>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    Group( String cdaSettingsId, String dataAccessId ) {
+      this.cdaSettingsId = cdaSettingsId;
+      this.dataAccessId = dataAccessId;
+    }
+
+    void put( TableCacheKey key, long byteSize ) {
+      Long previous = entries.put( key, byteSize );
+      bytes.addAndGet( byteSize - ( previous != null ? previous : 0 ) );
+    }
+
+    void remove( TableCacheKey key ) {
+      Long previous = entries.remove( key );
+      if ( previous != null ) {
+        bytes.addAndGet( -previous );
+      }
+    }
+
+    GroupStatistics toStatistics() {
+      return new GroupStatistics( cdaSettingsId, dataAccessId, entries.size(), bytes.get(), hits.get() );
+    }
+  }
+
+  /**
+   * Point in time counters for a data access.
+   */
+  public static class GroupStatistics {
+    private final String cdaSettingsId;
+    private final String dataAccessId;
+    private final int entries;
+    private final long bytes;
+    private final long hits;
+
+    GroupStatistics( String cdaSettingsId, String dataAccessId, int entries, long bytes, long hits ) {
+      this.cdaSettingsId = cdaSettingsId;
+      this.dataAccessId = dataAccessId;
+      this.entries = entries;
+      this.bytes = bytes;
+      this.hits = hits;
+    }
+
+    public String getCdaSettingsId() {
+      return cdaSettingsId;
+    }
+
+    public String getDataAccessId() {
+      return dataAccessId;
+    }
+
+    public int getEntries() {
+      return entries;
+    }
+
+    /**
+     * @return estimated size of all entries
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+  }
+
+  /**
+   * Registers a new or replaced entry.
+   *
+   * @param key      cache key
+   * @param info     entry info, used for grouping
+   * @param byteSize estimated entry size
+   */
+  public void put( TableCacheKey key, ExtraCacheInfo info, long byteSize ) {
+    if ( key == null || info == null ) {
+      return;
+    }
+    Group group = getGroup( info.getCdaSettingsId(), info.getDataAccessId(), true );
+    Group previous = keyGroups.put( key, group );
+    if ( previous != null && previous != group ) {
+      previous.remove( key );
+    }
+    group.put( key, byteSize );
+  }
+
+  public void remove( TableCacheKey key ) {
+    if ( key == null ) {
+      return;
+    }
+    Group group = keyGroups.remove( key );
+    if ( group != null ) {
+      group.remove( key );
+    }
+  }
+
+  public void hit( TableCacheKey key ) {
+    hits.incrementAndGet();
+    Group group = key != null ? keyGroups.get( key ) : null;
+    if ( group != null ) {
+      group.hits.incrementAndGet();
+    }
+  }
+
+  public void miss() {
+    misses.incrementAndGet();
+  }
+
+  public void clear() {
+    keyGroups.clear();
+    groups.clear();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return hits over total lookups, 0 if there were none
+   */
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total > 0 ? (double) hitCount / total : 0;
+  }
+
+  public int getEntryCount() {
+    return keyGroups.size();
+  }
+
+  /**
+   * @return estimated size of all entries
+   */
+  public long getByteSize() {
+    long bytes = 0;
+    for ( Map<String, Group> dataAccesses : groups.values() ) {
+      for ( Group group : dataAccesses.values() ) {
+        bytes += group.bytes.get();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @param cdaSettingsId only data accesses from this file; <code>null</code> for all
+   * @return counters for each data access with cached entries
+   */
+  public List<GroupStatistics> getGroups( String cdaSettingsId ) {
+    List<GroupStatistics> result = new ArrayList<GroupStatistics>();
+    if ( cdaSettingsId != null ) {
+      Map<String, Group> dataAccesses = groups.get( cdaSettingsId );
+      if ( dataAccesses != null ) {
+        addGroups( dataAccesses, result );
+      }
+    } else {
+      for ( Map<String, Group> dataAccesses : groups.values() ) {
+        addGroups( dataAccesses, result );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param cdaSettingsId CDA file
+   * @param dataAccessId  data access; <code>null</code> for all of the file's
+   * @return number of entries of a data access
+   */
+  public int getEntryCount( String cdaSettingsId, String dataAccessId ) {
+    int count = 0;
+    for ( Group group : getGroups( cdaSettingsId, dataAccessId ) ) {
+      count += group.entries.size();
+    }
+    return count;
+  }
+
+  /**
+   * @return keys of all counted entries
+   */
+  public Set<TableCacheKey> getKeys() {
+    return Collections.unmodifiableSet( keyGroups.keySet() );
+  }
+
+  /**
+   * A page of keys from a data access. Order is arbitrary but stable while entries aren't added or removed.
+   *
+   * @param cdaSettingsId CDA file
+   * @param dataAccessId  data access; <code>null</code> for all of the file's, one data access after the other
+   * @param offset        entries to skip
+   * @param limit         maximum number of keys to return; negative for all
+   */
+  public List<TableCacheKey> getKeys( String cdaSettingsId, String dataAccessId, int offset, int limit ) {
+    List<Group> selected = getGroups( cdaSettingsId, dataAccessId );
+    if ( selected.isEmpty() || limit == 0 ) {
+      return Collections.emptyList();
+    }
+    List<TableCacheKey> keys = new ArrayList<TableCacheKey>( limit > 0 ? limit : 16 );
+    int skip = offset;
+    for ( Group group : selected ) {
+      Iterator<TableCacheKey> it = group.entries.keySet().iterator();
+      for ( ; skip > 0 && it.hasNext(); skip-- ) {
+        it.next();
+      }
+      while ( it.hasNext() && ( limit < 0 || keys.size() < limit ) ) {
+        keys.add( it.next() );
+      }
+      if ( limit >= 0 && keys.size() >= limit ) {
+        break;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Groups of a data access, or of all data accesses of a file ordered by their id when <code>dataAccessId</code>
+   * is <code>null</code>.
+   */
+  private List<Group> getGroups( String cdaSettingsId, String dataAccessId ) {
+    if ( dataAccessId != null ) {
+      Group group = getGroup( cdaSettingsId, dataAccessId, false );
+      return group != null ? Collections.singletonList( group ) : Collections.<Group>emptyList();
+    }
+    Map<String, Group> dataAccesses = groups.get( String.valueOf( cdaSettingsId ) );
+    if ( dataAccesses == null ) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<Group>( new TreeMap<String, Group>( dataAccesses ).values() );
+  }
+
+  private static void addGroups( Map<String, Group> dataAccesses, List<GroupStatistics> result ) {
+    for ( Group group : dataAccesses.values() ) {
+      if ( !group.entries.isEmpty() ) {
+        result.add( group.toStatistics() );
+      }
+    }
+  }
+
+  private Group getGroup( String cdaSettingsId, String dataAccessId, boolean create ) {
+    String settingsKey = String.valueOf( cdaSettingsId );
+    String dataAccessKey = String.valueOf( dataAccessId );
+    ConcurrentMap<String, Group> dataAccesses = groups.get( settingsKey );
+    if ( dataAccesses == null ) {
+      if ( !create ) {
+        return null;
+      }
+      dataAccesses = new ConcurrentHashMap<String, Group>();
+      ConcurrentMap<String, Group> existing = groups.putIfAbsent( settingsKey, dataAccesses );
+      if ( existing != null ) {
+        dataAccesses = existing;
+      }
+    }
+    Group group = dataAccesses.get( dataAccessKey );
+    if ( group == null && create ) {
+      group = new Group( cdaSettingsId, dataAccessId );
+      Group existing = dataAccesses.putIfAbsent( dataAccessKey, group );
+      if ( existing != null ) {
+        group = existing;
+      }
+    }
+    return group;
+  }
+}
@@ -13,9 +13,11 @@
 
 package pt.webdetails.cda.cache.monitor;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
 import java.io.Serializable;
 
 import javax.swing.table.TableModel;
@@ -24,7 +26,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONObject;
 
+import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.exporter.JsonExporter;
+import pt.webdetails.cda.utils.TableModelUtils;
 
 /**
  * Info about cached item that shouldn't be factored in key comparison
@@ -41,6 +45,8 @@ public class ExtraCacheInfo implements Serializable {
   private long queryDurationMs;
   private JSONObject tableSnapshot;
   private int nbrRows;
+  private long byteSize;
+  private TableCacheKey cacheKey;
 
   private long entryTime;
   private int timeToLive; // TODO: delete?
@@ -50,6 +56,7 @@ public class ExtraCacheInfo implements Serializable {
     this.dataAccessId = dataAccessId;
     this.queryDurationMs = queryDurationMs;
     this.nbrRows = tm.getRowCount();
+    this.byteSize = TableModelUtils.estimateByteSize( tm );
     JsonExporter exporter = new JsonExporter( null );
 
     try {
@@ -99,6 +106,28 @@ public class ExtraCacheInfo implements Serializable {
     this.nbrRows = nbrRows;
   }
 
+  /**
+   * @return estimated size of the cached table
+   */
+  public long getByteSize() {
+    return byteSize;
+  }
+
+  public void setByteSize( long byteSize ) {
+    this.byteSize = byteSize;
+  }
+
+  /**
+   * @return full cache key, for caches that store entries under its fingerprint
+   */
+  public TableCacheKey getCacheKey() {
+    return cacheKey;
+  }
+
+  public void setCacheKey( TableCacheKey cacheKey ) {
+    this.cacheKey = cacheKey;
+  }
+
   public long getEntryTime() {
     return entryTime;
   }
@@ -123,6 +152,8 @@ public class ExtraCacheInfo implements Serializable {
     out.writeLong( entryTime );
     out.writeInt( timeToLive );
     out.writeObject( tableSnapshot != null ? tableSnapshot.toString() : null );
+    out.writeLong( byteSize );
+    out.writeObject( cacheKey );
   }
 
   private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
@@ -138,6 +169,16 @@ public class ExtraCacheInfo implements Serializable {
     } catch ( Exception e ) {
       tableSnapshot = null;
     }
+    try {
+      byteSize = in.readLong();
+      cacheKey = (TableCacheKey) in.readObject();
+    } catch ( EOFException e ) {
+      // written by an older version
+      byteSize = 0;
+    } catch ( OptionalDataException e ) {
+      // written by an older version
+      cacheKey = null;
+    }
   }
 
   @Override
@@ -149,6 +190,7 @@ public class ExtraCacheInfo implements Serializable {
       + ", timeToLive=" + timeToLive
       + ", queryDurationMs=" + queryDurationMs
       + ", nbrRows=" + nbrRows
+      + ", byteSize=" + byteSize
       + "]";
   }
 }
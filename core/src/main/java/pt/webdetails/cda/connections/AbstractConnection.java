@@ -15,6 +15,7 @@ package pt.webdetails.cda.connections;
 
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
 import org.dom4j.Element;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
 import pt.webdetails.cda.dataaccess.PropertyDescriptor;
@@ -25,6 +26,9 @@ public abstract class AbstractConnection implements Connection {
 
   private String id;
   private CdaSettings cdaSettings;
+  private Integer maxConcurrentQueries;
+  private Integer maxQueuedQueries;
+  private Integer queueTimeout;
   protected static ConnectionType connectionType;
 
   public AbstractConnection() {
@@ -37,11 +41,27 @@ public abstract class AbstractConnection implements Connection {
   public AbstractConnection( final Element connection ) throws InvalidConnectionException {
 
     id = connection.attributeValue( "id" );
+    maxConcurrentQueries = parseLimit( connection, "maxConcurrentQueries" );
+    maxQueuedQueries = parseLimit( connection, "maxQueuedQueries" );
+    queueTimeout = parseLimit( connection, "queueTimeout" );
 
     initializeConnection( connection );
 
   }
 
+  protected Integer parseLimit( final Element connection, final String attribute )
+    throws InvalidConnectionException {
+    final String value = connection.attributeValue( attribute );
+    if ( StringUtils.isBlank( value ) ) {
+      return null;
+    }
+    try {
+      return Integer.valueOf( value.trim() );
+    } catch ( NumberFormatException e ) {
+      throw new InvalidConnectionException( "Invalid " + attribute + " in connection " + id + ": " + value, e );
+    }
+  }
+
   public abstract ConnectionType getGenericType();
 
   protected abstract void initializeConnection( Element connection ) throws InvalidConnectionException;
@@ -52,6 +72,40 @@ public abstract class AbstractConnection implements Connection {
 
   public abstract String getType();
 
+  /**
+   * @return maximum number of queries running at once, <code>null</code> to use the global setting
+   * @see ConnectionBulkheads
+   */
+  public Integer getMaxConcurrentQueries() {
+    return maxConcurrentQueries;
+  }
+
+  public void setMaxConcurrentQueries( final Integer maxConcurrentQueries ) {
+    this.maxConcurrentQueries = maxConcurrentQueries;
+  }
+
+  /**
+   * @return maximum number of queries waiting for a slot, <code>null</code> to use the global setting
+   */
+  public Integer getMaxQueuedQueries() {
+    return maxQueuedQueries;
+  }
+
+  public void setMaxQueuedQueries( final Integer maxQueuedQueries ) {
+    this.maxQueuedQueries = maxQueuedQueries;
+  }
+
+  /**
+   * @return how long, in seconds, a query may wait for a slot, <code>null</code> to use the global setting
+   */
+  public Integer getQueueTimeout() {
+    return queueTimeout;
+  }
+
+  public void setQueueTimeout( final Integer queueTimeout ) {
+    this.queueTimeout = queueTimeout;
+  }
+
   public CdaSettings getCdaSettings() {
     return cdaSettings;
   }
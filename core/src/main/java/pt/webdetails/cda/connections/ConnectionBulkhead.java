@@ -0,0 +1,320 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import pt.webdetails.cda.dataaccess.QueryRejectedException;
+import pt.webdetails.cda.query.QueryPriority;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many queries run at the same time against a connection.<br>
+ * Queries over the limit wait in a bounded queue; once the queue is full, or after waiting for
+ * <code>queueTimeoutMs</code>, they are rejected with a {@link QueryRejectedException}.<br>
+ * Waiting queries are admitted by {@link QueryPriority}, and <code>reservedInteractive</code> slots are only used by
+ * interactive queries, so exports and cache warm ups can't take every slot.<br>
+ * A non positive <code>maxConcurrent</code> means no limit, in which case only statistics are kept.
+ */
+public class ConnectionBulkhead {
+
+  private static final int PRIORITIES = QueryPriority.values().length;
+
+  private final String name;
+  private final int maxConcurrent;
+  private final int reservedInteractive;
+  private final int maxQueued;
+  private final long queueTimeoutMs;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition[] available = new Condition[ PRIORITIES ];
+  // counters by priority, guarded by lock
+  private final int[] active = new int[ PRIORITIES ];
+  private final int[] queued = new int[ PRIORITIES ];
+  private int activeTotal;
+  private int queuedTotal;
+
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+  private final AtomicLong waited = new AtomicLong();
+  private final AtomicLong waitTimeMs = new AtomicLong();
+
+  /**
+   * @param name           used in error messages
+   * @param maxConcurrent  maximum number of queries running at once, non positive for no limit
+   * @param maxQueued      maximum number of queries waiting for a slot
+   * @param queueTimeoutMs how long a query may wait for a slot
+   */
+  public ConnectionBulkhead( String name, int maxConcurrent, int maxQueued, long queueTimeoutMs ) {
+    this( name, maxConcurrent, 0, maxQueued, queueTimeoutMs );
+  }
+
+  /**
+   * @param name                used in error messages
+   * @param maxConcurrent       maximum number of queries running at once, non positive for no limit
+   * @param reservedInteractive how many of those are kept for interactive queries; at least one is always left for
+   *                            other queries
+   * @param maxQueued           maximum number of queries waiting for a slot
+   * @param queueTimeoutMs      how long a query may wait for a slot
+   */
+  public ConnectionBulkhead( String name, int maxConcurrent, int reservedInteractive, int maxQueued,
+                             long queueTimeoutMs ) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.reservedInteractive = Math.max( 0, Math.min( reservedInteractive, maxConcurrent - 1 ) );
+    this.maxQueued = Math.max( 0, maxQueued );
+    this.queueTimeoutMs = Math.max( 0, queueTimeoutMs );
+    for ( int i = 0; i < PRIORITIES; i++ ) {
+      available[ i ] = lock.newCondition();
+    }
+  }
+
+  /**
+   * Waits for a free slot as an interactive query.
+   *
+   * @see #acquire(QueryPriority)
+   */
+  public void acquire() throws QueryRejectedException {
+    acquire( QueryPriority.INTERACTIVE );
+  }
+
+  /**
+   * Waits for a free slot. Every successful call must be followed by a call to {@link #release(QueryPriority)} with
+   * the same priority.
+   *
+   * @throws QueryRejectedException if the wait queue is full, the wait timed out or the thread was interrupted
+   */
+  public void acquire( QueryPriority priority ) throws QueryRejectedException {
+    final int p = priority.ordinal();
+    lock.lock();
+    try {
+      // newcomers don't overtake queries already waiting with the same or a higher priority
+      if ( canRun( p ) && !hasWaiting( p + 1 ) ) {
+        run( p );
+        return;
+      }
+      if ( queuedTotal >= maxQueued ) {
+        rejected.incrementAndGet();
+        throw new QueryRejectedException( "Too many queries for connection " + name + ": " + activeTotal
+          + " running and " + queuedTotal + " waiting." );
+      }
+      await( p );
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits in the queue of priority <code>p</code> until a slot is free for it. Must hold the lock.
+   */
+  private void await( final int p ) throws QueryRejectedException {
+    queued[ p ]++;
+    queuedTotal++;
+    waited.incrementAndGet();
+    final long start = System.currentTimeMillis();
+    try {
+      long nanos = TimeUnit.MILLISECONDS.toNanos( queueTimeoutMs );
+      // higher priorities go first; within a priority, the condition wakes threads in arrival order
+      while ( !canRun( p ) || hasWaiting( p ) ) {
+        if ( nanos <= 0 ) {
+          timedOut.incrementAndGet();
+          throw new QueryRejectedException( "Timed out after " + queueTimeoutMs + "ms waiting for connection "
+            + name + "." );
+        }
+        nanos = available[ p ].awaitNanos( nanos );
+      }
+      run( p );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new QueryRejectedException( "Interrupted while waiting for connection " + name + ".", e );
+    } finally {
+      queued[ p ]--;
+      queuedTotal--;
+      waitTimeMs.addAndGet( System.currentTimeMillis() - start );
+      // pass on a wake up this thread may have consumed without using it, or extra free slots
+      signalNext();
+    }
+  }
+
+  public void release() {
+    release( QueryPriority.INTERACTIVE );
+  }
+
+  public void release( QueryPriority priority ) {
+    completed.incrementAndGet();
+    lock.lock();
+    try {
+      active[ priority.ordinal() ]--;
+      activeTotal--;
+      signalNext();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void run( int p ) {
+    active[ p ]++;
+    activeTotal++;
+  }
+
+  /**
+   * @return if there is a free slot for priority <code>p</code>
+   */
+  private boolean canRun( int p ) {
+    if ( maxConcurrent <= 0 ) {
+      return true;
+    }
+    int limit = p == QueryPriority.INTERACTIVE.ordinal() ? maxConcurrent : maxConcurrent - reservedInteractive;
+    return activeTotal < limit;
+  }
+
+  /**
+   * @return if queries with a priority above <code>p</code> are waiting
+   */
+  private boolean hasWaiting( int p ) {
+    for ( int i = 0; i < p; i++ ) {
+      if ( queued[ i ] > 0 ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void signalNext() {
+    for ( int i = 0; i < PRIORITIES; i++ ) {
+      if ( queued[ i ] > 0 && canRun( i ) ) {
+        available[ i ].signal();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return if this bulkhead was created with the given limits
+   */
+  public boolean hasLimits( int maxConcurrent, int reservedInteractive, int maxQueued, long queueTimeoutMs ) {
+    return this.maxConcurrent == maxConcurrent
+      && this.reservedInteractive == Math.max( 0, Math.min( reservedInteractive, maxConcurrent - 1 ) )
+      && this.maxQueued == Math.max( 0, maxQueued ) && this.queueTimeoutMs == Math.max( 0, queueTimeoutMs );
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  /**
+   * @return slots only available to interactive queries
+   */
+  public int getReservedInteractive() {
+    return reservedInteractive;
+  }
+
+  public int getMaxQueued() {
+    return maxQueued;
+  }
+
+  public long getQueueTimeout() {
+    return queueTimeoutMs;
+  }
+
+  /**
+   * @return queries currently running
+   */
+  public int getActive() {
+    lock.lock();
+    try {
+      return activeTotal;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return queries of the given priority currently running
+   */
+  public int getActive( QueryPriority priority ) {
+    lock.lock();
+    try {
+      return active[ priority.ordinal() ];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return queries currently waiting for a slot
+   */
+  public int getQueued() {
+    lock.lock();
+    try {
+      return queuedTotal;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return queries of the given priority currently waiting for a slot
+   */
+  public int getQueued( QueryPriority priority ) {
+    lock.lock();
+    try {
+      return queued[ priority.ordinal() ];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return queries that ran to completion, successfully or not
+   */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * @return queries rejected because the queue was full
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /**
+   * @return queries rejected after waiting too long
+   */
+  public long getTimedOut() {
+    return timedOut.get();
+  }
+
+  /**
+   * @return average time spent by queries that had to wait, in milliseconds
+   */
+  public long getAverageWaitTime() {
+    long count = waited.get();
+    return count > 0 ? waitTimeMs.get() / count : 0;
+  }
+
+  @Override
+  public String toString() {
+    return ConnectionBulkhead.class.getSimpleName() + " [" + name + ", active=" + getActive() + "/" + maxConcurrent
+      + ", queued=" + getQueued() + "/" + maxQueued + "]";
+  }
+}
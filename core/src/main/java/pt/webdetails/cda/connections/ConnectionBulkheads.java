@@ -0,0 +1,115 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import pt.webdetails.cda.CdaPropertiesHelper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link ConnectionBulkhead} per connection of each CDA file.<br>
+ * Limits come from the <code>maxConcurrentQueries</code>, <code>maxQueuedQueries</code> and
+ * <code>queueTimeout</code> attributes of the <code>Connection</code> element, falling back to the
+ * <code>pt.webdetails.cda.connections.*</code> properties. A share of each limit, set by the
+ * <code>interactiveReserve</code> property, is kept for interactive queries.
+ */
+public class ConnectionBulkheads {
+
+  private static final String MAX_CONCURRENT_PROPERTY = "pt.webdetails.cda.connections.maxConcurrentQueries";
+  private static final String MAX_QUEUED_PROPERTY = "pt.webdetails.cda.connections.maxQueuedQueries";
+  private static final String QUEUE_TIMEOUT_PROPERTY = "pt.webdetails.cda.connections.queueTimeout";
+  private static final String INTERACTIVE_RESERVE_PROPERTY = "pt.webdetails.cda.connections.interactiveReserve";
+
+  private static final Map<String, ConnectionBulkhead> bulkheads = new ConcurrentHashMap<String, ConnectionBulkhead>();
+
+  private static volatile Defaults defaults;
+
+  private static class Defaults {
+    final int maxConcurrent = CdaPropertiesHelper.getIntProperty( MAX_CONCURRENT_PROPERTY, 0 );
+    final int maxQueued = CdaPropertiesHelper.getIntProperty( MAX_QUEUED_PROPERTY, 20 );
+    final int queueTimeout = CdaPropertiesHelper.getIntProperty( QUEUE_TIMEOUT_PROPERTY, 30 );
+    final int interactiveReserve = CdaPropertiesHelper.getIntProperty( INTERACTIVE_RESERVE_PROPERTY, 25 );
+  }
+
+  private ConnectionBulkheads() {
+  }
+
+  /**
+   * @param cdaSettingsId id of the CDA file the connection belongs to
+   * @param connection    the connection
+   * @return the bulkhead guarding this connection
+   */
+  public static ConnectionBulkhead get( final String cdaSettingsId, final Connection connection ) {
+    final Defaults limits = getDefaults();
+    int maxConcurrent = limits.maxConcurrent;
+    int maxQueued = limits.maxQueued;
+    int queueTimeout = limits.queueTimeout;
+    if ( connection instanceof AbstractConnection ) {
+      AbstractConnection con = (AbstractConnection) connection;
+      maxConcurrent = con.getMaxConcurrentQueries() != null ? con.getMaxConcurrentQueries() : maxConcurrent;
+      maxQueued = con.getMaxQueuedQueries() != null ? con.getMaxQueuedQueries() : maxQueued;
+      queueTimeout = con.getQueueTimeout() != null ? con.getQueueTimeout() : queueTimeout;
+    }
+    final String name = cdaSettingsId + ":" + connection.getId();
+    final int reserved = getReservedSlots( maxConcurrent, limits.interactiveReserve );
+    final ConnectionBulkhead bulkhead = bulkheads.get( name );
+    if ( bulkhead != null && bulkhead.hasLimits( maxConcurrent, reserved, maxQueued, queueTimeout * 1000L ) ) {
+      return bulkhead;
+    }
+    // new connection or limits changed after the file was edited; running queries release the old one
+    final int concurrent = maxConcurrent;
+    final int queued = maxQueued;
+    final long timeout = queueTimeout * 1000L;
+    return bulkheads.compute( name, ( key, existing ) ->
+      existing != null && existing.hasLimits( concurrent, reserved, queued, timeout )
+        ? existing : new ConnectionBulkhead( key, concurrent, reserved, queued, timeout ) );
+  }
+
+  /**
+   * @return slots kept for interactive queries, rounded up
+   */
+  static int getReservedSlots( int maxConcurrent, int reservePercent ) {
+    if ( maxConcurrent <= 0 || reservePercent <= 0 ) {
+      return 0;
+    }
+    return ( maxConcurrent * Math.min( reservePercent, 100 ) + 99 ) / 100;
+  }
+
+  /**
+   * @return bulkheads of all connections used so far
+   */
+  public static Collection<ConnectionBulkhead> getAll() {
+    return Collections.unmodifiableCollection( bulkheads.values() );
+  }
+
+  /**
+   * Forgets bulkheads and re-reads default limits; running queries are not affected.
+   */
+  public static void clear() {
+    defaults = null;
+    bulkheads.clear();
+  }
+
+  private static Defaults getDefaults() {
+    Defaults current = defaults;
+    if ( current == null ) {
+      current = new Defaults();
+      defaults = current;
+    }
+    return current;
+  }
+}
@@ -0,0 +1,257 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.dataaccess.CircuitOpenException;
+
+/**
+ * Stops sending queries to a connection that keeps failing or answering too slowly, giving it time to recover.<br>
+ * The outcome of the last <code>windowSize</code> queries is kept. Once at least <code>minQueries</code> of them ran
+ * and the share of failed or slow ones reaches its threshold, the breaker opens and queries are rejected right away
+ * with a {@link CircuitOpenException}. After <code>openTimeMs</code> it is half open: up to
+ * <code>halfOpenQueries</code> trial queries are let through; if they all succeed in time the breaker closes,
+ * otherwise it opens again.<br>
+ * Every query allowed by {@link #acquire()} must be followed by exactly one call to {@link #onSuccess(long)},
+ * {@link #onFailure(long)} or {@link #onIgnored()}. Those return the state the breaker moved to, if any, so that
+ * callers can report it.
+ */
+public class ConnectionCircuitBreaker {
+
+  private static final Log logger = LogFactory.getLog( ConnectionCircuitBreaker.class );
+
+  public enum State {
+    /** queries run normally */
+    CLOSED,
+    /** queries are rejected */
+    OPEN,
+    /** a few trial queries run to tell if the connection recovered */
+    HALF_OPEN
+  }
+
+  private static final byte OK = 0;
+  private static final byte FAILED = 1;
+  private static final byte SLOW = 2;
+
+  private final String name;
+  private final int failureRate;
+  private final long slowQueryTimeMs;
+  private final int slowQueryRate;
+  private final int minQueries;
+  private final long openTimeMs;
+  private final int halfOpenQueries;
+
+  // guarded by this
+  private final byte[] outcomes;
+  private int next;
+  private int recorded;
+  private int failed;
+  private int slow;
+  private State state = State.CLOSED;
+  private long openUntil;
+  private int trials;
+  private int trialSuccesses;
+  private long rejected;
+
+  /**
+   * @param name            used in error messages
+   * @param failureRate     percentage of failed queries opening the breaker, non positive to ignore failures
+   * @param slowQueryTimeMs queries taking longer are slow, non positive to ignore latency
+   * @param slowQueryRate   percentage of slow queries opening the breaker, non positive to ignore latency
+   * @param windowSize      number of recent queries looked at
+   * @param minQueries      queries needed in the window before the breaker may open
+   * @param openTimeMs      how long the breaker stays open before trying the connection again
+   * @param halfOpenQueries trial queries needed to close it again
+   */
+  public ConnectionCircuitBreaker( String name, int failureRate, long slowQueryTimeMs, int slowQueryRate,
+                                   int windowSize, int minQueries, long openTimeMs, int halfOpenQueries ) {
+    this.name = name;
+    this.failureRate = failureRate;
+    this.slowQueryTimeMs = slowQueryTimeMs;
+    this.slowQueryRate = slowQueryRate;
+    this.outcomes = new byte[ Math.max( 1, windowSize ) ];
+    this.minQueries = Math.max( 1, Math.min( minQueries, outcomes.length ) );
+    this.openTimeMs = Math.max( 0, openTimeMs );
+    this.halfOpenQueries = Math.max( 1, halfOpenQueries );
+  }
+
+  /**
+   * Asks to run a query.
+   *
+   * @return the state the breaker moved to, <code>null</code> if it didn't change
+   * @throws CircuitOpenException if the breaker is open, or half open with enough trial queries running
+   */
+  public State acquire() throws CircuitOpenException {
+    return acquire( System.currentTimeMillis() );
+  }
+
+  synchronized State acquire( long now ) throws CircuitOpenException {
+    State changed = null;
+    if ( state == State.OPEN && now >= openUntil ) {
+      changed = moveTo( State.HALF_OPEN, now );
+    }
+    switch ( state ) {
+      case OPEN:
+        rejected++;
+        throw new CircuitOpenException( "Connection " + name + " is failing, not sending it queries for another "
+          + ( openUntil - now ) / 1000 + "s." );
+      case HALF_OPEN:
+        if ( trials >= halfOpenQueries ) {
+          rejected++;
+          throw new CircuitOpenException( "Connection " + name + " is failing, waiting for trial queries." );
+        }
+        trials++;
+        break;
+      default:
+        break;
+    }
+    return changed;
+  }
+
+  /**
+   * @param durationMs how long the query took
+   * @return the state the breaker moved to, <code>null</code> if it didn't change
+   */
+  public State onSuccess( long durationMs ) {
+    return record( slowQueryTimeMs > 0 && durationMs > slowQueryTimeMs ? SLOW : OK, System.currentTimeMillis() );
+  }
+
+  /**
+   * @param durationMs how long the query ran before failing
+   * @return the state the breaker moved to, <code>null</code> if it didn't change
+   */
+  public State onFailure( long durationMs ) {
+    return record( FAILED, System.currentTimeMillis() );
+  }
+
+  /**
+   * The query didn't reach the connection, its outcome says nothing about it.
+   */
+  public synchronized void onIgnored() {
+    if ( state == State.HALF_OPEN && trials > trialSuccesses ) {
+      trials--;
+    }
+  }
+
+  synchronized State record( byte outcome, long now ) {
+    switch ( state ) {
+      case HALF_OPEN:
+        if ( outcome != OK ) {
+          return moveTo( State.OPEN, now );
+        }
+        trialSuccesses++;
+        return trialSuccesses >= halfOpenQueries ? moveTo( State.CLOSED, now ) : null;
+      case OPEN:
+        // started before the breaker opened
+        return null;
+      default:
+        break;
+    }
+    if ( recorded == outcomes.length ) {
+      forget( outcomes[ next ] );
+    } else {
+      recorded++;
+    }
+    outcomes[ next ] = outcome;
+    next = ( next + 1 ) % outcomes.length;
+    if ( outcome == FAILED ) {
+      failed++;
+    } else if ( outcome == SLOW ) {
+      slow++;
+    }
+    if ( recorded >= minQueries
+      && ( exceeds( failed, failureRate ) || ( slowQueryTimeMs > 0 && exceeds( slow, slowQueryRate ) ) ) ) {
+      return moveTo( State.OPEN, now );
+    }
+    return null;
+  }
+
+  private boolean exceeds( int count, int ratePercent ) {
+    return ratePercent > 0 && count * 100 >= ratePercent * recorded;
+  }
+
+  private void forget( byte outcome ) {
+    if ( outcome == FAILED ) {
+      failed--;
+    } else if ( outcome == SLOW ) {
+      slow--;
+    }
+  }
+
+  private State moveTo( State newState, long now ) {
+    if ( newState == State.OPEN ) {
+      openUntil = now + openTimeMs;
+      logger.warn( "Connection " + name + " failing, rejecting its queries for " + openTimeMs / 1000 + "s ("
+        + ( state == State.HALF_OPEN ? "trial query failed or was slow"
+        : failed + " failed and " + slow + " slow of the last " + recorded ) + ")." );
+    } else {
+      logger.info( "Connection " + name + " circuit breaker " + newState );
+    }
+    if ( newState != State.HALF_OPEN ) {
+      // trial queries still running report to the new state
+      trials = 0;
+      trialSuccesses = 0;
+    }
+    if ( newState == State.CLOSED || newState == State.HALF_OPEN ) {
+      next = 0;
+      recorded = 0;
+      failed = 0;
+      slow = 0;
+    }
+    state = newState;
+    return newState;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return queries whose outcome is kept, see {@link #getFailed()} and {@link #getSlow()}
+   */
+  public synchronized int getRecorded() {
+    return recorded;
+  }
+
+  /**
+   * @return failed queries among the recorded ones
+   */
+  public synchronized int getFailed() {
+    return failed;
+  }
+
+  /**
+   * @return slow queries among the recorded ones
+   */
+  public synchronized int getSlow() {
+    return slow;
+  }
+
+  /**
+   * @return queries rejected because the breaker was open
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    return ConnectionCircuitBreaker.class.getSimpleName() + " [" + name + ", " + getState() + "]";
+  }
+}
@@ -0,0 +1,98 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import pt.webdetails.cda.CdaPropertiesHelper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link ConnectionCircuitBreaker} per connection of each CDA file, with settings from the
+ * <code>pt.webdetails.cda.connections.breaker.*</code> properties.
+ */
+public class ConnectionCircuitBreakers {
+
+  private static final String PREFIX = "pt.webdetails.cda.connections.breaker.";
+  private static final String FAILURE_RATE_PROPERTY = PREFIX + "failureRate";
+  private static final String SLOW_QUERY_TIME_PROPERTY = PREFIX + "slowQueryTime";
+  private static final String SLOW_QUERY_RATE_PROPERTY = PREFIX + "slowQueryRate";
+  private static final String WINDOW_SIZE_PROPERTY = PREFIX + "windowSize";
+  private static final String MIN_QUERIES_PROPERTY = PREFIX + "minQueries";
+  private static final String OPEN_TIME_PROPERTY = PREFIX + "openTime";
+  private static final String HALF_OPEN_QUERIES_PROPERTY = PREFIX + "halfOpenQueries";
+
+  private static final Map<String, ConnectionCircuitBreaker> breakers =
+    new ConcurrentHashMap<String, ConnectionCircuitBreaker>();
+
+  private static volatile Settings settings;
+
+  private static class Settings {
+    final int failureRate = CdaPropertiesHelper.getIntProperty( FAILURE_RATE_PROPERTY, 0 );
+    final long slowQueryTimeMs = CdaPropertiesHelper.getIntProperty( SLOW_QUERY_TIME_PROPERTY, 0 ) * 1000L;
+    final int slowQueryRate = CdaPropertiesHelper.getIntProperty( SLOW_QUERY_RATE_PROPERTY, 80 );
+    final int windowSize = CdaPropertiesHelper.getIntProperty( WINDOW_SIZE_PROPERTY, 20 );
+    final int minQueries = CdaPropertiesHelper.getIntProperty( MIN_QUERIES_PROPERTY, 10 );
+    final long openTimeMs = CdaPropertiesHelper.getIntProperty( OPEN_TIME_PROPERTY, 30 ) * 1000L;
+    final int halfOpenQueries = CdaPropertiesHelper.getIntProperty( HALF_OPEN_QUERIES_PROPERTY, 3 );
+
+    boolean isEnabled() {
+      return failureRate > 0 || ( slowQueryTimeMs > 0 && slowQueryRate > 0 );
+    }
+  }
+
+  private ConnectionCircuitBreakers() {
+  }
+
+  /**
+   * @param cdaSettingsId id of the CDA file the connection belongs to
+   * @param connection    the connection
+   * @return the circuit breaker for this connection, <code>null</code> if they are disabled
+   */
+  public static ConnectionCircuitBreaker get( final String cdaSettingsId, final Connection connection ) {
+    final Settings current = getSettings();
+    if ( !current.isEnabled() ) {
+      return null;
+    }
+    return breakers.computeIfAbsent( cdaSettingsId + ":" + connection.getId(), name ->
+      new ConnectionCircuitBreaker( name, current.failureRate, current.slowQueryTimeMs, current.slowQueryRate,
+        current.windowSize, current.minQueries, current.openTimeMs, current.halfOpenQueries ) );
+  }
+
+  /**
+   * @return circuit breakers of all connections used so far
+   */
+  public static Collection<ConnectionCircuitBreaker> getAll() {
+    return Collections.unmodifiableCollection( breakers.values() );
+  }
+
+  /**
+   * Closes all breakers, forgetting past failures, and re-reads their settings.
+   */
+  public static void clear() {
+    settings = null;
+    breakers.clear();
+  }
+
+  private static Settings getSettings() {
+    Settings current = settings;
+    if ( current == null ) {
+      current = new Settings();
+      settings = current;
+    }
+    return current;
+  }
+}
@@ -33,6 +33,7 @@ public class JdbcConnection extends AbstractSqlConnection {
   private static final Log logger = LogFactory.getLog( JdbcConnection.class );
   public static final String TYPE = "sqlJdbc";
   private JdbcConnectionInfo connectionInfo;
+  private Integer statementCacheSize;
 
   public JdbcConnection( final Element connection ) throws InvalidConnectionException {
 
@@ -47,6 +48,7 @@ public class JdbcConnection extends AbstractSqlConnection {
   protected void initializeConnection( final Element connection ) throws InvalidConnectionException {
 
     connectionInfo = new JdbcConnectionInfo( connection );
+    statementCacheSize = parseLimit( connection, "statementCacheSize" );
 
   }
 
@@ -71,11 +73,13 @@ public class JdbcConnection extends AbstractSqlConnection {
       final String value = properties.getProperty( key );
       connectionProvider.setProperty( key, value );
     }
+    final ConnectionProvider provider =
+      StatementCaches.get( connectionInfo.getUrl(), connectionProvider, getStatementCacheSize() );
 
     logger.debug( "Opening connection" );
     try {
-      final Connection connection =
-        connectionProvider.createConnection( connectionInfo.getUser(), connectionInfo.getPass() );
+      // an idle one if statements are cached
+      final Connection connection = provider.createConnection( connectionInfo.getUser(), connectionInfo.getPass() );
       connection.close();
     } catch ( SQLException e ) {
 
@@ -85,7 +89,19 @@ public class JdbcConnection extends AbstractSqlConnection {
 
     logger.debug( "Connection opened" );
 
-    return connectionProvider;
+    return provider;
+  }
+
+  /**
+   * @return prepared statements cached per connection, 0 if connections aren't kept open
+   * @see StatementCaches
+   */
+  public int getStatementCacheSize() {
+    return statementCacheSize != null ? statementCacheSize : StatementCaches.getDefaultSize();
+  }
+
+  public void setStatementCacheSize( final Integer statementCacheSize ) {
+    this.statementCacheSize = statementCacheSize;
   }
 
   public boolean equals( final Object o ) {
@@ -0,0 +1,236 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+/**
+ * Chooses which replica of a {@link ReplicatedConnection} a query goes to.<br>
+ * Replicas failing to connect <code>maxFailures</code> times in a row are ejected for <code>ejectTimeMs</code>, and
+ * are only tried once every other replica failed too. Among the others, queries with a routing key always start at
+ * the same replica when routing is sticky, so that each replica keeps its own share of the data warm; otherwise the
+ * {@link Policy} decides.
+ */
+public class ReplicaRouter implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log logger = LogFactory.getLog( ReplicaRouter.class );
+
+  public enum Policy {
+    ROUND_ROBIN( "roundRobin" ),
+    LEAST_OUTSTANDING( "leastOutstanding" );
+
+    private final String name;
+
+    Policy( String name ) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the policy with that name, <code>null</code> if none
+     */
+    public static Policy parse( String name ) {
+      for ( Policy policy : values() ) {
+        if ( policy.name.equalsIgnoreCase( name ) ) {
+          return policy;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * A replica and its health.
+   */
+  public static class Replica implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final ConnectionProvider connectionProvider;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long ejectedUntil;
+
+    public Replica( String name, ConnectionProvider connectionProvider ) {
+      this.name = name;
+      this.connectionProvider = connectionProvider;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public ConnectionProvider getConnectionProvider() {
+      return connectionProvider;
+    }
+
+    /**
+     * @return connections currently open to this replica
+     */
+    public int getOutstanding() {
+      return outstanding.get();
+    }
+
+    public boolean isEjected() {
+      return isEjected( System.currentTimeMillis() );
+    }
+
+    boolean isEjected( long now ) {
+      return ejectedUntil > now;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private final String name;
+  private final List<Replica> replicas;
+  private final Policy policy;
+  private final boolean sticky;
+  private final int maxFailures;
+  private final long ejectTimeMs;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  /**
+   * @param name        used in log messages
+   * @param replicas    replicas to route to
+   * @param policy      how to choose among replicas
+   * @param sticky      if queries with a routing key always start at the same replica
+   * @param maxFailures consecutive failures ejecting a replica, non positive to never eject
+   * @param ejectTimeMs how long an ejected replica is left alone
+   */
+  public ReplicaRouter( String name, List<Replica> replicas, Policy policy, boolean sticky, int maxFailures,
+                        long ejectTimeMs ) {
+    if ( replicas.isEmpty() ) {
+      throw new IllegalArgumentException( "No replicas for " + name );
+    }
+    this.name = name;
+    this.replicas = Collections.unmodifiableList( new ArrayList<Replica>( replicas ) );
+    this.policy = policy != null ? policy : Policy.ROUND_ROBIN;
+    this.sticky = sticky;
+    this.maxFailures = maxFailures;
+    this.ejectTimeMs = Math.max( 0, ejectTimeMs );
+  }
+
+  /**
+   * @param routingKey identifies the query for sticky routing, may be <code>null</code>
+   * @return all replicas, in the order they should be tried
+   */
+  public List<Replica> route( final Object routingKey ) {
+    return route( routingKey, System.currentTimeMillis() );
+  }
+
+  List<Replica> route( final Object routingKey, final long now ) {
+    final List<Replica> healthy = new ArrayList<Replica>( replicas.size() );
+    final List<Replica> ejected = new ArrayList<Replica>();
+    for ( Replica replica : replicas ) {
+      ( replica.isEjected( now ) ? ejected : healthy ).add( replica );
+    }
+    if ( sticky && routingKey != null ) {
+      // rendezvous hashing: a key only moves when its replica is ejected
+      final int keyHash = routingKey.hashCode();
+      Collections.sort( healthy, Comparator.comparingInt( ( Replica r ) -> score( keyHash, r ) ).reversed() );
+    } else if ( !healthy.isEmpty() ) {
+      Collections.rotate( healthy, -Math.floorMod( nextReplica.getAndIncrement(), healthy.size() ) );
+      if ( policy == Policy.LEAST_OUTSTANDING ) {
+        // stable sort, ties keep the round robin order
+        Collections.sort( healthy, Comparator.comparingInt( Replica::getOutstanding ) );
+      }
+    }
+    // last resort, they may have recovered
+    Collections.sort( ejected, Comparator.comparingLong( ( Replica r ) -> r.ejectedUntil ) );
+    healthy.addAll( ejected );
+    return healthy;
+  }
+
+  private static int score( int keyHash, Replica replica ) {
+    int h = keyHash * 31 + replica.getName().hashCode();
+    // murmur3 finalizer, spreads similar keys
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * A connection to the replica was opened, it must be followed by {@link #onClosed(Replica)}.
+   */
+  public void onConnected( final Replica replica ) {
+    replica.failures.set( 0 );
+    replica.ejectedUntil = 0;
+    replica.outstanding.incrementAndGet();
+  }
+
+  public void onClosed( final Replica replica ) {
+    replica.outstanding.decrementAndGet();
+  }
+
+  /**
+   * Connecting to the replica failed.
+   */
+  public void onFailed( final Replica replica, final Exception cause ) {
+    onFailed( replica, cause, System.currentTimeMillis() );
+  }
+
+  void onFailed( final Replica replica, final Exception cause, final long now ) {
+    final int failures = replica.failures.incrementAndGet();
+    if ( maxFailures > 0 && failures >= maxFailures ) {
+      replica.failures.set( 0 );
+      replica.ejectedUntil = now + ejectTimeMs;
+      logger.warn( "Replica " + replica.getName() + " of " + name + " failed " + failures
+        + " times in a row, ejecting it for " + ejectTimeMs / 1000 + "s: " + cause.getMessage() );
+    } else {
+      logger.debug( "Replica " + replica.getName() + " of " + name + " failed", cause );
+    }
+  }
+
+  public List<Replica> getReplicas() {
+    return replicas;
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public boolean isSticky() {
+    return sticky;
+  }
+
+  public int getMaxFailures() {
+    return maxFailures;
+  }
+
+  public long getEjectTime() {
+    return ejectTimeMs;
+  }
+}
@@ -0,0 +1,271 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.dom4j.Element;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.DriverConnectionProvider;
+import pt.webdetails.cda.CdaEngine;
+import pt.webdetails.cda.connections.InvalidConnectionException;
+import pt.webdetails.cda.dataaccess.PropertyDescriptor;
+import pt.webdetails.cda.utils.Util;
+
+/**
+ * SQL connection to several replicas of the same database. Each <code>Replica</code> element is defined like a
+ * <code>sql.jdbc</code> connection, or like a <code>sql.jndi</code> one when it has a <code>Jndi</code> element.
+ * The <code>policy</code>, <code>sticky</code>, <code>maxFailures</code> and <code>ejectTime</code> attributes
+ * tell how queries are spread, see {@link ReplicaRouter}. The <code>statementCacheSize</code> attribute applies to
+ * every <code>sql.jdbc</code> like replica, as for a {@link JdbcConnection}.
+ */
+public class ReplicatedConnection extends AbstractSqlConnection {
+
+  public static final String TYPE = "sqlReplicated";
+
+  private List<ReplicaInfo> replicaInfos;
+  private ReplicaRouter.Policy policy;
+  private boolean sticky;
+  private int maxFailures;
+  private int ejectTime;
+  private Integer statementCacheSize;
+  private ReplicaRouter router;
+
+  /**
+   * Definition of a replica, one of <code>jdbc</code> or <code>jndi</code> is set.
+   */
+  public static class ReplicaInfo {
+    private final String id;
+    private final JdbcConnectionInfo jdbc;
+    private final SqlJndiConnectionInfo jndi;
+
+    public ReplicaInfo( String id, JdbcConnectionInfo jdbc ) {
+      this( id, jdbc, null );
+    }
+
+    public ReplicaInfo( String id, SqlJndiConnectionInfo jndi ) {
+      this( id, null, jndi );
+    }
+
+    private ReplicaInfo( String id, JdbcConnectionInfo jdbc, SqlJndiConnectionInfo jndi ) {
+      this.id = id;
+      this.jdbc = jdbc;
+      this.jndi = jndi;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public JdbcConnectionInfo getJdbc() {
+      return jdbc;
+    }
+
+    public SqlJndiConnectionInfo getJndi() {
+      return jndi;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( o == null || getClass() != o.getClass() ) {
+        return false;
+      }
+      final ReplicaInfo that = (ReplicaInfo) o;
+      return StringUtils.equals( id, that.id ) && ( jdbc != null ? jdbc.equals( that.jdbc ) : that.jdbc == null )
+        && ( jndi != null ? jndi.equals( that.jndi ) : that.jndi == null );
+    }
+
+    @Override
+    public int hashCode() {
+      int result = id != null ? id.hashCode() : 0;
+      result = 31 * result + ( jdbc != null ? jdbc.hashCode() : 0 );
+      result = 31 * result + ( jndi != null ? jndi.hashCode() : 0 );
+      return result;
+    }
+  }
+
+  public ReplicatedConnection( final Element connection ) throws InvalidConnectionException {
+    super( connection );
+  }
+
+  public ReplicatedConnection() {
+  }
+
+  @Override
+  protected void initializeConnection( final Element connection ) throws InvalidConnectionException {
+    final String policyName = connection.attributeValue( "policy" );
+    policy = StringUtils.isBlank( policyName ) ? ReplicaRouter.Policy.ROUND_ROBIN
+      : ReplicaRouter.Policy.parse( policyName.trim() );
+    if ( policy == null ) {
+      throw new InvalidConnectionException( "Unknown policy in connection " + getId() + ": " + policyName, null );
+    }
+    sticky = Boolean.parseBoolean( connection.attributeValue( "sticky" ) );
+    maxFailures = parseInt( connection, "maxFailures", 3 );
+    ejectTime = parseInt( connection, "ejectTime", 30 );
+    statementCacheSize = parseLimit( connection, "statementCacheSize" );
+
+    replicaInfos = new ArrayList<ReplicaInfo>();
+    for ( Element replica : Util.selectElements( connection, "Replica" ) ) {
+      String id = replica.attributeValue( "id" );
+      if ( StringUtils.isBlank( id ) ) {
+        id = Integer.toString( replicaInfos.size() + 1 );
+      }
+      try {
+        replicaInfos.add( replica.element( "Jndi" ) != null
+          ? new ReplicaInfo( id, new SqlJndiConnectionInfo( replica ) )
+          : new ReplicaInfo( id, new JdbcConnectionInfo( replica ) ) );
+      } catch ( IllegalStateException e ) {
+        throw new InvalidConnectionException( "Invalid replica " + id + " in connection " + getId() + ": "
+          + e.getMessage(), e );
+      }
+    }
+    if ( replicaInfos.isEmpty() ) {
+      throw new InvalidConnectionException( "Connection " + getId() + " has no replicas", null );
+    }
+  }
+
+  private int parseInt( final Element connection, final String attribute, final int defaultValue )
+    throws InvalidConnectionException {
+    final String value = connection.attributeValue( attribute );
+    if ( StringUtils.isBlank( value ) ) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt( value.trim() );
+    } catch ( NumberFormatException e ) {
+      throw new InvalidConnectionException( "Invalid " + attribute + " in connection " + getId() + ": " + value, e );
+    }
+  }
+
+  @Override
+  public String getType() {
+    return TYPE;
+  }
+
+  /**
+   * Replicas aren't tried here: failing ones are skipped when connecting.
+   */
+  @Override
+  public synchronized ConnectionProvider getInitializedConnectionProvider() throws InvalidConnectionException {
+    if ( router == null ) {
+      final List<ReplicaRouter.Replica> replicas = new ArrayList<ReplicaRouter.Replica>( replicaInfos.size() );
+      for ( ReplicaInfo info : replicaInfos ) {
+        replicas.add( new ReplicaRouter.Replica( info.getId(), createConnectionProvider( info ) ) );
+      }
+      router = new ReplicaRouter( getCdaSettings() != null ? getCdaSettings().getId() + ":" + getId() : getId(),
+        replicas, policy, sticky, maxFailures, ejectTime * 1000L );
+    }
+    return new ReplicatedConnectionProvider( router );
+  }
+
+  private ConnectionProvider createConnectionProvider( ReplicaInfo info ) {
+    if ( info.getJndi() != null ) {
+      return CdaEngine.getEnvironment().getDataAccessUtils().getJndiConnectionProvider( info.getJndi() );
+    }
+    final JdbcConnectionInfo jdbc = info.getJdbc();
+    final DriverConnectionProvider connectionProvider = new DriverConnectionProvider();
+    connectionProvider.setDriver( jdbc.getDriver() );
+    connectionProvider.setUrl( jdbc.getUrl() );
+    final Properties properties = jdbc.getProperties();
+    final Enumeration<Object> keys = properties.keys();
+    while ( keys.hasMoreElements() ) {
+      final String key = (String) keys.nextElement();
+      connectionProvider.setProperty( key, properties.getProperty( key ) );
+    }
+    return StatementCaches.get( jdbc.getUrl(), connectionProvider, getStatementCacheSize() );
+  }
+
+  /**
+   * @return prepared statements cached per connection to a <code>sql.jdbc</code> like replica, 0 if connections
+   * aren't kept open
+   * @see StatementCaches
+   */
+  public int getStatementCacheSize() {
+    return statementCacheSize != null ? statementCacheSize : StatementCaches.getDefaultSize();
+  }
+
+  public void setStatementCacheSize( final Integer statementCacheSize ) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  public List<ReplicaInfo> getReplicas() {
+    return replicaInfos;
+  }
+
+  public ReplicaRouter.Policy getPolicy() {
+    return policy;
+  }
+
+  public boolean isSticky() {
+    return sticky;
+  }
+
+  public int getMaxFailures() {
+    return maxFailures;
+  }
+
+  /**
+   * @return how long, in seconds, a failing replica is ejected for
+   */
+  public int getEjectTime() {
+    return ejectTime;
+  }
+
+  /**
+   * Replicas share user fields, those of the first one are used.
+   */
+  public String getUserField() {
+    final ReplicaInfo first = replicaInfos.get( 0 );
+    return first.getJdbc() != null ? first.getJdbc().getUserField() : first.getJndi().getUserField();
+  }
+
+  public String getPasswordField() {
+    final ReplicaInfo first = replicaInfos.get( 0 );
+    return first.getJdbc() != null ? first.getJdbc().getPasswordField() : first.getJndi().getPasswordField();
+  }
+
+  public boolean equals( final Object o ) {
+    if ( this == o ) {
+      return true;
+    }
+    if ( o == null || getClass() != o.getClass() ) {
+      return false;
+    }
+    final ReplicatedConnection that = (ReplicatedConnection) o;
+    return replicaInfos != null ? replicaInfos.equals( that.replicaInfos ) : that.replicaInfos == null;
+  }
+
+  public int hashCode() {
+    return replicaInfos != null ? replicaInfos.hashCode() : 0;
+  }
+
+  @Override
+  public ArrayList<PropertyDescriptor> getProperties() {
+    ArrayList<PropertyDescriptor> properties = super.getProperties();
+    properties.add(
+      new PropertyDescriptor( "policy", PropertyDescriptor.Type.STRING, PropertyDescriptor.Placement.ATTRIB ) );
+    properties.add(
+      new PropertyDescriptor( "sticky", PropertyDescriptor.Type.BOOLEAN, PropertyDescriptor.Placement.ATTRIB ) );
+    properties.add(
+      new PropertyDescriptor( "replicas", PropertyDescriptor.Type.ARRAY, PropertyDescriptor.Placement.CHILD ) );
+    return properties;
+  }
+}
@@ -0,0 +1,125 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+/**
+ * Opens connections to one of several replicas, as chosen by a {@link ReplicaRouter}, failing over to the next one
+ * when a replica can't be reached.
+ */
+public class ReplicatedConnectionProvider implements ConnectionProvider {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ReplicaRouter router;
+  private final Object routingKey;
+
+  public ReplicatedConnectionProvider( ReplicaRouter router ) {
+    this( router, null );
+  }
+
+  /**
+   * @param router     chooses the replica
+   * @param routingKey identifies the query, so that sticky routing sends it to the same replica
+   */
+  public ReplicatedConnectionProvider( ReplicaRouter router, Object routingKey ) {
+    this.router = router;
+    this.routingKey = routingKey;
+  }
+
+  /**
+   * @return a provider routing by the given key
+   */
+  public ReplicatedConnectionProvider withRoutingKey( Object routingKey ) {
+    return new ReplicatedConnectionProvider( router, routingKey );
+  }
+
+  @Override
+  public Connection createConnection( String user, String password ) throws SQLException {
+    SQLException error = null;
+    for ( ReplicaRouter.Replica replica : router.route( routingKey ) ) {
+      final Connection connection;
+      try {
+        connection = replica.getConnectionProvider().createConnection( user, password );
+      } catch ( SQLException e ) {
+        router.onFailed( replica, e );
+        if ( error == null ) {
+          error = e;
+        } else {
+          error.setNextException( e );
+        }
+        continue;
+      }
+      router.onConnected( replica );
+      return (Connection) Proxy.newProxyInstance( ReplicatedConnectionProvider.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new ReplicaConnectionHandler( connection, replica ) );
+    }
+    throw new SQLException( "Unable to connect to any replica", error );
+  }
+
+  /**
+   * @return hashes of all replicas; results don't depend on which one answers
+   */
+  @Override
+  public Object getConnectionHash() {
+    final List<Object> hashes = new ArrayList<Object>();
+    for ( ReplicaRouter.Replica replica : router.getReplicas() ) {
+      hashes.add( replica.getConnectionProvider().getConnectionHash() );
+    }
+    return hashes;
+  }
+
+  public ReplicaRouter getRouter() {
+    return router;
+  }
+
+  private class ReplicaConnectionHandler implements InvocationHandler {
+
+    private final Connection connection;
+    private final ReplicaRouter.Replica replica;
+    private boolean closed;
+
+    ReplicaConnectionHandler( Connection connection, ReplicaRouter.Replica replica ) {
+      this.connection = connection;
+      this.replica = replica;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      if ( "close".equals( method.getName() ) ) {
+        synchronized ( this ) {
+          if ( !closed ) {
+            closed = true;
+            router.onClosed( replica );
+          }
+        }
+      }
+      try {
+        return method.invoke( connection, args );
+      } catch ( InvocationTargetException e ) {
+        throw e.getCause();
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+import pt.webdetails.cda.CdaPropertiesHelper;
+
+/**
+ * Keeps one {@link StatementCachingConnectionProvider} per database, as told by the connection hash of its provider,
+ * and statement cache size, with settings from the <code>pt.webdetails.cda.connections.statementCache.*</code>
+ * properties. Connections asking for different sizes don't share their connections. Idle connections are closed
+ * once unused for too long, checked in the background, and all of them by {@link #clear()}.<br>
+ * Only for connections CDA opens itself: pooled ones hand out a different connection on each use and close its
+ * statements when given back, caching statements is up to the pool.
+ */
+public class StatementCaches {
+
+  private static final Log logger = LogFactory.getLog( StatementCaches.class );
+  private static final String PREFIX = "pt.webdetails.cda.connections.statementCache.";
+  private static final String SIZE_PROPERTY = PREFIX + "size";
+  private static final String MAX_IDLE_PROPERTY = PREFIX + "maxIdleConnections";
+  private static final String IDLE_TIMEOUT_PROPERTY = PREFIX + "idleTimeout";
+
+  private static final Map<Object, StatementCachingConnectionProvider> providers =
+    new ConcurrentHashMap<Object, StatementCachingConnectionProvider>();
+
+  private static volatile Settings settings;
+
+  private static ScheduledExecutorService evictor;
+
+  private static class Settings {
+    final int size = CdaPropertiesHelper.getIntProperty( SIZE_PROPERTY, 0 );
+    final int maxIdle = CdaPropertiesHelper.getIntProperty( MAX_IDLE_PROPERTY, 4 );
+    final long idleTimeoutMs = CdaPropertiesHelper.getIntProperty( IDLE_TIMEOUT_PROPERTY, 300 ) * 1000L;
+  }
+
+  private StatementCaches() {
+  }
+
+  /**
+   * @return prepared statements cached per connection when not set by the connection, 0 if disabled
+   */
+  public static int getDefaultSize() {
+    return getSettings().size;
+  }
+
+  /**
+   * @param name               shown in statistics
+   * @param connectionProvider opens a new connection on each call
+   * @param statementCacheSize prepared statements cached per connection
+   * @return the caching provider shared by all connections to the same database with the same cache size, or the
+   * given provider if <code>statementCacheSize</code> isn't positive
+   */
+  public static ConnectionProvider get( final String name, final ConnectionProvider connectionProvider,
+                                        final int statementCacheSize ) {
+    if ( statementCacheSize <= 0 ) {
+      return connectionProvider;
+    }
+    final Object hash = connectionProvider.getConnectionHash();
+    if ( hash == null ) {
+      return connectionProvider;
+    }
+    final List<Object> key = Arrays.asList( hash, statementCacheSize );
+    final StatementCachingConnectionProvider provider = providers.get( key );
+    if ( provider != null ) {
+      return provider;
+    }
+    final Settings current = getSettings();
+    startEviction( current.idleTimeoutMs );
+    return providers.computeIfAbsent( key, k ->
+      new StatementCachingConnectionProvider( name, connectionProvider, statementCacheSize, current.maxIdle,
+        current.idleTimeoutMs ) );
+  }
+
+  /**
+   * @return statement caches of all connections used so far
+   */
+  public static Collection<StatementCachingConnectionProvider> getAll() {
+    return Collections.unmodifiableCollection( providers.values() );
+  }
+
+  /**
+   * Closes all idle connections, with their statements, stops checking for expired ones and re-reads the settings.
+   * Connections in use are closed when released.
+   */
+  public static void clear() {
+    final ScheduledExecutorService stopped;
+    synchronized ( StatementCaches.class ) {
+      stopped = evictor;
+      evictor = null;
+    }
+    if ( stopped != null ) {
+      stopped.shutdownNow();
+    }
+    settings = null;
+    for ( StatementCachingConnectionProvider provider : providers.values() ) {
+      provider.close();
+    }
+    providers.clear();
+  }
+
+  /**
+   * Starts closing connections idle for longer than <code>idleTimeoutMs</code>, if not running yet.
+   */
+  private static synchronized void startEviction( final long idleTimeoutMs ) {
+    if ( evictor != null ) {
+      return;
+    }
+    evictor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+      Thread thread = new Thread( runnable, "cda-statement-cache-eviction" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    final long period = Math.max( 1000L, idleTimeoutMs / 2 );
+    evictor.scheduleWithFixedDelay( StatementCaches::closeExpired, period, period, TimeUnit.MILLISECONDS );
+  }
+
+  static synchronized boolean isEvicting() {
+    return evictor != null;
+  }
+
+  private static void closeExpired() {
+    for ( StatementCachingConnectionProvider provider : providers.values() ) {
+      try {
+        provider.closeExpired();
+      } catch ( RuntimeException e ) {
+        // keep checking the others, and on the next run
+        logger.warn( "Error closing idle connections of " + provider.getName(), e );
+      }
+    }
+  }
+
+  private static Settings getSettings() {
+    Settings current = settings;
+    if ( current == null ) {
+      current = new Settings();
+      settings = current;
+    }
+    return current;
+  }
+}
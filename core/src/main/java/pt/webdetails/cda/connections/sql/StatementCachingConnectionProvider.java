@@ -0,0 +1,536 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+/**
+ * Keeps connections open once closed, each with a cache of its prepared statements keyed on their SQL text, so that
+ * running the same query again neither reconnects nor has the database parse it again.<br>
+ * Up to <code>maxIdle</code> connections are kept, for at most <code>idleTimeoutMs</code>. Cached statements are
+ * handed out one query at a time and go back to the cache, with their parameters cleared, when closed.
+ */
+public class StatementCachingConnectionProvider implements ConnectionProvider {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log logger = LogFactory.getLog( StatementCachingConnectionProvider.class );
+
+  /**
+   * Connections idle for longer are checked before being reused.
+   */
+  private static final long VALIDATION_INTERVAL_MS = 30000L;
+  private static final int VALIDATION_TIMEOUT = 5;
+
+  private final String name;
+  private final ConnectionProvider connectionProvider;
+  private final int statementCacheSize;
+  private final int maxIdle;
+  private final long idleTimeoutMs;
+
+  private final transient Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+  private boolean closed;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong connectionsOpened = new AtomicLong();
+
+  /**
+   * @param name               shown in statistics
+   * @param connectionProvider provider of the actual connections
+   * @param statementCacheSize prepared statements cached per connection
+   * @param maxIdle            connections kept open while unused
+   * @param idleTimeoutMs      how long an unused connection is kept open
+   */
+  public StatementCachingConnectionProvider( String name, ConnectionProvider connectionProvider,
+                                             int statementCacheSize, int maxIdle, long idleTimeoutMs ) {
+    this.name = name;
+    this.connectionProvider = connectionProvider;
+    this.statementCacheSize = statementCacheSize;
+    this.maxIdle = maxIdle;
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  @Override
+  public Connection createConnection( String user, String password ) throws SQLException {
+    return createConnection( user, password, System.currentTimeMillis() );
+  }
+
+  Connection createConnection( String user, String password, long now ) throws SQLException {
+    final String credentials = user + '\n' + password;
+    PooledConnection pooled;
+    while ( ( pooled = takeIdle( credentials, now ) ) != null && !isValid( pooled, now ) ) {
+      closeQuietly( pooled );
+    }
+    if ( pooled == null ) {
+      pooled = new PooledConnection( connectionProvider.createConnection( user, password ), credentials );
+      connectionsOpened.incrementAndGet();
+    }
+    return (Connection) Proxy.newProxyInstance( StatementCachingConnectionProvider.class.getClassLoader(),
+      new Class<?>[] { Connection.class }, new ConnectionHandler( pooled ) );
+  }
+
+  @Override
+  public Object getConnectionHash() {
+    return connectionProvider.getConnectionHash();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  /**
+   * @return times a cached statement was reused
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return times a statement had to be prepared
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return share of prepared statements taken from the cache, between 0 and 1
+   */
+  public double getHitRatio() {
+    final long hitCount = hits.get();
+    final long total = hitCount + misses.get();
+    return total > 0 ? (double) hitCount / total : 0;
+  }
+
+  /**
+   * @return cached statements closed to make room for others
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getConnectionsOpened() {
+    return connectionsOpened.get();
+  }
+
+  public synchronized int getIdleConnections() {
+    return idle.size();
+  }
+
+  /**
+   * Closes idle connections unused for longer than the idle timeout.
+   */
+  public void closeExpired() {
+    closeExpired( System.currentTimeMillis() );
+  }
+
+  void closeExpired( long now ) {
+    final List<PooledConnection> expired = new ArrayList<PooledConnection>();
+    synchronized ( this ) {
+      for ( Iterator<PooledConnection> it = idle.iterator(); it.hasNext(); ) {
+        final PooledConnection pooled = it.next();
+        if ( pooled.idleSince + idleTimeoutMs <= now ) {
+          it.remove();
+          expired.add( pooled );
+        }
+      }
+    }
+    for ( PooledConnection pooled : expired ) {
+      closeQuietly( pooled );
+    }
+  }
+
+  /**
+   * Closes all idle connections; connections in use are closed when released.
+   */
+  public void close() {
+    final List<PooledConnection> toClose;
+    synchronized ( this ) {
+      closed = true;
+      toClose = new ArrayList<PooledConnection>( idle );
+      idle.clear();
+    }
+    for ( PooledConnection pooled : toClose ) {
+      closeQuietly( pooled );
+    }
+  }
+
+  private PooledConnection takeIdle( final String credentials, final long now ) {
+    closeExpired( now );
+    synchronized ( this ) {
+      // most recently used first, its statements are the likeliest to be needed again
+      for ( Iterator<PooledConnection> it = idle.iterator(); it.hasNext(); ) {
+        final PooledConnection pooled = it.next();
+        if ( pooled.credentials.equals( credentials ) ) {
+          it.remove();
+          return pooled;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isValid( final PooledConnection pooled, final long now ) {
+    try {
+      if ( pooled.connection.isClosed() ) {
+        return false;
+      }
+      return pooled.idleSince + VALIDATION_INTERVAL_MS > now || pooled.connection.isValid( VALIDATION_TIMEOUT );
+    } catch ( SQLException e ) {
+      logger.debug( "Discarding connection that failed validation", e );
+      return false;
+    } catch ( AbstractMethodError e ) {
+      // pre JDBC 4 driver
+      return true;
+    }
+  }
+
+  private void release( final PooledConnection pooled, final long now ) {
+    pooled.closeStatements();
+    if ( !pooled.broken ) {
+      try {
+        if ( !pooled.connection.getAutoCommit() ) {
+          pooled.connection.rollback();
+          pooled.connection.setAutoCommit( true );
+        }
+        pooled.connection.clearWarnings();
+      } catch ( SQLException e ) {
+        logger.debug( "Unable to reset connection, closing it", e );
+        pooled.broken = true;
+      }
+    }
+    synchronized ( this ) {
+      if ( !pooled.broken && !closed && idle.size() < maxIdle ) {
+        pooled.idleSince = now;
+        idle.addFirst( pooled );
+        return;
+      }
+    }
+    closeQuietly( pooled );
+  }
+
+  private static void closeQuietly( final PooledConnection pooled ) {
+    try {
+      // closes its statements as well
+      pooled.connection.close();
+    } catch ( SQLException e ) {
+      logger.debug( "Error closing connection", e );
+    }
+  }
+
+  private static Object invoke( final Object target, final Method method, final Object[] args,
+                                final PooledConnection pooled ) throws Throwable {
+    try {
+      return method.invoke( target, args );
+    } catch ( InvocationTargetException e ) {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof SQLException && isConnectionError( (SQLException) cause ) ) {
+        pooled.broken = true;
+      }
+      throw cause;
+    }
+  }
+
+  /**
+   * SQL state class 08 is for connection exceptions.
+   */
+  private static boolean isConnectionError( final SQLException e ) {
+    final String state = e.getSQLState();
+    return state != null && state.startsWith( "08" );
+  }
+
+  /**
+   * @return the cache key of a <code>prepareStatement</code> call, <code>null</code> if it is not cached
+   */
+  private static String getStatementKey( final Method method, final Object[] args ) {
+    final Class<?>[] types = method.getParameterTypes();
+    if ( !"prepareStatement".equals( method.getName() ) || types.length == 2 || types.length > 4 ) {
+      // auto generated keys variants are left alone
+      return null;
+    }
+    final StringBuilder key = new StringBuilder( (String) args[ 0 ] );
+    for ( int i = 1; i < types.length; i++ ) {
+      key.append( '\0' ).append( args[ i ] );
+    }
+    return key.toString();
+  }
+
+  /**
+   * A physical connection and its statements.
+   */
+  private final class PooledConnection {
+
+    private final Connection connection;
+    private final String credentials;
+    private final Map<String, CachedStatement> statements =
+      new LinkedHashMap<String, CachedStatement>( 16, 0.75f, true );
+    private final List<StatementHandler> openStatements = new ArrayList<StatementHandler>();
+    private long idleSince;
+    private boolean broken;
+
+    PooledConnection( Connection connection, String credentials ) {
+      this.connection = connection;
+      this.credentials = credentials;
+    }
+
+    PreparedStatement prepare( final Connection owner, final String key, final Method method, final Object[] args )
+      throws Throwable {
+      CachedStatement cached = statements.get( key );
+      if ( cached != null && !cached.inUse ) {
+        hits.incrementAndGet();
+      } else {
+        misses.incrementAndGet();
+        final PreparedStatement statement = (PreparedStatement) invoke( connection, method, args, this );
+        if ( cached != null || !makeRoom() ) {
+          // same statement running twice at once, or all cached ones in use
+          return (PreparedStatement) open( owner, statement, PreparedStatement.class, null );
+        }
+        try {
+          cached = new CachedStatement( statement );
+        } catch ( SQLException e ) {
+          logger.debug( "Unable to read statement settings, not caching it", e );
+          return (PreparedStatement) open( owner, statement, PreparedStatement.class, null );
+        }
+        statements.put( key, cached );
+      }
+      cached.inUse = true;
+      return (PreparedStatement) open( owner, cached.statement, PreparedStatement.class, cached );
+    }
+
+    Statement open( final Connection owner, final Statement statement, final Class<?> type,
+                    final CachedStatement cached ) {
+      final StatementHandler handler = new StatementHandler( owner, this, statement, cached );
+      openStatements.add( handler );
+      return (Statement) Proxy.newProxyInstance( StatementCachingConnectionProvider.class.getClassLoader(),
+        new Class<?>[] { type }, handler );
+    }
+
+    private boolean makeRoom() {
+      if ( statements.size() < statementCacheSize ) {
+        return true;
+      }
+      for ( Iterator<CachedStatement> it = statements.values().iterator(); it.hasNext(); ) {
+        final CachedStatement eldest = it.next();
+        if ( !eldest.inUse ) {
+          it.remove();
+          evictions.incrementAndGet();
+          try {
+            eldest.statement.close();
+          } catch ( SQLException e ) {
+            logger.debug( "Error closing evicted statement", e );
+          }
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void closeStatements() {
+      // statements the caller didn't close
+      for ( StatementHandler handler : new ArrayList<StatementHandler>( openStatements ) ) {
+        handler.close();
+      }
+      openStatements.clear();
+    }
+
+    void evict( final CachedStatement cached ) {
+      statements.values().remove( cached );
+      try {
+        cached.statement.close();
+      } catch ( SQLException e ) {
+        logger.debug( "Error closing statement", e );
+      }
+    }
+  }
+
+  /**
+   * A cached prepared statement, and the settings it had when prepared.
+   */
+  private static final class CachedStatement {
+
+    private final PreparedStatement statement;
+    private final int maxRows;
+    private final int queryTimeout;
+    private final int fetchSize;
+    private final int fetchDirection;
+    private boolean inUse;
+
+    CachedStatement( PreparedStatement statement ) throws SQLException {
+      this.statement = statement;
+      this.maxRows = statement.getMaxRows();
+      this.queryTimeout = statement.getQueryTimeout();
+      this.fetchSize = statement.getFetchSize();
+      this.fetchDirection = statement.getFetchDirection();
+    }
+
+    void reset() throws SQLException {
+      statement.clearParameters();
+      statement.clearWarnings();
+      if ( statement.getMaxRows() != maxRows ) {
+        statement.setMaxRows( maxRows );
+      }
+      if ( statement.getQueryTimeout() != queryTimeout ) {
+        statement.setQueryTimeout( queryTimeout );
+      }
+      if ( statement.getFetchSize() != fetchSize ) {
+        statement.setFetchSize( fetchSize );
+      }
+      if ( statement.getFetchDirection() != fetchDirection ) {
+        statement.setFetchDirection( fetchDirection );
+      }
+    }
+  }
+
+  private class ConnectionHandler implements InvocationHandler {
+
+    private final PooledConnection pooled;
+    private boolean released;
+
+    ConnectionHandler( PooledConnection pooled ) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      final String methodName = method.getName();
+      if ( "equals".equals( methodName ) && method.getParameterTypes().length == 1 ) {
+        return proxy == args[ 0 ];
+      } else if ( "hashCode".equals( methodName ) && method.getParameterTypes().length == 0 ) {
+        return System.identityHashCode( proxy );
+      } else if ( "toString".equals( methodName ) && method.getParameterTypes().length == 0 ) {
+        return "Cached " + pooled.connection;
+      } else if ( "close".equals( methodName ) ) {
+        if ( !released ) {
+          released = true;
+          release( pooled, System.currentTimeMillis() );
+        }
+        return null;
+      } else if ( "isClosed".equals( methodName ) ) {
+        return released || pooled.connection.isClosed();
+      } else if ( released ) {
+        throw new SQLException( "Connection is closed" );
+      }
+
+      final String key = statementCacheSize > 0 ? getStatementKey( method, args ) : null;
+      if ( key != null ) {
+        return pooled.prepare( (Connection) proxy, key, method, args );
+      }
+      final Object result = StatementCachingConnectionProvider.invoke( pooled.connection, method, args, pooled );
+      if ( result instanceof Statement ) {
+        // tracked so that it is closed along with the connection
+        final Class<?> type = result instanceof CallableStatement ? CallableStatement.class
+          : result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return pooled.open( (Connection) proxy, (Statement) result, type, null );
+      }
+      return result;
+    }
+  }
+
+  private class StatementHandler implements InvocationHandler {
+
+    private final Connection owner;
+    private final PooledConnection pooled;
+    private final Statement statement;
+    private final CachedStatement cached;
+    private ResultSet resultSet;
+    private boolean closed;
+
+    StatementHandler( Connection owner, PooledConnection pooled, Statement statement, CachedStatement cached ) {
+      this.owner = owner;
+      this.pooled = pooled;
+      this.statement = statement;
+      this.cached = cached;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      final String methodName = method.getName();
+      if ( "equals".equals( methodName ) && method.getParameterTypes().length == 1 ) {
+        return proxy == args[ 0 ];
+      } else if ( "hashCode".equals( methodName ) && method.getParameterTypes().length == 0 ) {
+        return System.identityHashCode( proxy );
+      } else if ( "toString".equals( methodName ) && method.getParameterTypes().length == 0 ) {
+        return statement.toString();
+      } else if ( "close".equals( methodName ) ) {
+        close();
+        pooled.openStatements.remove( this );
+        return null;
+      } else if ( "isClosed".equals( methodName ) ) {
+        return closed;
+      } else if ( closed ) {
+        throw new SQLException( "Statement is closed" );
+      } else if ( "getConnection".equals( methodName ) ) {
+        // not the physical one, which must not be closed
+        return owner;
+      }
+
+      final Object result = StatementCachingConnectionProvider.invoke( statement, method, args, pooled );
+      if ( result instanceof ResultSet ) {
+        resultSet = (ResultSet) result;
+      }
+      return result;
+    }
+
+    void close() {
+      if ( closed ) {
+        return;
+      }
+      closed = true;
+      if ( cached == null ) {
+        try {
+          statement.close();
+        } catch ( SQLException e ) {
+          logger.debug( "Error closing statement", e );
+        }
+        return;
+      }
+      try {
+        if ( resultSet != null ) {
+          resultSet.close();
+        }
+        cached.reset();
+        cached.inUse = false;
+      } catch ( SQLException e ) {
+        logger.debug( "Unable to reset statement, evicting it", e );
+        pooled.evict( cached );
+      }
+    }
+  }
+}
@@ -18,23 +18,30 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
 import org.pentaho.reporting.libraries.base.config.Configuration;
+import org.pentaho.reporting.libraries.formula.FormulaContext;
 import pt.webdetails.cda.CdaEngine;
+import pt.webdetails.cda.CdaPropertiesHelper;
 import pt.webdetails.cda.cache.CacheKey;
 import pt.webdetails.cda.cache.CacheKey.KeyValuePair;
+import pt.webdetails.cda.cache.CacheKeyTemplate;
 import pt.webdetails.cda.cache.DataAccessCacheElementParser;
+import pt.webdetails.cda.cache.DateRangeBuckets;
 import pt.webdetails.cda.cache.IQueryCache;
 import pt.webdetails.cda.connections.Connection;
 import pt.webdetails.cda.connections.ConnectionCatalog;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
+import pt.webdetails.cda.query.EvaluationContext;
+import pt.webdetails.cda.query.QueryDeadline;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.CdaSettings;
 import pt.webdetails.cda.settings.UnknownDataAccessException;
-import pt.webdetails.cda.utils.FormulaEvaluator;
+import pt.webdetails.cda.utils.ConcatenatedTableModel;
 import pt.webdetails.cda.utils.InvalidOutputIndexException;
 import pt.webdetails.cda.utils.TableModelUtils;
 import pt.webdetails.cda.utils.Util;
 import pt.webdetails.cda.utils.kettle.SortException;
 
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableModel;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -44,6 +51,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 
 /**
  * This is the top level implementation of a DataAccess. Only the common methods are used here
@@ -59,18 +67,47 @@ public abstract class AbstractDataAccess implements DataAccess {
   private DataAccessEnums.ACCESS_TYPE access = DataAccessEnums.ACCESS_TYPE.PUBLIC;
   private boolean cacheEnabled = false;
   private int cacheDuration = 3600;
+  private DateRangeBuckets cacheBuckets;
   private ArrayList<Parameter> parameters;
   private HashMap<Integer, OutputMode> outputMode;
   private HashMap<Integer, ArrayList<Integer>> outputs;
   private ArrayList<ColumnDefinition> columnDefinitions;
   protected HashMap<Integer, ColumnDefinition> columnDefinitionIndexMap;
   private DataAccessCacheElementParser cdaCacheParser;
+  private CacheKeyTemplate cacheKeyTemplate; // DataAccess/Cache/Key nodes
+  private Integer timeout;
 
   private static final String PARAM_ITERATOR_BEGIN = "$FOREACH(";
   private static final String PARAM_ITERATOR_END = ")";
   private static final String PARAM_ITERATOR_ARG_SEPARATOR = ",";
+  /**
+   * Request setting joining the results of all $FOREACH iterations, with the iterated values as extra columns,
+   * instead of returning only the last one.
+   */
+  public static final String FOREACH_UNION_SETTING = "foreachUnion";
+  /**
+   * Request setting with the maximum time, in seconds, the whole request may take.
+   */
+  public static final String TIMEOUT_SETTING = "timeout";
+  private static final String TIMEOUT_PROPERTY = "pt.webdetails.cda.query.timeout";
+  private static final int defaultTimeout = CdaPropertiesHelper.getIntProperty( TIMEOUT_PROPERTY, 0 );
   private static final String EXTRA_CACHE_KEYS_PROPERTY = "pt.webdetails.cda.cache.extraCacheKeys";
 
+  /**
+   * system wide keys, parsed once per configuration
+   */
+  private static volatile SystemCacheKeys systemCacheKeys;
+
+  private static class SystemCacheKeys {
+    private final Configuration config;
+    private final CacheKeyTemplate template;
+
+    SystemCacheKeys( Configuration config, CacheKeyTemplate template ) {
+      this.config = config;
+      this.template = template;
+    }
+  }
+
   protected AbstractDataAccess() {
   }
 
@@ -139,6 +176,11 @@ public abstract class AbstractDataAccess implements DataAccess {
       cacheDuration = Integer.parseInt( element.attributeValue( "cacheDuration" ) );
     }
 
+    final String timeoutValue = element.attributeValue( "timeout" );
+    if ( !StringUtils.isBlank( timeoutValue ) ) {
+      timeout = Integer.valueOf( timeoutValue.trim() );
+    }
+
 
     // Parse parameters
     final List<Element> parameterNodes = Util.selectElements( element, "Parameters/Parameter" );
@@ -200,6 +242,12 @@ public abstract class AbstractDataAccess implements DataAccess {
           setCacheDuration(
             cdaCacheParser.getCacheDuration() ); // overrides the cacheDuration declared at DataAccess node
         }
+        setCacheBuckets( cdaCacheParser.getBuckets() );
+      }
+      try {
+        cacheKeyTemplate = cdaCacheParser.parseKeyTemplate();
+      } catch ( Exception e ) {
+        logger.error( "Unable to parse cache keys", e );
       }
     }
   }
@@ -237,13 +285,88 @@ public abstract class AbstractDataAccess implements DataAccess {
 
 
   public TableModel doQuery( final QueryOptions queryOptions ) throws QueryException {
+    final EvaluationContext context = queryOptions.getEvaluationContext();
+    if ( context == null ) {
+      // top of the request, evaluations are shared from here down
+      queryOptions.setEvaluationContext( new EvaluationContext() );
+      final QueryDeadline deadline = queryOptions.getDeadline();
+      if ( deadline == null ) {
+        queryOptions.setDeadline( QueryDeadline.limit( null, getRequestTimeout( queryOptions ) * 1000L ) );
+      }
+      try {
+        return doQuery( queryOptions );
+      } finally {
+        queryOptions.setEvaluationContext( null );
+        queryOptions.setDeadline( deadline );
+      }
+    }
+    final String settingsId = getCdaSettings() != null ? getCdaSettings().getId() : null;
+    final List<Object> key = EvaluationContext.getKey( settingsId, getId(), queryOptions );
+    final List<List<Object>> chain = queryOptions.getEvaluationChain();
+    return context.evaluate( key, chain, () -> evaluate( queryOptions, EvaluationContext.extendChain( chain, key ) ) );
+  }
+
+  /**
+   * Runs the query, see {@link #doQuery(QueryOptions)}.
+   *
+   * @param chain evaluation chain of the queries made by this one
+   */
+  private TableModel evaluate( final QueryOptions queryOptions, final List<List<Object>> chain )
+    throws QueryException {
+    final QueryDeadline requestDeadline = queryOptions.getDeadline();
+    final List<List<Object>> requestChain = queryOptions.getEvaluationChain();
+    final QueryDeadline deadline = getDeadline( queryOptions );
+    if ( deadline != null ) {
+      deadline.check( getId() );
+    }
+    queryOptions.setDeadline( deadline );
+    queryOptions.setEvaluationChain( chain );
+    try {
+      Map<String, Iterable<String>> iterableParameters = getIterableParametersValues( queryOptions );
+
+      if ( !iterableParameters.isEmpty() ) {
+        return doQueryOnIterableParameters( queryOptions, iterableParameters );
+      }
+
+      return doSingleQuery( queryOptions );
+    } finally {
+      queryOptions.setDeadline( requestDeadline );
+      queryOptions.setEvaluationChain( requestChain );
+    }
+  }
 
-    Map<String, Iterable<String>> iterableParameters = getIterableParametersValues( queryOptions );
+  /**
+   * The request's deadline, or one from its timeout when outside a request, limited by this data access' timeout.
+   *
+   * @return deadline for running this data access, <code>null</code> for none
+   */
+  protected QueryDeadline getDeadline( final QueryOptions queryOptions ) {
+    final QueryDeadline requestDeadline = queryOptions.getDeadline() != null
+      ? queryOptions.getDeadline() : QueryDeadline.limit( null, getRequestTimeout( queryOptions ) * 1000L );
+    return timeout != null ? QueryDeadline.limit( requestDeadline, timeout * 1000L ) : requestDeadline;
+  }
 
-    if ( !iterableParameters.isEmpty() ) {
-      return doQueryOnIterableParameters( queryOptions, iterableParameters );
+  /**
+   * Maximum time for the whole request: the {@link #TIMEOUT_SETTING} request setting, or the global default.
+   *
+   * @return timeout in seconds, 0 for none
+   */
+  private int getRequestTimeout( final QueryOptions queryOptions ) {
+    final String requested = queryOptions.getSetting( TIMEOUT_SETTING );
+    if ( !StringUtils.isBlank( requested ) ) {
+      try {
+        return Math.max( Integer.parseInt( requested.trim() ), 0 );
+      } catch ( NumberFormatException e ) {
+        logger.warn( "Ignoring invalid " + TIMEOUT_SETTING + " for " + getId() + ": " + requested );
+      }
     }
+    return Math.max( defaultTimeout, 0 );
+  }
 
+  /**
+   * Queries the data source and post processes the results, for parameters without $FOREACH iterations.
+   */
+  protected TableModel doSingleQuery( final QueryOptions queryOptions ) throws QueryException {
     /*
      *  Do the tableModel PostProcessing
      *  1. Sort
@@ -255,10 +378,18 @@ public abstract class AbstractDataAccess implements DataAccess {
 
     final TableModel tableModel = queryDataSource( queryOptions );
 
+    final TableModel outputTableModel = postProcessTableModel( queryOptions, tableModel );
+    logger.debug( "Query " + getId() + " done successfully - returning tableModel" );
+    return outputTableModel;
+  }
+
+  /**
+   * Applies calculated columns, outputs, filtering, sorting and pagination to query results.
+   */
+  protected TableModel postProcessTableModel( final QueryOptions queryOptions, final TableModel tableModel )
+    throws QueryException {
     try {
-      final TableModel outputTableModel = TableModelUtils.postProcessTableModel( this, queryOptions, tableModel );
-      logger.debug( "Query " + getId() + " done successfully - returning tableModel" );
-      return outputTableModel;
+      return TableModelUtils.postProcessTableModel( this, queryOptions, tableModel );
     } catch ( InvalidOutputIndexException e ) {
       throw new QueryException( "Error while setting output index id ", e );
     } catch ( SortException e ) {
@@ -356,6 +487,31 @@ public abstract class AbstractDataAccess implements DataAccess {
   }
 
 
+  /**
+   * @return how date range queries are split for caching, <code>null</code> if they aren't
+   */
+  public DateRangeBuckets getCacheBuckets() {
+    return cacheBuckets;
+  }
+
+  public void setCacheBuckets( DateRangeBuckets cacheBuckets ) {
+    this.cacheBuckets = cacheBuckets;
+  }
+
+
+  /**
+   * @return maximum time, in seconds, a query to this data access may take, <code>null</code> if only the request
+   * timeout applies
+   */
+  public Integer getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout( Integer timeout ) {
+    this.timeout = timeout;
+  }
+
+
   public CdaSettings getCdaSettings() {
     return cdaSettings;
   }
@@ -498,7 +654,8 @@ public abstract class AbstractDataAccess implements DataAccess {
           System.arraycopy( args, 2, dataAccessParams, 0, dataAccessParams.length );
         }
 
-        Iterable<String> paramValues = expandParameterIteration( dataAccessId, columnIdx, dataAccessParams );
+        Iterable<String> paramValues = expandParameterIteration( dataAccessId, columnIdx, dataAccessParams,
+          queryOptions );
 
         if ( paramValues == null ) { //no values, clear so it can fallback to default (if any)
           param.setValue( null );
@@ -516,12 +673,16 @@ public abstract class AbstractDataAccess implements DataAccess {
    * @return Iterable over values, or null if no results
    */
   private Iterable<String> expandParameterIteration( String dataAccessId, int outColumnIdx,
-                                                     String[] dataAccessParameters )
+                                                     String[] dataAccessParameters,
+                                                     QueryOptions iteratedOptions )
     throws QueryException {
     final String EXC_TEXT = "Unable to expand parameter iteration. ";
 
     QueryOptions queryOptions = new QueryOptions();
     queryOptions.setDataAccessId( dataAccessId );
+    queryOptions.setEvaluationContext( iteratedOptions.getEvaluationContext() );
+    queryOptions.setEvaluationChain( iteratedOptions.getEvaluationChain() );
+    queryOptions.setDeadline( iteratedOptions.getDeadline() );
 
     //set query parameters
     if ( dataAccessParameters != null ) {
@@ -562,57 +723,130 @@ public abstract class AbstractDataAccess implements DataAccess {
   }
 
 
-  private TableModel doQueryOnIterableParameters( QueryOptions queryOptions,
-                                                  Map<String, Iterable<String>> iterableParameters )
+  private TableModel doQueryOnIterableParameters( final QueryOptions queryOptions,
+                                                  final Map<String, Iterable<String>> iterableParameters )
     throws QueryException {
-    //all iterators need to have at least one value..
-    List<String> names = new ArrayList<String>();
-    List<Iterator<String>> iterators = new ArrayList<Iterator<String>>();
-    List<Iterable<String>> iterables = new ArrayList<Iterable<String>>();
-    List<String> values = new ArrayList<String>();
-    TableModel result = null;
+    final List<String> names = new ArrayList<String>( iterableParameters.keySet() );
+    final List<List<String>> combinations = getIterationValues( names, iterableParameters );
+    if ( combinations.isEmpty() ) {
+      return null;
+    }
+    final boolean union = Boolean.parseBoolean( queryOptions.getSetting( FOREACH_UNION_SETTING ) );
+
+    final List<Callable<TableModel>> iterations = new ArrayList<Callable<TableModel>>( combinations.size() );
+    for ( int c = 0; c < combinations.size(); c++ ) {
+      final QueryOptions iterationOptions = copyQueryOptions( queryOptions );
+      final List<String> values = combinations.get( c );
+      for ( int i = 0; i < names.size(); i++ ) {
+        iterationOptions.setParameter( names.get( i ), values.get( i ) );
+      }
+      if ( union ) {
+        // sorted and paginated as a whole
+        iterationOptions.setSortBy( new ArrayList<String>() );
+        iterationOptions.setPaginate( false );
+      }
+      // unless joining them, only the last result is kept
+      final boolean keep = union || c == combinations.size() - 1;
+      iterations.add( () -> {
+        final TableModel tableModel = doSingleQuery( iterationOptions );
+        return keep ? tableModel : null;
+      } );
+    }
+    logger.debug( "Running " + iterations.size() + " iterations of " + getId() );
+    final List<TableModel> results = ParallelQueryExecutor.invokeAll( iterations );
 
-    try {
-      //0) init
-      int paramCount = 0;
-      for ( String name : iterableParameters.keySet() ) {
-        names.add( name );
-        iterables.add( iterableParameters.get( name ) );
-        iterators.add( iterables.get( paramCount ).iterator() );
-        values.add( iterators.get( paramCount ).next() );
-        paramCount++;
+    if ( !union ) {
+      return results.get( results.size() - 1 );
+    }
+    final List<TableModel> tables = new ArrayList<TableModel>( results.size() );
+    for ( int c = 0; c < results.size(); c++ ) {
+      // empty results may lack columns
+      if ( results.get( c ).getRowCount() > 0 || ( tables.isEmpty() && c == results.size() - 1 ) ) {
+        tables.add( new IterationTableModel( results.get( c ), names, combinations.get( c ) ) );
       }
-      boolean exhausted = false;
+    }
+    try {
+      return TableModelUtils.sortAndPaginateTableModel( new ConcatenatedTableModel( tables ), queryOptions );
+    } catch ( SortException e ) {
+      throw new QueryException( "Error while sorting output ", e );
+    }
+  }
 
-      while ( !exhausted ) { // til last iteration from bottom of stack
-        //1.1) set parameters
-        for ( int i = 0; i < paramCount; i++ ) {
-          queryOptions.setParameter( names.get( i ), values.get( i ) );
-        }
-        //1.2) execute query
-        TableModel tableModel = doQuery( queryOptions );
-        //1.3) cache only, just keep last result //join results x
-        // if (result == null) { result = tableModel; }
-        // else { result = TableModelUtils.getInstance().appendTableModel(result,tableModel); }
-        result = tableModel;
-        //2) get next set of values
-        for ( int i = 0; i < paramCount; i++ ) { // traverse until we can get a next() or bottom of stack reached
-          if ( iterators.get( i ).hasNext() ) {
-            values.set( i, iterators.get( i ).next() ); //new value
-            break;
-          } else if ( i < paramCount - 1 ) { //this one exhausted, reset if not last
-            iterators.set( i, iterables.get( i ).iterator() ); //reset
-            values.set( i, iterators.get( i ).next() );
-          } else {
-            exhausted = true; //end of the line, no more resets
-          }
+  /**
+   * @return every combination of the parameters' values, the first parameter changing the fastest; empty if any of
+   * them has no values
+   */
+  private static List<List<String>> getIterationValues( final List<String> names,
+                                                        final Map<String, Iterable<String>> iterableParameters ) {
+    List<List<String>> combinations = new ArrayList<List<String>>();
+    combinations.add( new ArrayList<String>() );
+    for ( int i = names.size() - 1; i >= 0; i-- ) {
+      final List<List<String>> expanded = new ArrayList<List<String>>();
+      for ( List<String> combination : combinations ) {
+        for ( String value : iterableParameters.get( names.get( i ) ) ) {
+          final List<String> values = new ArrayList<String>( names.size() );
+          values.add( value );
+          values.addAll( combination );
+          expanded.add( values );
         }
       }
-    } catch ( NoSuchElementException e ) {
-      //will happen if one of the iterators has no value
+      combinations = expanded;
+    }
+    return combinations;
+  }
+
+  private static QueryOptions copyQueryOptions( final QueryOptions queryOptions ) throws QueryException {
+    try {
+      return (QueryOptions) queryOptions.clone();
+    } catch ( CloneNotSupportedException e ) {
+      throw new QueryException( "Couldn't copy query options", e );
+    }
+  }
+
+  /**
+   * An iteration's results with the iterated parameter values as extra columns.
+   */
+  private static class IterationTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TableModel tableModel;
+    private final List<String> names;
+    private final List<String> values;
+
+    IterationTableModel( final TableModel tableModel, final List<String> names, final List<String> values ) {
+      this.tableModel = tableModel;
+      this.names = names;
+      this.values = values;
     }
 
-    return result;
+    @Override
+    public int getRowCount() {
+      return tableModel.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return tableModel.getColumnCount() + names.size();
+    }
+
+    @Override
+    public String getColumnName( final int column ) {
+      final int count = tableModel.getColumnCount();
+      return column < count ? tableModel.getColumnName( column ) : names.get( column - count );
+    }
+
+    @Override
+    public Class<?> getColumnClass( final int column ) {
+      final int count = tableModel.getColumnCount();
+      return column < count ? tableModel.getColumnClass( column ) : String.class;
+    }
+
+    @Override
+    public Object getValueAt( final int row, final int column ) {
+      final int count = tableModel.getColumnCount();
+      return column < count ? tableModel.getValueAt( row, column ) : values.get( column - count );
+    }
   }
 
   /**
@@ -667,37 +901,49 @@ public abstract class AbstractDataAccess implements DataAccess {
   }
 
   public Serializable getCacheKey() {
-    String cacheKeyInfo =
-      "Getting Cache Key for file: " + this.getCdaSettings().getId() + ", DataAccessID: " + this.getId() + "\n";
     CacheKey systemWideCacheKey = getSystemCacheKeys();
-    if ( cdaCacheParser != null ) {
-      if ( cdaCacheParser.parseKeys() ) {
-        CacheKey mergedCacheKey = mergeCacheKeys( cdaCacheParser.getCacheKey(), systemWideCacheKey );
-        if ( mergedCacheKey.getKeyValuePairs().size() > 0 ) {
-          cacheKeyInfo += mergedCacheKey.toString();
-        }
-        logger.info( cacheKeyInfo );
-        return mergedCacheKey;
+    CacheKey cacheKey = systemWideCacheKey;
+    if ( cacheKeyTemplate != null ) {
+      try {
+        cacheKey = mergeCacheKeys( cacheKeyTemplate.evaluate( getFormulaContext() ), systemWideCacheKey );
+      } catch ( InvalidParameterException e ) {
+        logger.error( e.getMessage(), e );
       }
     }
-    if ( systemWideCacheKey.getKeyValuePairs().size() > 0 ) {
-      cacheKeyInfo += systemWideCacheKey.toString();
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Cache Key for file: " + this.getCdaSettings().getId() + ", DataAccessID: " + this.getId()
+        + "\n" + cacheKey );
     }
-    logger.info( cacheKeyInfo );
-    return systemWideCacheKey;
+    return cacheKey;
   }
 
   public CacheKey getSystemCacheKeys() {
+    try {
+      return getSystemCacheKeyTemplate().evaluate( getFormulaContext() );
+    } catch ( InvalidParameterException e ) {
+      logger.error( "Unable to evaluate system wide cache keys, ignoring them: " + e.getMessage(), e );
+      return new CacheKey();
+    }
+  }
+
+  private static CacheKeyTemplate getSystemCacheKeyTemplate() {
     Configuration config = CdaEngine.getEnvironment().getBaseConfig();
-    Iterator<String> extraCacheKeys = config.findPropertyKeys( EXTRA_CACHE_KEYS_PROPERTY );
-    String key;
-    CacheKey cacheKey = new CacheKey();
-    while ( extraCacheKeys.hasNext() ) {
-      key = extraCacheKeys.next();
-      cacheKey.addKeyValuePair( key.replace( EXTRA_CACHE_KEYS_PROPERTY + ".", "" ),
-        FormulaEvaluator.replaceFormula( config.getConfigProperty( key ) ) );
+    SystemCacheKeys current = systemCacheKeys;
+    if ( current == null || current.config != config ) {
+      CacheKeyTemplate template = new CacheKeyTemplate();
+      Iterator<String> extraCacheKeys = config.findPropertyKeys( EXTRA_CACHE_KEYS_PROPERTY );
+      while ( extraCacheKeys.hasNext() ) {
+        String key = extraCacheKeys.next();
+        template.add( key.replace( EXTRA_CACHE_KEYS_PROPERTY + ".", "" ), config.getConfigProperty( key ), null );
+      }
+      current = new SystemCacheKeys( config, template );
+      systemCacheKeys = current;
     }
-    return cacheKey;
+    return current.template;
+  }
+
+  private static FormulaContext getFormulaContext() {
+    return CdaEngine.getEnvironment().getFormulaContext();
   }
 
   /**
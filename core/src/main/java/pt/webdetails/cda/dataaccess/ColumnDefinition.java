@@ -13,6 +13,11 @@
 
 package pt.webdetails.cda.dataaccess;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.dom4j.Element;
 
 import pt.webdetails.cda.xml.DomVisitor;
@@ -23,6 +28,7 @@ public class ColumnDefinition {
     COLUMN, CALCULATED_COLUMN
   }
 
+  private static final Pattern FORMULA_REFERENCE = Pattern.compile( "\\[([^\\]]+)\\]" );
 
   private TYPE type;
   private Integer index;
@@ -80,6 +86,20 @@ public class ColumnDefinition {
     this.formula = formula;
   }
 
+  /**
+   * @return names of the columns referenced in the formula, as in <code>[NAME]</code>
+   */
+  public Set<String> getFormulaReferences() {
+    final Set<String> references = new LinkedHashSet<String>();
+    if ( formula != null ) {
+      final Matcher m = FORMULA_REFERENCE.matcher( formula );
+      while ( m.find() ) {
+        references.add( m.group( 1 ) );
+      }
+    }
+    return references;
+  }
+
   public void accept( DomVisitor xmlVisitor, Element daEle ) {
     xmlVisitor.visit( this, daEle );
   }
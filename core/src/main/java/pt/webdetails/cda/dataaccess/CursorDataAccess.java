@@ -0,0 +1,36 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import pt.webdetails.cda.query.QueryOptions;
+
+/**
+ * A DataAccess that can also give its results through a {@link RowCursor}, so they can be written out while rows
+ * arrive rather than after all of them are in memory.
+ */
+public interface CursorDataAccess extends DataAccess {
+
+  /**
+   * @return if the query as requested needs nothing a cursor can't do, such as caching, sorting or pagination
+   */
+  boolean canOpenCursor( QueryOptions queryOptions ) throws QueryException;
+
+  /**
+   * Runs the query, see {@link #canOpenCursor(QueryOptions)}. The cursor must be closed, in the thread that opened
+   * it.
+   *
+   * @return cursor over the output columns, before the first row
+   */
+  RowCursor openCursor( QueryOptions queryOptions ) throws QueryException;
+}
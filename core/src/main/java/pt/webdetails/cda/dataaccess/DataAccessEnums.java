@@ -87,6 +87,7 @@ public class DataAccessEnums {
 
     SQL_JDBC( "sql.jdbc" ),
     SQL_JNDI( "sql.jndi" ),
+    SQL_REPLICATED( "sql.replicated" ),
 
     MONDRIAN_JDBC( "mondrian.jdbc" ),
     MONDRIAN_JNDI( "mondrian.jndi" ),
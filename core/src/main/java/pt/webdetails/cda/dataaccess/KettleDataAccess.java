@@ -35,7 +35,7 @@ import pt.webdetails.cda.utils.ParameterArrayToStringEncoder;
 import java.io.Serializable;
 import java.util.List;
 
-public class KettleDataAccess extends PREDataAccess {
+public class KettleDataAccess extends PREDataAccess implements CursorDataAccess {
 
   private String path;
 
@@ -16,6 +16,7 @@ package pt.webdetails.cda.dataaccess;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
+import org.pentaho.reporting.engine.classic.core.ParameterDataRow;
 import org.pentaho.reporting.engine.classic.extensions.datasources.mondrian.AbstractNamedMDXDataFactory;
 import pt.webdetails.cda.CdaEngine;
 import pt.webdetails.cda.cache.CacheKey;
@@ -23,6 +24,7 @@ import pt.webdetails.cda.connections.mondrian.AbstractMondrianConnection;
 import pt.webdetails.cda.connections.mondrian.MondrianConnectionInfo;
 import pt.webdetails.cda.utils.mondrian.CompactBandedMDXDataFactory;
 import pt.webdetails.cda.utils.mondrian.ExtBandedMDXDataFactory;
+import pt.webdetails.cda.utils.mondrian.MdxResultTableModel;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -96,6 +98,21 @@ public class MdxDataAccess extends GlobalMdxDataAccess {
   }
 
 
+  /**
+   * Reads the banded result into a {@link MdxResultTableModel}, releasing the cell set before the result is cached.
+   */
+  @Override
+  protected IDataSourceQuery performRawQuery( final ParameterDataRow parameterDataRow, final String query )
+    throws QueryException {
+    final IDataSourceQuery queryExecution = super.performRawQuery( parameterDataRow, query );
+    try {
+      return new PREDataSourceQuery( MdxResultTableModel.of( queryExecution.getTableModel() ), null );
+    } finally {
+      queryExecution.closeDataSource();
+    }
+  }
+
+
   public BANDED_MODE getBandedMode() {
     return bandedMode;
   }
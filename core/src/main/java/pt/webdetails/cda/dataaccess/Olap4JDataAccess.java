@@ -17,12 +17,14 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
 import org.pentaho.reporting.engine.classic.core.DataFactory;
+import org.pentaho.reporting.engine.classic.core.ParameterDataRow;
 import org.pentaho.reporting.engine.classic.extensions.datasources.olap4j.AbstractNamedMDXDataFactory;
 import org.pentaho.reporting.engine.classic.extensions.datasources.olap4j.BandedMDXDataFactory;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
 import pt.webdetails.cda.connections.InvalidConnectionException;
 import pt.webdetails.cda.connections.olap4j.Olap4JConnection;
 import pt.webdetails.cda.settings.UnknownConnectionException;
+import pt.webdetails.cda.utils.mondrian.MdxResultTableModel;
 
 /**
  * Implementation of a DataAccess that will get data from a SQL database
@@ -60,6 +62,20 @@ public class Olap4JDataAccess extends PREDataAccess {
     return mdxDataFactory;
   }
 
+  /**
+   * Reads the banded result into a {@link MdxResultTableModel}, releasing the cell set before the result is cached.
+   */
+  @Override
+  protected IDataSourceQuery performRawQuery( final ParameterDataRow parameterDataRow, final String query )
+    throws QueryException {
+    final IDataSourceQuery queryExecution = super.performRawQuery( parameterDataRow, query );
+    try {
+      return new PREDataSourceQuery( MdxResultTableModel.of( queryExecution.getTableModel() ), null );
+    } finally {
+      queryExecution.closeDataSource();
+    }
+  }
+
   public String getType() {
     return "olap4j";
   }
@@ -12,6 +12,9 @@
  */
 package pt.webdetails.cda.dataaccess;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
 import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.DataFactory;
@@ -25,12 +28,18 @@ import org.pentaho.reporting.libraries.base.config.Configuration;
 import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
 import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import pt.webdetails.cda.CdaEngine;
+import pt.webdetails.cda.CdaPropertiesHelper;
 import pt.webdetails.cda.ICdaEnvironment;
 import pt.webdetails.cda.connections.InvalidConnectionException;
+import pt.webdetails.cda.query.QueryDeadline;
+import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.UnknownConnectionException;
+import pt.webdetails.cda.utils.MetadataTableModel;
 
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableModel;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -38,7 +47,21 @@ import java.util.List;
  */
 public abstract class PREDataAccess extends SimpleDataAccess {
 
-  //  private static final Log logger = LogFactory.getLog(PREDataAccess.class);
+  private static final Log logger = LogFactory.getLog( PREDataAccess.class );
+
+  /**
+   * Request setting lowering the maximum number of rows a query may return.
+   */
+  public static final String MAX_ROWS_SETTING = "maxRows";
+  /**
+   * Result metadata telling the query returned more rows than allowed.
+   */
+  public static final String TRUNCATED_METADATA = "truncated";
+
+  private static final String MAX_ROWS_PROPERTY = "pt.webdetails.cda.dataaccess.maxRows";
+  private static final int defaultMaxRows = CdaPropertiesHelper.getIntProperty( MAX_ROWS_PROPERTY, 0 );
+
+  private Integer maxRows;
 
   public PREDataAccess() {
   }
@@ -46,6 +69,10 @@ public abstract class PREDataAccess extends SimpleDataAccess {
 
   public PREDataAccess( final Element element ) {
     super( element );
+    final String maxRowsValue = element.attributeValue( "maxRows" );
+    if ( !StringUtils.isBlank( maxRowsValue ) ) {
+      maxRows = Integer.valueOf( maxRowsValue.trim() );
+    }
   }
 
 
@@ -65,6 +92,140 @@ public abstract class PREDataAccess extends SimpleDataAccess {
     return getDataFactory();
   }
 
+  /**
+   * Data factory running <code>query</code> as its "query". Must be overridden to support rewritten queries.
+   *
+   * @throws QueryException if <code>query</code> is a rewrite and this data access doesn't support them
+   */
+  protected DataFactory getDataFactory( final ParameterDataRow parameterDataRow, final String query )
+    throws UnknownConnectionException, InvalidConnectionException, QueryException {
+    if ( !StringUtils.equals( query, getQuery() ) ) {
+      throw new QueryException( "Data access " + getId() + " can't run rewritten queries", null );
+    }
+    return getDataFactory( parameterDataRow );
+  }
+
+  /**
+   * @return maximum number of rows a query may return, <code>null</code> to use the global setting
+   */
+  public Integer getMaxRows() {
+    return maxRows;
+  }
+
+  public void setMaxRows( final Integer maxRows ) {
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * Row limit for a query: this data access' <code>maxRows</code>, or the global one, lowered by the
+   * {@link #MAX_ROWS_SETTING} request setting.
+   *
+   * @return maximum number of rows, 0 for no limit
+   */
+  protected int getMaxRows( final QueryOptions queryOptions ) {
+    int limit = maxRows != null ? maxRows : defaultMaxRows;
+    final String requested = queryOptions.getSetting( MAX_ROWS_SETTING );
+    if ( !StringUtils.isBlank( requested ) ) {
+      try {
+        final int requestedLimit = Integer.parseInt( requested.trim() );
+        if ( requestedLimit > 0 && ( limit <= 0 || requestedLimit < limit ) ) {
+          limit = requestedLimit;
+        }
+      } catch ( NumberFormatException e ) {
+        logger.warn( "Ignoring invalid " + MAX_ROWS_SETTING + " for " + getId() + ": " + requested );
+      }
+    }
+    return Math.max( limit, 0 );
+  }
+
+  /**
+   * Passes the row limit to the data factory as its query limit. One extra row is asked for, telling a result that
+   * just fits from a truncated one.
+   */
+  @Override
+  protected TableModel queryDataSource( final QueryOptions queryOptions, final String query,
+                                        final List<Parameter> queryParameters ) throws QueryException {
+    final int limit = getMaxRows( queryOptions );
+    if ( limit <= 0 ) {
+      return super.queryDataSource( queryOptions, query, queryParameters );
+    }
+    final Parameter queryLimit = new Parameter( DataFactory.QUERY_LIMIT, Parameter.Type.INTEGER.getName(), null,
+      null, Parameter.Access.PRIVATE.toString() );
+    queryLimit.setValue( limit == Integer.MAX_VALUE ? limit : limit + 1 );
+    final List<Parameter> parameters = new ArrayList<Parameter>( queryParameters );
+    parameters.add( queryLimit );
+    return super.queryDataSource( queryOptions, query, parameters );
+  }
+
+  /**
+   * Drops the rows over the limit, flagging the result as {@link #TRUNCATED_METADATA}. Also covers data factories
+   * that don't honor the query limit.
+   */
+  @Override
+  protected TableModel postProcessTableModel( final QueryOptions queryOptions, final TableModel tableModel )
+    throws QueryException {
+    final int limit = getMaxRows( queryOptions );
+    if ( limit <= 0 || tableModel == null || tableModel.getRowCount() <= limit ) {
+      return super.postProcessTableModel( queryOptions, tableModel );
+    }
+    logger.warn( "Query " + getId() + " returned more than " + limit + " rows, truncating" );
+    final TableModel result = super.postProcessTableModel( queryOptions, new RowLimitTableModel( tableModel, limit ) );
+    if ( result instanceof MetadataTableModel ) {
+      ( (MetadataTableModel) result ).setMetadata( TRUNCATED_METADATA, true );
+    }
+    return result;
+  }
+
+  /**
+   * Results over the row limit are flagged as truncated in their metadata, which a cursor doesn't have. Limited
+   * queries are left to the table path.
+   */
+  @Override
+  public boolean canOpenCursor( final QueryOptions queryOptions ) throws QueryException {
+    return getMaxRows( queryOptions ) <= 0 && super.canOpenCursor( queryOptions );
+  }
+
+  /**
+   * The first rows of a table.
+   */
+  private static class RowLimitTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TableModel tableModel;
+    private final int rowCount;
+
+    RowLimitTableModel( final TableModel tableModel, final int rowCount ) {
+      this.tableModel = tableModel;
+      this.rowCount = Math.min( rowCount, tableModel.getRowCount() );
+    }
+
+    @Override
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return tableModel.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName( final int column ) {
+      return tableModel.getColumnName( column );
+    }
+
+    @Override
+    public Class<?> getColumnClass( final int column ) {
+      return tableModel.getColumnClass( column );
+    }
+
+    @Override
+    public Object getValueAt( final int row, final int column ) {
+      return tableModel.getValueAt( row, column );
+    }
+  }
+
   protected static class PREDataSourceQuery implements IDataSourceQuery {
 
     private TableModel tableModel;
@@ -103,8 +264,20 @@ public abstract class PREDataAccess extends SimpleDataAccess {
 
   @Override
   protected IDataSourceQuery performRawQuery( final ParameterDataRow parameterDataRow ) throws QueryException {
+    return performRawQuery( parameterDataRow, getQuery() );
+  }
+
+  private static int getTimeoutSeconds( final QueryDeadline.Scope scope ) {
+    final long remaining = scope.getDeadline().getRemainingMillis();
+    return (int) Math.max( 1, Math.min( Integer.MAX_VALUE, ( remaining + 999 ) / 1000 ) );
+  }
+
+  @Override
+  protected IDataSourceQuery performRawQuery( final ParameterDataRow parameterDataRow, final String query )
+    throws QueryException {
     try {
-      final CachingDataFactory dataFactory = new CachingDataFactory( getDataFactory( parameterDataRow ), false );
+      final CachingDataFactory dataFactory =
+        new CachingDataFactory( getDataFactory( parameterDataRow, query ), false );
 
       final Configuration configuration = ClassicEngineBoot.getInstance().getGlobalConfig();
 
@@ -112,13 +285,16 @@ public abstract class PREDataAccess extends SimpleDataAccess {
 
       // fire the query. you always get a table model or an exception.
 
-      IDataAccessUtils dataAccessUtils = CdaEngine.getEnvironment().getDataAccessUtils();
-      final ReportEnvironmentDataRow environmentDataRow = dataAccessUtils.createEnvironmentDataRow( configuration );
-
-
       PREDataSourceQuery queryExecution = null;
       try {
-        final CompoundDataRow compoundDataRow = new CompoundDataRow( environmentDataRow, parameterDataRow );
+        CompoundDataRow compoundDataRow = createQueryDataRow( configuration, parameterDataRow );
+        final QueryDeadline.Scope scope = QueryDeadline.currentScope();
+        if ( scope != null ) {
+          // statement timeout where the factory supports it, cancelling otherwise
+          compoundDataRow = new CompoundDataRow( compoundDataRow, new ParameterDataRow(
+            new String[] { DataFactory.QUERY_TIMEOUT }, new Object[] { getTimeoutSeconds( scope ) } ) );
+          scope.onCancel( dataFactory::cancelRunningQuery );
+        }
         final TableModel tableModel = dataFactory.queryData( "query", compoundDataRow );
 
         //  Store this variable so that we can close it later
@@ -170,6 +346,16 @@ public abstract class PREDataAccess extends SimpleDataAccess {
   }
 
 
+  /**
+   * @return the parameters along with the reporting environment, as the data factory gets them
+   */
+  protected CompoundDataRow createQueryDataRow( final Configuration configuration,
+                                                final ParameterDataRow parameterDataRow ) {
+    IDataAccessUtils dataAccessUtils = CdaEngine.getEnvironment().getDataAccessUtils();
+    final ReportEnvironmentDataRow environmentDataRow = dataAccessUtils.createEnvironmentDataRow( configuration );
+    return new CompoundDataRow( environmentDataRow, parameterDataRow );
+  }
+
   public void initializeDataFactory( final DataFactory dataFactory, final Configuration configuration )
     throws ReportDataFactoryException {
     final ResourceManager resourceManager = CdaEngine.getInstance().getSettingsManager().getResourceManager();
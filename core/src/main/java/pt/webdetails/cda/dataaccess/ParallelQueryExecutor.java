@@ -0,0 +1,161 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.CdaEngine;
+import pt.webdetails.cda.CdaPropertiesHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the queries of compound data accesses and $FOREACH iterations concurrently on a shared, bounded pool.<br>
+ * The calling thread takes part: it runs every task no pool thread has picked up yet, so nested compound queries
+ * can't deadlock waiting on each other for pool threads, and a busy pool degrades to sequential execution.
+ */
+public class ParallelQueryExecutor {
+
+  private static final Log logger = LogFactory.getLog( ParallelQueryExecutor.class );
+
+  private static final String THREADS_PROPERTY = "pt.webdetails.cda.dataaccess.parallelQueries.threads";
+
+  private static final Object lock = new Object();
+  private static volatile ExecutorService executor;
+
+  private ParallelQueryExecutor() {
+  }
+
+  /**
+   * Runs all tasks and waits for them to finish.
+   *
+   * @param tasks queries to run
+   * @return results in the same order as the tasks
+   * @throws QueryException the first failure, in task order; remaining tasks that haven't started are cancelled
+   */
+  public static <T> List<T> invokeAll( final List<? extends Callable<T>> tasks ) throws QueryException {
+    return invokeAll( tasks, tasks.size() > 1 ? getExecutor() : null );
+  }
+
+  /**
+   * @param pool runs tasks other than the first, <code>null</code> to run them all in the calling thread
+   * @see #invokeAll(List)
+   */
+  static <T> List<T> invokeAll( final List<? extends Callable<T>> tasks, final ExecutorService pool )
+    throws QueryException {
+    final List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>( tasks.size() );
+    for ( int i = 0; i < tasks.size(); i++ ) {
+      // the first task always runs here, no need to carry the context over
+      final Callable<T> task = i == 0 || pool == null
+        ? tasks.get( i ) : inCallerContext( tasks.get( i ) );
+      final FutureTask<T> future = new FutureTask<T>( task );
+      futures.add( future );
+      if ( i > 0 && pool != null ) {
+        try {
+          pool.execute( future );
+        } catch ( RejectedExecutionException e ) {
+          logger.debug( "Query pool unavailable, running in calling thread." );
+        }
+      }
+    }
+
+    final List<T> results = new ArrayList<T>( tasks.size() );
+    try {
+      for ( FutureTask<T> future : futures ) {
+        // no-op if a pool thread already took it
+        future.run();
+        results.add( future.get() );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new QueryException( "Interrupted while waiting for queries", e );
+    } catch ( ExecutionException e ) {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof QueryException ) {
+        throw (QueryException) cause;
+      }
+      throw new QueryException( "Query failed", cause );
+    } finally {
+      for ( FutureTask<T> future : futures ) {
+        // running queries are left to finish, they may be holding resources
+        future.cancel( false );
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Carries over the user context and the context class loader of the calling thread.
+   */
+  private static <T> Callable<T> inCallerContext( final Callable<T> task ) {
+    final Callable<T> contextTask = CdaEngine.getEnvironment().inCurrentContext( task );
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return () -> {
+      final Thread thread = Thread.currentThread();
+      final ClassLoader original = thread.getContextClassLoader();
+      thread.setContextClassLoader( classLoader );
+      try {
+        return contextTask.call();
+      } finally {
+        thread.setContextClassLoader( original );
+      }
+    };
+  }
+
+  /**
+   * @return the shared pool, <code>null</code> if concurrent execution is disabled
+   */
+  private static ExecutorService getExecutor() {
+    ExecutorService pool = executor;
+    if ( pool == null ) {
+      synchronized ( lock ) {
+        pool = executor;
+        if ( pool == null ) {
+          final int threads = CdaPropertiesHelper.getIntProperty( THREADS_PROPERTY, 8 );
+          if ( threads <= 0 ) {
+            return null;
+          }
+          ThreadPoolExecutor threadPool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new QueryThreadFactory() );
+          threadPool.allowCoreThreadTimeOut( true );
+          pool = threadPool;
+          executor = pool;
+        }
+      }
+    }
+    return pool;
+  }
+
+  private static class QueryThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread( Runnable runnable ) {
+      Thread thread = new Thread( runnable, "cda-query-" + count.incrementAndGet() );
+      thread.setDaemon( true );
+      return thread;
+    }
+  }
+}
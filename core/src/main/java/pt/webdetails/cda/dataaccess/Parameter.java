@@ -127,6 +127,23 @@ public class Parameter implements java.io.Serializable {
     return parameterDataRow;
   }
 
+  /**
+   * Copies this parameter keeping its current value as is, unlike the copy constructor which goes through its string
+   * representation.
+   *
+   * @return an independent copy
+   */
+  public Parameter copy() {
+    Parameter copy = new Parameter( name, value );
+    copy.type = type;
+    copy.defaultValue = defaultValue;
+    copy.pattern = pattern;
+    copy.access = access;
+    copy.separator = separator;
+    copy.quoteCharacter = quoteCharacter;
+    return copy;
+  }
+
   public void inheritDefaults( Parameter defaultParameter ) {
     if ( this.type == null ) {
       this.setType( defaultParameter.getType() );
@@ -0,0 +1,31 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+/**
+ * Thrown when a query is refused admission to its connection, either because the connection's wait queue is full
+ * or because it waited too long for a free slot.
+ */
+public class QueryRejectedException extends QueryException {
+
+  private static final long serialVersionUID = 1L;
+
+  public QueryRejectedException( final String message ) {
+    this( message, null );
+  }
+
+  public QueryRejectedException( final String message, final Throwable cause ) {
+    super( message, cause );
+  }
+}
@@ -0,0 +1,30 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import pt.webdetails.cda.cache.FailedQueryCache;
+
+/**
+ * Thrown instead of executing a query that failed shortly before.
+ */
+public class RecentQueryFailureException extends QueryException {
+
+  private static final long serialVersionUID = 1L;
+
+  public RecentQueryFailureException( final FailedQueryCache.Failure failure ) {
+    super( "Query failed " + failure.getCount() + " time(s) recently, not retrying for another "
+      + Math.max( 0, ( failure.getBlockedUntil() - System.currentTimeMillis() ) / 1000 ) + "s: "
+      + failure.getCause().getMessage(), failure.getCause() );
+  }
+}
@@ -0,0 +1,46 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+/**
+ * Forward only cursor over query results, read as they arrive instead of all at once.<br>
+ * The columns are known before the first row. The cursor starts before the first row and holds on to the data source
+ * until closed.
+ */
+public interface RowCursor extends AutoCloseable {
+
+  int getColumnCount();
+
+  String getColumnName( int column );
+
+  Class<?> getColumnClass( int column );
+
+  /**
+   * Moves to the next row.
+   *
+   * @return <code>false</code> if there are no more rows
+   */
+  boolean next() throws QueryException;
+
+  /**
+   * @return value of the given column in the current row
+   */
+  Object getValue( int column ) throws QueryException;
+
+  /**
+   * Frees the data source. Closing a closed cursor does nothing.
+   */
+  @Override
+  void close() throws QueryException;
+}
@@ -24,7 +24,7 @@ import pt.webdetails.cda.settings.UnknownConnectionException;
 /**
  * Todo: Document me!
  */
-public class ScriptableDataAccess extends PREDataAccess {
+public class ScriptableDataAccess extends PREDataAccess implements CursorDataAccess {
 
   public ScriptableDataAccess( final Element element ) {
     super( element );
@@ -19,29 +19,46 @@ import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
 import org.dom4j.Node;
 import org.pentaho.reporting.engine.classic.core.ParameterDataRow;
+import org.pentaho.reporting.engine.classic.core.ReportDataFactoryException;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
 import pt.webdetails.cda.CdaEngine;
+import pt.webdetails.cda.CdaPropertiesHelper;
+import pt.webdetails.cda.cache.DateRangeBuckets;
+import pt.webdetails.cda.cache.FailedQueryCache;
 import pt.webdetails.cda.cache.IQueryCache;
 import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 import pt.webdetails.cda.connections.Connection;
+import pt.webdetails.cda.connections.ConnectionBulkhead;
+import pt.webdetails.cda.connections.ConnectionBulkheads;
 import pt.webdetails.cda.connections.ConnectionCatalog;
+import pt.webdetails.cda.connections.ConnectionCircuitBreaker;
+import pt.webdetails.cda.connections.ConnectionCircuitBreakers;
 import pt.webdetails.cda.connections.DummyConnection;
 import pt.webdetails.cda.events.CdaEvent;
+import pt.webdetails.cda.events.CircuitBreakerEvent;
 import pt.webdetails.cda.events.QueryErrorEvent;
 import pt.webdetails.cda.events.QueryTooLongEvent;
+import pt.webdetails.cda.query.QueryDeadline;
 import pt.webdetails.cda.query.QueryOptions;
+import pt.webdetails.cda.query.QueryPriority;
 import pt.webdetails.cda.settings.UnknownConnectionException;
+import pt.webdetails.cda.utils.ConcatenatedTableModel;
+import pt.webdetails.cda.utils.InvalidOutputIndexException;
 import pt.webdetails.cda.utils.TableModelUtils;
 import pt.webdetails.cda.xml.DomVisitable;
 import pt.webdetails.cda.xml.DomVisitor;
 import pt.webdetails.cpf.messaging.IEventPublisher;
 
 import javax.swing.table.TableModel;
+import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -59,6 +76,12 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
   private static final String QUERY_TIME_THRESHOLD_PROPERTY = "pt.webdetails.cda.QueryTimeThreshold";
   private static int queryTimeThreshold = getQueryTimeThresholdFromConfig( 3600 ); //seconds
 
+  private static final String FAILED_QUERY_TTL_PROPERTY = "pt.webdetails.cda.cache.failedQueries.ttl";
+  private static final String FAILED_QUERY_MAX_TTL_PROPERTY = "pt.webdetails.cda.cache.failedQueries.maxTtl";
+  private static final FailedQueryCache failedQueries = new FailedQueryCache(
+    CdaPropertiesHelper.getIntProperty( FAILED_QUERY_TTL_PROPERTY, 5 ) * 1000L,
+    CdaPropertiesHelper.getIntProperty( FAILED_QUERY_MAX_TTL_PROPERTY, 60 ) * 1000L );
+
   public SimpleDataAccess() {
     this.eventPublisher = CdaEngine.getEnvironment().getEventPublisher();
   }
@@ -104,7 +127,54 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
 
 
   protected TableModel queryDataSource( final QueryOptions queryOptions ) throws QueryException {
+    return queryDataSource( queryOptions, getQuery() );
+  }
+
+  /**
+   * Runs a rewrite of this data access' query, with its parameters and cache.
+   *
+   * @param queryOptions query options
+   * @param query        the query to run, see {@link #performRawQuery(ParameterDataRow, String)}
+   */
+  protected TableModel queryDataSource( final QueryOptions queryOptions, final String query ) throws QueryException {
+    return queryDataSource( queryOptions, query, Collections.<Parameter>emptyList() );
+  }
+
+  /**
+   * Runs a rewrite of this data access' query that takes parameters of its own.
+   *
+   * @param queryOptions    query options
+   * @param query           the query to run, see {@link #performRawQuery(ParameterDataRow, String)}
+   * @param queryParameters filled parameters used only by the rewritten query
+   */
+  protected TableModel queryDataSource( final QueryOptions queryOptions, final String query,
+                                        final List<Parameter> queryParameters ) throws QueryException {
     final List<Parameter> parameters = getFilledParameters( queryOptions );
+    parameters.addAll( queryParameters );
+
+    logQueryStart( queryOptions, parameters );
+
+    final DateRangeBuckets buckets = getCacheBuckets();
+    if ( buckets != null && isCacheEnabled() && !queryOptions.isCacheBypass() ) {
+      List<List<Parameter>> bucketParameters = buckets.split( parameters );
+      if ( bucketParameters != null ) {
+        logger.debug( "Querying " + bucketParameters.size() + " buckets of " + buckets );
+        List<TableModel> bucketTables = new ArrayList<TableModel>( bucketParameters.size() );
+        for ( List<Parameter> bucket : bucketParameters ) {
+          bucketTables.add( queryFilledParameters( queryOptions, query, bucket ) );
+        }
+        return bucketTables.size() == 1 ? bucketTables.get( 0 ) : new ConcatenatedTableModel( bucketTables );
+      }
+    }
+
+    return queryFilledParameters( queryOptions, query, parameters );
+  }
+
+  /**
+   * Gets results for already filled parameters, from cache if available.
+   */
+  private TableModel queryFilledParameters( final QueryOptions queryOptions, final String query,
+                                           final List<Parameter> parameters ) throws QueryException {
 
     final ParameterDataRow parameterDataRow;
     try {
@@ -113,77 +183,146 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
       throw new QueryException( "Error parsing parameters ", e );
     }
 
-    logQueryStart( queryOptions, parameters );
-
     // create the cache-key which is both query and parameter values
-    TableCacheKey key;
+    TableCacheKey key = null;
     TableModel tableModelCopy;
     IDataSourceQuery rawQueryExecution = null;
+    final DataSourceCall call = new DataSourceCall( queryOptions, query, parameters, parameterDataRow );
     Long queryTime = null;
     try {
-      key = createCacheKey( parameters );
+      key = createCacheKey( query, parameters );
 
-      if ( isCacheEnabled() && !queryOptions.isCacheBypass() ) {
-        try {
-          final TableModel cachedTableModel = getCdaCache().getTableModel( key );
-          if ( cachedTableModel != null ) {
-            logger.debug( "Found table in cache, returning." );
-            return cachedTableModel;
-          }
-        } catch ( Exception e ) {
-          logger.error( "Error while attempting to load from cache, bypassing cache (cause: " + e.getClass() + ")", e );
-        }
+      final TableModel cachedTableModel = getCachedTableModel( queryOptions, key );
+      if ( cachedTableModel != null ) {
+        return cachedTableModel;
       }
 
-      //start timing query
-      long beginTime = System.currentTimeMillis();
+      call.acquire( key, queryOptions.getDeadline() );
 
-      rawQueryExecution = performRawQuery( parameterDataRow );
+      rawQueryExecution = call.execute( () -> StringUtils.equals( query, getQuery() )
+        ? performRawQuery( parameterDataRow )
+        : performRawQuery( parameterDataRow, query ) );
 
       final TableModel tableModel = postProcessTableModel( rawQueryExecution.getTableModel() );
 
-      queryTime = logIfDurationAboveThreshold( beginTime, getId(), getQuery(), parameters );
+      queryTime = call.reportDuration();
 
       // Copy the tableModel and cache it
       tableModelCopy = TableModelUtils.copyTableModel( this, tableModel );
+      call.succeeded();
     } catch ( Exception e ) {
-
+      throw call.fail( e );
+    } finally {
       try {
-        CdaEvent.QueryInfo info = new CdaEvent.QueryInfo( getCdaSettings().getId(), getId(),
-          getQuery(), parameterDataRow );
-
-        if ( e instanceof QueryException && e.getCause() != null ) {
-          eventPublisher.publish( new QueryErrorEvent( info, e.getCause() ) );
-        } else {
-          eventPublisher.publish( new QueryErrorEvent( info, e ) );
+        if ( rawQueryExecution != null ) {
+          rawQueryExecution.closeDataSource();
         }
-      } catch ( Exception inner ) {
-        logger.error( "Error pushing event", inner );
+      } finally {
+        call.release();
       }
-      if ( e instanceof QueryException ) {
-        throw (QueryException) e;
+    }
+
+    // put the copy into the cache ...
+    putCachedTableModel( key, tableModelCopy, queryTime );
+
+    // and finally return the copy.
+    return tableModelCopy;
+  }
+
+  /**
+   * Column names of a rewrite of this data access' query as the data source has them, before column definitions
+   * apply. The query runs through the connection's circuit breaker, bulkhead and deadline like any other, and the
+   * names are cached like its results.
+   *
+   * @param queryOptions query options
+   * @param query        the query to run, see {@link #performRawQuery(ParameterDataRow, String)}
+   */
+  protected String[] queryColumnNames( final QueryOptions queryOptions, final String query ) throws QueryException {
+    final List<Parameter> parameters = getFilledParameters( queryOptions );
+    final ParameterDataRow parameterDataRow;
+    try {
+      parameterDataRow = Parameter.createParameterDataRowFromParameters( parameters );
+    } catch ( InvalidParameterException e ) {
+      throw new QueryException( "Error parsing parameters ", e );
+    }
+
+    TableCacheKey key = null;
+    TableModel columns;
+    IDataSourceQuery rawQueryExecution = null;
+    final DataSourceCall call = new DataSourceCall( queryOptions, query, parameters, parameterDataRow );
+    Long queryTime;
+    try {
+      key = createCacheKey( query, parameters );
+
+      columns = getCachedTableModel( queryOptions, key );
+      if ( columns != null ) {
+        return getColumnNames( columns );
       }
-      throw new QueryException( "Found an unhandled exception:", e );
+
+      call.acquire( key, queryOptions.getDeadline() );
+
+      rawQueryExecution = call.execute( () -> performRawQuery( parameterDataRow, query ) );
+
+      final String[] columnNames = getColumnNames( rawQueryExecution.getTableModel() );
+      final Class<?>[] columnTypes = new Class<?>[ columnNames.length ];
+      Arrays.fill( columnTypes, Object.class );
+      columns = new TypedTableModel( columnNames, columnTypes, 0 );
+
+      queryTime = call.reportDuration();
+      call.succeeded();
+    } catch ( Exception e ) {
+      throw call.fail( e );
     } finally {
-      if ( rawQueryExecution != null ) {
-        rawQueryExecution.closeDataSource();
+      try {
+        if ( rawQueryExecution != null ) {
+          rawQueryExecution.closeDataSource();
+        }
+      } finally {
+        call.release();
       }
     }
 
-    // put the copy into the cache ...
+    putCachedTableModel( key, columns, queryTime );
+    return getColumnNames( columns );
+  }
+
+  private static String[] getColumnNames( final TableModel tableModel ) {
+    final String[] columnNames = new String[ tableModel.getColumnCount() ];
+    for ( int i = 0; i < columnNames.length; i++ ) {
+      columnNames[ i ] = tableModel.getColumnName( i );
+    }
+    return columnNames;
+  }
+
+  /**
+   * @return the results cached for <code>key</code>, <code>null</code> if none or the cache isn't used
+   */
+  private TableModel getCachedTableModel( final QueryOptions queryOptions, final TableCacheKey key ) {
+    if ( isCacheEnabled() && !queryOptions.isCacheBypass() ) {
+      try {
+        final TableModel cachedTableModel = getCdaCache().getTableModel( key );
+        if ( cachedTableModel != null ) {
+          logger.debug( "Found table in cache, returning." );
+          return cachedTableModel;
+        }
+      } catch ( Exception e ) {
+        logger.error( "Error while attempting to load from cache, bypassing cache (cause: " + e.getClass() + ")", e );
+      }
+    }
+    return null;
+  }
+
+  private void putCachedTableModel( final TableCacheKey key, final TableModel tableModel, final Long queryTime ) {
     if ( isCacheEnabled() ) {
       ExtraCacheInfo cInfo =
-        new ExtraCacheInfo( this.getCdaSettings().getId(), getId(), queryTime, tableModelCopy );
+        new ExtraCacheInfo( this.getCdaSettings().getId(), getId(), queryTime, tableModel );
       IQueryCache cache = getCdaCache();
       if ( cache != null ) {
-        cache.putTableModel( key, tableModelCopy, getCacheDuration(), cInfo );
+        cache.putTableModel( key, tableModel, getCacheDuration(), cInfo );
       } else {
         logger.error( "Cache enabled but no cache available." );
       }
     }
-
-    // and finally return the copy.
-    return tableModelCopy;
   }
 
   public List<Parameter> getFilledParameters( final QueryOptions queryOptions ) throws QueryException {
@@ -217,6 +356,11 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
   }
 
   protected TableCacheKey createCacheKey( final List<Parameter> parameters ) throws QueryException {
+    return createCacheKey( getQuery(), parameters );
+  }
+
+  protected TableCacheKey createCacheKey( final String query, final List<Parameter> parameters )
+    throws QueryException {
     try {
       final Connection connection;
       if ( getConnectionType() == ConnectionCatalog.ConnectionType.NONE ) {
@@ -224,7 +368,7 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
       } else {
         connection = getCdaSettings().getConnection( getConnectionId() );
       }
-      return new TableCacheKey( connection, getQuery(), getQueryType(), parameters, getExtraCacheKey() );
+      return new TableCacheKey( connection, query, getQueryType(), parameters, getExtraCacheKey() );
     } catch ( UnknownConnectionException e ) {
       // I'm sure I'll never be here
       throw new QueryException( "Unable to get a Connection for this dataAccess ", e );
@@ -265,6 +409,268 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
   }
 
 
+  /**
+   * @return the circuit breaker of this data access' connection, <code>null</code> if it has none
+   */
+  protected ConnectionCircuitBreaker getCircuitBreaker() throws QueryException {
+    if ( getConnectionType() == ConnectionCatalog.ConnectionType.NONE ) {
+      return null;
+    }
+    try {
+      final Connection connection = getCdaSettings().getConnection( getConnectionId() );
+      return connection != null ? ConnectionCircuitBreakers.get( getCdaSettings().getId(), connection ) : null;
+    } catch ( UnknownConnectionException e ) {
+      throw new QueryException( "Unable to get a Connection for this dataAccess ", e );
+    }
+  }
+
+  private interface RawCall<T> {
+    T run() throws QueryException;
+  }
+
+  /**
+   * Bookkeeping of one query against the data source, whether its results are read into a table or through a
+   * cursor: the recent failure check, the connection's circuit breaker and bulkhead, the deadline, and reporting its
+   * errors and duration.
+   */
+  private class DataSourceCall {
+
+    private final boolean cacheBypass;
+    private final String query;
+    private final List<Parameter> parameters;
+    private final ParameterDataRow parameterDataRow;
+    private final QueryPriority priority;
+    private TableCacheKey key;
+    private ConnectionCircuitBreaker breaker;
+    private ConnectionBulkhead bulkhead;
+    private QueryDeadline.Scope scope;
+    private long beginTime;
+    private boolean dataSourceFailed;
+
+    DataSourceCall( final QueryOptions queryOptions, final String query, final List<Parameter> parameters,
+                    final ParameterDataRow parameterDataRow ) {
+      this.cacheBypass = queryOptions.isCacheBypass();
+      this.query = query;
+      this.parameters = parameters;
+      this.parameterDataRow = parameterDataRow;
+      this.priority = queryOptions.getPriority() != null ? queryOptions.getPriority() : QueryPriority.INTERACTIVE;
+    }
+
+    /**
+     * Waits for the connection, failing fast if the query failed recently, the connection is failing or the deadline
+     * has passed. Whatever was acquired must be given back with {@link #release()}.
+     *
+     * @param key      the query's cache key, for its recent failures
+     * @param deadline the query's deadline, if any
+     */
+    void acquire( final TableCacheKey key, final QueryDeadline deadline ) throws QueryException {
+      this.key = key;
+      if ( key != null && isCacheEnabled() && !cacheBypass ) {
+        FailedQueryCache.Failure failure = failedQueries.getFailure( key );
+        if ( failure != null ) {
+          throw new RecentQueryFailureException( failure );
+        }
+      }
+
+      // fail fast on a failing connection, before waiting for it
+      final ConnectionCircuitBreaker circuitBreaker = getCircuitBreaker();
+      if ( circuitBreaker != null ) {
+        publishStateChange( circuitBreaker, circuitBreaker.acquire(), query, parameterDataRow );
+        breaker = circuitBreaker;
+      }
+
+      final ConnectionBulkhead connectionBulkhead = getConnectionBulkhead();
+      if ( connectionBulkhead != null ) {
+        connectionBulkhead.acquire( priority );
+        bulkhead = connectionBulkhead;
+      }
+
+      // the deadline may have passed while waiting for the connection
+      if ( deadline != null ) {
+        deadline.check( getId() );
+        scope = deadline.enter();
+      }
+
+      //start timing query
+      beginTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Runs the query against the data source, reporting how it went to the connection's circuit breaker. Failures of
+     * the query itself, such as invalid parameters, say nothing about the connection and are ignored. So are queries
+     * stopped by their deadline, whose timeout is up to the caller.
+     */
+    <T> T execute( final RawCall<T> call ) throws QueryException {
+      final T result;
+      try {
+        result = call.run();
+      } catch ( QueryException | RuntimeException e ) {
+        dataSourceFailed = true;
+        if ( breaker != null ) {
+          final long duration = System.currentTimeMillis() - beginTime;
+          if ( !isStoppedByDeadline() && isDataSourceFailure( e ) ) {
+            publishStateChange( breaker, breaker.onFailure( duration ), query, parameterDataRow );
+          } else {
+            breaker.onIgnored();
+          }
+          breaker = null;
+        }
+        throw e;
+      }
+      if ( breaker != null ) {
+        // only the data source's part tells how the connection is doing, not reading or post processing its rows
+        publishStateChange( breaker, breaker.onSuccess( System.currentTimeMillis() - beginTime ), query,
+          parameterDataRow );
+        breaker = null;
+      }
+      return result;
+    }
+
+    /**
+     * Reports a failure while reading the data source's results.
+     *
+     * @return the exception to throw
+     */
+    QueryException readFailed( final Exception e ) {
+      dataSourceFailed = true;
+      return fail( e );
+    }
+
+    /**
+     * Reports a failure of the query: remembers failures of the data source itself, not those of parameters or post
+     * processing, and publishes an error event.
+     *
+     * @return the exception to throw
+     */
+    QueryException fail( final Exception e ) {
+      if ( e instanceof RecentQueryFailureException ) {
+        logger.debug( "Query " + getId() + " failed recently, returning previous error." );
+        return (QueryException) e;
+      }
+      if ( e instanceof QueryRejectedException ) {
+        logger.warn( "Query " + getId() + " rejected: " + e.getMessage() );
+        return (QueryException) e;
+      }
+      if ( e instanceof QueryTimeoutException ) {
+        logger.warn( "Query " + getId() + " timed out: " + e.getMessage() );
+        return (QueryException) e;
+      }
+
+      // a cancelled query didn't fail by itself, running it again may work
+      final boolean cancelled = isCancelled();
+      if ( dataSourceFailed && !cancelled && key != null && isCacheEnabled() ) {
+        failedQueries.putFailure( key, e instanceof QueryException && e.getCause() != null ? e.getCause() : e );
+      }
+
+      try {
+        CdaEvent.QueryInfo info = new CdaEvent.QueryInfo( getCdaSettings().getId(), getId(),
+          query, parameterDataRow );
+
+        if ( e instanceof QueryException && e.getCause() != null ) {
+          eventPublisher.publish( new QueryErrorEvent( info, e.getCause() ) );
+        } else {
+          eventPublisher.publish( new QueryErrorEvent( info, e ) );
+        }
+      } catch ( Exception inner ) {
+        logger.error( "Error pushing event", inner );
+      }
+      if ( cancelled ) {
+        return new QueryTimeoutException( "Query " + getId() + " cancelled, deadline passed or request cancelled.", e );
+      }
+      if ( e instanceof QueryException ) {
+        return (QueryException) e;
+      }
+      return new QueryException( "Found an unhandled exception:", e );
+    }
+
+    /**
+     * @return duration (in seconds), reported if above the threshold
+     */
+    long reportDuration() {
+      return logIfDurationAboveThreshold( beginTime, getId(), query, parameters );
+    }
+
+    void succeeded() {
+      if ( key != null ) {
+        failedQueries.remove( key );
+      }
+    }
+
+    boolean isCancelled() {
+      return scope != null && scope.isCancelled();
+    }
+
+    /**
+     * @return if the query was cancelled or its deadline passed, including statement timeouts set from it
+     */
+    private boolean isStoppedByDeadline() {
+      return scope != null && ( scope.isCancelled() || scope.getDeadline().isExpired() );
+    }
+
+    /**
+     * Gives back the connection and leaves the deadline.
+     */
+    void release() {
+      if ( scope != null ) {
+        scope.close();
+        scope = null;
+      }
+      if ( breaker != null ) {
+        // rejected or timed out before reaching the connection
+        breaker.onIgnored();
+        breaker = null;
+      }
+      if ( bulkhead != null ) {
+        bulkhead.release( priority );
+        bulkhead = null;
+      }
+    }
+  }
+
+  /**
+   * @return if a query failed in its database or connection: an SQL or reporting data factory error, or a timeout
+   *         reported by them
+   */
+  static boolean isDataSourceFailure( final Throwable failure ) {
+    for ( Throwable cause = failure; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null ) {
+      if ( cause instanceof SQLException || cause instanceof ReportDataFactoryException
+        || cause instanceof TimeoutException ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void publishStateChange( final ConnectionCircuitBreaker breaker, final ConnectionCircuitBreaker.State state,
+                                   final String query, final ParameterDataRow parameterDataRow ) {
+    if ( state == null ) {
+      return;
+    }
+    try {
+      eventPublisher.publish( new CircuitBreakerEvent(
+        new CdaEvent.QueryInfo( getCdaSettings().getId(), getId(), query, parameterDataRow ),
+        breaker.getName(), state.name() ) );
+    } catch ( Exception e ) {
+      logger.error( "Error pushing event", e );
+    }
+  }
+
+  /**
+   * @return the bulkhead limiting concurrent queries on this data access' connection, <code>null</code> if it has none
+   */
+  protected ConnectionBulkhead getConnectionBulkhead() throws QueryException {
+    if ( getConnectionType() == ConnectionCatalog.ConnectionType.NONE ) {
+      return null;
+    }
+    try {
+      final Connection connection = getCdaSettings().getConnection( getConnectionId() );
+      return connection != null ? ConnectionBulkheads.get( getCdaSettings().getId(), connection ) : null;
+    } catch ( UnknownConnectionException e ) {
+      throw new QueryException( "Unable to get a Connection for this dataAccess ", e );
+    }
+  }
+
+
   protected TableModel postProcessTableModel( TableModel tm ) {
     // we can use this method to override the general behavior. By default, no post processing is done
     return tm;
@@ -335,6 +741,142 @@ public abstract class SimpleDataAccess extends AbstractDataAccess implements Dom
 
   protected abstract IDataSourceQuery performRawQuery( ParameterDataRow parameterDataRow ) throws QueryException;
 
+  /**
+   * Runs a rewrite of {@link #getQuery()}. Only data accesses that rewrite their queries support this.
+   */
+  protected IDataSourceQuery performRawQuery( ParameterDataRow parameterDataRow, String query )
+    throws QueryException {
+    throw new QueryException( "Data access " + getId() + " can't run rewritten queries", null );
+  }
+
+  /**
+   * Runs the query for a cursor over its raw results. By default they're read as a whole and then iterated, data
+   * accesses able to read them as they arrive override this.
+   */
+  protected RowCursor performRawCursor( final ParameterDataRow parameterDataRow ) throws QueryException {
+    return new TableModelRowCursor( performRawQuery( parameterDataRow ) );
+  }
+
+  /**
+   * Results can be read through a cursor when they're not cached and no step needs all rows at once: calculated
+   * columns, row filters, sorting, pagination or <code>$FOREACH</code> iterations.
+   *
+   * @see CursorDataAccess
+   */
+  public boolean canOpenCursor( final QueryOptions queryOptions ) throws QueryException {
+    return !isCacheEnabled() && getCalculatedColumns().isEmpty() && queryOptions.getSortBy().isEmpty()
+      && !queryOptions.isPaginate()
+      && StringUtils.isBlank( queryOptions.getExtraSettings().get( TableModelUtils.DT_FILTER ) )
+      && !hasIterableParameterValues( queryOptions );
+  }
+
+  /**
+   * Runs the query for a cursor over its output columns, see {@link #canOpenCursor(QueryOptions)}.<br>
+   * The query goes through the connection's circuit breaker, bulkhead and its deadline like any other. The bulkhead
+   * slot and the deadline are held until the cursor is closed, which must happen in this thread.
+   *
+   * @see CursorDataAccess
+   */
+  public RowCursor openCursor( final QueryOptions queryOptions ) throws QueryException {
+    final List<Parameter> parameters = getFilledParameters( queryOptions );
+    logQueryStart( queryOptions, parameters );
+
+    final ParameterDataRow parameterDataRow;
+    try {
+      parameterDataRow = Parameter.createParameterDataRowFromParameters( parameters );
+    } catch ( InvalidParameterException e ) {
+      throw new QueryException( "Error parsing parameters ", e );
+    }
+
+    final DataSourceCall call = new DataSourceCall( queryOptions, getQuery(), parameters, parameterDataRow );
+    RowCursor cursor = null;
+    try {
+      call.acquire( createCacheKey( parameters ), getDeadline( queryOptions ) );
+
+      // reading the rows takes as long as the client, only opening the cursor tells how the connection is doing
+      final RowCursor rawCursor = call.execute( () -> performRawCursor( parameterDataRow ) );
+
+      try {
+        cursor = new DataSourceCursor( TableModelUtils.postProcessCursor( this, queryOptions, rawCursor ), call );
+      } catch ( InvalidOutputIndexException e ) {
+        rawCursor.close();
+        throw new QueryException( "Error while setting output index id ", e );
+      }
+      return cursor;
+    } catch ( Exception e ) {
+      throw call.fail( e );
+    } finally {
+      if ( cursor == null ) {
+        call.release();
+      }
+    }
+  }
+
+  /**
+   * Holds the query's bulkhead slot and deadline while the cursor is open, reporting its read errors and duration.
+   */
+  private static class DataSourceCursor implements RowCursor {
+
+    private final RowCursor cursor;
+    private final DataSourceCall call;
+    private boolean closed;
+
+    DataSourceCursor( final RowCursor cursor, final DataSourceCall call ) {
+      this.cursor = cursor;
+      this.call = call;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return cursor.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName( final int column ) {
+      return cursor.getColumnName( column );
+    }
+
+    @Override
+    public Class<?> getColumnClass( final int column ) {
+      return cursor.getColumnClass( column );
+    }
+
+    @Override
+    public boolean next() throws QueryException {
+      try {
+        return cursor.next();
+      } catch ( QueryException | RuntimeException e ) {
+        throw call.readFailed( e );
+      }
+    }
+
+    @Override
+    public Object getValue( final int column ) throws QueryException {
+      try {
+        return cursor.getValue( column );
+      } catch ( QueryException | RuntimeException e ) {
+        throw call.readFailed( e );
+      }
+    }
+
+    @Override
+    public void close() throws QueryException {
+      if ( closed ) {
+        return;
+      }
+      closed = true;
+      try {
+        cursor.close();
+      } finally {
+        try {
+          call.reportDuration();
+        } finally {
+          call.release();
+        }
+      }
+    }
+  }
+
 
   //  public abstract void closeDataSource() throws QueryException;
   public String getQuery() {
@@ -13,26 +13,74 @@
 
 package pt.webdetails.cda.dataaccess;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.table.TableModel;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Element;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.DataFactory;
+import org.pentaho.reporting.engine.classic.core.DataRow;
+import org.pentaho.reporting.engine.classic.core.ParameterDataRow;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
 import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.SQLReportDataFactory;
+import pt.webdetails.cda.CdaPropertiesHelper;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
 import pt.webdetails.cda.connections.InvalidConnectionException;
+import pt.webdetails.cda.connections.sql.JdbcConnection;
+import pt.webdetails.cda.connections.sql.JdbcConnectionInfo;
+import pt.webdetails.cda.connections.sql.ReplicatedConnection;
+import pt.webdetails.cda.connections.sql.ReplicatedConnectionProvider;
 import pt.webdetails.cda.connections.sql.SqlConnection;
+import pt.webdetails.cda.dataaccess.sql.SqlDialect;
+import pt.webdetails.cda.dataaccess.sql.SqlPushdown;
+import pt.webdetails.cda.dataaccess.sql.SqlQueryRewriter;
+import pt.webdetails.cda.dataaccess.sql.SqlRowCursor;
+import pt.webdetails.cda.dataaccess.sql.SqlStatementSettings;
+import pt.webdetails.cda.dataaccess.sql.StatementTuningConnectionProvider;
+import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.UnknownConnectionException;
+import pt.webdetails.cda.utils.ColumnProjection;
+import pt.webdetails.cda.utils.MetadataTableModel;
+import pt.webdetails.cda.utils.TableModelUtils;
+import pt.webdetails.cda.xml.DomVisitor;
 
 /**
  * Implementation of a DataAccess that will get data from a SQL database
  */
-public class SqlDataAccess extends PREDataAccess {
+public class SqlDataAccess extends PREDataAccess implements CursorDataAccess {
 
   private static final Log logger = LogFactory.getLog( SqlDataAccess.class );
   private static final String TYPE = "sql";
+  private static final Pattern SORT_BY = Pattern.compile( "^(\\d+)([AD]?)$" );
+  private static final String SEARCH_PARAMETER = "cda_search_";
+  private static final String FETCH_SIZE_PROPERTY = "pt.webdetails.cda.dataaccess.sql.fetchSize";
+  private static final int defaultFetchSize = CdaPropertiesHelper.getIntProperty( FETCH_SIZE_PROPERTY, 0 );
+
+  private SqlPushdown pushdown;
+  private SqlStatementSettings statementSettings;
+  private volatile SqlDialect dialect;
 
   public SqlDataAccess( final Element element ) {
     super( element );
+    final Element pushdownElement = (Element) element.selectSingleNode( "./Pushdown" );
+    if ( pushdownElement != null ) {
+      pushdown = SqlPushdown.parse( pushdownElement );
+    }
+    final Element statementElement = (Element) element.selectSingleNode( "./Statement" );
+    if ( statementElement != null ) {
+      statementSettings = SqlStatementSettings.parse( statementElement );
+    }
   }
 
   public SqlDataAccess() {
@@ -52,19 +100,47 @@ public class SqlDataAccess extends PREDataAccess {
     return TYPE;
   }
 
+  /**
+   * @return what is done by the database instead of CDA, <code>null</code> if nothing
+   */
+  public SqlPushdown getPushdown() {
+    return pushdown;
+  }
+
+  public void setPushdown( SqlPushdown pushdown ) {
+    this.pushdown = pushdown;
+  }
+
+  /**
+   * @return JDBC settings for this data access' statements, <code>null</code> for the defaults
+   */
+  public SqlStatementSettings getStatementSettings() {
+    return statementSettings;
+  }
+
+  public void setStatementSettings( SqlStatementSettings statementSettings ) {
+    this.statementSettings = statementSettings;
+  }
+
   @Override
   public DataFactory getDataFactory() throws UnknownConnectionException, InvalidConnectionException {
+    return getDataFactory( null, getQuery() );
+  }
+
+  @Override
+  protected DataFactory getDataFactory( final ParameterDataRow parameterDataRow, final String query )
+    throws UnknownConnectionException, InvalidConnectionException {
 
     logger.debug( "Creating SQLReportDataFactory" );
 
     final SqlConnection connection = (SqlConnection) getCdaSettings().getConnection( getConnectionId() );
     final SQLReportDataFactory reportDataFactory =
-      new SQLReportDataFactory( connection.getInitializedConnectionProvider() );
+      new SQLReportDataFactory( getConnectionProvider( connection, query, parameterDataRow ) );
 
     reportDataFactory.setUserField( connection.getUserField() );
     reportDataFactory.setPasswordField( connection.getPasswordField() );
     // using deprecated version for 3.9/3.10 support until it breaks with latest 
-    reportDataFactory.setQuery( "query", getQuery() );
+    reportDataFactory.setQuery( "query", query );
     // reportDataFactory.setQuery("query", getQuery(), null, null);
 
     return reportDataFactory;
@@ -72,8 +148,346 @@ public class SqlDataAccess extends PREDataAccess {
 
   }
 
+  private ConnectionProvider getConnectionProvider( final SqlConnection connection, final String query,
+                                                     final ParameterDataRow parameterDataRow )
+    throws InvalidConnectionException {
+    ConnectionProvider provider = connection.getInitializedConnectionProvider();
+    if ( provider instanceof ReplicatedConnectionProvider ) {
+      provider = ( (ReplicatedConnectionProvider) provider ).withRoutingKey( getRoutingKey( query, parameterDataRow ) );
+    }
+    return new StatementTuningConnectionProvider( provider, statementSettings, defaultFetchSize );
+  }
+
+  /**
+   * Runs the query straight through JDBC, rows are fetched as the cursor reads them. The statement settings apply,
+   * a fetch size being what keeps most drivers from reading all rows at once.
+   */
+  @Override
+  protected RowCursor performRawCursor( final ParameterDataRow parameterDataRow ) throws QueryException {
+    final SqlConnection connection;
+    final ConnectionProvider connectionProvider;
+    try {
+      connection = (SqlConnection) getCdaSettings().getConnection( getConnectionId() );
+      connectionProvider = getConnectionProvider( connection, getQuery(), parameterDataRow );
+    } catch ( UnknownConnectionException | InvalidConnectionException e ) {
+      throw new QueryException( "Unknown connection", e );
+    }
+    final DataRow dataRow =
+      createQueryDataRow( ClassicEngineBoot.getInstance().getGlobalConfig(), parameterDataRow );
+    return SqlRowCursor.open( connectionProvider, getFieldValue( dataRow, connection.getUserField() ),
+      getFieldValue( dataRow, connection.getPasswordField() ), getQuery(), dataRow );
+  }
+
+  private static String getFieldValue( final DataRow dataRow, final String field ) {
+    if ( field == null ) {
+      return null;
+    }
+    final Object value = dataRow.get( field );
+    return value != null ? String.valueOf( value ) : null;
+  }
+
+  /**
+   * @return the same key for the same query and parameter values, as their cache key
+   */
+  private static String getRoutingKey( final String query, final ParameterDataRow parameterDataRow ) {
+    final StringBuilder key = new StringBuilder( query );
+    if ( parameterDataRow != null ) {
+      for ( String name : parameterDataRow.getColumnNames() ) {
+        final Object value = parameterDataRow.get( name );
+        key.append( '\n' ).append( name ).append( '=' )
+          .append( value instanceof Object[] ? Arrays.deepToString( (Object[]) value ) : String.valueOf( value ) );
+      }
+    }
+    return key.toString();
+  }
+
   @Override
   public ConnectionType getConnectionType() {
     return ConnectionType.SQL;
   }
+
+  /**
+   * Lets the database project, filter, sort and paginate as enabled by {@link #getPushdown()}, leaving to the
+   * in-memory post processing anything it can't express.
+   */
+  @Override
+  protected TableModel doSingleQuery( final QueryOptions queryOptions ) throws QueryException {
+    if ( pushdown == null || getCacheBuckets() != null ) {
+      // buckets are queried apart
+      return super.doSingleQuery( queryOptions );
+    }
+
+    final SqlQueryRewriter rewriter = new SqlQueryRewriter( getDialect() );
+    final QueryColumns queryColumns = new QueryColumns( queryOptions );
+    final List<Parameter> searchParameters = new ArrayList<Parameter>();
+    final String filterText = StringUtils.trim( queryOptions.getExtraSettings().get( TableModelUtils.DT_FILTER ) );
+    final boolean filter = !StringUtils.isEmpty( filterText );
+    if ( filter && pushdown.isFilter() ) {
+      addSearch( rewriter, searchParameters, queryOptions, queryColumns, filterText );
+    }
+    // rows have to be filtered before they're paginated
+    final boolean sort = pushdown.isSort() && ( !filter || rewriter.isFiltered() ) && addSort( rewriter, queryOptions );
+    if ( pushdown.isProject() ) {
+      addProjection( rewriter, queryOptions, queryColumns );
+    }
+    if ( rewriter.isEmpty() ) {
+      return super.doSingleQuery( queryOptions );
+    }
+    if ( SqlQueryRewriter.hasOrderBy( getQuery() )
+      && !rewriter.keepOrder( getQuery(), queryColumns.get() ) ) {
+      // once wrapped, the database could return the rows in any order
+      return super.doSingleQuery( queryOptions );
+    }
+
+    final TableModel tableModel = queryDataSource( queryOptions, rewriter.rewrite( getQuery() ), searchParameters );
+
+    final QueryOptions postProcessOptions;
+    try {
+      postProcessOptions = (QueryOptions) queryOptions.clone();
+    } catch ( CloneNotSupportedException e ) {
+      throw new QueryException( "Couldn't copy query options", e );
+    }
+    if ( rewriter.isFiltered() ) {
+      postProcessOptions.getExtraSettings().remove( TableModelUtils.DT_FILTER );
+    }
+    if ( sort ) {
+      postProcessOptions.setSortBy( Collections.<String>emptyList() );
+      postProcessOptions.setPaginate( false );
+    }
+
+    final TableModel outputTableModel = postProcessTableModel( postProcessOptions, tableModel );
+    if ( sort && rewriter.isPaginated() && outputTableModel instanceof MetadataTableModel ) {
+      final int rowCount = tableModel.getRowCount();
+      final int pageStart = queryOptions.getPageStart();
+      final int totalRows = rowCount < queryOptions.getPageSize() && ( rowCount > 0 || pageStart == 0 )
+        ? pageStart + rowCount // a partial page is the last one
+        : countRows( queryOptions, rewriter, searchParameters );
+      final MetadataTableModel metadataTableModel = (MetadataTableModel) outputTableModel;
+      metadataTableModel.setMetadata( "totalRows", totalRows );
+      metadataTableModel.setMetadata( "pageSize", queryOptions.getPageSize() );
+      metadataTableModel.setMetadata( "pageStart", pageStart );
+    }
+    logger.debug( "Query " + getId() + " done successfully in the database - returning tableModel" );
+    return outputTableModel;
+  }
+
+  /**
+   * Adds the sorting and pagination of <code>queryOptions</code> to the query, if it can be done in the database.
+   *
+   * @return whether they were added
+   */
+  private boolean addSort( final SqlQueryRewriter rewriter, final QueryOptions queryOptions ) {
+    final List<Integer> sortColumns = new ArrayList<Integer>();
+    final List<Boolean> ascending = new ArrayList<Boolean>();
+    if ( !queryOptions.getSortBy().isEmpty() ) {
+      final ArrayList<Integer> outputs = getOutputs( queryOptions.getOutputIndexId() );
+      if ( outputs == null || !queryOptions.getOutputColumnName().isEmpty() || !getCalculatedColumns().isEmpty()
+        || ( getOutputMode( queryOptions.getOutputIndexId() ) == OutputMode.EXCLUDE && !outputs.isEmpty() ) ) {
+        // sort columns can't be told apart from the query's columns
+        return false;
+      }
+      for ( String sortColumn : queryOptions.getSortBy() ) {
+        final Matcher m = SORT_BY.matcher( sortColumn );
+        if ( !m.matches() ) {
+          return false;
+        }
+        int column = Integer.parseInt( m.group( 1 ) );
+        if ( !outputs.isEmpty() ) {
+          if ( column >= outputs.size() ) {
+            return false;
+          }
+          column = outputs.get( column );
+        }
+        sortColumns.add( column );
+        ascending.add( !"D".equals( m.group( 2 ) ) );
+      }
+    }
+
+    final boolean paginate = queryOptions.isPaginate()
+      && ( queryOptions.getPageSize() != 0 || queryOptions.getPageStart() != 0 );
+    if ( paginate && ( queryOptions.getPageSize() < 0 || queryOptions.getPageStart() < 0 ) ) {
+      return false;
+    }
+    if ( paginate && sortColumns.isEmpty() && !SqlQueryRewriter.hasOrderBy( getQuery() ) ) {
+      // pages of unordered rows could overlap or skip some
+      return false;
+    }
+
+    for ( int i = 0; i < sortColumns.size(); i++ ) {
+      rewriter.orderBy( sortColumns.get( i ), ascending.get( i ) );
+    }
+    if ( paginate ) {
+      rewriter.page( queryOptions.getPageStart(), queryOptions.getPageSize() );
+    }
+    return true;
+  }
+
+  /**
+   * Adds the DataTables search to the query, if all the columns searched are columns of the query.
+   */
+  private void addSearch( final SqlQueryRewriter rewriter, final List<Parameter> searchParameters,
+                          final QueryOptions queryOptions, final QueryColumns queryColumnNames,
+                          final String filterText ) throws QueryException {
+    final ArrayList<Integer> outputs = getOutputs( queryOptions.getOutputIndexId() );
+    if ( outputs == null || outputs.isEmpty() || !queryOptions.getOutputColumnName().isEmpty()
+      || getOutputMode( queryOptions.getOutputIndexId() ) == OutputMode.EXCLUDE ) {
+      return;
+    }
+
+    // searchable columns are output positions, as in TableModelUtils
+    final List<Integer> searchable = new ArrayList<Integer>();
+    final String searchableColumns = queryOptions.getExtraSettings().get( TableModelUtils.DT_SEARCHABLE );
+    if ( searchableColumns != null ) {
+      for ( String index : StringUtils.split( searchableColumns, ',' ) ) {
+        final int position;
+        try {
+          position = Integer.parseInt( index.trim() );
+        } catch ( NumberFormatException e ) {
+          return;
+        }
+        if ( position < 0 || position >= outputs.size() ) {
+          return;
+        }
+        searchable.add( outputs.get( position ) );
+      }
+    } else {
+      searchable.addAll( outputs );
+    }
+    if ( searchable.isEmpty() ) {
+      return;
+    }
+
+    final List<String> queryColumns = queryColumnNames.get();
+    final List<String> columns = new ArrayList<String>( searchable.size() );
+    for ( int column : searchable ) {
+      if ( column >= queryColumns.size() ) {
+        // a calculated column
+        return;
+      }
+      final String name = queryColumns.get( column );
+      if ( queryColumns.indexOf( name ) != queryColumns.lastIndexOf( name ) ) {
+        return;
+      }
+      columns.add( name );
+    }
+
+    final String[] terms = StringUtils.split( filterText, ' ' );
+    final List<String> termParameters = new ArrayList<String>( terms.length );
+    for ( int i = 0; i < terms.length; i++ ) {
+      final Parameter parameter = new Parameter( SEARCH_PARAMETER + i, Parameter.Type.STRING.getName(), null, null,
+        Parameter.Access.PRIVATE.toString() );
+      parameter.setValue( SqlDialect.likePattern( terms[ i ] ) );
+      searchParameters.add( parameter );
+      termParameters.add( parameter.getName() );
+    }
+    rewriter.search( columns, termParameters );
+  }
+
+  /**
+   * Leaves out of the query the columns that the requested outputs don't need.
+   */
+  private void addProjection( final SqlQueryRewriter rewriter, final QueryOptions queryOptions,
+                              final QueryColumns queryColumnNames ) throws QueryException {
+    final List<String> queryColumns = queryColumnNames.get();
+    if ( new HashSet<String>( queryColumns ).size() < queryColumns.size() ) {
+      // repeated names can't be selected apart
+      return;
+    }
+    // as named after the column definitions
+    final List<String> columnNames = new ArrayList<String>( queryColumns.size() );
+    for ( int i = 0; i < queryColumns.size(); i++ ) {
+      final ColumnDefinition column = getColumnDefinition( i );
+      columnNames.add( column != null ? column.getName() : queryColumns.get( i ) );
+    }
+    final boolean[] used = ColumnProjection.getUsedColumns( this, queryOptions, columnNames );
+    if ( used == null ) {
+      return;
+    }
+    for ( int i = 0; i < queryColumns.size(); i++ ) {
+      if ( !used[ i ] ) {
+        rewriter.project( queryColumns, used );
+        return;
+      }
+    }
+  }
+
+  /**
+   * Column names of the query's results, as the database has them, looked up with an empty query at most once per
+   * request.
+   */
+  private class QueryColumns {
+
+    private final QueryOptions queryOptions;
+    private List<String> names;
+
+    QueryColumns( final QueryOptions queryOptions ) {
+      this.queryOptions = queryOptions;
+    }
+
+    List<String> get() throws QueryException {
+      if ( names == null ) {
+        names = Arrays.asList( queryColumnNames( queryOptions,
+          new SqlQueryRewriter( getDialect() ).describe( getQuery() ) ) );
+      }
+      return names;
+    }
+  }
+
+  /**
+   * Total rows of a paginated query, as another query that is cached like the data access' own results.
+   */
+  private int countRows( final QueryOptions queryOptions, final SqlQueryRewriter rewriter,
+                         final List<Parameter> searchParameters ) throws QueryException {
+    final TableModel count = queryDataSource( queryOptions, rewriter.count( getQuery() ), searchParameters );
+    if ( count.getRowCount() < 1 || !( count.getValueAt( 0, 0 ) instanceof Number ) ) {
+      throw new QueryException( "Couldn't count rows of " + getId(), null );
+    }
+    return ( (Number) count.getValueAt( 0, 0 ) ).intValue();
+  }
+
+  /**
+   * @return the declared dialect, or the one of the connection's database
+   */
+  protected SqlDialect getDialect() {
+    if ( pushdown != null && pushdown.getDialect() != null ) {
+      return pushdown.getDialect();
+    }
+    if ( dialect == null ) {
+      dialect = detectDialect();
+    }
+    return dialect;
+  }
+
+  private SqlDialect detectDialect() {
+    try {
+      final SqlConnection connection = (SqlConnection) getCdaSettings().getConnection( getConnectionId() );
+      String url = null;
+      if ( connection instanceof JdbcConnection ) {
+        url = ( (JdbcConnection) connection ).getConnectionInfo().getUrl();
+      } else if ( connection instanceof ReplicatedConnection ) {
+        final JdbcConnectionInfo replica = ( (ReplicatedConnection) connection ).getReplicas().get( 0 ).getJdbc();
+        url = replica != null ? replica.getUrl() : null;
+      }
+      if ( url != null ) {
+        final SqlDialect urlDialect = SqlDialect.fromUrl( url );
+        if ( urlDialect != null ) {
+          return urlDialect;
+        }
+      }
+      final Connection sqlConnection = connection.getInitializedConnectionProvider().createConnection( null, null );
+      try {
+        return SqlDialect.fromProductName( sqlConnection.getMetaData().getDatabaseProductName() );
+      } finally {
+        sqlConnection.close();
+      }
+    } catch ( UnknownConnectionException | InvalidConnectionException | SQLException e ) {
+      logger.warn( "Couldn't detect SQL dialect of " + getId() + ", using " + SqlDialect.GENERIC, e );
+      return SqlDialect.GENERIC;
+    }
+  }
+
+  @Override
+  public void accept( DomVisitor xmlVisitor, Element root ) {
+    xmlVisitor.visit( (SqlDataAccess) this, root );
+  }
 }
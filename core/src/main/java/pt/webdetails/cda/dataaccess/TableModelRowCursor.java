@@ -0,0 +1,77 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import javax.swing.table.TableModel;
+
+import pt.webdetails.cda.dataaccess.SimpleDataAccess.IDataSourceQuery;
+
+/**
+ * Cursor over the rows of a table, for data sources that only give their results as a whole.
+ */
+public class TableModelRowCursor implements RowCursor {
+
+  private final TableModel tableModel;
+  private IDataSourceQuery dataSourceQuery;
+  private int row = -1;
+
+  public TableModelRowCursor( final TableModel tableModel ) {
+    this.tableModel = tableModel;
+  }
+
+  /**
+   * @param dataSourceQuery query whose data source is closed along with the cursor
+   */
+  public TableModelRowCursor( final IDataSourceQuery dataSourceQuery ) {
+    this( dataSourceQuery.getTableModel() );
+    this.dataSourceQuery = dataSourceQuery;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return tableModel.getColumnCount();
+  }
+
+  @Override
+  public String getColumnName( final int column ) {
+    return tableModel.getColumnName( column );
+  }
+
+  @Override
+  public Class<?> getColumnClass( final int column ) {
+    return tableModel.getColumnClass( column );
+  }
+
+  @Override
+  public boolean next() {
+    if ( row < tableModel.getRowCount() ) {
+      row++;
+    }
+    return row < tableModel.getRowCount();
+  }
+
+  @Override
+  public Object getValue( final int column ) {
+    return tableModel.getValueAt( row, column );
+  }
+
+  @Override
+  public void close() throws QueryException {
+    if ( dataSourceQuery != null ) {
+      final IDataSourceQuery query = dataSourceQuery;
+      dataSourceQuery = null;
+      query.closeDataSource();
+    }
+  }
+}
@@ -14,37 +14,50 @@
 package pt.webdetails.cda.dataaccess;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.swing.table.TableModel;
 
 import org.dom4j.Element;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.UnknownDataAccessException;
-import pt.webdetails.cda.utils.TableModelUtils;
+import pt.webdetails.cda.utils.ConcatenatedTableModel;
 
 /**
- * Class to join 2 datatables
+ * Class to union datatables.<br>
+ * Children are either a <code>Top</code> and a <code>Bottom</code> element, or any number of <code>Member</code>
+ * elements, each with the id of a data access. Children are queried concurrently and their results stacked in
+ * document order.
  */
 public class UnionCompoundDataAccess extends CompoundDataAccess {
 
   //private static final Log logger = LogFactory.getLog(UnionCompoundDataAccess.class);
   private static final String TYPE = "union";
-  private String topId;
-  private String bottomId;
+  private List<String> memberIds;
 
 
   public UnionCompoundDataAccess() {
+    memberIds = new ArrayList<String>();
   }
 
 
   public UnionCompoundDataAccess( final Element element ) {
     super( element );
 
+    memberIds = new ArrayList<String>();
     Element top = (Element) element.selectSingleNode( "Top" );
+    if ( top != null ) {
+      memberIds.add( top.attributeValue( "id" ) );
+    }
+    for ( Object member : element.selectNodes( "Member" ) ) {
+      memberIds.add( ( (Element) member ).attributeValue( "id" ) );
+    }
     Element bottom = (Element) element.selectSingleNode( "Bottom" );
-
-    topId = top.attributeValue( "id" );
-    bottomId = bottom.attributeValue( "id" );
+    if ( bottom != null ) {
+      memberIds.add( bottom.attributeValue( "id" ) );
+    }
 
   }
 
@@ -62,10 +75,16 @@ public class UnionCompoundDataAccess extends CompoundDataAccess {
       croppedOptions.setSortBy( new ArrayList<String>() );
       croppedOptions.setPageSize( 0 );
       croppedOptions.setPageStart( 0 );
-      final TableModel tableModelA = this.getCdaSettings().getDataAccess( topId ).doQuery( croppedOptions );
-      final TableModel tableModelB = this.getCdaSettings().getDataAccess( bottomId ).doQuery( croppedOptions );
 
-      return TableModelUtils.appendTableModel( tableModelA, tableModelB );
+      List<Callable<TableModel>> queries = new ArrayList<Callable<TableModel>>( memberIds.size() );
+      for ( String memberId : memberIds ) {
+        final DataAccess dataAccess = this.getCdaSettings().getDataAccess( memberId );
+        // each child gets its own options, parameters may be changed while querying
+        final QueryOptions memberOptions = (QueryOptions) croppedOptions.clone();
+        queries.add( () -> dataAccess.doQuery( memberOptions ) );
+      }
+
+      return new ConcatenatedTableModel( ParallelQueryExecutor.invokeAll( queries ) );
 
     } catch ( CloneNotSupportedException e ) {
       throw new QueryException( "Couldn't clone settings ", e );
@@ -93,13 +112,20 @@ public class UnionCompoundDataAccess extends CompoundDataAccess {
     return properties;
   }
 
+  /**
+   * @return ids of the data accesses to union, in order
+   */
+  public List<String> getMemberIds() {
+    return Collections.unmodifiableList( memberIds );
+  }
+
   public String getTopId() {
-    return topId;
+    return memberIds.isEmpty() ? null : memberIds.get( 0 );
   }
 
 
   public String getBottomId() {
-    return bottomId;
+    return memberIds.size() < 2 ? null : memberIds.get( memberIds.size() - 1 );
   }
 
   @Override
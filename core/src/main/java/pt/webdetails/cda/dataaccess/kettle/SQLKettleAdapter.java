@@ -28,12 +28,15 @@ import pt.webdetails.cda.connections.sql.JdbcConnectionInfo;
 import pt.webdetails.cda.connections.sql.JndiConnection;
 import pt.webdetails.cda.connections.sql.SqlConnection;
 import pt.webdetails.cda.dataaccess.ColumnDefinition;
+import pt.webdetails.cda.dataaccess.DataAccess;
 import pt.webdetails.cda.dataaccess.Parameter;
 import pt.webdetails.cda.dataaccess.SqlDataAccess;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.UnknownConnectionException;
+import pt.webdetails.cda.utils.ColumnProjection;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -47,6 +50,7 @@ public class SQLKettleAdapter implements DataAccessKettleAdapter {
   private String translatedQuery;
   private String[] parameterNames;
   private DataRow parameters;
+  private String[] queryColumns;
 
   private final String DUMMY_DATABASE_NAME = "cda_dummy_datasource_name_for_export";
 
@@ -59,6 +63,7 @@ public class SQLKettleAdapter implements DataAccessKettleAdapter {
   public StepMeta getFilterStepMeta( String name, String[] columns )
     throws KettleAdapterException {
     try {
+      queryColumns = columns.clone();
       SelectValuesMeta selectValuesMeta = new SelectValuesMeta();
       selectValuesMeta.setDefault();
       ArrayList<String> fields = new ArrayList<String>();
@@ -210,7 +215,18 @@ public class SQLKettleAdapter implements DataAccessKettleAdapter {
     formulaMeta.setDefault();
     List<FormulaMetaFunction> calcTypes = new ArrayList<FormulaMetaFunction>();
     String formula;
-    for ( ColumnDefinition col : dataAccess.getCalculatedColumns() ) {
+    List<ColumnDefinition> calculatedColumns = dataAccess.getCalculatedColumns();
+    boolean[] used = null;
+    if ( queryColumns != null && dataAccess.getOutputMode() == DataAccess.OutputMode.INCLUDE ) {
+      // only what the filter step selects needs to be calculated
+      used = ColumnProjection.getUsedColumns( Arrays.asList( queryColumns ), calculatedColumns,
+        dataAccess.getOutputs(), DataAccess.OutputMode.INCLUDE );
+    }
+    for ( int i = 0; i < calculatedColumns.size(); i++ ) {
+      ColumnDefinition col = calculatedColumns.get( i );
+      if ( used != null && !used[ queryColumns.length + i ] ) {
+        continue;
+      }
       formula = col.getFormula();
       if ( formula.indexOf( "=" ) == 0 ) {
         formula = formula.substring( 1 );
@@ -0,0 +1,198 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.dataaccess.sql;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * SQL syntax differences that matter when rewriting queries.
+ */
+public enum SqlDialect {
+
+  /**
+   * <code>LIMIT/OFFSET</code>, as in HSQLDB, H2, SQLite and most others.
+   */
+  GENERIC,
+  POSTGRESQL,
+  MYSQL,
+  ORACLE,
+  SQLSERVER,
+  DB2;
+
+  /**
+   * @return the dialect named <code>name</code>, <code>null</code> if blank
+   * @throws IllegalArgumentException if there is no such dialect
+   */
+  public static SqlDialect parse( String name ) {
+    return StringUtils.isBlank( name ) ? null : valueOf( name.trim().toUpperCase() );
+  }
+
+  /**
+   * @return the dialect of a JDBC url, <code>null</code> if not known
+   */
+  public static SqlDialect fromUrl( String url ) {
+    String lowerUrl = StringUtils.lowerCase( StringUtils.trim( url ) );
+    if ( lowerUrl == null || !lowerUrl.startsWith( "jdbc:" ) ) {
+      return null;
+    } else if ( lowerUrl.startsWith( "jdbc:postgresql:" ) ) {
+      return POSTGRESQL;
+    } else if ( lowerUrl.startsWith( "jdbc:mysql:" ) || lowerUrl.startsWith( "jdbc:mariadb:" ) ) {
+      return MYSQL;
+    } else if ( lowerUrl.startsWith( "jdbc:oracle:" ) ) {
+      return ORACLE;
+    } else if ( lowerUrl.startsWith( "jdbc:sqlserver:" ) || lowerUrl.startsWith( "jdbc:jtds:sqlserver:" ) ) {
+      return SQLSERVER;
+    } else if ( lowerUrl.startsWith( "jdbc:db2:" ) || lowerUrl.startsWith( "jdbc:as400:" ) ) {
+      return DB2;
+    } else if ( lowerUrl.startsWith( "jdbc:hsqldb:" ) || lowerUrl.startsWith( "jdbc:h2:" )
+      || lowerUrl.startsWith( "jdbc:sqlite:" ) ) {
+      return GENERIC;
+    }
+    return null;
+  }
+
+  /**
+   * @param productName as in {@link java.sql.DatabaseMetaData#getDatabaseProductName()}
+   * @return the matching dialect, {@link #GENERIC} if not known
+   */
+  public static SqlDialect fromProductName( String productName ) {
+    String name = StringUtils.lowerCase( productName );
+    if ( name == null ) {
+      return GENERIC;
+    } else if ( name.contains( "postgresql" ) ) {
+      return POSTGRESQL;
+    } else if ( name.contains( "mysql" ) || name.contains( "mariadb" ) ) {
+      return MYSQL;
+    } else if ( name.contains( "oracle" ) ) {
+      return ORACLE;
+    } else if ( name.contains( "microsoft sql server" ) ) {
+      return SQLSERVER;
+    } else if ( name.startsWith( "db2" ) ) {
+      return DB2;
+    }
+    return GENERIC;
+  }
+
+  /**
+   * Escape character for {@link #likePattern(String)}, chosen for not needing escaping itself in any dialect.
+   */
+  static final char LIKE_ESCAPE = '!';
+
+  /**
+   * @return a lower case <code>LIKE</code> pattern matching values containing <code>term</code>
+   */
+  public static String likePattern( String term ) {
+    StringBuilder pattern = new StringBuilder( term.length() + 2 ).append( '%' );
+    for ( char c : term.toLowerCase( Locale.ROOT ).toCharArray() ) {
+      if ( c == '%' || c == '_' || c == LIKE_ESCAPE ) {
+        pattern.append( LIKE_ESCAPE );
+      }
+      pattern.append( c );
+    }
+    return pattern.append( '%' ).toString();
+  }
+
+  /**
+   * @return <code>name</code> as a quoted identifier
+   */
+  public String quoteIdentifier( String name ) {
+    if ( this == MYSQL ) {
+      return "`" + name.replace( "`", "``" ) + "`";
+    }
+    return "\"" + name.replace( "\"", "\"\"" ) + "\"";
+  }
+
+  /**
+   * Condition for a column's text containing a {@link #likePattern(String)}, ignoring case.
+   *
+   * @param column  quoted column
+   * @param pattern expression with the pattern
+   */
+  public String containsIgnoreCase( String column, String pattern ) {
+    final String text;
+    switch ( this ) {
+      case POSTGRESQL:
+        return "CAST(" + column + " AS TEXT) ILIKE " + pattern + " ESCAPE '" + LIKE_ESCAPE + "'";
+      case MYSQL:
+        text = "CAST(" + column + " AS CHAR)";
+        break;
+      case ORACLE:
+        text = "TO_CHAR(" + column + ")";
+        break;
+      case SQLSERVER:
+        text = "CAST(" + column + " AS NVARCHAR(MAX))";
+        break;
+      default:
+        text = "CAST(" + column + " AS VARCHAR(4000))";
+    }
+    return "LOWER(" + text + ") LIKE " + pattern + " ESCAPE '" + LIKE_ESCAPE + "'";
+  }
+
+  /**
+   * @return a typed null, for a column that is selected but not needed
+   */
+  public String nullColumn() {
+    switch ( this ) {
+      case MYSQL:
+        return "NULL";
+      case ORACLE:
+        return "CAST(NULL AS VARCHAR2(1))";
+      default:
+        return "CAST(NULL AS VARCHAR(1))";
+    }
+  }
+
+  /**
+   * Null ordering for an <code>ORDER BY</code> item, so that nulls sort first as they do in CDA's own sort.
+   *
+   * @return the suffix to add, possibly empty
+   */
+  public String nullsOrder( boolean ascending ) {
+    switch ( this ) {
+      case POSTGRESQL:
+      case ORACLE:
+      case DB2:
+        // nulls are the greatest values here
+        return ascending ? " NULLS FIRST" : " NULLS LAST";
+      default:
+        return "";
+    }
+  }
+
+  /**
+   * Appends the row range to a query.
+   *
+   * @param sql     query, ordered or not
+   * @param ordered whether the query ends with an <code>ORDER BY</code>
+   * @param offset  rows to skip
+   * @param limit   maximum rows to return
+   */
+  public void paginate( StringBuilder sql, boolean ordered, int offset, int limit ) {
+    switch ( this ) {
+      case SQLSERVER:
+        if ( !ordered ) {
+          // OFFSET needs an ORDER BY
+          sql.append( " ORDER BY (SELECT NULL)" );
+        }
+        // fall through
+      case ORACLE:
+      case DB2:
+        sql.append( " OFFSET " ).append( offset ).append( " ROWS FETCH NEXT " ).append( limit ).append( " ROWS ONLY" );
+        break;
+      default:
+        sql.append( " LIMIT " ).append( limit ).append( " OFFSET " ).append( offset );
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.dataaccess.sql;
+
+import org.dom4j.Element;
+
+/**
+ * Work a SQL data access leaves to its database, declared in a DataAccess node as:
+ * <pre>
+ *   &lt;Pushdown sort="true" filter="true" project="true" dialect="postgresql"/&gt;
+ * </pre>
+ * <code>sort</code> applies the requested sorting and pagination in the query, with a separate count query for the
+ * total rows. <code>filter</code> applies the DataTables search (<code>dtFilter</code>) as <code>LIKE</code> conditions
+ * on the searchable columns. <code>project</code> fetches only the columns needed for the requested outputs.
+ * <code>dialect</code> is only needed when it can't be told from the connection.
+ */
+public class SqlPushdown {
+
+  private final boolean sort;
+  private final boolean filter;
+  private final boolean project;
+  private final SqlDialect dialect;
+
+  public SqlPushdown( boolean sort, boolean filter, boolean project, SqlDialect dialect ) {
+    this.sort = sort;
+    this.filter = filter;
+    this.project = project;
+    this.dialect = dialect;
+  }
+
+  /**
+   * @param element a Pushdown node
+   * @throws IllegalArgumentException on an unknown dialect
+   */
+  public static SqlPushdown parse( Element element ) {
+    return new SqlPushdown(
+      Boolean.parseBoolean( element.attributeValue( "sort" ) ),
+      Boolean.parseBoolean( element.attributeValue( "filter" ) ),
+      Boolean.parseBoolean( element.attributeValue( "project" ) ),
+      SqlDialect.parse( element.attributeValue( "dialect" ) ) );
+  }
+
+  public boolean isSort() {
+    return sort;
+  }
+
+  public boolean isFilter() {
+    return filter;
+  }
+
+  public boolean isProject() {
+    return project;
+  }
+
+  /**
+   * @return the declared dialect, <code>null</code> to detect it
+   */
+  public SqlDialect getDialect() {
+    return dialect;
+  }
+}
@@ -0,0 +1,377 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.dataaccess.sql;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Wraps a SQL query so that the database does work that would otherwise be done in memory over its whole result.
+ * <pre>
+ *   SELECT * FROM ( &lt;query&gt; ) cda_query WHERE ( ... LIKE ${term} ) ORDER BY 2 DESC LIMIT 20 OFFSET 40
+ * </pre>
+ * An <code>ORDER BY</code> ending the query is taken out of the subquery, where some databases don't allow it and
+ * none has to keep it. See {@link #keepOrder(String, List)} to sort the outer query the same way.
+ */
+public class SqlQueryRewriter {
+
+  static final String ALIAS = "cda_query";
+
+  /**
+   * An <code>ORDER BY</code> item that can be moved out of the subquery: a column position or name, its direction
+   * and null ordering.
+   */
+  private static final Pattern ORDER_ITEM = Pattern.compile(
+    "(\\d+|\"(?:[^\"]|\"\")+\"|`(?:[^`]|``)+`|\\[[^\\]]+\\]|[A-Za-z_][A-Za-z0-9_$]*)"
+      + "( (?:ASC|DESC))?( NULLS (?:FIRST|LAST))?",
+    Pattern.CASE_INSENSITIVE );
+
+  /**
+   * Words after an <code>ORDER BY</code> telling it also limits the rows returned.
+   */
+  private static final Set<String> LIMITING_WORDS =
+    new HashSet<String>( Arrays.asList( "LIMIT", "OFFSET", "FETCH", "ROWS", "TOP", "FOR" ) );
+
+  private final SqlDialect dialect;
+  private String select = "*";
+  private final List<String> conditions = new ArrayList<String>();
+  private final List<String> orderBy = new ArrayList<String>();
+  private final Set<Integer> sortColumns = new HashSet<Integer>();
+  private final List<Integer> keptColumns = new ArrayList<Integer>();
+  private final List<String> keptOrderBy = new ArrayList<String>();
+  private int offset;
+  private int limit = -1;
+
+  public SqlQueryRewriter( SqlDialect dialect ) {
+    this.dialect = dialect != null ? dialect : SqlDialect.GENERIC;
+  }
+
+  public SqlDialect getDialect() {
+    return dialect;
+  }
+
+  /**
+   * Selects only some columns. The others are kept as nulls, so that column positions don't change.
+   *
+   * @param columns column names of the query's result
+   * @param used    which of them to select
+   */
+  public SqlQueryRewriter project( List<String> columns, boolean[] used ) {
+    List<String> selected = new ArrayList<String>( columns.size() );
+    for ( int i = 0; i < columns.size(); i++ ) {
+      String column = dialect.quoteIdentifier( columns.get( i ) );
+      selected.add( used[ i ] ? column : dialect.nullColumn() + " AS " + column );
+    }
+    select = StringUtils.join( selected, ", " );
+    return this;
+  }
+
+  /**
+   * Keeps only the rows where each term is contained, ignoring case, in at least one of the columns.
+   *
+   * @param columns        column names of the query's result
+   * @param termParameters names of the parameters holding a {@link SqlDialect#likePattern(String)} for each term
+   */
+  public SqlQueryRewriter search( List<String> columns, List<String> termParameters ) {
+    for ( String parameter : termParameters ) {
+      List<String> anyColumn = new ArrayList<String>( columns.size() );
+      for ( String column : columns ) {
+        anyColumn.add( dialect.containsIgnoreCase( dialect.quoteIdentifier( column ), "${" + parameter + "}" ) );
+      }
+      conditions.add( "(" + StringUtils.join( anyColumn, " OR " ) + ")" );
+    }
+    return this;
+  }
+
+  /**
+   * Adds a sort column.
+   *
+   * @param column    zero based column of the query's result
+   * @param ascending sort direction
+   */
+  public SqlQueryRewriter orderBy( int column, boolean ascending ) {
+    orderBy.add( ( column + 1 ) + ( ascending ? " ASC" : " DESC" ) + dialect.nullsOrder( ascending ) );
+    sortColumns.add( column );
+    return this;
+  }
+
+  /**
+   * Limits the rows returned.
+   *
+   * @param offset rows to skip
+   * @param limit  maximum rows to return
+   */
+  public SqlQueryRewriter page( int offset, int limit ) {
+    this.offset = offset;
+    this.limit = limit;
+    return this;
+  }
+
+  public boolean isPaginated() {
+    return limit >= 0;
+  }
+
+  /**
+   * @return if the rewritten query returns its rows in a defined order, sorted or as the query itself sorts them
+   */
+  public boolean isOrdered() {
+    return !orderBy.isEmpty() || !keptOrderBy.isEmpty();
+  }
+
+  public boolean isFiltered() {
+    return !conditions.isEmpty();
+  }
+
+  public boolean isProjected() {
+    return !"*".equals( select );
+  }
+
+  /**
+   * @return whether {@link #rewrite(String)} would leave the results as they are
+   */
+  public boolean isEmpty() {
+    return !isProjected() && !isFiltered() && orderBy.isEmpty() && !isPaginated();
+  }
+
+  /**
+   * @return if <code>query</code> ends with an <code>ORDER BY</code>, which wrapping it would lose
+   */
+  public static boolean hasOrderBy( String query ) {
+    return findOrderBy( tokenize( query ) ) >= 0;
+  }
+
+  /**
+   * Sorts the rewritten query as <code>query</code> sorts its own rows, after any sort columns added, if its
+   * <code>ORDER BY</code> only has columns of its result.
+   *
+   * @param query   the query to be rewritten
+   * @param columns column names of the query's result
+   * @return false if the order can't be kept, as when sorting by expressions or limiting the rows
+   */
+  public boolean keepOrder( String query, List<String> columns ) {
+    keptColumns.clear();
+    keptOrderBy.clear();
+    final List<Token> tokens = tokenize( query );
+    final int start = findOrderBy( tokens );
+    if ( start < 0 ) {
+      return true;
+    }
+    if ( isLimiting( tokens, start ) ) {
+      return false;
+    }
+    int end = tokens.size();
+    while ( end > start && ";".equals( tokens.get( end - 1 ).text ) ) {
+      end--;
+    }
+    final List<Integer> columnsKept = new ArrayList<Integer>();
+    final List<String> kept = new ArrayList<String>();
+    StringBuilder item = new StringBuilder();
+    for ( int i = start + 2; i <= end; i++ ) {
+      if ( i < end && !",".equals( tokens.get( i ).text ) ) {
+        item.append( item.length() > 0 ? " " : "" ).append( tokens.get( i ).text );
+        continue;
+      }
+      final Matcher m = ORDER_ITEM.matcher( item );
+      if ( !m.matches() ) {
+        return false;
+      }
+      final int column = findColumn( m.group( 1 ), columns );
+      if ( column < 0 ) {
+        return false;
+      }
+      columnsKept.add( column );
+      kept.add( ( column + 1 ) + StringUtils.upperCase( StringUtils.defaultString( m.group( 2 ) )
+        + StringUtils.defaultString( m.group( 3 ) ) ) );
+      item = new StringBuilder();
+    }
+    keptColumns.addAll( columnsKept );
+    keptOrderBy.addAll( kept );
+    return true;
+  }
+
+  /**
+   * @return zero based position of an <code>ORDER BY</code> column, -1 if it isn't one of <code>columns</code>
+   */
+  private static int findColumn( String column, List<String> columns ) {
+    if ( Character.isDigit( column.charAt( 0 ) ) ) {
+      if ( column.length() > 9 ) {
+        return -1;
+      }
+      final int position = Integer.parseInt( column ) - 1;
+      return position < columns.size() ? position : -1;
+    }
+    final char quote = column.charAt( 0 );
+    final boolean quoted = quote == '"' || quote == '`' || quote == '[';
+    final String name = quoted ? column.substring( 1, column.length() - 1 ).replace( "\"\"", "\"" ).replace( "``", "`" )
+      : column;
+    int found = -1;
+    for ( int i = 0; i < columns.size(); i++ ) {
+      if ( quoted ? name.equals( columns.get( i ) ) : name.equalsIgnoreCase( columns.get( i ) ) ) {
+        if ( found >= 0 ) {
+          // ambiguous
+          return -1;
+        }
+        found = i;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return <code>query</code> with projection, filtering, sorting and pagination applied
+   */
+  public String rewrite( String query ) {
+    StringBuilder sql = where( wrap( select, query ) );
+    final List<String> order = new ArrayList<String>( orderBy );
+    final Set<Integer> sorted = new HashSet<Integer>( sortColumns );
+    for ( int i = 0; i < keptOrderBy.size(); i++ ) {
+      // a column can't be repeated in SQL Server
+      if ( sorted.add( keptColumns.get( i ) ) ) {
+        order.add( keptOrderBy.get( i ) );
+      }
+    }
+    if ( !order.isEmpty() ) {
+      sql.append( " ORDER BY " ).append( StringUtils.join( order, ", " ) );
+    }
+    if ( isPaginated() ) {
+      dialect.paginate( sql, !order.isEmpty(), offset, limit );
+    }
+    return sql.toString();
+  }
+
+  /**
+   * @return a query counting the rows of <code>query</code>
+   */
+  public String count( String query ) {
+    return where( wrap( "COUNT(*)", query ) ).toString();
+  }
+
+  /**
+   * @return a query with the columns of <code>query</code> and no rows
+   */
+  public String describe( String query ) {
+    return wrap( "*", query ).append( " WHERE 1 = 0" ).toString();
+  }
+
+  private StringBuilder where( StringBuilder sql ) {
+    if ( isFiltered() ) {
+      sql.append( " WHERE " ).append( StringUtils.join( conditions, " AND " ) );
+    }
+    return sql;
+  }
+
+  private StringBuilder wrap( String select, String query ) {
+    String inner = StringUtils.trim( query );
+    // a trailing ; isn't valid inside a subquery
+    while ( inner.endsWith( ";" ) ) {
+      inner = inner.substring( 0, inner.length() - 1 ).trim();
+    }
+    final List<Token> tokens = tokenize( inner );
+    final int orderBy = findOrderBy( tokens );
+    if ( orderBy >= 0 && !isLimiting( tokens, orderBy ) ) {
+      inner = inner.substring( 0, tokens.get( orderBy ).start ).trim();
+    }
+    return new StringBuilder( "SELECT " ).append( select ).append( " FROM (\n" ).append( inner )
+      .append( "\n) " ).append( ALIAS );
+  }
+
+  /**
+   * @return index of the <code>ORDER</code> token of the query's last <code>ORDER BY</code>, -1 if none
+   */
+  private static int findOrderBy( List<Token> tokens ) {
+    for ( int i = tokens.size() - 2; i >= 0; i-- ) {
+      if ( "ORDER".equalsIgnoreCase( tokens.get( i ).text ) && "BY".equalsIgnoreCase( tokens.get( i + 1 ).text ) ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isLimiting( List<Token> tokens, int orderBy ) {
+    for ( int i = orderBy + 2; i < tokens.size(); i++ ) {
+      if ( LIMITING_WORDS.contains( tokens.get( i ).text.toUpperCase() ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Splits a query into words, quoted names and literals, and other characters, skipping comments and anything
+   * between parentheses, which gets a single <code>(</code> token.
+   */
+  private static List<Token> tokenize( String sql ) {
+    final List<Token> tokens = new ArrayList<Token>();
+    final int n = sql.length();
+    int depth = 0;
+    int i = 0;
+    while ( i < n ) {
+      final char c = sql.charAt( i );
+      final int start = i;
+      if ( Character.isWhitespace( c ) ) {
+        i++;
+        continue;
+      } else if ( sql.startsWith( "--", i ) ) {
+        i = sql.indexOf( '\n', i );
+        i = i < 0 ? n : i;
+        continue;
+      } else if ( sql.startsWith( "/*", i ) ) {
+        i = sql.indexOf( "*/", i + 2 );
+        i = i < 0 ? n : i + 2;
+        continue;
+      } else if ( c == '\'' || c == '"' || c == '`' || c == '[' ) {
+        final char close = c == '[' ? ']' : c;
+        i++;
+        while ( i < n && ( sql.charAt( i ) != close || ( close != ']' && sql.startsWith( "" + close + close, i ) ) ) ) {
+          // doubled quotes are escaped ones
+          i += sql.charAt( i ) == close ? 2 : 1;
+        }
+        i = Math.min( i + 1, n );
+      } else if ( Character.isLetterOrDigit( c ) || c == '_' || c == '$' ) {
+        while ( i < n && ( Character.isLetterOrDigit( sql.charAt( i ) ) || sql.charAt( i ) == '_'
+          || sql.charAt( i ) == '$' ) ) {
+          i++;
+        }
+      } else {
+        i++;
+        if ( c == ')' ) {
+          depth = Math.max( 0, depth - 1 );
+          continue;
+        } else if ( c == '(' && depth++ > 0 ) {
+          continue;
+        }
+      }
+      if ( depth == 0 || c == '(' ) {
+        tokens.add( new Token( sql.substring( start, i ), start ) );
+      }
+    }
+    return tokens;
+  }
+
+  private static class Token {
+    final String text;
+    final int start;
+
+    Token( String text, int start ) {
+      this.text = text;
+      this.start = start;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess.sql;
+
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.DataRow;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.DefaultParametrizationProviderFactory;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ParametrizationProvider;
+import pt.webdetails.cda.dataaccess.QueryException;
+import pt.webdetails.cda.dataaccess.RowCursor;
+import pt.webdetails.cda.query.QueryDeadline;
+
+/**
+ * Cursor over a JDBC result set, rows are fetched from the database as they are read.
+ */
+public class SqlRowCursor implements RowCursor {
+
+  private static final Log logger = LogFactory.getLog( SqlRowCursor.class );
+
+  private final Connection connection;
+  private final PreparedStatement statement;
+  private final ResultSet resultSet;
+  private final String[] columnNames;
+  private final Class<?>[] columnClasses;
+  private boolean closed;
+
+  private SqlRowCursor( final Connection connection, final PreparedStatement statement, final ResultSet resultSet )
+    throws SQLException {
+    this.connection = connection;
+    this.statement = statement;
+    this.resultSet = resultSet;
+    final ResultSetMetaData metaData = resultSet.getMetaData();
+    columnNames = new String[ metaData.getColumnCount() ];
+    columnClasses = new Class<?>[ columnNames.length ];
+    for ( int i = 0; i < columnNames.length; i++ ) {
+      columnNames[ i ] = metaData.getColumnLabel( i + 1 );
+      columnClasses[ i ] = getColumnClass( metaData.getColumnClassName( i + 1 ) );
+    }
+  }
+
+  /**
+   * Runs a query, binding its parameter references as statement parameters the way <code>SQLReportDataFactory</code>
+   * does. The statement is cancelled along with the current {@link QueryDeadline.Scope}, if any.
+   *
+   * @param connectionProvider provider of the connection, which is closed with the cursor
+   * @param user               user, <code>null</code> for the connection's
+   * @param password           password, <code>null</code> for the connection's
+   * @param query              query with <code>${parameter}</code> references
+   * @param parameters         parameter values
+   */
+  public static SqlRowCursor open( final ConnectionProvider connectionProvider, final String user,
+                                   final String password, final String query, final DataRow parameters )
+    throws QueryException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = connectionProvider.createConnection( user, password );
+      final ParametrizationProvider parametrization = new DefaultParametrizationProviderFactory().create( connection );
+      final String translatedQuery = parametrization.rewriteQueryForParametrization( connection, query, parameters );
+      statement =
+        connection.prepareStatement( translatedQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+      int index = 1;
+      for ( String name : parametrization.getPreparedParameterNames() ) {
+        final Object value = parameters.get( name );
+        if ( value instanceof Object[] && ( (Object[]) value ).length > 0 ) {
+          // expanded into one statement parameter per element
+          for ( Object element : (Object[]) value ) {
+            statement.setObject( index++, toSqlValue( element ) );
+          }
+        } else {
+          statement.setObject( index++, value instanceof Object[] ? null : toSqlValue( value ) );
+        }
+      }
+
+      final QueryDeadline.Scope scope = QueryDeadline.currentScope();
+      if ( scope != null ) {
+        final int timeout = getTimeoutSeconds( scope );
+        if ( statement.getQueryTimeout() <= 0 || statement.getQueryTimeout() > timeout ) {
+          statement.setQueryTimeout( timeout );
+        }
+        final PreparedStatement running = statement;
+        scope.onCancel( () -> cancel( running ) );
+      }
+
+      final SqlRowCursor cursor = new SqlRowCursor( connection, statement, statement.executeQuery() );
+      connection = null;
+      return cursor;
+    } catch ( SQLException e ) {
+      throw new QueryException( e.getMessage(), e );
+    } catch ( Exception e ) {
+      throw new QueryException( "Unable to run query", e );
+    } finally {
+      if ( connection != null ) {
+        closeQuietly( statement, connection );
+      }
+    }
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columnNames.length;
+  }
+
+  @Override
+  public String getColumnName( final int column ) {
+    return columnNames[ column ];
+  }
+
+  @Override
+  public Class<?> getColumnClass( final int column ) {
+    return columnClasses[ column ];
+  }
+
+  @Override
+  public boolean next() throws QueryException {
+    try {
+      return !closed && resultSet.next();
+    } catch ( SQLException e ) {
+      throw new QueryException( "Error reading query results", e );
+    }
+  }
+
+  @Override
+  public Object getValue( final int column ) throws QueryException {
+    try {
+      final Object value = resultSet.getObject( column + 1 );
+      if ( value instanceof Clob ) {
+        final Clob clob = (Clob) value;
+        return clob.getSubString( 1, (int) clob.length() );
+      }
+      return value;
+    } catch ( SQLException e ) {
+      throw new QueryException( "Error reading column " + columnNames[ column ], e );
+    }
+  }
+
+  @Override
+  public void close() {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    try {
+      resultSet.close();
+    } catch ( SQLException e ) {
+      logger.debug( "Error closing result set", e );
+    }
+    closeQuietly( statement, connection );
+  }
+
+  private static Object toSqlValue( final Object value ) {
+    if ( value instanceof Date && !( value instanceof java.sql.Date || value instanceof java.sql.Time
+      || value instanceof Timestamp ) ) {
+      return new Timestamp( ( (Date) value ).getTime() );
+    }
+    return value;
+  }
+
+  private static Class<?> getColumnClass( final String className ) {
+    if ( className == null ) {
+      return Object.class;
+    }
+    try {
+      return Class.forName( className, false, SqlRowCursor.class.getClassLoader() );
+    } catch ( ClassNotFoundException e ) {
+      return Object.class;
+    }
+  }
+
+  private static int getTimeoutSeconds( final QueryDeadline.Scope scope ) {
+    final long remaining = scope.getDeadline().getRemainingMillis();
+    return (int) Math.max( 1, Math.min( Integer.MAX_VALUE, ( remaining + 999 ) / 1000 ) );
+  }
+
+  private static void cancel( final PreparedStatement statement ) {
+    try {
+      statement.cancel();
+    } catch ( SQLException e ) {
+      logger.warn( "Unable to cancel query", e );
+    }
+  }
+
+  private static void closeQuietly( final PreparedStatement statement, final Connection connection ) {
+    if ( statement != null ) {
+      try {
+        statement.close();
+      } catch ( SQLException e ) {
+        logger.debug( "Error closing statement", e );
+      }
+    }
+    try {
+      connection.close();
+    } catch ( SQLException e ) {
+      logger.debug( "Error closing connection", e );
+    }
+  }
+}
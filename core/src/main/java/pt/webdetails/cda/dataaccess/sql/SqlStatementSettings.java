@@ -0,0 +1,95 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess.sql;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.StringUtils;
+import org.dom4j.Element;
+
+/**
+ * JDBC settings for the statements of a SQL data access, declared in a DataAccess node as:
+ * <pre>
+ *   &lt;Statement fetchSize="1000" queryTimeout="60" readOnly="true" forwardOnly="true"/&gt;
+ * </pre>
+ * <code>fetchSize</code> is the number of rows the driver fetches per round trip and <code>queryTimeout</code> how
+ * long, in seconds, a statement may run. <code>readOnly</code> marks the connection as read only while the query runs
+ * and <code>forwardOnly</code> asks for forward only result sets instead of scrollable ones.
+ */
+public class SqlStatementSettings implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Integer fetchSize;
+  private final Integer queryTimeout;
+  private final boolean readOnly;
+  private final boolean forwardOnly;
+
+  public SqlStatementSettings( Integer fetchSize, Integer queryTimeout, boolean readOnly, boolean forwardOnly ) {
+    this.fetchSize = fetchSize;
+    this.queryTimeout = queryTimeout;
+    this.readOnly = readOnly;
+    this.forwardOnly = forwardOnly;
+  }
+
+  /**
+   * @param element a Statement node
+   * @throws IllegalArgumentException on a value that isn't a positive number
+   */
+  public static SqlStatementSettings parse( Element element ) {
+    return new SqlStatementSettings(
+      parsePositive( element, "fetchSize" ),
+      parsePositive( element, "queryTimeout" ),
+      Boolean.parseBoolean( element.attributeValue( "readOnly" ) ),
+      Boolean.parseBoolean( element.attributeValue( "forwardOnly" ) ) );
+  }
+
+  private static Integer parsePositive( Element element, String attribute ) {
+    final String value = element.attributeValue( attribute );
+    if ( StringUtils.isBlank( value ) ) {
+      return null;
+    }
+    try {
+      final int number = Integer.parseInt( value.trim() );
+      if ( number > 0 ) {
+        return number;
+      }
+    } catch ( NumberFormatException e ) {
+      // fall through
+    }
+    throw new IllegalArgumentException( "Invalid " + attribute + ": " + value );
+  }
+
+  /**
+   * @return rows fetched per round trip, <code>null</code> for the global setting
+   */
+  public Integer getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @return statement timeout in seconds, <code>null</code> for none
+   */
+  public Integer getQueryTimeout() {
+    return queryTimeout;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  public boolean isForwardOnly() {
+    return forwardOnly;
+  }
+}
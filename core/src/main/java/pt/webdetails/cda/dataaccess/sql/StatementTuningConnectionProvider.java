@@ -0,0 +1,151 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+/**
+ * Applies {@link SqlStatementSettings} to the connections and statements the reporting engine creates.
+ */
+public class StatementTuningConnectionProvider implements ConnectionProvider {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log logger = LogFactory.getLog( StatementTuningConnectionProvider.class );
+
+  private final ConnectionProvider connectionProvider;
+  private final int fetchSize;
+  private final int queryTimeout;
+  private final boolean readOnly;
+  private final boolean forwardOnly;
+
+  /**
+   * @param connectionProvider provider of the actual connections
+   * @param settings           statement settings, <code>null</code> for none
+   * @param defaultFetchSize   fetch size when the settings have none, 0 for the driver's
+   */
+  public StatementTuningConnectionProvider( ConnectionProvider connectionProvider, SqlStatementSettings settings,
+                                            int defaultFetchSize ) {
+    this.connectionProvider = connectionProvider;
+    this.fetchSize = settings != null && settings.getFetchSize() != null ? settings.getFetchSize() : defaultFetchSize;
+    this.queryTimeout = settings != null && settings.getQueryTimeout() != null ? settings.getQueryTimeout() : 0;
+    this.readOnly = settings != null && settings.isReadOnly();
+    this.forwardOnly = settings != null && settings.isForwardOnly();
+  }
+
+  /**
+   * @return whether there is anything to apply
+   */
+  public boolean isTuning() {
+    return fetchSize > 0 || queryTimeout > 0 || readOnly || forwardOnly;
+  }
+
+  @Override
+  public Connection createConnection( String user, String password ) throws SQLException {
+    final Connection connection = connectionProvider.createConnection( user, password );
+    if ( connection == null || !isTuning() ) {
+      return connection;
+    }
+    boolean restoreReadOnly = false;
+    if ( readOnly ) {
+      try {
+        if ( !connection.isReadOnly() ) {
+          connection.setReadOnly( true );
+          restoreReadOnly = true;
+        }
+      } catch ( SQLException e ) {
+        logger.debug( "Driver doesn't support read only connections", e );
+      }
+    }
+    return (Connection) Proxy.newProxyInstance( StatementTuningConnectionProvider.class.getClassLoader(),
+      new Class<?>[] { Connection.class }, new TuningHandler( connection, restoreReadOnly ) );
+  }
+
+  @Override
+  public Object getConnectionHash() {
+    return connectionProvider.getConnectionHash();
+  }
+
+  private void tune( Statement statement ) throws SQLException {
+    if ( fetchSize > 0 ) {
+      statement.setFetchSize( fetchSize );
+    }
+    if ( queryTimeout > 0 ) {
+      statement.setQueryTimeout( queryTimeout );
+    }
+  }
+
+  /**
+   * Index of the result set type argument of a statement creating method, -1 if it has none.
+   */
+  private static int getResultSetTypeIndex( Method method ) {
+    final Class<?>[] types = method.getParameterTypes();
+    final int index = "createStatement".equals( method.getName() ) ? 0 : 1;
+    // the type is always followed by the concurrency
+    return types.length > index + 1 && types[ index ] == int.class && types[ index + 1 ] == int.class ? index : -1;
+  }
+
+  private class TuningHandler implements InvocationHandler {
+
+    private final Connection connection;
+    private final boolean restoreReadOnly;
+
+    TuningHandler( Connection connection, boolean restoreReadOnly ) {
+      this.connection = connection;
+      this.restoreReadOnly = restoreReadOnly;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      final String name = method.getName();
+      final boolean createsStatement =
+        "createStatement".equals( name ) || "prepareStatement".equals( name ) || "prepareCall".equals( name );
+      if ( createsStatement && forwardOnly ) {
+        final int typeIndex = getResultSetTypeIndex( method );
+        if ( typeIndex >= 0 ) {
+          args[ typeIndex ] = ResultSet.TYPE_FORWARD_ONLY;
+        }
+      } else if ( "close".equals( name ) && restoreReadOnly && !connection.isClosed() ) {
+        // pooled connections go back as they came
+        try {
+          connection.setReadOnly( false );
+        } catch ( SQLException e ) {
+          logger.debug( "Unable to restore connection to read-write", e );
+        }
+      }
+
+      final Object result;
+      try {
+        result = method.invoke( connection, args );
+      } catch ( InvocationTargetException e ) {
+        throw e.getCause();
+      }
+      if ( createsStatement && result instanceof Statement ) {
+        tune( (Statement) result );
+      }
+      return result;
+    }
+  }
+}
@@ -29,7 +29,7 @@ public abstract class CdaEvent extends PluginEvent {
 
   enum CdaEventType {
 
-    QueryTooLong, QueryError,
+    QueryTooLong, QueryError, CircuitBreakerStateChange,
   }
 
   public static class QueryInfo implements JsonSerializable {
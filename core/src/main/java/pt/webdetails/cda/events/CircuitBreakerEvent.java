@@ -0,0 +1,41 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.events;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A connection's circuit breaker changed state while running the query in its info.
+ */
+public class CircuitBreakerEvent extends CdaEvent {
+
+  private String connection;
+  private String state;
+
+  public CircuitBreakerEvent( QueryInfo queryInfo, String connection, String state ) throws JSONException {
+    super( CdaEventType.CircuitBreakerStateChange, queryInfo );
+    this.connection = connection;
+    this.state = state;
+  }
+
+  @Override
+  public JSONObject toJSON() throws JSONException {
+    JSONObject obj = super.toJSON();
+    obj.put( "connection", connection );
+    obj.put( "state", state );
+    return obj;
+  }
+
+}
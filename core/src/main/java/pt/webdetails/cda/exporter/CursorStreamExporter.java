@@ -0,0 +1,74 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.exporter;
+
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.dataaccess.CursorDataAccess;
+import pt.webdetails.cda.dataaccess.QueryException;
+import pt.webdetails.cda.dataaccess.RowCursor;
+import pt.webdetails.cda.query.QueryOptions;
+
+/**
+ * Exports the rows of a query as they arrive. The query is run by {@link #open()}, or when the results are written
+ * if it wasn't opened before.
+ */
+public class CursorStreamExporter implements StreamExporter {
+
+  private static final Log logger = LogFactory.getLog( CursorStreamExporter.class );
+
+  private final CursorExporter exporter;
+  private final CursorDataAccess dataAccess;
+  private final QueryOptions queryOptions;
+  private RowCursor cursor;
+
+  public CursorStreamExporter( CursorExporter exporter, CursorDataAccess dataAccess, QueryOptions queryOptions ) {
+    this.exporter = exporter;
+    this.dataAccess = dataAccess;
+    this.queryOptions = queryOptions;
+  }
+
+  /**
+   * Runs the query, so that rejections and query errors are thrown before the response starts. Its results must then
+   * be exported, in this same thread.
+   */
+  public void open() throws QueryException {
+    if ( cursor == null ) {
+      cursor = dataAccess.openCursor( queryOptions );
+    }
+  }
+
+  @Override
+  public void export( OutputStream out ) throws ExporterException {
+    try ( RowCursor rows = cursor != null ? cursor : dataAccess.openCursor( queryOptions ) ) {
+      cursor = null;
+      exporter.export( out, rows );
+    } catch ( QueryException e ) {
+      throw new ExporterException( "Query " + dataAccess.getId() + " failed while streaming its results", e );
+    }
+    logger.debug( "Query " + dataAccess.getId() + " streamed successfully" );
+  }
+
+  @Override
+  public String getMimeType() {
+    return exporter.getMimeType();
+  }
+
+  @Override
+  public String getAttachmentName() {
+    return exporter.getAttachmentName();
+  }
+}
@@ -13,8 +13,11 @@
 
 package pt.webdetails.cda.exporter;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Map;
 
 import javax.swing.table.TableModel;
@@ -25,9 +28,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import pt.webdetails.cda.dataaccess.QueryException;
+import pt.webdetails.cda.dataaccess.RowCursor;
 import pt.webdetails.cda.utils.MetadataTableModel;
 
-public class JsonExporter extends AbstractExporter {
+public class JsonExporter extends AbstractExporter implements CursorExporter {
   private static final String MIME_TYPE = "application/json";
   private static final Log logger = LogFactory.getLog( XmlExporter.class );
   private String attachmentName;
@@ -78,6 +83,57 @@ public class JsonExporter extends AbstractExporter {
   }
 
 
+  /**
+   * Writes rows as they are read. The total number of rows, only known at the end, comes after them.
+   */
+  public void export( final OutputStream out, final RowCursor cursor ) throws ExporterException {
+    try {
+      final Writer writer = new BufferedWriter( new OutputStreamWriter( out, "UTF-8" ) );
+      if ( isJsonp ) {
+        writer.write( this.getSetting( "callback", "xxx" ).concat( "(" ) );
+      }
+
+      final int columnCount = cursor.getColumnCount();
+      final JSONArray metadataArray = new JSONArray();
+      boolean[] isColumnDouble = new boolean[ columnCount ];
+      for ( int i = 0; i < columnCount; i++ ) {
+        Class<?> columnClass = cursor.getColumnClass( i );
+        isColumnDouble[ i ] = ( columnClass.isAssignableFrom( Double.class ) );
+        metadataArray.put( getColumnInfo( i, cursor.getColumnName( i ), columnClass ) );
+      }
+      writer.write( "{\"metadata\":" );
+      writer.write( metadataArray.toString() );
+      writer.write( ",\"resultset\":[" );
+
+      int rowCount = 0;
+      while ( cursor.next() ) {
+        if ( rowCount++ > 0 ) {
+          writer.write( ',' );
+        }
+        final JSONArray rowArray = new JSONArray();
+        for ( int colIdx = 0; colIdx < columnCount; colIdx++ ) {
+          rowArray.put( getJsonValue( cursor.getValue( colIdx ), isColumnDouble[ colIdx ] ) );
+        }
+        writer.write( rowArray.toString() );
+      }
+
+      writer.write( "],\"queryInfo\":" );
+      writer.write( new JSONObject().put( "totalRows", String.valueOf( rowCount ) ).toString() );
+      writer.write( '}' );
+      if ( isJsonp ) {
+        writer.write( ");" );
+      }
+      writer.flush();
+    } catch ( IOException e ) {
+      throw new ExporterException( "IO Exception converting to utf-8", e );
+    } catch ( JSONException e ) {
+      throw new ExporterException( "JSONException building object", e );
+    } catch ( QueryException e ) {
+      throw new ExporterException( "Error reading query results", e );
+    }
+  }
+
+
   public JSONObject getTableAsJson( TableModel tableModel, Integer rowLimit ) throws JSONException, ExporterException {
     JSONObject json = new JSONObject();
 
@@ -93,13 +149,9 @@ public class JsonExporter extends AbstractExporter {
 
     boolean[] isColumnDouble = new boolean[ columnCount ];
     for ( int i = 0; i < columnCount; i++ ) {
-      JSONObject info = new JSONObject();
-      info.put( "colIndex", i );
-      info.put( "colName", tableModel.getColumnName( i ) );
       Class<?> columnClass = tableModel.getColumnClass( i );
       isColumnDouble[ i ] = ( columnClass.isAssignableFrom( Double.class ) );
-      info.put( "colType", getColType( columnClass ) );
-      metadataArray.put( info );
+      metadataArray.put( getColumnInfo( i, tableModel.getColumnName( i ), columnClass ) );
     }
     json.put( "metadata", metadataArray );
 
@@ -111,18 +163,7 @@ public class JsonExporter extends AbstractExporter {
     for ( int rowIdx = 0; rowIdx < rowCount; rowIdx++ ) {
       final JSONArray rowArray = new JSONArray();
       for ( int colIdx = 0; colIdx < columnCount; colIdx++ ) {
-        Object value = tableModel.getValueAt( rowIdx, colIdx );
-        try {
-          if ( value != null && isColumnDouble[ colIdx ] && ( ( (Double) value ).isInfinite() || ( (Double) value )
-            .isNaN() ) ) {
-            value = null;
-            //value = Double.POSITIVE_INFINITY == (Double) value ? "Infinity" : "-Infinity";//workaround for JSON
-            // issue with Infinity
-          }
-        } catch ( ClassCastException e ) {
-          //just because it says Double doesn't mean we don't get oranges
-        }
-        rowArray.put( value );
+        rowArray.put( getJsonValue( tableModel.getValueAt( rowIdx, colIdx ), isColumnDouble[ colIdx ] ) );
       }
       valuesArray.put( rowArray );
     }
@@ -130,6 +171,28 @@ public class JsonExporter extends AbstractExporter {
     return json;
   }
 
+  private JSONObject getColumnInfo( final int index, final String name, final Class<?> columnClass )
+    throws JSONException, ExporterException {
+    JSONObject info = new JSONObject();
+    info.put( "colIndex", index );
+    info.put( "colName", name );
+    info.put( "colType", getColType( columnClass ) );
+    return info;
+  }
+
+  private static Object getJsonValue( Object value, final boolean isColumnDouble ) {
+    try {
+      if ( value != null && isColumnDouble && ( ( (Double) value ).isInfinite() || ( (Double) value ).isNaN() ) ) {
+        value = null;
+        //value = Double.POSITIVE_INFINITY == (Double) value ? "Infinity" : "-Infinity";//workaround for JSON
+        // issue with Infinity
+      }
+    } catch ( ClassCastException e ) {
+      //just because it says Double doesn't mean we don't get oranges
+    }
+    return value;
+  }
+
   public String getMimeType() {
     return MIME_TYPE;
   }
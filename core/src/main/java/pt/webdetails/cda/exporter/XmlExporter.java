@@ -30,8 +30,12 @@ import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import pt.webdetails.cda.dataaccess.QueryException;
+import pt.webdetails.cda.dataaccess.RowCursor;
 
-public class XmlExporter extends AbstractExporter {
+public class XmlExporter extends AbstractExporter implements CursorExporter {
   private static final String MIME_TYPE = "text/xml";
   private static final Log logger = LogFactory.getLog( XmlExporter.class );
   private String attachmentName;
@@ -58,11 +62,7 @@ public class XmlExporter extends AbstractExporter {
     final int rowCount = tableModel.getRowCount();
 
     for ( int i = 0; i < columnCount; i++ ) {
-      final Element columnInfo = metadata.addElement( "ColumnMetaData" );
-      columnInfo.addAttribute( "index", ( String.valueOf( i ) ) );
-      columnInfo.addAttribute( "type", getColType( tableModel.getColumnClass( i ) ) );
-      columnInfo.addAttribute( "name", tableModel.getColumnName( i ) );
-
+      addColumnMetaData( metadata, i, tableModel.getColumnName( i ), tableModel.getColumnClass( i ) );
     }
 
     SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US );
@@ -72,18 +72,7 @@ public class XmlExporter extends AbstractExporter {
       final Element row = resultSet.addElement( "Row" );
 
       for ( int colIdx = 0; colIdx < columnCount; colIdx++ ) {
-        final Element col = row.addElement( "Col" );
-
-        final Object value = tableModel.getValueAt( rowIdx, colIdx );
-        if ( value instanceof Date ) {
-          col.setText( format.format( value ) );
-        } else if ( value != null ) {
-          // numbers can be safely converted via toString, as they use a well-defined format there
-          col.setText( value.toString() );
-        } else {
-          col.addAttribute( "isNull", "true" );
-        }
-
+        addCol( row, tableModel.getValueAt( rowIdx, colIdx ), format );
       }
     }
 
@@ -98,6 +87,67 @@ public class XmlExporter extends AbstractExporter {
     }
   }
 
+  /**
+   * Writes rows as they are read, each one only built in memory while written.
+   */
+  public void export( final OutputStream out, final RowCursor cursor ) throws ExporterException {
+    try {
+      final Writer writer = new BufferedWriter( new OutputStreamWriter( out, "UTF-8" ) );
+      final OutputFormat outputFormat = new OutputFormat();
+      outputFormat.setEncoding( "UTF-8" );
+      outputFormat.setSuppressDeclaration( true );
+      final XMLWriter xmlWriter = new XMLWriter( writer, outputFormat );
+      writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+
+      final Element root = DocumentHelper.createElement( "CdaExport" );
+      xmlWriter.writeOpen( root );
+
+      final Element metadata = DocumentHelper.createElement( "MetaData" );
+      for ( int i = 0; i < cursor.getColumnCount(); i++ ) {
+        addColumnMetaData( metadata, i, cursor.getColumnName( i ), cursor.getColumnClass( i ) );
+      }
+      xmlWriter.write( metadata );
+
+      SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US );
+      final Element resultSet = DocumentHelper.createElement( "ResultSet" );
+      xmlWriter.writeOpen( resultSet );
+      while ( cursor.next() ) {
+        final Element row = DocumentHelper.createElement( "Row" );
+        for ( int colIdx = 0; colIdx < cursor.getColumnCount(); colIdx++ ) {
+          addCol( row, cursor.getValue( colIdx ), format );
+        }
+        xmlWriter.write( row );
+      }
+      xmlWriter.writeClose( resultSet );
+      xmlWriter.writeClose( root );
+      xmlWriter.flush();
+    } catch ( IOException e ) {
+      throw new ExporterException( "IO Exception converting to utf-8", e );
+    } catch ( QueryException e ) {
+      throw new ExporterException( "Error reading query results", e );
+    }
+  }
+
+  private void addColumnMetaData( final Element metadata, final int index, final String name,
+                                  final Class<?> columnClass ) throws ExporterException {
+    final Element columnInfo = metadata.addElement( "ColumnMetaData" );
+    columnInfo.addAttribute( "index", ( String.valueOf( index ) ) );
+    columnInfo.addAttribute( "type", getColType( columnClass ) );
+    columnInfo.addAttribute( "name", name );
+  }
+
+  private static void addCol( final Element row, final Object value, final SimpleDateFormat format ) {
+    final Element col = row.addElement( "Col" );
+    if ( value instanceof Date ) {
+      col.setText( format.format( value ) );
+    } else if ( value != null ) {
+      // numbers can be safely converted via toString, as they use a well-defined format there
+      col.setText( value.toString() );
+    } else {
+      col.addAttribute( "isNull", "true" );
+    }
+  }
+
   public String getMimeType() {
     return MIME_TYPE;
   }
@@ -0,0 +1,189 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.swing.table.TableModel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.dataaccess.Parameter;
+import pt.webdetails.cda.dataaccess.QueryException;
+
+/**
+ * Results of the data accesses evaluated while serving one request.<br>
+ * A data access queried more than once with the same options in the same request, e.g. a child shared by several
+ * compound data accesses, is only evaluated once, whether or not its results are cached. Concurrent evaluations of
+ * the same query wait for the first one.<br>
+ * Each evaluation is given the keys of those it is part of (see {@link QueryOptions#getEvaluationChain()}), so a data
+ * access depending on itself is reported instead of waiting forever for its own results, whichever threads the
+ * evaluations run in.
+ */
+public class EvaluationContext {
+
+  private static final Log logger = LogFactory.getLog( EvaluationContext.class );
+
+  private final Map<List<Object>, FutureTask<TableModel>> results =
+    new ConcurrentHashMap<List<Object>, FutureTask<TableModel>>();
+  // evaluations waiting for another one to finish, by waiting thread
+  private final Map<Thread, Wait> waits = new HashMap<Thread, Wait>();
+
+  private static class Wait {
+    // evaluations that can't go on until the awaited one is done
+    final List<List<Object>> chain;
+    final List<Object> key;
+
+    Wait( List<List<Object>> chain, List<Object> key ) {
+      this.chain = chain;
+      this.key = key;
+    }
+  }
+
+  /**
+   * @param settingsId   id of the CDA file
+   * @param dataAccessId id of the data access
+   * @param queryOptions options it is queried with
+   * @return what tells this evaluation apart from the others in a request
+   */
+  public static List<Object> getKey( final String settingsId, final String dataAccessId,
+                                     final QueryOptions queryOptions ) {
+    final Map<String, String> parameters = new TreeMap<String, String>();
+    for ( Parameter parameter : queryOptions.getParameters() ) {
+      parameters.put( parameter.getName(), parameter.getStringValue() );
+    }
+    return Arrays.<Object>asList( settingsId, dataAccessId, queryOptions.getOutputIndexId(),
+      new ArrayList<String>( queryOptions.getOutputColumnName() ), new ArrayList<String>( queryOptions.getSortBy() ),
+      queryOptions.isPaginate(), queryOptions.getPageStart(), queryOptions.getPageSize(),
+      new TreeMap<String, String>( queryOptions.getExtraSettings() ), parameters );
+  }
+
+  /**
+   * @param chain keys of the evaluations a query is part of
+   * @param key   key of the query
+   * @return the chain of the query's own dependencies
+   */
+  public static List<List<Object>> extendChain( final List<List<Object>> chain, final List<Object> key ) {
+    final List<List<Object>> extended = new ArrayList<List<Object>>( chain.size() + 1 );
+    extended.addAll( chain );
+    extended.add( key );
+    return Collections.unmodifiableList( extended );
+  }
+
+  /**
+   * Evaluates a query, unless it was already evaluated in this context.
+   *
+   * @param key        see {@link #getKey(String, String, QueryOptions)}
+   * @param chain      keys of the evaluations the query is part of, see {@link QueryOptions#getEvaluationChain()}
+   * @param evaluation runs the query
+   * @return the query results, shared by all evaluations of the same key
+   * @throws QueryException also if the query depends on itself
+   */
+  public TableModel evaluate( final List<Object> key, final List<List<Object>> chain,
+                              final Callable<TableModel> evaluation ) throws QueryException {
+    if ( chain.contains( key ) ) {
+      throw new QueryException( "Data access " + key.get( 1 ) + " depends on itself", null );
+    }
+    final FutureTask<TableModel> task = new FutureTask<TableModel>( evaluation );
+    FutureTask<TableModel> result = results.putIfAbsent( key, task );
+    boolean waiting = false;
+    if ( result == null ) {
+      result = task;
+      task.run();
+    } else {
+      if ( logger.isDebugEnabled() ) {
+        logger.debug( "Reusing results of " + key.get( 1 ) + " evaluated earlier in this request" );
+      }
+      if ( !result.isDone() ) {
+        synchronized ( waits ) {
+          if ( !Collections.disjoint( getAwaited( key ), chain ) ) {
+            throw new QueryException( "Data access " + key.get( 1 ) + " depends on itself", null );
+          }
+          waits.put( Thread.currentThread(), new Wait( chain, key ) );
+          waiting = true;
+        }
+      }
+    }
+    try {
+      return result.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new QueryException( "Interrupted while waiting for query", e );
+    } catch ( ExecutionException e ) {
+      // a later evaluation may try again
+      results.remove( key, result );
+      final Throwable cause = e.getCause();
+      if ( cause instanceof QueryException ) {
+        throw (QueryException) cause;
+      }
+      throw new QueryException( "Query failed", cause );
+    } finally {
+      if ( waiting ) {
+        synchronized ( waits ) {
+          waits.remove( Thread.currentThread() );
+        }
+      }
+    }
+  }
+
+  /**
+   * @return key of the given evaluation and those of the evaluations it is waiting for, directly or not
+   */
+  private Set<List<Object>> getAwaited( final List<Object> key ) {
+    final Set<List<Object>> result = new HashSet<List<Object>>();
+    result.add( key );
+    // an evaluation is blocked by what any evaluation it is part of waits for
+    final Map<List<Object>, Set<List<Object>>> blocking = new HashMap<List<Object>, Set<List<Object>>>();
+    for ( Wait wait : waits.values() ) {
+      for ( List<Object> waiting : wait.chain ) {
+        Set<List<Object>> awaited = blocking.get( waiting );
+        if ( awaited == null ) {
+          awaited = new HashSet<List<Object>>();
+          blocking.put( waiting, awaited );
+        }
+        awaited.add( wait.key );
+      }
+    }
+    final List<List<Object>> pending = new ArrayList<List<Object>>( result );
+    while ( !pending.isEmpty() ) {
+      final Set<List<Object>> awaited = blocking.get( pending.remove( pending.size() - 1 ) );
+      if ( awaited != null ) {
+        for ( List<Object> next : awaited ) {
+          if ( result.add( next ) ) {
+            pending.add( next );
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return number of evaluations
+   */
+  public int size() {
+    return results.size();
+  }
+}
@@ -0,0 +1,233 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.query;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.dataaccess.QueryTimeoutException;
+
+/**
+ * Time by which a request, or part of it, must be done.<br>
+ * Work checks the deadline before starting (see {@link #check(String)}). Work that can be interrupted, such as a
+ * running database query, runs in a {@link Scope} and registers how to cancel itself; it is cancelled when the
+ * deadline passes or {@link #cancel()} is called.<br>
+ * A deadline made by {@link #limit(QueryDeadline, long)} is also bound by the one it came from.
+ */
+public class QueryDeadline {
+
+  private static final Log logger = LogFactory.getLog( QueryDeadline.class );
+
+  private static final ThreadLocal<Scope> currentScope = new ThreadLocal<Scope>();
+  private static final Object lock = new Object();
+  private static volatile ScheduledThreadPoolExecutor timer;
+
+  private final long deadline;
+  private final QueryDeadline parent;
+  private volatile boolean cancelled;
+  private final Set<Scope> scopes = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param timeoutMs how long from now until the deadline
+   */
+  public QueryDeadline( long timeoutMs ) {
+    this( null, timeoutMs );
+  }
+
+  private QueryDeadline( QueryDeadline parent, long timeoutMs ) {
+    final long now = System.currentTimeMillis();
+    this.deadline = timeoutMs < Long.MAX_VALUE - now ? now + timeoutMs : Long.MAX_VALUE;
+    this.parent = parent;
+  }
+
+  /**
+   * @param deadline  current deadline, may be <code>null</code>
+   * @param timeoutMs maximum time from now, non positive for no maximum
+   * @return the earliest of <code>deadline</code> and <code>timeoutMs</code> from now, <code>null</code> if neither
+   */
+  public static QueryDeadline limit( QueryDeadline deadline, long timeoutMs ) {
+    if ( timeoutMs <= 0 ) {
+      return deadline;
+    }
+    if ( deadline == null ) {
+      return new QueryDeadline( timeoutMs );
+    }
+    return System.currentTimeMillis() + timeoutMs < deadline.getDeadline()
+      ? new QueryDeadline( deadline, timeoutMs ) : deadline;
+  }
+
+  /**
+   * @return the deadline, in milliseconds since the epoch
+   */
+  public long getDeadline() {
+    return parent != null ? Math.min( deadline, parent.getDeadline() ) : deadline;
+  }
+
+  public long getRemainingMillis() {
+    return Math.max( 0, getDeadline() - System.currentTimeMillis() );
+  }
+
+  public boolean isCancelled() {
+    return cancelled || ( parent != null && parent.isCancelled() );
+  }
+
+  /**
+   * @return if the deadline passed or it was cancelled
+   */
+  public boolean isExpired() {
+    return isCancelled() || System.currentTimeMillis() >= getDeadline();
+  }
+
+  /**
+   * @param what the work about to start, for the error message
+   * @throws QueryTimeoutException if there's no time left for it
+   */
+  public void check( String what ) throws QueryTimeoutException {
+    if ( isCancelled() ) {
+      throw new QueryTimeoutException( "Cancelled before running " + what + "." );
+    }
+    if ( isExpired() ) {
+      throw new QueryTimeoutException( "Deadline passed before running " + what + "." );
+    }
+  }
+
+  /**
+   * Cancels the work running under this deadline and makes further checks fail.
+   */
+  public void cancel() {
+    cancelled = true;
+    for ( Scope scope : scopes ) {
+      scope.cancel();
+    }
+  }
+
+  /**
+   * Starts cancellable work in the current thread. The scope must be closed when the work is done.
+   */
+  public Scope enter() {
+    return new Scope( this );
+  }
+
+  /**
+   * @return the scope of the work running in this thread, <code>null</code> if it has no deadline
+   */
+  public static Scope currentScope() {
+    return currentScope.get();
+  }
+
+  private static ScheduledThreadPoolExecutor getTimer() {
+    ScheduledThreadPoolExecutor scheduler = timer;
+    if ( scheduler == null ) {
+      synchronized ( lock ) {
+        scheduler = timer;
+        if ( scheduler == null ) {
+          scheduler = new ScheduledThreadPoolExecutor( 1, runnable -> {
+            Thread thread = new Thread( runnable, "cda-query-deadline" );
+            thread.setDaemon( true );
+            return thread;
+          } );
+          scheduler.setRemoveOnCancelPolicy( true );
+          timer = scheduler;
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  /**
+   * Cancellable work running under a deadline.
+   */
+  public static class Scope implements AutoCloseable {
+
+    private final QueryDeadline deadline;
+    private final Scope previous;
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<Runnable>();
+    private final ScheduledFuture<?> expiry;
+    private volatile boolean cancelled;
+
+    private Scope( QueryDeadline deadline ) {
+      this.deadline = deadline;
+      for ( QueryDeadline d = deadline; d != null; d = d.parent ) {
+        d.scopes.add( this );
+      }
+      previous = currentScope.get();
+      currentScope.set( this );
+      expiry = getTimer().schedule( this::cancel, deadline.getRemainingMillis(), TimeUnit.MILLISECONDS );
+      if ( deadline.isCancelled() ) {
+        cancel();
+      }
+    }
+
+    public QueryDeadline getDeadline() {
+      return deadline;
+    }
+
+    /**
+     * @param action how to stop the work, called from another thread; called right away if already cancelled
+     */
+    public void onCancel( Runnable action ) {
+      cancelActions.add( action );
+      if ( cancelled ) {
+        run( action );
+      }
+    }
+
+    /**
+     * @return if the work was cancelled, by its deadline or explicitly
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    private void cancel() {
+      if ( cancelled ) {
+        return;
+      }
+      cancelled = true;
+      for ( Runnable action : cancelActions ) {
+        run( action );
+      }
+    }
+
+    private static void run( Runnable action ) {
+      try {
+        action.run();
+      } catch ( RuntimeException e ) {
+        logger.warn( "Error cancelling query", e );
+      }
+    }
+
+    @Override
+    public void close() {
+      expiry.cancel( false );
+      for ( QueryDeadline d = deadline; d != null; d = d.parent ) {
+        d.scopes.remove( this );
+      }
+      if ( currentScope.get() == this ) {
+        if ( previous != null ) {
+          currentScope.set( previous );
+        } else {
+          currentScope.remove();
+        }
+      }
+    }
+  }
+}
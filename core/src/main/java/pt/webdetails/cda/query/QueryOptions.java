@@ -14,6 +14,7 @@
 package pt.webdetails.cda.query;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,11 @@ public class QueryOptions implements ExportOptions, IQueryArguments, Cloneable {
   private String outputType;
   private boolean cacheBypass;
   private List<String> outputColumnName;
+  private QueryPriority priority;
+  // shared by copies
+  private EvaluationContext evaluationContext;
+  private QueryDeadline deadline;
+  private List<List<Object>> evaluationChain = Collections.emptyList();
 
 
   public QueryOptions() {
@@ -48,6 +54,7 @@ public class QueryOptions implements ExportOptions, IQueryArguments, Cloneable {
     extraSettings = new HashMap<String, String>();
     cacheBypass = false;
     outputColumnName = new ArrayList<String>();
+    priority = QueryPriority.INTERACTIVE;
   }
 
 
@@ -194,8 +201,71 @@ public class QueryOptions implements ExportOptions, IQueryArguments, Cloneable {
     this.outputColumnName = outputColumnName;
   }
 
+  public QueryPriority getPriority() {
+    return priority;
+  }
+
+  public void setPriority( QueryPriority priority ) {
+    this.priority = priority;
+  }
+
+  /**
+   * @return results already evaluated in the current request, <code>null</code> outside of a request
+   */
+  public EvaluationContext getEvaluationContext() {
+    return evaluationContext;
+  }
+
+  public void setEvaluationContext( EvaluationContext evaluationContext ) {
+    this.evaluationContext = evaluationContext;
+  }
+
+  /**
+   * @return keys of the evaluations in the current request the query is part of, outermost first; empty for a
+   * query made directly by the request
+   * @see EvaluationContext#getKey(String, String, QueryOptions)
+   */
+  public List<List<Object>> getEvaluationChain() {
+    return evaluationChain;
+  }
+
+  public void setEvaluationChain( List<List<Object>> evaluationChain ) {
+    this.evaluationChain = evaluationChain;
+  }
+
+  /**
+   * @return when the query must be done by, <code>null</code> for no deadline
+   */
+  public QueryDeadline getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline( QueryDeadline deadline ) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * @return a copy that can be changed, including its parameters, without affecting this one; the evaluation context,
+   * chain and deadline are shared
+   */
   @Override
   public Object clone() throws CloneNotSupportedException {
-    return super.clone();
+    final QueryOptions clone = (QueryOptions) super.clone();
+    if ( parameters != null ) {
+      clone.parameters = new ArrayList<Parameter>( parameters.size() );
+      for ( Parameter parameter : parameters ) {
+        clone.parameters.add( parameter.copy() );
+      }
+    }
+    if ( sortBy != null ) {
+      clone.sortBy = new ArrayList<String>( sortBy );
+    }
+    if ( extraSettings != null ) {
+      clone.extraSettings = new HashMap<String, String>( extraSettings );
+    }
+    if ( outputColumnName != null ) {
+      clone.outputColumnName = new ArrayList<String>( outputColumnName );
+    }
+    return clone;
   }
 }
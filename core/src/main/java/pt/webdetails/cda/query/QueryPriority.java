@@ -0,0 +1,32 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.query;
+
+/**
+ * Scheduling class of a query, from most to least urgent.
+ */
+public enum QueryPriority {
+  /**
+   * Someone is waiting for the result, e.g. a dashboard component.
+   */
+  INTERACTIVE,
+  /**
+   * Bulk download of results.
+   */
+  EXPORT,
+  /**
+   * No one is waiting, e.g. cache warm up.
+   */
+  BACKGROUND
+}
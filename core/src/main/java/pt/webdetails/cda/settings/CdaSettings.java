@@ -252,6 +252,8 @@ public class CdaSettings {
           return new pt.webdetails.cda.connections.sql.JdbcConnection( element );
         case SQL_JNDI:
           return new pt.webdetails.cda.connections.sql.JndiConnection( element );
+        case SQL_REPLICATED:
+          return new pt.webdetails.cda.connections.sql.ReplicatedConnection( element );
         case XPATH:
           return new XPathConnection( element );
         case DATASERVICES:
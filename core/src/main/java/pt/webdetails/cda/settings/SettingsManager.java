@@ -37,6 +37,7 @@ import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import pt.webdetails.cda.AccessDeniedException;
 import pt.webdetails.cda.CdaEngine;
 import pt.webdetails.cda.connections.UnsupportedConnectionException;
+import pt.webdetails.cda.connections.sql.StatementCaches;
 import pt.webdetails.cda.dataaccess.AbstractDataAccess;
 import pt.webdetails.cda.dataaccess.DataAccessConnectionDescriptor;
 import pt.webdetails.cda.dataaccess.UnsupportedDataAccessException;
@@ -206,6 +207,8 @@ public class SettingsManager {
     logger.info( "Cleaning CDA settings cache" );
     settingsCache.clear();
     settingsTimestamps.clear();
+    // connections are opened again from the refreshed settings
+    StatementCaches.clear();
   }
 
   public DataAccessConnectionDescriptor[] getDataAccessDescriptors( boolean refreshCache ) {
@@ -13,6 +13,8 @@
 
 package pt.webdetails.cda.utils;
 
+import java.util.HashMap;
+import java.util.Map;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
@@ -56,12 +58,8 @@ public class CalculatedTableModel implements MetaTableModel {
     }
 
     public Object resolveReference( final Object name ) {
-      for ( int column = 0; column < getColumnCount(); column++ ) {
-        if ( getColumnName( column ).equals( name ) ) {
-          return getValueAt( rowIndex, column );
-        }
-      }
-      return null;
+      final Integer column = getColumnIndexes().get( name );
+      return column != null ? getValueAt( rowIndex, column ) : null;
     }
   }
 
@@ -71,6 +69,8 @@ public class CalculatedTableModel implements MetaTableModel {
   private int backendColumnCount;
   private boolean inferTypes = false;
   private Class<?>[] calculatedColumnClasses;
+  private Formula[] formulas;
+  private Map<String, Integer> columnIndexes;
 
   /**
    * @param backend           Table that provides the first columns of the table, which can be used by the calculated
@@ -97,6 +97,7 @@ public class CalculatedTableModel implements MetaTableModel {
     this.backend = backend;
     this.backendColumnCount = backend.getColumnCount();
     this.calculatedColumns = calculatedColumns.clone();
+    this.formulas = new Formula[ calculatedColumns.length ];
     if ( backend instanceof MetaTableModel ) {
       this.metaTableModel = (MetaTableModel) backend;
     }
@@ -162,6 +163,29 @@ public class CalculatedTableModel implements MetaTableModel {
     final int calcColumnIndex = columnIndex - backendColumnCount;
     try {
       context.lock( calcColumnIndex );
+      final Formula formulaObject = getFormula( calcColumnIndex );
+      formulaObject.initialize( context );
+      Object value = formulaObject.evaluate();
+
+      if ( this.isLibFormulaErrorValue( value ) ) {
+        value = null;
+      }
+
+      if ( inferTypes && value != null ) {
+        accumulateClassAt( calcColumnIndex, value.getClass() );
+      }
+
+      return value;
+    } finally {
+      context.unlock( calcColumnIndex );
+    }
+  }
+
+  /**
+   * Formulas are parsed only once, and only for the columns that get evaluated.
+   */
+  private Formula getFormula( final int calcColumnIndex ) throws ParseException {
+    if ( formulas[ calcColumnIndex ] == null ) {
       final String formula = calculatedColumns[ calcColumnIndex ].getFormula();
       // final String formulaNamespace;
       final String formulaExpression;
@@ -179,22 +203,24 @@ public class CalculatedTableModel implements MetaTableModel {
           formulaExpression = formula.substring( separator + 1 );
         }
       }
-      final Formula formulaObject = new Formula( formulaExpression );
-      formulaObject.initialize( context );
-      Object value = formulaObject.evaluate();
-
-      if ( this.isLibFormulaErrorValue( value ) ) {
-        value = null;
-      }
+      formulas[ calcColumnIndex ] = new Formula( formulaExpression );
+    }
+    return formulas[ calcColumnIndex ];
+  }
 
-      if ( inferTypes && value != null ) {
-        accumulateClassAt( calcColumnIndex, value.getClass() );
+  /**
+   * Column positions by name, the first one for repeated names. Saves formula references from going through every
+   * column name.
+   */
+  private Map<String, Integer> getColumnIndexes() {
+    if ( columnIndexes == null ) {
+      final Map<String, Integer> indexes = new HashMap<String, Integer>();
+      for ( int column = getColumnCount() - 1; column >= 0; column-- ) {
+        indexes.put( getColumnName( column ), column );
       }
-
-      return value;
-    } finally {
-      context.unlock( calcColumnIndex );
+      columnIndexes = indexes;
     }
+    return columnIndexes;
   }
 
   public Object getValueAt( final int rowIndex, final int columnIndex ) {
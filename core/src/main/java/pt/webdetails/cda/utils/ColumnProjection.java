@@ -0,0 +1,126 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import pt.webdetails.cda.dataaccess.ColumnDefinition;
+import pt.webdetails.cda.dataaccess.DataAccess;
+import pt.webdetails.cda.dataaccess.DataAccess.OutputMode;
+import pt.webdetails.cda.query.QueryOptions;
+
+/**
+ * Finds which columns of a data access' results are needed for a query: its outputs, and whatever their calculated
+ * columns' formulas reference. Positions are as in post processing, with calculated columns after the query's.
+ */
+public class ColumnProjection {
+
+  private ColumnProjection() {
+  }
+
+  /**
+   * @param dataAccess   data access being queried
+   * @param queryOptions its output index or output column names are used
+   * @param columnNames  names of the query's columns, with column definitions applied
+   * @return used columns, <code>null</code> if all of them may be
+   */
+  public static boolean[] getUsedColumns( final DataAccess dataAccess, final QueryOptions queryOptions,
+                                          final List<String> columnNames ) {
+    final List<ColumnDefinition> calculatedColumns = dataAccess.getCalculatedColumns();
+    final List<String> outputColumnNames = queryOptions.getOutputColumnName();
+    if ( !outputColumnNames.isEmpty() ) {
+      final List<String> allNames = getAllNames( columnNames, calculatedColumns );
+      final List<Integer> outputs = new ArrayList<Integer>( outputColumnNames.size() );
+      for ( String name : outputColumnNames ) {
+        if ( allNames.contains( name ) ) {
+          outputs.add( allNames.indexOf( name ) );
+        }
+      }
+      return getUsedColumns( columnNames, calculatedColumns, outputs, OutputMode.INCLUDE );
+    }
+    final List<Integer> outputs = dataAccess.getOutputs( queryOptions.getOutputIndexId() );
+    if ( outputs == null ) {
+      return null;
+    }
+    return getUsedColumns( columnNames, calculatedColumns, outputs,
+      dataAccess.getOutputMode( queryOptions.getOutputIndexId() ) );
+  }
+
+  /**
+   * @param columnNames       names of the query's columns, with column definitions applied
+   * @param calculatedColumns calculated columns, in order
+   * @param outputs           output column positions
+   * @param outputMode        whether outputs are included or excluded
+   * @return used columns, <code>null</code> if all of them may be
+   */
+  public static boolean[] getUsedColumns( final List<String> columnNames,
+                                          final List<ColumnDefinition> calculatedColumns,
+                                          final List<Integer> outputs, final OutputMode outputMode ) {
+    if ( outputs.isEmpty() ) {
+      // no outputs means all of them
+      return null;
+    }
+    final List<String> allNames = getAllNames( columnNames, calculatedColumns );
+    final boolean[] used = new boolean[ allNames.size() ];
+    for ( int output : outputs ) {
+      if ( output < 0 || output >= used.length ) {
+        // will fail later on
+        return null;
+      }
+      used[ output ] = true;
+    }
+    if ( outputMode == OutputMode.EXCLUDE ) {
+      for ( int i = 0; i < used.length; i++ ) {
+        used[ i ] = !used[ i ];
+      }
+    }
+
+    // formulas may need other columns
+    final Deque<Integer> pending = new ArrayDeque<Integer>();
+    for ( int i = columnNames.size(); i < used.length; i++ ) {
+      if ( used[ i ] ) {
+        pending.push( i );
+      }
+    }
+    while ( !pending.isEmpty() ) {
+      final ColumnDefinition calculated = calculatedColumns.get( pending.pop() - columnNames.size() );
+      for ( String reference : calculated.getFormulaReferences() ) {
+        final int column = allNames.indexOf( reference );
+        if ( column < 0 ) {
+          // not a column we know of, better keep everything
+          return null;
+        }
+        if ( !used[ column ] ) {
+          used[ column ] = true;
+          if ( column >= columnNames.size() ) {
+            pending.push( column );
+          }
+        }
+      }
+    }
+    return used;
+  }
+
+  private static List<String> getAllNames( final List<String> columnNames,
+                                           final List<ColumnDefinition> calculatedColumns ) {
+    final List<String> allNames = new ArrayList<String>( columnNames.size() + calculatedColumns.size() );
+    allNames.addAll( columnNames );
+    for ( ColumnDefinition calculated : calculatedColumns ) {
+      allNames.add( calculated.getName() );
+    }
+    return allNames;
+  }
+}
@@ -0,0 +1,140 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.utils;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of several tables, one after the other, without copying their values.<br>
+ * Column names come from the widest table and rows of narrower tables are padded with <code>null</code>. A column's
+ * type is the most specific class shared by all tables that have it, ignoring <code>Object</code> (e.g. when all
+ * values are null): <code>Long</code> and <code>Long</code> stay <code>Long</code>, <code>Long</code> and
+ * <code>Double</code> become <code>Number</code>, and <code>String</code> and <code>Long</code> become
+ * <code>Object</code>.
+ */
+public class ConcatenatedTableModel extends AbstractTableModel {
+
+  private static final long serialVersionUID = 1L;
+
+  private final TableModel[] tables;
+  // first row of each table, plus total row count at the end
+  private final int[] offsets;
+  private final String[] columnNames;
+  private final Class<?>[] columnClasses;
+
+  public ConcatenatedTableModel( final List<? extends TableModel> tableModels ) {
+    // nested views as wide as this one are flattened so lookups stay a single search
+    final String[] names = widest( tableModels.toArray( new TableModel[ tableModels.size() ] ) );
+    List<TableModel> flat = new ArrayList<TableModel>( tableModels.size() );
+    for ( TableModel tableModel : tableModels ) {
+      if ( tableModel instanceof ConcatenatedTableModel ) {
+        ConcatenatedTableModel nested = (ConcatenatedTableModel) tableModel;
+        if ( Arrays.equals( nested.columnNames, names ) ) {
+          flat.addAll( Arrays.asList( nested.tables ) );
+          continue;
+        }
+      }
+      flat.add( tableModel );
+    }
+    tables = flat.toArray( new TableModel[ flat.size() ] );
+
+    offsets = new int[ tables.length + 1 ];
+    for ( int t = 0; t < tables.length; t++ ) {
+      offsets[ t + 1 ] = offsets[ t ] + tables[ t ].getRowCount();
+    }
+
+    columnNames = names;
+    columnClasses = new Class<?>[ columnNames.length ];
+    for ( int c = 0; c < columnClasses.length; c++ ) {
+      Class<?> columnClass = null;
+      for ( TableModel table : tables ) {
+        if ( c < table.getColumnCount() && table.getColumnClass( c ) != Object.class ) {
+          columnClass = columnClass == null ? table.getColumnClass( c )
+            : getCommonClass( columnClass, table.getColumnClass( c ) );
+        }
+      }
+      columnClasses[ c ] = columnClass != null ? columnClass : Object.class;
+    }
+  }
+
+  private static String[] widest( final TableModel[] tableModels ) {
+    TableModel widest = null;
+    for ( TableModel tableModel : tableModels ) {
+      if ( widest == null || tableModel.getColumnCount() > widest.getColumnCount() ) {
+        widest = tableModel;
+      }
+    }
+    if ( widest == null ) {
+      return new String[ 0 ];
+    }
+    String[] names = new String[ widest.getColumnCount() ];
+    for ( int c = 0; c < names.length; c++ ) {
+      names[ c ] = widest.getColumnName( c );
+    }
+    return names;
+  }
+
+  /**
+   * @return the most specific class both classes can be assigned to
+   */
+  static Class<?> getCommonClass( final Class<?> a, final Class<?> b ) {
+    Class<?> common = a;
+    while ( common != null && !common.isAssignableFrom( b ) ) {
+      common = common.getSuperclass();
+    }
+    return common != null ? common : Object.class;
+  }
+
+  @Override
+  public int getRowCount() {
+    return offsets[ tables.length ];
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columnNames.length;
+  }
+
+  @Override
+  public String getColumnName( final int column ) {
+    return columnNames[ column ];
+  }
+
+  @Override
+  public Class<?> getColumnClass( final int column ) {
+    return columnClasses[ column ];
+  }
+
+  @Override
+  public Object getValueAt( final int row, final int column ) {
+    if ( row < 0 || row >= getRowCount() ) {
+      throw new IndexOutOfBoundsException( "Row " + row + " out of " + getRowCount() );
+    }
+    int t = Arrays.binarySearch( offsets, row );
+    // on a match, skip empty tables sharing the same offset; otherwise take the insertion point's previous table
+    if ( t >= 0 ) {
+      while ( offsets[ t + 1 ] == row ) {
+        t++;
+      }
+    } else {
+      t = -t - 2;
+    }
+    final TableModel table = tables[ t ];
+    return column < table.getColumnCount() ? table.getValueAt( row - offsets[ t ], column ) : null;
+  }
+}
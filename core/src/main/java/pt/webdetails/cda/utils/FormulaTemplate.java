@@ -0,0 +1,119 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils;
+
+import java.util.ArrayList;
+
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.reporting.libraries.formula.EvaluationException;
+import org.pentaho.reporting.libraries.formula.Formula;
+import org.pentaho.reporting.libraries.formula.FormulaContext;
+import org.pentaho.reporting.libraries.formula.parser.ParseException;
+
+import pt.webdetails.cda.dataaccess.InvalidParameterException;
+
+/**
+ * Text with an optional embedded <code>${formula}</code>, parsed once and evaluated many times.<br>
+ * Same semantics as {@link FormulaEvaluator#replaceFormula(String, FormulaContext)}.
+ */
+public class FormulaTemplate {
+
+  private static final String FORMULA_BEGIN = "${";
+  private static final String FORMULA_END = "}";
+
+  private final String text;
+  private final String prefix;
+  private final String suffix;
+  private final String expression;
+  private final Formula formula;
+  private final ParseException parseError;
+
+  public FormulaTemplate( String text ) {
+    this.text = text;
+    int startIdx = StringUtils.indexOf( text, FORMULA_BEGIN );
+    int contentStartIdx = startIdx + FORMULA_BEGIN.length();
+    int contentEndIdx = startIdx > -1 ? StringUtils.lastIndexOf( text, FORMULA_END ) : -1;
+    if ( startIdx > -1 && contentEndIdx >= contentStartIdx ) {
+      prefix = StringUtils.substring( text, 0, startIdx );
+      suffix = StringUtils.substring( text, contentEndIdx + FORMULA_END.length(), text.length() );
+      expression = StringUtils.substring( text, contentStartIdx, contentEndIdx );
+      Formula parsed = null;
+      ParseException error = null;
+      try {
+        parsed = new Formula( expression );
+      } catch ( ParseException e ) {
+        error = e;
+      }
+      formula = parsed;
+      parseError = error;
+    } else {
+      prefix = null;
+      suffix = null;
+      expression = null;
+      formula = null;
+      parseError = null;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if there is no formula to evaluate
+   */
+  public boolean isConstant() {
+    return expression == null;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @param context formula context for this evaluation
+   * @return the text with its formula replaced by its value
+   */
+  public String evaluate( FormulaContext context ) throws InvalidParameterException {
+    if ( isConstant() ) {
+      return text;
+    }
+    if ( parseError != null ) {
+      throw new InvalidParameterException( "Unable to parse expression " + expression, parseError );
+    }
+    Object result;
+    try {
+      // the parsed tree holds the context, each evaluation needs its own copy
+      Formula instance = (Formula) formula.clone();
+      instance.initialize( context );
+      result = instance.evaluate();
+    } catch ( CloneNotSupportedException e ) {
+      throw new IllegalStateException( e );
+    } catch ( EvaluationException e ) {
+      throw new InvalidParameterException( "Unable to evaluate expression " + expression, e );
+    }
+    if ( result instanceof ArrayList ) {
+      result = ( (ArrayList<?>) result ).toArray();
+    }
+
+    StringBuilder value = new StringBuilder( prefix );
+    if ( result instanceof Object[] ) {
+      value.append( StringUtils.join( (Object[]) result, "," ) );
+    } else {
+      value.append( result );
+    }
+    value.append( suffix );
+    return value.toString();
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
@@ -21,13 +21,18 @@ import pt.webdetails.cda.dataaccess.ColumnDefinition;
 import pt.webdetails.cda.dataaccess.DataAccess;
 import pt.webdetails.cda.dataaccess.DataAccessEnums;
 import pt.webdetails.cda.dataaccess.Parameter;
+import pt.webdetails.cda.dataaccess.QueryException;
+import pt.webdetails.cda.dataaccess.RowCursor;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.utils.kettle.SortException;
 import pt.webdetails.cda.utils.kettle.SortTableModel;
+import pt.webdetails.cda.utils.mondrian.MdxResultTableModel;
 
 import javax.swing.table.TableModel;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,8 +44,9 @@ import java.util.TreeMap;
 public class TableModelUtils {
 
   private static final Log logger = LogFactory.getLog( TableModelUtils.class );
-  private static final String DT_FILTER = "dtFilter";
-  private static final String DT_SEARCHABLE = "dtSearchableColumns";
+  public static final String DT_FILTER = "dtFilter";
+  public static final String DT_SEARCHABLE = "dtSearchableColumns";
+  private static final int SIZE_SAMPLE_ROWS = 100;
 
   private static TableModelUtils _instance = new TableModelUtils();
 
@@ -96,10 +102,86 @@ public class TableModelUtils {
       ? filterTable( table, outputIndexes, columnNames, rowFilter, dataAccess.getColumnDefinitions().size() > 0 )
       : filterTable( table, new ArrayList<Integer>(), columnNames, rowFilter, false );
 
+    return sortAndPaginateTableModel( table, queryOptions );
+  }
+
+  /**
+   * Post processes a cursor over raw query results as {@link #copyTableModel(DataAccess, TableModel)} and
+   * {@link #postProcessTableModel(DataAccess, QueryOptions, TableModel)} would, for queries with neither calculated
+   * columns, row filters, sorting nor pagination: names the columns and shows only the output ones.
+   *
+   * @return cursor over the output columns, closing <code>cursor</code> when closed
+   */
+  public static RowCursor postProcessCursor( final DataAccess dataAccess, final QueryOptions queryOptions,
+                                            final RowCursor cursor ) throws InvalidOutputIndexException {
+
+    // We're removing the ::table-by-index:: cols, which come after the named ones
+    int count = 0;
+    for ( int i = 0; i < cursor.getColumnCount(); i++ ) {
+      String colName = cursor.getColumnName( i );
+      if ( !colName.startsWith( "::table-by-index::" )
+        && !colName.startsWith( "::column::" ) ) {
+        count++;
+      }
+    }
+    final Class<?>[] colTypes = new Class[ count ];
+    final String[] colNames = new String[ count ];
+    for ( int i = 0; i < count; i++ ) {
+      colTypes[ i ] = cursor.getColumnClass( i );
+      final ColumnDefinition col = dataAccess.getColumnDefinition( i );
+      colNames[ i ] = col != null ? col.getName() : cursor.getColumnName( i );
+    }
+
+    // the output columns only depend on the table's columns
+    final TableModel columns = new TypedTableModel( colNames, colTypes, 0 );
+    final List<Integer> outputIndexes =
+      new ArrayList<Integer>( getOutputIndexes( dataAccess, queryOptions, columns ) );
+    final List<String> columnNames = getColumnNames( dataAccess, columns );
+    if ( !outputIndexes.isEmpty() && Collections.max( outputIndexes ) > count - 1 ) {
+      String errorMessage = String.format( "Output index higher than number of columns in tableModel. %s > %s",
+        Collections.max( outputIndexes ), count );
+      logger.error( errorMessage );
+      if ( count > 0 ) {
+        throw new InvalidOutputIndexException( errorMessage, null );
+      }
+      logger.warn( "Unable to validate output indexes because table metadata is empty. Returning table." );
+      outputIndexes.clear();
+    }
+    if ( outputIndexes.isEmpty() ) {
+      for ( int i = 0; i < count; i++ ) {
+        outputIndexes.add( i );
+      }
+    }
+
+    final int[] indexes = new int[ outputIndexes.size() ];
+    final String[] names = new String[ indexes.length ];
+    final Class<?>[] types = new Class[ indexes.length ];
+    for ( int i = 0; i < indexes.length; i++ ) {
+      indexes[ i ] = outputIndexes.get( i );
+      names[ i ] = columnNames.get( indexes[ i ] );
+      types[ i ] = colTypes[ indexes[ i ] ];
+    }
+    return new OutputRowCursor( cursor, indexes, names, types );
+  }
+
+  /**
+   * Sorts and paginates a table as requested by <code>queryOptions</code>.
+   *
+   * @return a copy of the requested rows, with the total number of rows in its metadata
+   */
+  public static TableModel sortAndPaginateTableModel( TableModel table, final QueryOptions queryOptions )
+    throws SortException {
+
     //  3. Sort
+    final int totalRows = table.getRowCount();
     if ( !queryOptions.getSortBy().isEmpty() ) {
-      // no action
-      table = ( new SortTableModel() ).doSort( table, queryOptions.getSortBy() );
+      int topRows = getPageEnd( queryOptions );
+      if ( topRows >= 0 && topRows < totalRows ) {
+        // only the rows up to the requested page need to be in order
+        table = ( new SortTableModel() ).doSort( table, queryOptions.getSortBy(), topRows );
+      } else {
+        table = ( new SortTableModel() ).doSort( table, queryOptions.getSortBy() );
+      }
     }
 
     // Create a metadata-aware table model
@@ -114,7 +196,7 @@ public class TableModelUtils {
 
     final int rowCount = table.getRowCount();
     MetadataTableModel result = new MetadataTableModel( colNames, colTypes, rowCount );
-    result.setMetadata( "totalRows", rowCount );
+    result.setMetadata( "totalRows", totalRows );
     for ( int r = 0; r < rowCount; r++ ) {
       for ( int j = 0; j < table.getColumnCount(); j++ ) {
         result.setValueAt( table.getValueAt( r, j ), r, j );
@@ -355,6 +437,10 @@ public class TableModelUtils {
     }
     final int rowCount = t.getRowCount();
     logger.debug( rowCount == 0 ? "No data found" : "Found " + rowCount + " rows" );
+    if ( t instanceof MdxResultTableModel ) {
+      // read only and already typed, only the names change
+      return ( (MdxResultTableModel) t ).withColumnNames( colNames );
+    }
     //if the first row has no values, the class will be Object, however, next rows can have values, we evaluate those
     for ( int i = 0; i < colTypes.length; i++ ) {
       if ( colTypes[ i ] == Object.class ) {
@@ -483,6 +569,66 @@ public class TableModelUtils {
   }
 
 
+  /**
+   * Rough estimate of the memory held by a table's values, extrapolated from a sample of its rows.
+   *
+   * @param tableModel table to measure
+   * @return estimated size in bytes
+   */
+  public static long estimateByteSize( final TableModel tableModel ) {
+    final int rowCount = tableModel.getRowCount();
+    final int colCount = tableModel.getColumnCount();
+    if ( rowCount == 0 || colCount == 0 ) {
+      return 0;
+    }
+    final int sampleRows = Math.min( rowCount, SIZE_SAMPLE_ROWS );
+    // sample rows spread over the whole table
+    final int step = rowCount / sampleRows;
+    long sampleSize = 0;
+    for ( int i = 0; i < sampleRows; i++ ) {
+      for ( int c = 0; c < colCount; c++ ) {
+        sampleSize += estimateByteSize( tableModel.getValueAt( i * step, c ) );
+      }
+    }
+    return sampleSize * rowCount / sampleRows;
+  }
+
+  /**
+   * Rough estimate of the memory held by a single value.
+   *
+   * @param value a table value
+   * @return estimated size in bytes, including the reference to it
+   */
+  public static long estimateByteSize( final Object value ) {
+    // reference plus object header and fields, assuming compressed oops
+    if ( value == null ) {
+      return 4;
+    } else if ( value instanceof String ) {
+      return 44 + 2 * ( (String) value ).length();
+    } else if ( value instanceof Integer || value instanceof Float || value instanceof Short
+      || value instanceof Byte || value instanceof Boolean ) {
+      return 20;
+    } else if ( value instanceof Long || value instanceof Double || value instanceof Date ) {
+      return 28;
+    } else if ( value instanceof BigDecimal ) {
+      return 44;
+    } else {
+      return 36;
+    }
+  }
+
+
+  /**
+   * @return number of rows up to the end of the requested page, or -1 if not paginating
+   */
+  private static int getPageEnd( QueryOptions queryOptions ) {
+    if ( !queryOptions.isPaginate() || queryOptions.getPageSize() <= 0 || queryOptions.getPageStart() < 0 ) {
+      return -1;
+    }
+    long pageEnd = (long) queryOptions.getPageStart() + queryOptions.getPageSize();
+    return pageEnd < Integer.MAX_VALUE ? (int) pageEnd : -1;
+  }
+
   private static TableModel paginateTableModel( MetadataTableModel t, QueryOptions queryOptions ) {
 
     if ( !queryOptions.isPaginate() || ( queryOptions.getPageSize() == 0 && queryOptions.getPageStart() == 0 ) ) {
@@ -517,4 +663,52 @@ public class TableModelUtils {
 
 
   }
+
+  /**
+   * The output columns of a cursor.
+   */
+  private static class OutputRowCursor implements RowCursor {
+
+    private final RowCursor cursor;
+    private final int[] indexes;
+    private final String[] names;
+    private final Class<?>[] types;
+
+    OutputRowCursor( final RowCursor cursor, final int[] indexes, final String[] names, final Class<?>[] types ) {
+      this.cursor = cursor;
+      this.indexes = indexes;
+      this.names = names;
+      this.types = types;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return indexes.length;
+    }
+
+    @Override
+    public String getColumnName( final int column ) {
+      return names[ column ];
+    }
+
+    @Override
+    public Class<?> getColumnClass( final int column ) {
+      return types[ column ];
+    }
+
+    @Override
+    public boolean next() throws QueryException {
+      return cursor.next();
+    }
+
+    @Override
+    public Object getValue( final int column ) throws QueryException {
+      return cursor.getValue( indexes[ column ] );
+    }
+
+    @Override
+    public void close() throws QueryException {
+      cursor.close();
+    }
+  }
 }
@@ -0,0 +1,151 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils.kettle;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.table.TableModel;
+
+/**
+ * Row index comparator for the default sort, ordering as kettle's SortRows step did: empty values first,
+ * case-insensitive strings, numbers by value. Rows that compare equal keep their original order.
+ */
+public class DefaultSortComparator implements Comparator<Integer> {
+
+  private static final Pattern SORT_BY = Pattern.compile( "^(\\d+)([AD]?)$" );
+
+  private final TableModel baseData;
+  private final int[] columns;
+  private final boolean[] ascending;
+
+  public DefaultSortComparator( TableModel baseData, List<String> sortBy ) {
+    this.baseData = baseData;
+    this.columns = new int[ sortBy.size() ];
+    this.ascending = new boolean[ sortBy.size() ];
+    for ( int i = 0; i < columns.length; i++ ) {
+      Matcher m = SORT_BY.matcher( sortBy.get( i ) );
+      if ( !m.matches() ) {
+        throw new IllegalArgumentException( "Invalid sortBy option: " + sortBy.get( i ) );
+      }
+      columns[ i ] = Integer.parseInt( m.group( 1 ) );
+      if ( columns[ i ] >= baseData.getColumnCount() ) {
+        throw new IllegalArgumentException( "Invalid sortBy column: " + sortBy.get( i ) );
+      }
+      ascending[ i ] = !"D".equals( m.group( 2 ) );
+    }
+  }
+
+  /**
+   * @return sort columns, in order
+   */
+  public int[] getColumns() {
+    return columns.clone();
+  }
+
+  /**
+   * Compares the sort column values of two rows, as given by {@link #getColumns()}.
+   */
+  public int compareKeys( Object[] keys0, Object[] keys1 ) {
+    for ( int i = 0; i < columns.length; i++ ) {
+      int cmp = compareValues( keys0[ i ], keys1[ i ] );
+      if ( cmp != 0 ) {
+        return ascending[ i ] ? cmp : -cmp;
+      }
+    }
+    return 0;
+  }
+
+  public int compare( Integer row0, Integer row1 ) {
+    for ( int i = 0; i < columns.length; i++ ) {
+      int cmp = compareValues( baseData.getValueAt( row0, columns[ i ] ), baseData.getValueAt( row1, columns[ i ] ) );
+      if ( cmp != 0 ) {
+        return ascending[ i ] ? cmp : -cmp;
+      }
+    }
+    return Integer.compare( row0, row1 );
+  }
+
+  @SuppressWarnings( { "unchecked", "rawtypes" } )
+  static int compareValues( Object v0, Object v1 ) {
+    boolean null0 = isNull( v0 );
+    boolean null1 = isNull( v1 );
+    if ( null0 || null1 ) {
+      return null0 == null1 ? 0 : ( null0 ? -1 : 1 );
+    }
+    if ( v0 instanceof String && v1 instanceof String ) {
+      return ( (String) v0 ).compareToIgnoreCase( (String) v1 );
+    }
+    if ( v0 instanceof Number && v1 instanceof Number ) {
+      return compareNumbers( (Number) v0, (Number) v1 );
+    }
+    if ( v0 instanceof Date && v1 instanceof Date ) {
+      return compareDates( (Date) v0, (Date) v1 );
+    }
+    if ( v0 instanceof Comparable && v0.getClass() == v1.getClass() ) {
+      return ( (Comparable) v0 ).compareTo( v1 );
+    }
+    return v0.toString().compareToIgnoreCase( v1.toString() );
+  }
+
+  private static boolean isNull( Object value ) {
+    // empty strings are nulls for kettle
+    return value == null || ( value instanceof String && ( (String) value ).isEmpty() );
+  }
+
+  private static int compareNumbers( Number n0, Number n1 ) {
+    if ( isIntegral( n0 ) && isIntegral( n1 ) ) {
+      return Long.compare( n0.longValue(), n1.longValue() );
+    }
+    boolean big = n0 instanceof BigDecimal || n1 instanceof BigDecimal
+      || n0 instanceof BigInteger || n1 instanceof BigInteger;
+    if ( big && isFinite( n0 ) && isFinite( n1 ) ) {
+      return toBigDecimal( n0 ).compareTo( toBigDecimal( n1 ) );
+    }
+    return Double.compare( n0.doubleValue(), n1.doubleValue() );
+  }
+
+  private static int compareDates( Date d0, Date d1 ) {
+    int cmp = Long.compare( d0.getTime(), d1.getTime() );
+    if ( cmp == 0 && d0 instanceof Timestamp && d1 instanceof Timestamp ) {
+      return Integer.compare( ( (Timestamp) d0 ).getNanos(), ( (Timestamp) d1 ).getNanos() );
+    }
+    return cmp;
+  }
+
+  private static boolean isIntegral( Number n ) {
+    return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+  }
+
+  private static boolean isFinite( Number n ) {
+    return !( n instanceof Double || n instanceof Float ) || !( Double.isNaN( n.doubleValue() )
+      || Double.isInfinite( n.doubleValue() ) );
+  }
+
+  private static BigDecimal toBigDecimal( Number n ) {
+    if ( n instanceof BigDecimal ) {
+      return (BigDecimal) n;
+    } else if ( n instanceof BigInteger ) {
+      return new BigDecimal( (BigInteger) n );
+    } else if ( isIntegral( n ) ) {
+      return BigDecimal.valueOf( n.longValue() );
+    } else {
+      return BigDecimal.valueOf( n.doubleValue() );
+    }
+  }
+}
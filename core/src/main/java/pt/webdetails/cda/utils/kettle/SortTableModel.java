@@ -13,40 +13,19 @@
 
 package pt.webdetails.cda.utils.kettle;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.swing.table.TableModel;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Comparator;
-
-import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.reporting.libraries.base.util.StringUtils;
-import pt.webdetails.robochef.DynamicTransConfig;
-import pt.webdetails.robochef.DynamicTransConfig.EntryType;
-import pt.webdetails.robochef.DynamicTransMetaConfig;
-import pt.webdetails.robochef.DynamicTransMetaConfig.Type;
-import pt.webdetails.robochef.DynamicTransformation;
-import pt.webdetails.robochef.RowProductionManager;
-import pt.webdetails.robochef.TableModelInput;
 import pt.webdetails.cda.CdaEngine;
 
-public class SortTableModel implements RowProductionManager {
+public class SortTableModel {
 
   private static final Log logger = LogFactory.getLog( SortTableModel.class );
-  private ExecutorService executorService = CdaEngine.getInstance().getExecutorService();
-  private static final long DEFAULT_ROW_PRODUCTION_TIMEOUT = 120;
-  private static final TimeUnit DEFAULT_ROW_PRODUCTION_TIMEOUT_UNIT = TimeUnit.SECONDS;
 
 
   public SortTableModel() {
@@ -61,174 +40,64 @@ public class SortTableModel implements RowProductionManager {
     }
   }
 
-  public TableModel customSort( TableModel unsorted, List<String> sortBy, String comparatorClass )
-    throws SortException {
+  /**
+   * Sorts only as much as needed to get the first rows of the sorted table.
+   *
+   * @param unsorted table to sort
+   * @param sortBy   sort columns and directions
+   * @param limit    number of rows wanted
+   * @return the first <code>limit</code> rows of the sorted table, in order
+   */
+  public TableModel doSort( TableModel unsorted, List<String> sortBy, int limit ) throws SortException {
+    if ( unsorted == null || limit >= unsorted.getRowCount() ) {
+      return doSort( unsorted, sortBy );
+    }
+    String sortType = CdaEngine.getInstance().getConfigProperty( "pt.webdetails.cda.SortingType" );
     try {
-      @SuppressWarnings( "unchecked" )
-      Class<? extends Comparator<Integer>> comp =
-        (Class<? extends Comparator<Integer>>) Class.forName( comparatorClass );
+      Comparator<Integer> comparator = "DEFAULT".equals( sortType ) || StringUtils.isEmpty( sortType )
+        ? new DefaultSortComparator( unsorted, sortBy )
+        : SortableTableModel.createComparator( getComparatorClass( sortType ), unsorted, sortBy );
       SortableTableModel sortable = new SortableTableModel( unsorted );
-      sortable.sort( comp, sortBy );
+      sortable.sortTop( comparator, limit );
       return sortable;
     } catch ( Exception e ) {
       throw new SortException( "Exception during sorting ", e );
     }
   }
 
-  public TableModel defaultSort( TableModel unsorted, List<String> sortBy ) throws SortException {
-
-    if ( unsorted == null || unsorted.getRowCount() == 0 ) {
-      return unsorted;
-    } else {
-      TableModel output = null;
-      Collection<Callable<Boolean>> inputCallables = new ArrayList<Callable<Boolean>>();
-
-      try {
-        String sort = getSortXmlStep( unsorted, sortBy );
-
-        DynamicTransMetaConfig transMetaConfig =
-          new DynamicTransMetaConfig( Type.EMPTY, "JoinCompoundData", null, null );
-        DynamicTransConfig transConfig = new DynamicTransConfig();
-
-        transConfig.addConfigEntry( EntryType.STEP, "input",
-          "<step><name>input</name><type>Injector</type><copies>1</copies></step>" );
-        transConfig.addConfigEntry( EntryType.STEP, "sort", sort );
-        transConfig.addConfigEntry( EntryType.HOP, "input", "sort" );
-
-        TableModelInput input = new TableModelInput();
-        transConfig.addInput( "input", input );
-        inputCallables.add( input.getCallableRowProducer( unsorted, true ) );
-
-
-        RowMetaToTableModel outputListener = new RowMetaToTableModel( false, true, false );
-        transConfig.addOutput( "sort", outputListener );
-
-        DynamicTransformation trans = new DynamicTransformation( transConfig, transMetaConfig, inputCallables );
-        trans.executeCheckedSuccess( null, null, this );
-        logger.info( trans.getReadWriteThroughput() );
-        output = outputListener.getRowsWritten();
-
-        return output;
-
-      } catch ( Exception e ) {
-        throw new SortException( "Exception during sorting ", e );
-      }
-    }
-  }
-
-  public void startRowProduction( Collection<Callable<Boolean>> inputCallables ) {
-    String timeoutStr = CdaEngine.getInstance().getConfigProperty( "pt.webdetails.cda.DefaultRowProductionTimeout" );
-    long timeout = StringUtils.isEmpty( timeoutStr ) ? DEFAULT_ROW_PRODUCTION_TIMEOUT : Long.parseLong( timeoutStr );
-    String unitStr =
-      CdaEngine.getInstance().getConfigProperty( "pt.webdetails.cda.DefaultRowProductionTimeoutTimeUnit" );
-    TimeUnit unit = StringUtils.isEmpty( unitStr ) ? DEFAULT_ROW_PRODUCTION_TIMEOUT_UNIT : TimeUnit.valueOf( unitStr );
-    startRowProduction( timeout, unit, inputCallables );
-  }
-
-  public void startRowProduction( long timeout, TimeUnit unit, Collection<Callable<Boolean>> inputCallables ) {
+  public TableModel customSort( TableModel unsorted, List<String> sortBy, String comparatorClass )
+    throws SortException {
     try {
-      List<Future<Boolean>> results = executorService.invokeAll( inputCallables, timeout, unit );
-      for ( Future<Boolean> result : results ) {
-        result.get();
-      }
-    } catch ( InterruptedException e ) {
-      logger.error( e );
-    } catch ( ExecutionException e ) {
-      logger.error( e );
+      Class<? extends Comparator<Integer>> comp = getComparatorClass( comparatorClass );
+      SortableTableModel sortable = new SortableTableModel( unsorted );
+      sortable.sort( comp, sortBy );
+      return sortable;
+    } catch ( Exception e ) {
+      throw new SortException( "Exception during sorting ", e );
     }
   }
 
-  private String getSortXmlStep( TableModel unsorted, List<String> sortBy ) throws SortException {
-    StringBuilder sortXML = new StringBuilder(
-      "  <step>\n"
-        + "    <name>sort</name>\n"
-        + "    <type>SortRows</type>\n"
-        + "    <description/>\n"
-        + "    <distribute>Y</distribute>\n"
-        + "    <copies>1</copies>\n"
-        + "         <partitioning>\n"
-        + "           <method>none</method>\n"
-        + "           <schema_name/>\n"
-        + "           </partitioning>\n"
-        + "      <directory>%%java.io.tmpdir%%</directory>\n"
-        + "      <prefix>out</prefix>\n"
-        + "      <sort_size>1000000</sort_size>\n"
-        + "      <free_memory>25</free_memory>\n"
-        + "      <compress>N</compress>\n"
-        + "      <compress_variable/>\n"
-        + "      <unique_rows>N</unique_rows>\n"
-        + "    <fields>\n" );
-
-    for ( String s : sortBy ) {
-      SortDescriptor sort = new SortDescriptor( ( s ) );
-
-      sortXML.append( "      <field>\n"
-        + XMLHandler.addTagValue( "name", unsorted.getColumnName( sort.getIndex() ) )
-        + XMLHandler.addTagValue( "ascending", sort.getIsAscendingString() )
-        + "        <case_sensitive>N</case_sensitive>\n"
-        + "      </field>\n" );
-    }
-
-    sortXML.append( "    </fields>\n"
-      + "     <cluster_schema/>\n"
-      + " <remotesteps>   <input>   </input>   <output>   </output> </remotesteps>    <GUI>\n"
-      + "      <xloc>615</xloc>\n"
-      + "      <yloc>188</yloc>\n"
-      + "      <draw>Y</draw>\n"
-      + "      </GUI>\n"
-      + "    </step>\n" );
-
-    return sortXML.toString();
+  @SuppressWarnings( "unchecked" )
+  private static Class<? extends Comparator<Integer>> getComparatorClass( String comparatorClass )
+    throws ClassNotFoundException {
+    return (Class<? extends Comparator<Integer>>) Class.forName( comparatorClass );
   }
 
-  private class SortDescriptor {
-
-    private Integer index;
-    private String direction;
-    private static final String REGEXP = "^(\\d+)([AD]?)$";
-    Pattern p = Pattern.compile( REGEXP );
-
-    public SortDescriptor( String sortBy ) throws SortException {
-
-      Matcher m = p.matcher( sortBy );
-      if ( m.matches() ) {
-        // valid one
-        index = Integer.parseInt( m.group( 1 ) );
-
-        if ( m.group( 2 ).equals( "D" ) ) {
-          setDirection( "DESC" );
-        } else {
-          setDirection( "ASC" );
-        }
-
-      } else {
-        throw new SortException( "Invalid searchBy option: " + sortBy, null );
-      }
-
-    }
-
-    public String getIsAscendingString() {
-      if ( getDirection().equals( "ASC" ) ) {
-        return "Y";
-      } else {
-        return "N";
-      }
-    }
-
-    public String getDirection() {
-      return direction;
-    }
-
-    public void setDirection( String direction ) {
-      this.direction = direction;
-    }
+  /**
+   * Sorts with {@link DefaultSortComparator} ordering, spilling to disk if the sort doesn't fit in memory.
+   *
+   * @see SpillingSorter
+   */
+  public TableModel defaultSort( TableModel unsorted, List<String> sortBy ) throws SortException {
 
-    public Integer getIndex() {
-      return index;
+    if ( unsorted == null || unsorted.getRowCount() == 0 ) {
+      return unsorted;
     }
-
-    public void setIndex( Integer index ) {
-      this.index = index;
+    long start = System.currentTimeMillis();
+    int[] order = SpillingSorter.fromSettings().sort( unsorted, sortBy );
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Sorted " + order.length + " rows in " + ( System.currentTimeMillis() - start ) + "ms" );
     }
+    return new SortableTableModel( unsorted, order );
   }
 }
@@ -14,9 +14,9 @@
 package pt.webdetails.cda.utils.kettle;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableModel;
@@ -30,19 +30,28 @@ public class SortableTableModel extends AbstractTableModel {
   private static Log logger = LogFactory.getLog( SortableTableModel.class );
 
   private TableModel base;
-  private Integer[] sortedIndices;
+  private int[] sortedIndices;
 
   public SortableTableModel( TableModel base ) {
     this.base = base;
-    sortedIndices = new Integer[ base.getRowCount() ];
+    sortedIndices = new int[ base.getRowCount() ];
     for ( int i = 0; i < sortedIndices.length; i++ ) {
       sortedIndices[ i ] = i;
     }
   }
 
+  /**
+   * @param base          table to sort
+   * @param sortedIndices rows of <code>base</code> in sorted order
+   */
+  public SortableTableModel( TableModel base, int[] sortedIndices ) {
+    this.base = base;
+    this.sortedIndices = sortedIndices;
+  }
+
   @Override
   public int getRowCount() {
-    return base.getRowCount();
+    return sortedIndices.length;
   }
 
   @Override
@@ -81,9 +90,7 @@ public class SortableTableModel extends AbstractTableModel {
   }
 
   public void sort() {
-    List<Integer> idxs = Arrays.asList( sortedIndices );
-    Collections.sort( idxs );
-    sortedIndices = idxs.toArray( sortedIndices );
+    Arrays.sort( sortedIndices );
   }
 
   public void sort( Class<? extends Comparator<Integer>> klass, List<String> sortBy ) throws ClassCastException,
@@ -93,11 +100,74 @@ public class SortableTableModel extends AbstractTableModel {
       logger.error( e );
       throw e;
     }
+    Comparator<Integer> comp = createComparator( klass, base, sortBy );
+    try {
+      sortIndices( comp );
+    } catch ( RuntimeException e ) {
+      SortException se = new SortException( "Couldn't sort", e );
+      logger.error( se );
+      throw se;
+    }
+  }
+
+  /**
+   * Keeps only the first <code>limit</code> rows of the sorted table, in order.<br>
+   * Uses a bounded heap, so only <code>limit</code> rows are ever held sorted.
+   *
+   * @param comp  row index comparator; ties are resolved by row index so the result matches a stable sort
+   * @param limit number of rows to keep
+   */
+  public void sortTop( final Comparator<Integer> comp, int limit ) {
+    if ( limit >= sortedIndices.length ) {
+      sortIndices( comp );
+      return;
+    }
+    final int size = Math.max( limit, 0 );
+    if ( size == 0 ) {
+      sortedIndices = new int[ 0 ];
+      return;
+    }
+    // head is the greatest of the rows kept so far
+    PriorityQueue<Integer> heap = new PriorityQueue<Integer>( size, new Comparator<Integer>() {
+      public int compare( Integer i0, Integer i1 ) {
+        return compareRows( comp, i1, i0 );
+      }
+    } );
+    for ( int row : sortedIndices ) {
+      if ( heap.size() < size ) {
+        heap.add( row );
+      } else if ( compareRows( comp, row, heap.peek() ) < 0 ) {
+        heap.poll();
+        heap.add( row );
+      }
+    }
+    int[] top = new int[ heap.size() ];
+    for ( int i = top.length - 1; i >= 0; i-- ) {
+      top[ i ] = heap.poll();
+    }
+    sortedIndices = top;
+  }
+
+  private void sortIndices( Comparator<Integer> comp ) {
+    Integer[] idxs = new Integer[ sortedIndices.length ];
+    for ( int i = 0; i < idxs.length; i++ ) {
+      idxs[ i ] = sortedIndices[ i ];
+    }
+    Arrays.sort( idxs, comp );
+    for ( int i = 0; i < idxs.length; i++ ) {
+      sortedIndices[ i ] = idxs[ i ];
+    }
+  }
+
+  private static int compareRows( Comparator<Integer> comp, Integer row0, Integer row1 ) {
+    int cmp = comp.compare( row0, row1 );
+    return cmp != 0 ? cmp : Integer.compare( row0, row1 );
+  }
+
+  static Comparator<Integer> createComparator( Class<? extends Comparator<Integer>> klass, TableModel base,
+                                               List<String> sortBy ) throws ClassCastException, SortException {
     try {
-      Comparator<Integer> comp = klass.getConstructor( TableModel.class, List.class ).newInstance( base, sortBy );
-      List<Integer> idxs = Arrays.asList( sortedIndices );
-      Collections.sort( idxs, comp );
-      sortedIndices = idxs.toArray( sortedIndices );
+      return klass.getConstructor( TableModel.class, List.class ).newInstance( base, sortBy );
     } catch ( Exception e ) {
       if ( e instanceof NoSuchMethodException || e instanceof InstantiationException ) {
         ClassCastException se = new ClassCastException( "Invalid Comparator" );
@@ -0,0 +1,451 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils.kettle;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import pt.webdetails.cda.CdaPropertiesHelper;
+
+import javax.swing.table.TableModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts the rows of a table within a memory budget.<br>
+ * The values of the sort columns are read into memory and sorted there while they fit the budget. Otherwise they are
+ * sorted in chunks that are spilled to disk as runs and merged back. Either way the result is the sorted order of the
+ * row indexes; the table itself is never copied.
+ */
+public class SpillingSorter {
+
+  private static final Log logger = LogFactory.getLog( SpillingSorter.class );
+
+  public static final String MEMORY_LIMIT_PROPERTY = "pt.webdetails.cda.sort.memoryLimit";
+  public static final String SPILL_DIRECTORY_PROPERTY = "pt.webdetails.cda.sort.spillDirectory";
+  private static final int DEFAULT_MEMORY_LIMIT_MB = 64;
+
+  /**
+   * Maximum number of runs merged at once; more runs are merged in several passes.
+   */
+  static final int MAX_MERGE_WIDTH = 64;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // row object, key array header and row index
+  private static final int ROW_OVERHEAD = 40;
+  // per sort column, the values themselves are already held by the table
+  private static final int KEY_REFERENCE_SIZE = 8;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte DECIMAL = 4;
+  private static final byte DATE = 5;
+  private static final byte TIMESTAMP = 6;
+  private static final byte BOOLEAN = 7;
+  // not written, read again from the table
+  private static final byte TABLE = 8;
+
+  private static final AtomicLong sorts = new AtomicLong();
+  private static final AtomicLong spilledSorts = new AtomicLong();
+  private static final AtomicLong spilledRuns = new AtomicLong();
+  private static final AtomicLong spilledBytes = new AtomicLong();
+  private static final AtomicLong spillBytesOnDisk = new AtomicLong();
+  private static final AtomicLong largestSpill = new AtomicLong();
+
+  private final long memoryLimit;
+  private final File spillDirectory;
+
+  /**
+   * @param memoryLimit    bytes the rows being sorted may take in memory; 0 or less to never spill
+   * @param spillDirectory where to write runs, <code>null</code> for the system temporary directory
+   */
+  public SpillingSorter( long memoryLimit, File spillDirectory ) {
+    this.memoryLimit = memoryLimit;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * @return a sorter configured by the <code>pt.webdetails.cda.sort.*</code> properties
+   */
+  public static SpillingSorter fromSettings() {
+    long memoryLimit =
+      CdaPropertiesHelper.getIntProperty( MEMORY_LIMIT_PROPERTY, DEFAULT_MEMORY_LIMIT_MB ) * 1024L * 1024L;
+    String directory = CdaPropertiesHelper.getStringProperty( SPILL_DIRECTORY_PROPERTY, null );
+    return new SpillingSorter( memoryLimit, StringUtils.isBlank( directory ) ? null : new File( directory.trim() ) );
+  }
+
+  /**
+   * @param table  table to sort
+   * @param sortBy sort columns and directions
+   * @return row indexes of <code>table</code> in sorted order; rows that compare equal keep their order
+   */
+  public int[] sort( TableModel table, List<String> sortBy ) throws SortException {
+    final DefaultSortComparator comparator;
+    try {
+      comparator = new DefaultSortComparator( table, sortBy );
+    } catch ( IllegalArgumentException e ) {
+      throw new SortException( e.getMessage(), e );
+    }
+    final int[] columns = comparator.getColumns();
+    final Comparator<Row> rowComparator = new Comparator<Row>() {
+      public int compare( Row row0, Row row1 ) {
+        int cmp = comparator.compareKeys( row0.keys, row1.keys );
+        return cmp != 0 ? cmp : Integer.compare( row0.index, row1.index );
+      }
+    };
+    sorts.incrementAndGet();
+
+    final int rowCount = table.getRowCount();
+    final int runSize = getRunSize( table, columns );
+    if ( rowCount <= runSize ) {
+      Row[] rows = readRows( table, columns, 0, rowCount );
+      Arrays.sort( rows, rowComparator );
+      int[] order = new int[ rowCount ];
+      for ( int i = 0; i < rowCount; i++ ) {
+        order[ i ] = rows[ i ].index;
+      }
+      return order;
+    }
+
+    logger.debug( "Sorting " + rowCount + " rows in runs of " + runSize );
+    spilledSorts.incrementAndGet();
+    Spill spill = new Spill();
+    try {
+      List<File> runs = new ArrayList<File>();
+      for ( int start = 0; start < rowCount; start += runSize ) {
+        Row[] rows = readRows( table, columns, start, Math.min( rowCount, start + runSize ) );
+        Arrays.sort( rows, rowComparator );
+        RunWriter writer = spill.newRun();
+        try {
+          for ( Row row : rows ) {
+            writer.write( row );
+          }
+        } finally {
+          writer.close();
+        }
+        runs.add( writer.file );
+      }
+      // keep the number of open files down
+      while ( runs.size() > MAX_MERGE_WIDTH ) {
+        List<File> merged = new ArrayList<File>();
+        for ( int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH ) {
+          List<File> group = runs.subList( i, Math.min( runs.size(), i + MAX_MERGE_WIDTH ) );
+          final RunWriter writer = spill.newRun();
+          try {
+            merge( group, table, columns, rowComparator, new RowSink() {
+              public void add( Row row ) throws IOException {
+                writer.write( row );
+              }
+            } );
+          } finally {
+            writer.close();
+          }
+          spill.delete( group );
+          merged.add( writer.file );
+        }
+        runs = merged;
+      }
+      final int[] order = new int[ rowCount ];
+      merge( runs, table, columns, rowComparator, new RowSink() {
+        private int position = 0;
+
+        public void add( Row row ) {
+          order[ position++ ] = row.index;
+        }
+      } );
+      return order;
+    } catch ( IOException e ) {
+      throw new SortException( "Unable to spill sort runs", e );
+    } finally {
+      spill.close();
+    }
+  }
+
+  /**
+   * @return how many rows fit the memory budget
+   */
+  int getRunSize( TableModel table, int[] columns ) {
+    final int rowCount = table.getRowCount();
+    if ( memoryLimit <= 0 || rowCount == 0 ) {
+      return Integer.MAX_VALUE;
+    }
+    long rowSize = ROW_OVERHEAD + (long) KEY_REFERENCE_SIZE * columns.length;
+    return (int) Math.max( 1, Math.min( Integer.MAX_VALUE, memoryLimit / rowSize ) );
+  }
+
+  private static Row[] readRows( TableModel table, int[] columns, int start, int end ) {
+    Row[] rows = new Row[ end - start ];
+    for ( int r = start; r < end; r++ ) {
+      Object[] keys = new Object[ columns.length ];
+      for ( int c = 0; c < columns.length; c++ ) {
+        keys[ c ] = table.getValueAt( r, columns[ c ] );
+      }
+      rows[ r - start ] = new Row( r, keys );
+    }
+    return rows;
+  }
+
+  private static void merge( List<File> runs, TableModel table, int[] columns, final Comparator<Row> rowComparator,
+                             RowSink sink ) throws IOException {
+    PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>( runs.size(), new Comparator<RunReader>() {
+      public int compare( RunReader reader0, RunReader reader1 ) {
+        return rowComparator.compare( reader0.current, reader1.current );
+      }
+    } );
+    List<RunReader> readers = new ArrayList<RunReader>( runs.size() );
+    try {
+      for ( File run : runs ) {
+        RunReader reader = new RunReader( run, table, columns );
+        readers.add( reader );
+        if ( reader.next() ) {
+          queue.add( reader );
+        }
+      }
+      while ( !queue.isEmpty() ) {
+        RunReader reader = queue.poll();
+        sink.add( reader.current );
+        if ( reader.next() ) {
+          queue.add( reader );
+        }
+      }
+    } finally {
+      for ( RunReader reader : readers ) {
+        IOUtils.closeQuietly( reader );
+      }
+    }
+  }
+
+  /**
+   * Sort statistics since startup: number of sorts, sorts that spilled, runs and bytes written, bytes currently on
+   * disk and the largest spill of a single sort.
+   */
+  public static Map<String, Long> getStatistics() {
+    Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+    statistics.put( "sorts", sorts.get() );
+    statistics.put( "spilledSorts", spilledSorts.get() );
+    statistics.put( "spilledRuns", spilledRuns.get() );
+    statistics.put( "spilledBytes", spilledBytes.get() );
+    statistics.put( "spillBytesOnDisk", spillBytesOnDisk.get() );
+    statistics.put( "largestSpill", largestSpill.get() );
+    return statistics;
+  }
+
+  private static final class Row {
+    final int index;
+    final Object[] keys;
+
+    Row( int index, Object[] keys ) {
+      this.index = index;
+      this.keys = keys;
+    }
+  }
+
+  private interface RowSink {
+    void add( Row row ) throws IOException;
+  }
+
+  /**
+   * Run files of a single sort, all deleted on close.
+   */
+  private class Spill implements Closeable {
+
+    private final Map<File, Long> files = new LinkedHashMap<File, Long>();
+    private long size;
+
+    RunWriter newRun() throws IOException {
+      if ( spillDirectory != null && !spillDirectory.isDirectory() && !spillDirectory.mkdirs() ) {
+        throw new IOException( "Unable to create spill directory " + spillDirectory );
+      }
+      File file = File.createTempFile( "cda-sort-", ".run", spillDirectory );
+      files.put( file, 0L );
+      return new RunWriter( file, this );
+    }
+
+    void written( File file ) {
+      long length = file.length();
+      files.put( file, length );
+      size += length;
+      spilledRuns.incrementAndGet();
+      spilledBytes.addAndGet( length );
+      spillBytesOnDisk.addAndGet( length );
+      long largest;
+      do {
+        largest = largestSpill.get();
+      } while ( size > largest && !largestSpill.compareAndSet( largest, size ) );
+    }
+
+    void delete( List<File> runs ) {
+      for ( File run : runs ) {
+        Long length = files.remove( run );
+        if ( !run.delete() && run.exists() ) {
+          logger.warn( "Unable to delete sort run " + run );
+        } else if ( length != null ) {
+          spillBytesOnDisk.addAndGet( -length );
+        }
+      }
+    }
+
+    public void close() {
+      delete( new ArrayList<File>( files.keySet() ) );
+    }
+  }
+
+  private static class RunWriter implements Closeable {
+
+    final File file;
+    private final Spill spill;
+    private final DataOutputStream out;
+
+    RunWriter( File file, Spill spill ) throws IOException {
+      this.file = file;
+      this.spill = spill;
+      this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE ) );
+    }
+
+    void write( Row row ) throws IOException {
+      out.writeInt( row.index );
+      for ( Object key : row.keys ) {
+        writeValue( key );
+      }
+    }
+
+    private void writeValue( Object value ) throws IOException {
+      if ( value == null || "".equals( value ) ) {
+        // both sort as null
+        out.writeByte( NULL );
+      } else if ( value instanceof String ) {
+        byte[] bytes = ( (String) value ).getBytes( StandardCharsets.UTF_8 );
+        out.writeByte( STRING );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+      } else if ( value instanceof Long || value instanceof Integer || value instanceof Short
+        || value instanceof Byte ) {
+        out.writeByte( LONG );
+        out.writeLong( ( (Number) value ).longValue() );
+      } else if ( value instanceof Double || value instanceof Float ) {
+        out.writeByte( DOUBLE );
+        out.writeDouble( ( (Number) value ).doubleValue() );
+      } else if ( value instanceof BigDecimal || value instanceof BigInteger ) {
+        out.writeByte( DECIMAL );
+        out.writeUTF( value.toString() );
+      } else if ( value instanceof Boolean ) {
+        out.writeByte( BOOLEAN );
+        out.writeBoolean( (Boolean) value );
+      } else if ( value.getClass() == Date.class ) {
+        out.writeByte( DATE );
+        out.writeLong( ( (Date) value ).getTime() );
+      } else if ( value.getClass() == Timestamp.class ) {
+        out.writeByte( TIMESTAMP );
+        out.writeLong( ( (Timestamp) value ).getTime() );
+        out.writeInt( ( (Timestamp) value ).getNanos() );
+      } else {
+        out.writeByte( TABLE );
+      }
+    }
+
+    public void close() throws IOException {
+      out.close();
+      spill.written( file );
+    }
+  }
+
+  private static class RunReader implements Closeable {
+
+    private final TableModel table;
+    private final int[] columns;
+    private final DataInputStream in;
+    Row current;
+
+    RunReader( File file, TableModel table, int[] columns ) throws IOException {
+      this.table = table;
+      this.columns = columns;
+      this.in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE ) );
+    }
+
+    /**
+     * @return <code>false</code> when the run is over
+     */
+    boolean next() throws IOException {
+      final int index;
+      try {
+        index = in.readInt();
+      } catch ( EOFException e ) {
+        current = null;
+        return false;
+      }
+      Object[] keys = new Object[ columns.length ];
+      for ( int c = 0; c < columns.length; c++ ) {
+        keys[ c ] = readValue( index, columns[ c ] );
+      }
+      current = new Row( index, keys );
+      return true;
+    }
+
+    private Object readValue( int row, int column ) throws IOException {
+      byte type = in.readByte();
+      switch ( type ) {
+        case NULL:
+          return null;
+        case STRING:
+          byte[] bytes = new byte[ in.readInt() ];
+          in.readFully( bytes );
+          return new String( bytes, StandardCharsets.UTF_8 );
+        case LONG:
+          return in.readLong();
+        case DOUBLE:
+          return in.readDouble();
+        case DECIMAL:
+          return new BigDecimal( in.readUTF() );
+        case BOOLEAN:
+          return in.readBoolean();
+        case DATE:
+          return new Date( in.readLong() );
+        case TIMESTAMP:
+          Timestamp timestamp = new Timestamp( in.readLong() );
+          timestamp.setNanos( in.readInt() );
+          return timestamp;
+        case TABLE:
+          return table.getValueAt( row, column );
+        default:
+          throw new IOException( "Corrupt sort run, unknown value type " + type );
+      }
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.utils.mondrian;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+/**
+ * Read only, columnar copy of an MDX result table, read one column at a time from the banded table model over the
+ * cell set so that the cell set can be released right after.<br>
+ * Cell values that are all doubles are kept unboxed; other columns, such as member names repeated along a
+ * crossjoin, keep each distinct value once. Serializes to little more than its primitive arrays.
+ */
+public class MdxResultTableModel extends AbstractTableModel {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String[] columnNames;
+  private final Class<?>[] columnClasses;
+  private final Column[] columns;
+  private final int rowCount;
+
+  private MdxResultTableModel( String[] columnNames, Class<?>[] columnClasses, Column[] columns, int rowCount ) {
+    this.columnNames = columnNames;
+    this.columnClasses = columnClasses;
+    this.columns = columns;
+    this.rowCount = rowCount;
+  }
+
+  /**
+   * Copies a table. Columns of class <code>Object</code> take the class of their first value.
+   */
+  public static MdxResultTableModel of( final TableModel tableModel ) {
+    final int rowCount = tableModel.getRowCount();
+    final int columnCount = tableModel.getColumnCount();
+    final String[] names = new String[ columnCount ];
+    final Class<?>[] classes = new Class<?>[ columnCount ];
+    final Column[] columns = new Column[ columnCount ];
+    for ( int c = 0; c < columnCount; c++ ) {
+      names[ c ] = tableModel.getColumnName( c );
+      classes[ c ] = tableModel.getColumnClass( c );
+      columns[ c ] = readColumn( tableModel, c, rowCount, classes[ c ] );
+      if ( classes[ c ] == Object.class ) {
+        for ( int r = 0; r < rowCount; r++ ) {
+          final Object value = columns[ c ].get( r );
+          if ( value != null ) {
+            classes[ c ] = value.getClass();
+            break;
+          }
+        }
+      }
+    }
+    return new MdxResultTableModel( names, classes, columns, rowCount );
+  }
+
+  /**
+   * @param names new names of the first <code>names.length</code> columns
+   * @return a table with only those columns, sharing this one's data
+   */
+  public MdxResultTableModel withColumnNames( final String[] names ) {
+    final Class<?>[] classes = new Class<?>[ names.length ];
+    final Column[] subset = new Column[ names.length ];
+    System.arraycopy( columnClasses, 0, classes, 0, names.length );
+    System.arraycopy( columns, 0, subset, 0, names.length );
+    return new MdxResultTableModel( names.clone(), classes, subset, rowCount );
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  @Override
+  public String getColumnName( final int column ) {
+    return columnNames[ column ];
+  }
+
+  @Override
+  public Class<?> getColumnClass( final int column ) {
+    return columnClasses[ column ];
+  }
+
+  @Override
+  public Object getValueAt( final int row, final int column ) {
+    if ( row < 0 || row >= rowCount ) {
+      throw new IndexOutOfBoundsException( "Row " + row + " of " + rowCount );
+    }
+    return columns[ column ].get( row );
+  }
+
+  private static Column readColumn( final TableModel tableModel, final int column, final int rowCount,
+                                    final Class<?> columnClass ) {
+    int row = 0;
+    if ( columnClass == Double.class || columnClass == Number.class || columnClass == Object.class ) {
+      final double[] values = new double[ rowCount ];
+      final BitSet nulls = new BitSet();
+      for ( ; row < rowCount; row++ ) {
+        final Object value = tableModel.getValueAt( row, column );
+        if ( value == null ) {
+          nulls.set( row );
+        } else if ( value.getClass() == Double.class ) {
+          values[ row ] = (Double) value;
+        } else {
+          break;
+        }
+      }
+      if ( row == rowCount ) {
+        return new DoubleColumn( values, nulls );
+      }
+      // not all doubles after all, start over with the rows read so far
+      final DictionaryBuilder builder = new DictionaryBuilder( rowCount );
+      for ( int r = 0; r < row; r++ ) {
+        builder.add( r, nulls.get( r ) ? null : values[ r ] );
+      }
+      return readColumn( tableModel, column, row, builder );
+    }
+    return readColumn( tableModel, column, row, new DictionaryBuilder( rowCount ) );
+  }
+
+  private static Column readColumn( final TableModel tableModel, final int column, final int fromRow,
+                                    final DictionaryBuilder builder ) {
+    final int rowCount = tableModel.getRowCount();
+    for ( int row = fromRow; row < rowCount; row++ ) {
+      builder.add( row, tableModel.getValueAt( row, column ) );
+    }
+    return builder.build();
+  }
+
+  private interface Column extends Serializable {
+    Object get( int row );
+  }
+
+  private static final class DoubleColumn implements Column {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[] values;
+    private final BitSet nulls;
+
+    DoubleColumn( double[] values, BitSet nulls ) {
+      this.values = values;
+      this.nulls = nulls;
+    }
+
+    @Override
+    public Object get( final int row ) {
+      return nulls.get( row ) ? null : values[ row ];
+    }
+  }
+
+  /**
+   * Each distinct value once, rows pointing to them. Code 0 is <code>null</code>.
+   */
+  private static final class DictionaryColumn implements Column {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] dictionary;
+    private final int[] codes;
+
+    DictionaryColumn( Object[] dictionary, int[] codes ) {
+      this.dictionary = dictionary;
+      this.codes = codes;
+    }
+
+    @Override
+    public Object get( final int row ) {
+      return dictionary[ codes[ row ] ];
+    }
+  }
+
+  private static final class ObjectColumn implements Column {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] values;
+
+    ObjectColumn( Object[] values ) {
+      this.values = values;
+    }
+
+    @Override
+    public Object get( final int row ) {
+      return values[ row ];
+    }
+  }
+
+  private static final class DictionaryBuilder {
+
+    private final int[] codes;
+    private final List<Object> dictionary = new ArrayList<Object>();
+    private final Map<Object, Integer> index = new HashMap<Object, Integer>();
+
+    DictionaryBuilder( int rowCount ) {
+      codes = new int[ rowCount ];
+      dictionary.add( null );
+    }
+
+    void add( final int row, final Object value ) {
+      if ( value == null ) {
+        return;
+      }
+      Integer code = index.get( value );
+      if ( code == null ) {
+        code = dictionary.size();
+        dictionary.add( value );
+        index.put( value, code );
+      }
+      codes[ row ] = code;
+    }
+
+    Column build() {
+      if ( dictionary.size() * 2 <= codes.length ) {
+        return new DictionaryColumn( dictionary.toArray(), codes );
+      }
+      // mostly distinct values, codes would only add to them
+      final Object[] values = new Object[ codes.length ];
+      for ( int row = 0; row < codes.length; row++ ) {
+        values[ row ] = dictionary.get( codes[ row ] );
+      }
+      return new ObjectColumn( values );
+    }
+  }
+}
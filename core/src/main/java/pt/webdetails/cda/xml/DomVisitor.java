@@ -27,6 +27,7 @@ import pt.webdetails.cda.connections.mondrian.MondrianJndiConnectionInfo;
 import pt.webdetails.cda.connections.scripting.ScriptingConnection;
 import pt.webdetails.cda.connections.scripting.ScriptingConnectionInfo;
 import pt.webdetails.cda.connections.sql.JdbcConnectionInfo;
+import pt.webdetails.cda.connections.sql.ReplicatedConnection;
 import pt.webdetails.cda.connections.sql.SqlJndiConnectionInfo;
 import pt.webdetails.cda.connections.xpath.XPathConnection;
 import pt.webdetails.cda.connections.xpath.XPathConnectionInfo;
@@ -35,9 +36,13 @@ import pt.webdetails.cda.dataaccess.CompoundDataAccess;
 import pt.webdetails.cda.dataaccess.DataservicesDataAccess;
 import pt.webdetails.cda.dataaccess.JoinCompoundDataAccess;
 import pt.webdetails.cda.dataaccess.Parameter;
+import pt.webdetails.cda.dataaccess.PREDataAccess;
 import pt.webdetails.cda.dataaccess.SimpleDataAccess;
+import pt.webdetails.cda.dataaccess.SqlDataAccess;
 import pt.webdetails.cda.dataaccess.StreamingDataservicesDataAccess;
 import pt.webdetails.cda.dataaccess.UnionCompoundDataAccess;
+import pt.webdetails.cda.dataaccess.sql.SqlPushdown;
+import pt.webdetails.cda.dataaccess.sql.SqlStatementSettings;
 
 /**
  * This class implements the xml-generation for all cda elements
@@ -55,6 +60,15 @@ public class DomVisitor {
     Element conEle = ele.addElement( "Connection" );
     conEle.addAttribute( "id", con.getId() );
     conEle.addAttribute( "type", con.getTypeForFile() );
+    if ( con.getMaxConcurrentQueries() != null ) {
+      conEle.addAttribute( "maxConcurrentQueries", con.getMaxConcurrentQueries().toString() );
+    }
+    if ( con.getMaxQueuedQueries() != null ) {
+      conEle.addAttribute( "maxQueuedQueries", con.getMaxQueuedQueries().toString() );
+    }
+    if ( con.getQueueTimeout() != null ) {
+      conEle.addAttribute( "queueTimeout", con.getQueueTimeout().toString() );
+    }
 
     // ... and then are dispatched for individual handling
     if ( con instanceof MetadataConnection ) {
@@ -63,6 +77,8 @@ public class DomVisitor {
       visit( (pt.webdetails.cda.connections.sql.JdbcConnection) con, conEle );
     } else if ( con instanceof pt.webdetails.cda.connections.sql.JndiConnection ) {
       visit( (pt.webdetails.cda.connections.sql.JndiConnection) con, conEle );
+    } else if ( con instanceof ReplicatedConnection ) {
+      visit( (ReplicatedConnection) con, conEle );
     } else if ( con instanceof pt.webdetails.cda.connections.mondrian.JdbcConnection ) {
       visit( (pt.webdetails.cda.connections.mondrian.JdbcConnection) con, conEle );
     } else if ( con instanceof pt.webdetails.cda.connections.mondrian.JndiConnection ) {
@@ -103,6 +119,28 @@ public class DomVisitor {
     ele.addElement( "Jndi" ).addText( conInfo.getJndi() );
   }
 
+  // ...sql.replicated
+  private void visit( ReplicatedConnection con, Element ele ) {
+    ele.addAttribute( "policy", con.getPolicy().getName() );
+    if ( con.isSticky() ) {
+      ele.addAttribute( "sticky", "true" );
+    }
+    ele.addAttribute( "maxFailures", Integer.toString( con.getMaxFailures() ) );
+    ele.addAttribute( "ejectTime", Integer.toString( con.getEjectTime() ) );
+    for ( ReplicatedConnection.ReplicaInfo replica : con.getReplicas() ) {
+      final Element replicaEle = ele.addElement( "Replica" ).addAttribute( "id", replica.getId() );
+      if ( replica.getJndi() != null ) {
+        replicaEle.addElement( "Jndi" ).addText( replica.getJndi().getJndi() );
+      } else {
+        final JdbcConnectionInfo conInfo = replica.getJdbc();
+        replicaEle.addElement( "Driver" ).addText( conInfo.getDriver() );
+        replicaEle.addElement( "Url" ).addText( conInfo.getUrl() );
+        replicaEle.addElement( "User" ).addText( nvl( conInfo.getUser() ) );
+        replicaEle.addElement( "Pass" ).addText( nvl( conInfo.getPass() ) );
+      }
+    }
+  }
+
   // ...mondrian.jdbc
   private void visit( pt.webdetails.cda.connections.mondrian.JdbcConnection con, Element ele ) {
     final pt.webdetails.cda.connections.mondrian.JdbcConnectionInfo conInfo = con.getConnectionInfo();
@@ -192,12 +230,44 @@ public class DomVisitor {
     if ( da.getCacheDuration() != 3600 ) {
       daEle.addAttribute( "cacheDuration", "" + da.getCacheDuration() );
     }
+    if ( da instanceof PREDataAccess && ( (PREDataAccess) da ).getMaxRows() != null ) {
+      daEle.addAttribute( "maxRows", ( (PREDataAccess) da ).getMaxRows().toString() );
+    }
+    if ( da.getTimeout() != null ) {
+      daEle.addAttribute( "timeout", da.getTimeout().toString() );
+    }
     daEle.addElement( "Name" ).addText( da.getName() );
 
     daEle.addElement( "Query" ).addCDATA( da.getQuery() );
 
   }
 
+  public void visit( SqlDataAccess da, Element daEle ) {
+    visit( (SimpleDataAccess) da, daEle );
+    SqlPushdown pushdown = da.getPushdown();
+    if ( pushdown != null ) {
+      Element pushdownEle = daEle.addElement( "Pushdown" );
+      pushdownEle.addAttribute( "sort", Boolean.toString( pushdown.isSort() ) );
+      pushdownEle.addAttribute( "filter", Boolean.toString( pushdown.isFilter() ) );
+      pushdownEle.addAttribute( "project", Boolean.toString( pushdown.isProject() ) );
+      if ( pushdown.getDialect() != null ) {
+        pushdownEle.addAttribute( "dialect", pushdown.getDialect().name().toLowerCase() );
+      }
+    }
+    SqlStatementSettings statementSettings = da.getStatementSettings();
+    if ( statementSettings != null ) {
+      Element statementEle = daEle.addElement( "Statement" );
+      if ( statementSettings.getFetchSize() != null ) {
+        statementEle.addAttribute( "fetchSize", statementSettings.getFetchSize().toString() );
+      }
+      if ( statementSettings.getQueryTimeout() != null ) {
+        statementEle.addAttribute( "queryTimeout", statementSettings.getQueryTimeout().toString() );
+      }
+      statementEle.addAttribute( "readOnly", Boolean.toString( statementSettings.isReadOnly() ) );
+      statementEle.addAttribute( "forwardOnly", Boolean.toString( statementSettings.isForwardOnly() ) );
+    }
+  }
+
   public void visit( DataservicesDataAccess da, Element daEle ) {
     visit( (SimpleDataAccess) da, daEle );
     daEle.remove( daEle.element( "Query" ) );
@@ -220,11 +290,20 @@ public class DomVisitor {
 
     daEle.addAttribute( "id", da.getId() );
     daEle.addAttribute( "type", da.getType() );
+    if ( da.getTimeout() != null ) {
+      daEle.addAttribute( "timeout", da.getTimeout().toString() );
+    }
 
     if ( da instanceof UnionCompoundDataAccess ) {
       UnionCompoundDataAccess uDa = (UnionCompoundDataAccess) da;
-      daEle.addElement( "Top" ).addAttribute( "id", uDa.getTopId() );
-      daEle.addElement( "Bottom" ).addAttribute( "id", uDa.getBottomId() );
+      if ( uDa.getMemberIds().size() == 2 ) {
+        daEle.addElement( "Top" ).addAttribute( "id", uDa.getTopId() );
+        daEle.addElement( "Bottom" ).addAttribute( "id", uDa.getBottomId() );
+      } else {
+        for ( String memberId : uDa.getMemberIds() ) {
+          daEle.addElement( "Member" ).addAttribute( "id", memberId );
+        }
+      }
     } else if ( da instanceof JoinCompoundDataAccess ) {
       JoinCompoundDataAccess jDa = (JoinCompoundDataAccess) da;
       daEle.addElement( "Left" ).addAttribute( "id", jDa.getLeftId() )
@@ -0,0 +1,59 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import org.junit.Test;
+import org.pentaho.reporting.libraries.formula.DefaultFormulaContext;
+import org.pentaho.reporting.libraries.formula.FormulaContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class CacheKeyTemplateTest {
+
+  private final FormulaContext context = new DefaultFormulaContext();
+
+  @Test
+  public void testEvaluate() throws Exception {
+    CacheKeyTemplate template = new CacheKeyTemplate();
+    template.add( "constant", "abc", null );
+    template.add( "formula", "x${\"y\"}z", null );
+    template.add( "empty", "${\"\"}", "fallback" );
+    // first one wins
+    template.add( "constant", "other", null );
+    assertFalse( template.isConstant() );
+
+    CacheKey key = template.evaluate( context );
+    assertEquals( 3, key.getKeyValuePairs().size() );
+    assertEquals( "abc", key.getByKey( "constant" ).getValue() );
+    assertEquals( "xyz", key.getByKey( "formula" ).getValue() );
+    assertEquals( "fallback", key.getByKey( "empty" ).getValue() );
+    // evaluated again on each request
+    assertEquals( key, template.evaluate( context ) );
+  }
+
+  @Test
+  public void testConstant() throws Exception {
+    CacheKeyTemplate template = new CacheKeyTemplate();
+    template.add( "a", "1", null );
+    template.add( "b", "2", null );
+    assertTrue( template.isConstant() );
+    CacheKey key = template.evaluate( context );
+    CacheKey other = template.evaluate( context );
+    assertEquals( key, other );
+    // callers may change the returned key
+    assertNotSame( key, other );
+  }
+}
@@ -0,0 +1,94 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.cache;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import pt.webdetails.cda.cache.DateRangeBuckets.Granularity;
+import pt.webdetails.cda.dataaccess.Parameter;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class DateRangeBucketsTest {
+
+  private static final SimpleDateFormat DAY = new SimpleDateFormat( "yyyy-MM-dd" );
+
+  @BeforeClass
+  public static void init() {
+    initBareEngine( getMockEnvironment() );
+  }
+
+  @Test
+  public void testDaySplit() throws Exception {
+    DateRangeBuckets buckets = new DateRangeBuckets( "startDate", "endDate", Granularity.DAY, 10 );
+    List<List<Parameter>> split = buckets.split( params( "2026-01-01", "2026-01-03" ) );
+    assertEquals( 3, split.size() );
+    assertEquals( DAY.parse( "2026-01-01" ), split.get( 0 ).get( 0 ).getValue() );
+    assertEquals( DAY.parse( "2026-01-02" ), split.get( 1 ).get( 0 ).getValue() );
+    assertEquals( DAY.parse( "2026-01-03" ), split.get( 2 ).get( 0 ).getValue() );
+    // last bucket is clipped to the requested end
+    assertEquals( DAY.parse( "2026-01-03" ), split.get( 2 ).get( 1 ).getValue() );
+    // other parameters are kept as is
+    assertEquals( "store", split.get( 1 ).get( 2 ).getValue() );
+  }
+
+  @Test
+  public void testMonthSplitIsAligned() throws Exception {
+    DateRangeBuckets buckets = new DateRangeBuckets( "startDate", "endDate", Granularity.MONTH, 10 );
+    List<List<Parameter>> split = buckets.split( params( "2026-01-15", "2026-03-10" ) );
+    assertEquals( 3, split.size() );
+    assertEquals( DAY.parse( "2026-01-15" ), split.get( 0 ).get( 0 ).getValue() );
+    assertEquals( DAY.parse( "2026-02-01" ), split.get( 1 ).get( 0 ).getValue() );
+    assertEquals( new Date( DAY.parse( "2026-03-01" ).getTime() - 1 ), split.get( 1 ).get( 1 ).getValue() );
+
+    // a sliding window shares its full buckets with the previous one
+    List<List<Parameter>> next = buckets.split( params( "2026-01-16", "2026-03-11" ) );
+    assertEquals( split.get( 1 ), next.get( 1 ) );
+  }
+
+  @Test
+  public void testNoSplit() throws Exception {
+    DateRangeBuckets buckets = new DateRangeBuckets( "startDate", "endDate", Granularity.DAY, 5 );
+    // too many buckets
+    assertNull( buckets.split( params( "2026-01-01", "2026-01-31" ) ) );
+    // inverted range
+    assertNull( buckets.split( params( "2026-01-03", "2026-01-01" ) ) );
+    // missing parameter
+    List<Parameter> params = params( "2026-01-01", "2026-01-02" );
+    params.remove( 1 );
+    assertNull( buckets.split( params ) );
+  }
+
+  private static List<Parameter> params( String start, String end ) throws Exception {
+    Parameter store = new Parameter( "store", "store" );
+    store.setType( Parameter.Type.STRING );
+    return new ArrayList<Parameter>( Arrays.asList(
+      dateParam( "startDate", start ), dateParam( "endDate", end ), store ) );
+  }
+
+  private static Parameter dateParam( String name, String date ) throws Exception {
+    Parameter param = new Parameter( name, DAY.parse( date ) );
+    param.setType( Parameter.Type.DATE );
+    return param;
+  }
+}
@@ -0,0 +1,75 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class FailedQueryCacheTest {
+
+  @Test
+  public void testFailureExpires() {
+    FailedQueryCache cache = new FailedQueryCache( 1000, 8000 );
+    TableCacheKey key = mock( TableCacheKey.class );
+    Exception error = new Exception( "db down" );
+
+    assertNull( cache.getFailure( key, 0 ) );
+    cache.putFailure( key, error, 0 );
+    assertSame( error, cache.getFailure( key, 999 ).getCause() );
+    assertNull( cache.getFailure( key, 1000 ) );
+    assertNull( cache.getFailure( mock( TableCacheKey.class ), 10 ) );
+  }
+
+  @Test
+  public void testExponentialBackoff() {
+    FailedQueryCache cache = new FailedQueryCache( 1000, 3000 );
+    TableCacheKey key = mock( TableCacheKey.class );
+    Exception error = new Exception( "timeout" );
+
+    assertEquals( 1000, cache.putFailure( key, error, 0 ).getBlockedUntil() );
+    assertEquals( 3000, cache.putFailure( key, error, 1000 ).getBlockedUntil() );
+    // capped at maxTtl
+    assertEquals( 6000, cache.putFailure( key, error, 3000 ).getBlockedUntil() );
+    assertEquals( 3, cache.getFailure( key, 5999 ).getCount() );
+
+    // success resets backoff
+    cache.remove( key );
+    assertNull( cache.getFailure( key, 6000 ) );
+    assertEquals( 7000, cache.putFailure( key, error, 6000 ).getBlockedUntil() );
+  }
+
+  @Test
+  public void testDisabled() {
+    FailedQueryCache cache = new FailedQueryCache( 0, 0 );
+    TableCacheKey key = mock( TableCacheKey.class );
+    assertNull( cache.putFailure( key, new Exception(), 0 ) );
+    assertNull( cache.getFailure( key, 0 ) );
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testStaleFailuresRestartBackoff() {
+    FailedQueryCache cache = new FailedQueryCache( 1000, 2000 );
+    TableCacheKey key = mock( TableCacheKey.class );
+    cache.putFailure( key, new Exception(), 0 );
+    assertNotNull( cache.getFailure( key, 500 ) );
+    // long after the last block ended, a new failure starts over
+    assertEquals( 1, cache.putFailure( key, new Exception(), 100000 ).getCount() );
+  }
+}
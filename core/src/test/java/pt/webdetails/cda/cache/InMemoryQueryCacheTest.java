@@ -0,0 +1,132 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import org.junit.Test;
+import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
+
+import javax.swing.table.TableModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class InMemoryQueryCacheTest {
+
+  private static class TestCache extends InMemoryQueryCache {
+    long now = 1000;
+
+    TestCache( long maxBytes ) {
+      super( maxBytes );
+    }
+
+    @Override
+    long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  @Test
+  public void testTimeToLive() {
+    TestCache cache = new TestCache( 1000 );
+    TableCacheKey key = mock( TableCacheKey.class );
+    TableModel table = mock( TableModel.class );
+    cache.putTableModel( key, table, 10, info( "a.cda", "1", 10 ) );
+
+    assertSame( table, cache.getTableModel( key ) );
+    assertEquals( 11000, cache.getExpirationTime( key ) );
+    cache.now = 10999;
+    assertNotNull( cache.getCacheEntryInfo( key ) );
+    cache.now = 11000;
+    assertNull( cache.getCacheEntryInfo( key ) );
+    assertNull( cache.getTableModel( key ) );
+    assertEquals( 0, cache.size() );
+    assertEquals( 0, cache.getUsedBytes() );
+    assertEquals( 1, cache.getStatistics().getHits() );
+    assertEquals( 1, cache.getStatistics().getMisses() );
+
+    // no ttl
+    cache.putTableModel( key, table, 0, info( "a.cda", "1", 10 ) );
+    cache.now = Long.MAX_VALUE / 2;
+    assertSame( table, cache.getTableModel( key ) );
+    assertEquals( 0, cache.getExpirationTime( key ) );
+  }
+
+  @Test
+  public void testByteBudget() {
+    TestCache cache = new TestCache( 100 );
+    TableCacheKey key1 = mock( TableCacheKey.class );
+    TableCacheKey key2 = mock( TableCacheKey.class );
+    TableCacheKey key3 = mock( TableCacheKey.class );
+    cache.putTableModel( key1, mock( TableModel.class ), 0, info( "a.cda", "1", 40 ) );
+    cache.now++;
+    cache.putTableModel( key2, mock( TableModel.class ), 0, info( "a.cda", "1", 40 ) );
+    cache.now++;
+    // key1 becomes the most recently used
+    assertNotNull( cache.getTableModel( key1 ) );
+    cache.now++;
+    cache.putTableModel( key3, mock( TableModel.class ), 0, info( "a.cda", "1", 40 ) );
+
+    assertEquals( 80, cache.getUsedBytes() );
+    assertNotNull( cache.getTableModel( key1 ) );
+    assertNull( cache.getTableModel( key2 ) );
+    assertNotNull( cache.getTableModel( key3 ) );
+    assertEquals( 2, cache.getStatistics().getEntryCount() );
+
+    // larger than the whole budget
+    cache.putTableModel( key2, mock( TableModel.class ), 0, info( "a.cda", "1", 200 ) );
+    assertNull( cache.getTableModel( key2 ) );
+    assertEquals( 80, cache.getUsedBytes() );
+
+    // replacing an entry updates its size
+    cache.putTableModel( key3, mock( TableModel.class ), 0, info( "a.cda", "1", 10 ) );
+    assertEquals( 50, cache.getUsedBytes() );
+  }
+
+  @Test
+  public void testRemoveAll() {
+    TestCache cache = new TestCache( 1000 );
+    TableCacheKey key1 = mock( TableCacheKey.class );
+    TableCacheKey key2 = mock( TableCacheKey.class );
+    TableCacheKey key3 = mock( TableCacheKey.class );
+    cache.putTableModel( key1, mock( TableModel.class ), 0, info( "a.cda", "1", 10 ) );
+    cache.putTableModel( key2, mock( TableModel.class ), 0, info( "a.cda", "2", 10 ) );
+    cache.putTableModel( key3, mock( TableModel.class ), 0, info( "b.cda", "1", 10 ) );
+
+    assertEquals( 1, cache.removeAll( "a.cda", "2" ) );
+    assertEquals( 1, cache.removeAll( "a.cda", null ) );
+    assertSame( key3, cache.getKeys().iterator().next() );
+    assertEquals( 10, cache.getUsedBytes() );
+    assertTrue( cache.remove( key3 ) );
+    assertFalse( cache.remove( key3 ) );
+
+    cache.putTableModel( key1, mock( TableModel.class ), 0, info( "a.cda", "1", 10 ) );
+    cache.clearCache();
+    assertEquals( 0, cache.size() );
+    assertEquals( 0, cache.getUsedBytes() );
+    assertEquals( 0, cache.getStatistics().getEntryCount() );
+  }
+
+  private static ExtraCacheInfo info( String cdaSettingsId, String dataAccessId, long byteSize ) {
+    ExtraCacheInfo info = mock( ExtraCacheInfo.class );
+    doReturn( cdaSettingsId ).when( info ).getCdaSettingsId();
+    doReturn( dataAccessId ).when( info ).getDataAccessId();
+    doReturn( byteSize ).when( info ).getByteSize();
+    return info;
+  }
+}
@@ -0,0 +1,146 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
+import pt.webdetails.cda.connections.DummyConnection;
+import pt.webdetails.cda.dataaccess.Parameter;
+
+import javax.swing.table.TableModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class QueryCacheSnapshotTest {
+
+  private static CacheManager cacheManager;
+
+  @BeforeClass
+  public static void init() {
+    initBareEngine( getMockEnvironment() );
+    cacheManager = CacheManager.create();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    cacheManager.shutdown();
+  }
+
+  @Test
+  public void testRoundtrip() throws Exception {
+    EHCacheQueryCache source = newCache( "snapshotSource" );
+    TableCacheKey shortLived = key( "short" );
+    TableCacheKey longLived = key( "long" );
+    TableCacheKey eternal = key( "eternal" );
+    source.putTableModel( shortLived, table( 1 ), 10, info( table( 1 ) ) );
+    source.putTableModel( longLived, table( 2 ), 3600, info( table( 2 ) ) );
+    source.putTableModel( eternal, table( 3 ), 0, info( table( 3 ) ) );
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals( 3, QueryCacheSnapshot.write( source, out ) );
+
+    EHCacheQueryCache target = newCache( "snapshotTarget" );
+    // a minute later the short lived entry is gone
+    long later = System.currentTimeMillis() + 60 * 1000;
+    assertEquals( 2, QueryCacheSnapshot.read( target, new ByteArrayInputStream( out.toByteArray() ), later ) );
+
+    assertNull( target.getTableModel( shortLived ) );
+    TableModel loaded = target.getTableModel( longLived );
+    assertNotNull( loaded );
+    assertEquals( 2, loaded.getRowCount() );
+    assertEquals( "b", loaded.getValueAt( 1, 0 ) );
+    assertEquals( "test", target.getCacheEntryInfo( longLived ).getCdaSettingsId() );
+    assertEquals( 0, target.getExpirationTime( eternal ) );
+  }
+
+  @Test
+  public void testUnexpectedClassRejected() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream( bytes );
+    out.writeUTF( "CDA-CACHE-SNAPSHOT" );
+    out.writeInt( 1 );
+    out.writeBoolean( true );
+    out.writeObject( new TreeSet<String>() );
+    out.close();
+
+    EHCacheQueryCache target = newCache( "snapshotRejected" );
+    try {
+      QueryCacheSnapshot.read( target, new ByteArrayInputStream( bytes.toByteArray() ) );
+      fail( "read a class not allowed in snapshots" );
+    } catch ( InvalidClassException e ) {
+      assertEquals( "java.util.TreeSet", e.classname );
+    }
+    assertTrue( QueryCacheSnapshot.isAllowed( "[Ljava.lang.String;" ) );
+    assertTrue( QueryCacheSnapshot.isAllowed( "[[D" ) );
+    assertTrue( QueryCacheSnapshot.isAllowed( "pt.webdetails.cda.cache.TableCacheKey" ) );
+    assertFalse( QueryCacheSnapshot.isAllowed( "[Ljava.util.PriorityQueue;" ) );
+    assertFalse( QueryCacheSnapshot.isAllowed( "pt.webdetails.cda.dataaccess.SqlDataAccess" ) );
+  }
+
+  @Test
+  public void testFileInSnapshotDirectory() throws Exception {
+    File file = QueryCacheSnapshot.getFile( "nightly/cache.bin" );
+    assertEquals( "cache.bin", file.getName() );
+    assertEquals( "nightly", file.getParentFile().getName() );
+    for ( String name : new String[] { "", "../cache.bin", "nightly/../../cache.bin", "/etc/passwd",
+      new File( "cache.bin" ).getAbsolutePath() } ) {
+      try {
+        QueryCacheSnapshot.getFile( name );
+        fail( "accepted " + name );
+      } catch ( IOException e ) {
+        // expected
+      }
+    }
+  }
+
+  private static EHCacheQueryCache newCache( String name ) {
+    cacheManager.addCache( new Cache( name, 100, false, false, 0, 0 ) );
+    return new EHCacheQueryCache( cacheManager.getCache( name ) );
+  }
+
+  private static TableCacheKey key( String query ) {
+    return new TableCacheKey( new DummyConnection(), query, Collections.<Parameter>emptyList(), null );
+  }
+
+  private static ExtraCacheInfo info( TableModel table ) {
+    return new ExtraCacheInfo( "test", "1", 10, table );
+  }
+
+  private static TableModel table( int rows ) {
+    TypedTableModel table = new TypedTableModel( new String[] { "name" }, new Class<?>[] { String.class } );
+    for ( int i = 0; i < rows; i++ ) {
+      table.addRow( new Object[] { String.valueOf( (char) ( 'a' + i ) ) } );
+    }
+    return table;
+  }
+}
@@ -0,0 +1,80 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import pt.webdetails.cda.connections.DummyConnection;
+import pt.webdetails.cda.dataaccess.Parameter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class TableCacheKeyTest {
+
+  @BeforeClass
+  public static void init() {
+    initBareEngine( getMockEnvironment() );
+  }
+
+  @Test
+  public void testFingerprint() throws Exception {
+    TableCacheKey key = key( "select 1", "sql", params( "a", "b" ), new CacheKey( "user", "admin" ) );
+    // parameter order doesn't matter
+    List<Parameter> reversed = params( "a", "b" );
+    Collections.reverse( reversed );
+    TableCacheKey same = key( "select 1", "sql", reversed, new CacheKey( "user", "admin" ) );
+    assertEquals( key.getFingerprint(), same.getFingerprint() );
+    assertEquals( key, same );
+    assertEquals( key.hashCode(), same.hashCode() );
+
+    assertNotEquals( key, key( "select 2", "sql", params( "a", "b" ), new CacheKey( "user", "admin" ) ) );
+    assertNotEquals( key, key( "select 1", "mdx", params( "a", "b" ), new CacheKey( "user", "admin" ) ) );
+    assertNotEquals( key, key( "select 1", "sql", params( "a", "c" ), new CacheKey( "user", "admin" ) ) );
+    assertNotEquals( key, key( "select 1", "sql", params( "a", "b" ), new CacheKey( "user", "guest" ) ) );
+    assertNotEquals( key, key( "select 1", "sql", params( "a", "b" ), null ) );
+
+    // survives serialization
+    TableCacheKey copy = TableCacheKey.getTableCacheKeyFromString( TableCacheKey.getTableCacheKeyAsString( key ) );
+    assertEquals( key.getFingerprint(), copy.getFingerprint() );
+
+    // recomputed when the key changes
+    copy.setQuery( "select 3" );
+    assertFalse( key.getFingerprint().equals( copy.getFingerprint() ) );
+
+    // parameters can't be changed from outside
+    key.getParameters()[ 0 ] = new Parameter( "p0", "c" );
+    assertEquals( same, key );
+    assertEquals( "p1", key.getParameters()[ 0 ].getName() );
+  }
+
+  private static TableCacheKey key( String query, String queryType, List<Parameter> params, CacheKey extra ) {
+    return new TableCacheKey( new DummyConnection(), query, queryType, params, extra );
+  }
+
+  private static List<Parameter> params( String first, String second ) {
+    Parameter p1 = new Parameter( "p1", first );
+    p1.setType( Parameter.Type.STRING );
+    Parameter p2 = new Parameter( "p2", second );
+    p2.setType( Parameter.Type.STRING );
+    return new ArrayList<Parameter>( Arrays.asList( p1, p2 ) );
+  }
+}
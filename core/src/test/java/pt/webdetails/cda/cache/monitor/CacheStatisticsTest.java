@@ -0,0 +1,118 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.cache.monitor;
+
+import org.junit.Test;
+import pt.webdetails.cda.cache.TableCacheKey;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class CacheStatisticsTest {
+
+  @Test
+  public void testCounters() {
+    CacheStatistics statistics = new CacheStatistics();
+    TableCacheKey key1 = mock( TableCacheKey.class );
+    TableCacheKey key2 = mock( TableCacheKey.class );
+    TableCacheKey key3 = mock( TableCacheKey.class );
+
+    statistics.put( key1, info( "a.cda", "1" ), 100 );
+    statistics.put( key2, info( "a.cda", "1" ), 50 );
+    statistics.put( key3, info( "b.cda", "1" ), 10 );
+    // replacing an entry doesn't count it twice
+    statistics.put( key2, info( "a.cda", "1" ), 70 );
+
+    assertEquals( 3, statistics.getEntryCount() );
+    assertEquals( 180, statistics.getByteSize() );
+    List<CacheStatistics.GroupStatistics> groups = statistics.getGroups( "a.cda" );
+    assertEquals( 1, groups.size() );
+    assertEquals( 2, groups.get( 0 ).getEntries() );
+    assertEquals( 170, groups.get( 0 ).getBytes() );
+    assertEquals( 2, statistics.getGroups( null ).size() );
+
+    statistics.hit( key1 );
+    statistics.hit( key1 );
+    statistics.miss();
+    assertEquals( 2, statistics.getGroups( "a.cda" ).get( 0 ).getHits() );
+    assertEquals( 2.0 / 3, statistics.getHitRatio(), 0.0001 );
+
+    statistics.remove( key1 );
+    statistics.remove( key1 );
+    assertEquals( 2, statistics.getEntryCount() );
+    assertEquals( 80, statistics.getByteSize() );
+
+    statistics.remove( key3 );
+    assertTrue( statistics.getGroups( "b.cda" ).isEmpty() );
+  }
+
+  @Test
+  public void testKeyPages() {
+    CacheStatistics statistics = new CacheStatistics();
+    Set<TableCacheKey> keys = new HashSet<TableCacheKey>();
+    for ( int i = 0; i < 25; i++ ) {
+      TableCacheKey key = mock( TableCacheKey.class );
+      keys.add( key );
+      statistics.put( key, info( "a.cda", "1" ), 1 );
+    }
+    statistics.put( mock( TableCacheKey.class ), info( "a.cda", "2" ), 1 );
+
+    assertEquals( 25, statistics.getEntryCount( "a.cda", "1" ) );
+    Set<TableCacheKey> paged = new HashSet<TableCacheKey>();
+    for ( int page = 0; page < 3; page++ ) {
+      paged.addAll( statistics.getKeys( "a.cda", "1", page * 10, 10 ) );
+    }
+    assertEquals( keys, paged );
+    assertEquals( 5, statistics.getKeys( "a.cda", "1", 20, 10 ).size() );
+    assertEquals( 25, statistics.getKeys( "a.cda", "1", 0, -1 ).size() );
+    assertTrue( statistics.getKeys( "c.cda", "1", 0, 10 ).isEmpty() );
+  }
+
+  @Test
+  public void testAllDataAccessesOfFile() {
+    CacheStatistics statistics = new CacheStatistics();
+    Set<TableCacheKey> keys = new HashSet<TableCacheKey>();
+    for ( int i = 0; i < 6; i++ ) {
+      TableCacheKey key = mock( TableCacheKey.class );
+      keys.add( key );
+      statistics.put( key, info( "a.cda", i % 2 == 0 ? "1" : "2" ), 1 );
+    }
+    statistics.put( mock( TableCacheKey.class ), info( "b.cda", "1" ), 1 );
+
+    assertEquals( 6, statistics.getEntryCount( "a.cda", null ) );
+    assertEquals( keys, new HashSet<TableCacheKey>( statistics.getKeys( "a.cda", null, 0, -1 ) ) );
+    // pages span data accesses
+    Set<TableCacheKey> paged = new HashSet<TableCacheKey>();
+    for ( int page = 0; page < 3; page++ ) {
+      List<TableCacheKey> pageKeys = statistics.getKeys( "a.cda", null, page * 2, 2 );
+      assertEquals( 2, pageKeys.size() );
+      paged.addAll( pageKeys );
+    }
+    assertEquals( keys, paged );
+    assertTrue( statistics.getKeys( "a.cda", null, 6, 2 ).isEmpty() );
+    assertEquals( 0, statistics.getEntryCount( "c.cda", null ) );
+  }
+
+  private static ExtraCacheInfo info( String cdaSettingsId, String dataAccessId ) {
+    ExtraCacheInfo info = mock( ExtraCacheInfo.class );
+    doReturn( cdaSettingsId ).when( info ).getCdaSettingsId();
+    doReturn( dataAccessId ).when( info ).getDataAccessId();
+    return info;
+  }
+}
@@ -0,0 +1,198 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import org.junit.Test;
+import pt.webdetails.cda.dataaccess.QueryRejectedException;
+import pt.webdetails.cda.query.QueryPriority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConnectionBulkheadTest {
+
+  @Test
+  public void testRejectWhenQueueFull() throws Exception {
+    ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 1, 0, 1000 );
+    bulkhead.acquire();
+    try {
+      bulkhead.acquire();
+      fail( "second query should have been rejected" );
+    } catch ( QueryRejectedException e ) {
+      // expected
+    }
+    assertEquals( 1, bulkhead.getActive() );
+    assertEquals( 1, bulkhead.getRejected() );
+
+    bulkhead.release();
+    bulkhead.acquire();
+    bulkhead.release();
+    assertEquals( 0, bulkhead.getActive() );
+    assertEquals( 2, bulkhead.getCompleted() );
+  }
+
+  @Test
+  public void testQueueTimeout() throws Exception {
+    ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 1, 1, 10 );
+    bulkhead.acquire();
+    try {
+      bulkhead.acquire();
+      fail( "query should have timed out" );
+    } catch ( QueryRejectedException e ) {
+      // expected
+    }
+    assertEquals( 1, bulkhead.getTimedOut() );
+    assertEquals( 0, bulkhead.getQueued() );
+    bulkhead.release();
+  }
+
+  @Test
+  public void testQueuedQueryRunsOnRelease() throws Exception {
+    final ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 1, 1, 10000 );
+    bulkhead.acquire();
+
+    final CountDownLatch acquired = new CountDownLatch( 1 );
+    final AtomicReference<Exception> error = new AtomicReference<Exception>();
+    Thread waiting = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          bulkhead.acquire();
+          acquired.countDown();
+        } catch ( Exception e ) {
+          error.set( e );
+        }
+      }
+    } );
+    waiting.start();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while ( bulkhead.getQueued() == 0 && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 5 );
+    }
+    assertEquals( 1, bulkhead.getQueued() );
+    // queue is full
+    try {
+      bulkhead.acquire();
+      fail( "third query should have been rejected" );
+    } catch ( QueryRejectedException e ) {
+      // expected
+    }
+
+    bulkhead.release();
+    assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+    waiting.join();
+    assertEquals( null, error.get() );
+    assertEquals( 1, bulkhead.getActive() );
+    assertEquals( 0, bulkhead.getQueued() );
+    bulkhead.release();
+  }
+
+  @Test
+  public void testUnlimited() throws Exception {
+    ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 0, 0, 0 );
+    for ( int i = 0; i < 100; i++ ) {
+      bulkhead.acquire();
+    }
+    assertEquals( 100, bulkhead.getActive() );
+    for ( int i = 0; i < 100; i++ ) {
+      bulkhead.release();
+    }
+    assertEquals( 100, bulkhead.getCompleted() );
+    assertEquals( 0, bulkhead.getRejected() );
+  }
+
+  @Test
+  public void testReservedForInteractive() throws Exception {
+    ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 2, 1, 0, 0 );
+    bulkhead.acquire( QueryPriority.EXPORT );
+    try {
+      bulkhead.acquire( QueryPriority.BACKGROUND );
+      fail( "last slot is reserved for interactive queries" );
+    } catch ( QueryRejectedException e ) {
+      // expected
+    }
+    bulkhead.acquire( QueryPriority.INTERACTIVE );
+    assertEquals( 1, bulkhead.getActive( QueryPriority.EXPORT ) );
+    assertEquals( 1, bulkhead.getActive( QueryPriority.INTERACTIVE ) );
+    bulkhead.release( QueryPriority.INTERACTIVE );
+    bulkhead.release( QueryPriority.EXPORT );
+    assertEquals( 0, bulkhead.getActive() );
+  }
+
+  @Test
+  public void testInteractiveGoesFirst() throws Exception {
+    final ConnectionBulkhead bulkhead = new ConnectionBulkhead( "test:1", 1, 0, 10, 10000 );
+    bulkhead.acquire( QueryPriority.INTERACTIVE );
+
+    final List<QueryPriority> order = Collections.synchronizedList( new ArrayList<QueryPriority>() );
+    Thread background = startWaiting( bulkhead, QueryPriority.BACKGROUND, order );
+    awaitQueued( bulkhead, 1 );
+    Thread export = startWaiting( bulkhead, QueryPriority.EXPORT, order );
+    awaitQueued( bulkhead, 2 );
+    Thread interactive = startWaiting( bulkhead, QueryPriority.INTERACTIVE, order );
+    awaitQueued( bulkhead, 3 );
+
+    bulkhead.release( QueryPriority.INTERACTIVE );
+    background.join( 5000 );
+    export.join( 5000 );
+    interactive.join( 5000 );
+    assertEquals( 3, order.size() );
+    assertEquals( QueryPriority.INTERACTIVE, order.get( 0 ) );
+    assertEquals( QueryPriority.EXPORT, order.get( 1 ) );
+    assertEquals( QueryPriority.BACKGROUND, order.get( 2 ) );
+  }
+
+  @Test
+  public void testReservedSlots() {
+    assertEquals( 0, ConnectionBulkheads.getReservedSlots( 0, 25 ) );
+    assertEquals( 0, ConnectionBulkheads.getReservedSlots( 8, 0 ) );
+    assertEquals( 2, ConnectionBulkheads.getReservedSlots( 8, 25 ) );
+    assertEquals( 1, ConnectionBulkheads.getReservedSlots( 2, 25 ) );
+  }
+
+  private static Thread startWaiting( final ConnectionBulkhead bulkhead, final QueryPriority priority,
+                                      final List<QueryPriority> order ) {
+    Thread thread = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          bulkhead.acquire( priority );
+          order.add( priority );
+          bulkhead.release( priority );
+        } catch ( QueryRejectedException e ) {
+          // order will be incomplete
+        }
+      }
+    } );
+    thread.start();
+    return thread;
+  }
+
+  private static void awaitQueued( ConnectionBulkhead bulkhead, int queued ) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while ( bulkhead.getQueued() < queued && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 5 );
+    }
+    assertEquals( queued, bulkhead.getQueued() );
+  }
+}
@@ -0,0 +1,124 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections;
+
+import org.junit.Test;
+import pt.webdetails.cda.connections.ConnectionCircuitBreaker.State;
+import pt.webdetails.cda.dataaccess.CircuitOpenException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ConnectionCircuitBreakerTest {
+
+  private static final long LATER = 60000;
+
+  @Test
+  public void testOpensOnFailureRate() throws Exception {
+    ConnectionCircuitBreaker breaker = new ConnectionCircuitBreaker( "test:1", 50, 0, 0, 10, 4, 1000, 1 );
+    breaker.acquire();
+    assertNull( breaker.onSuccess( 10 ) );
+    breaker.acquire();
+    assertNull( breaker.onFailure( 10 ) );
+    breaker.acquire();
+    // not enough queries yet
+    assertNull( breaker.onSuccess( 10 ) );
+    breaker.acquire();
+    assertEquals( State.OPEN, breaker.onFailure( 10 ) );
+
+    assertRejected( breaker, System.currentTimeMillis() );
+    assertEquals( 1, breaker.getRejected() );
+  }
+
+  @Test
+  public void testOpensOnSlowQueries() throws Exception {
+    ConnectionCircuitBreaker breaker = new ConnectionCircuitBreaker( "test:1", 0, 100, 50, 4, 2, 1000, 1 );
+    breaker.acquire();
+    assertNull( breaker.onFailure( 10 ) );
+    breaker.acquire();
+    assertNull( breaker.onSuccess( 10 ) );
+    breaker.acquire();
+    assertNull( breaker.onSuccess( 200 ) );
+    breaker.acquire();
+    assertEquals( State.OPEN, breaker.onSuccess( 200 ) );
+  }
+
+  @Test
+  public void testOldOutcomesForgotten() throws Exception {
+    ConnectionCircuitBreaker breaker = new ConnectionCircuitBreaker( "test:1", 50, 0, 0, 4, 4, 1000, 1 );
+    breaker.acquire();
+    breaker.onFailure( 10 );
+    for ( int i = 0; i < 6; i++ ) {
+      breaker.acquire();
+      assertNull( breaker.onSuccess( 10 ) );
+    }
+    breaker.acquire();
+    assertNull( breaker.onFailure( 10 ) );
+    assertEquals( State.CLOSED, breaker.getState() );
+  }
+
+  @Test
+  public void testHalfOpen() throws Exception {
+    ConnectionCircuitBreaker breaker = openBreaker( 2 );
+    long now = System.currentTimeMillis();
+
+    assertEquals( State.HALF_OPEN, breaker.acquire( now + LATER ) );
+    assertNull( breaker.acquire( now + LATER ) );
+    // only two trial queries at a time
+    assertRejected( breaker, now + LATER );
+
+    assertNull( breaker.onSuccess( 10 ) );
+    assertEquals( State.CLOSED, breaker.onSuccess( 10 ) );
+    assertNull( breaker.acquire( now + LATER ) );
+  }
+
+  @Test
+  public void testHalfOpenTrialFails() throws Exception {
+    ConnectionCircuitBreaker breaker = openBreaker( 1 );
+    long now = System.currentTimeMillis();
+
+    assertEquals( State.HALF_OPEN, breaker.acquire( now + LATER ) );
+    assertEquals( State.OPEN, breaker.onFailure( 10 ) );
+    assertRejected( breaker, System.currentTimeMillis() );
+  }
+
+  @Test
+  public void testIgnoredTrialFreesSlot() throws Exception {
+    ConnectionCircuitBreaker breaker = openBreaker( 1 );
+    long now = System.currentTimeMillis();
+
+    assertEquals( State.HALF_OPEN, breaker.acquire( now + LATER ) );
+    assertRejected( breaker, now + LATER );
+    breaker.onIgnored();
+    assertNull( breaker.acquire( now + LATER ) );
+    assertEquals( State.CLOSED, breaker.onSuccess( 10 ) );
+  }
+
+  private static ConnectionCircuitBreaker openBreaker( int halfOpenQueries ) throws Exception {
+    ConnectionCircuitBreaker breaker = new ConnectionCircuitBreaker( "test:1", 50, 0, 0, 2, 1, 1000, halfOpenQueries );
+    breaker.acquire();
+    assertEquals( State.OPEN, breaker.onFailure( 10 ) );
+    return breaker;
+  }
+
+  private static void assertRejected( ConnectionCircuitBreaker breaker, long now ) {
+    try {
+      breaker.acquire( now );
+      fail( "query should have been rejected" );
+    } catch ( CircuitOpenException e ) {
+      // expected
+    }
+  }
+}
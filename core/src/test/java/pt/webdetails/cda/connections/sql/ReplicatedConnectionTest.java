@@ -0,0 +1,202 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+import pt.webdetails.cda.connections.sql.ReplicaRouter.Policy;
+import pt.webdetails.cda.connections.sql.ReplicaRouter.Replica;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReplicatedConnectionTest {
+
+  private static final String URL = "jdbc:hsqldb:mem:cdaReplica";
+
+  /**
+   * Connects to an in-memory database; a replica that was never created is down.
+   */
+  private static class MemConnectionProvider implements ConnectionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String url;
+
+    MemConnectionProvider( String name ) {
+      this.url = URL + name + ";ifexists=true";
+    }
+
+    @Override
+    public Connection createConnection( String user, String password ) throws SQLException {
+      try {
+        Class.forName( "org.hsqldb.jdbcDriver" );
+      } catch ( ClassNotFoundException e ) {
+        throw new SQLException( e );
+      }
+      return DriverManager.getConnection( url, "sa", "" );
+    }
+
+    @Override
+    public Object getConnectionHash() {
+      return url;
+    }
+  }
+
+  @BeforeClass
+  public static void createReplicas() throws Exception {
+    Class.forName( "org.hsqldb.jdbcDriver" );
+    for ( String name : new String[] { "A", "B" } ) {
+      Connection connection = DriverManager.getConnection( URL + name, "sa", "" );
+      Statement statement = connection.createStatement();
+      statement.execute( "create table REPLICA ( NAME varchar(10) )" );
+      statement.execute( "insert into REPLICA values ( '" + name + "' )" );
+      statement.close();
+      connection.close();
+    }
+  }
+
+  private static Replica replica( String name ) {
+    return new Replica( name, new MemConnectionProvider( name ) );
+  }
+
+  private static String queryReplica( ConnectionProvider provider ) throws SQLException {
+    Connection connection = provider.createConnection( "sa", "" );
+    try {
+      ResultSet resultSet = connection.createStatement().executeQuery( "select NAME from REPLICA" );
+      assertTrue( resultSet.next() );
+      return resultSet.getString( 1 );
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void testRoundRobin() throws Exception {
+    ReplicaRouter router =
+      new ReplicaRouter( "test", Arrays.asList( replica( "A" ), replica( "B" ) ), Policy.ROUND_ROBIN, false, 3, 1000 );
+    ReplicatedConnectionProvider provider = new ReplicatedConnectionProvider( router );
+    String first = queryReplica( provider );
+    String second = queryReplica( provider );
+    assertFalse( first.equals( second ) );
+    assertEquals( first, queryReplica( provider ) );
+  }
+
+  @Test
+  public void testLeastOutstanding() throws Exception {
+    Replica a = replica( "A" );
+    Replica b = replica( "B" );
+    ReplicaRouter router = new ReplicaRouter( "test", Arrays.asList( a, b ), Policy.LEAST_OUTSTANDING, false, 3, 1000 );
+    ReplicatedConnectionProvider provider = new ReplicatedConnectionProvider( router );
+
+    Connection open = provider.createConnection( "sa", "" );
+    Replica busy = a.getOutstanding() == 1 ? a : b;
+    assertEquals( 1, busy.getOutstanding() );
+    for ( int i = 0; i < 4; i++ ) {
+      assertEquals( busy == a ? "B" : "A", queryReplica( provider ) );
+    }
+    open.close();
+    open.close();
+    assertEquals( 0, a.getOutstanding() );
+    assertEquals( 0, b.getOutstanding() );
+  }
+
+  @Test
+  public void testSticky() throws Exception {
+    ReplicaRouter router =
+      new ReplicaRouter( "test", Arrays.asList( replica( "A" ), replica( "B" ) ), Policy.ROUND_ROBIN, true, 3, 1000 );
+    ReplicatedConnectionProvider provider = new ReplicatedConnectionProvider( router );
+    Set<String> used = new HashSet<String>();
+    for ( int i = 0; i < 20; i++ ) {
+      ReplicatedConnectionProvider keyed = provider.withRoutingKey( "select " + i );
+      String replica = queryReplica( keyed );
+      assertEquals( replica, queryReplica( keyed ) );
+      assertEquals( replica, queryReplica( keyed ) );
+      used.add( replica );
+    }
+    assertEquals( 2, used.size() );
+  }
+
+  @Test
+  public void testFailoverAndEjection() throws Exception {
+    Replica down = replica( "Down" );
+    ReplicaRouter router =
+      new ReplicaRouter( "test", Arrays.asList( down, replica( "A" ) ), Policy.ROUND_ROBIN, false, 2, 60000 );
+    ReplicatedConnectionProvider provider = new ReplicatedConnectionProvider( router );
+    for ( int i = 0; i < 4; i++ ) {
+      assertEquals( "A", queryReplica( provider ) );
+    }
+    assertTrue( down.isEjected() );
+    // ejected replicas are tried last
+    assertSame( down, router.route( null ).get( 1 ) );
+    assertSame( down, router.route( null ).get( 1 ) );
+    // until they're back
+    assertFalse( down.isEjected( System.currentTimeMillis() + 60000 ) );
+  }
+
+  @Test
+  public void testAllReplicasDown() throws Exception {
+    ReplicaRouter router = new ReplicaRouter( "test", Arrays.asList( replica( "Down1" ), replica( "Down2" ) ),
+      Policy.ROUND_ROBIN, false, 1, 60000 );
+    try {
+      new ReplicatedConnectionProvider( router ).createConnection( "sa", "" );
+      fail( "no replica available" );
+    } catch ( SQLException e ) {
+      assertTrue( e.getCause() instanceof SQLException );
+    }
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    Element element = DocumentHelper.parseText(
+      "<Connection id=\"1\" type=\"sql.replicated\" policy=\"leastOutstanding\" sticky=\"true\" ejectTime=\"10\""
+        + " statementCacheSize=\"5\">"
+        + "<Replica id=\"a\"><Driver>org.hsqldb.jdbcDriver</Driver><Url>" + URL + "A</Url><User>sa</User></Replica>"
+        + "<Replica><Driver>org.hsqldb.jdbcDriver</Driver><Url>" + URL + "B</Url><User>sa</User></Replica>"
+        + "</Connection>" ).getRootElement();
+    ReplicatedConnection connection = new ReplicatedConnection( element );
+    assertEquals( "sql.replicated", connection.getTypeForFile() );
+    assertEquals( Policy.LEAST_OUTSTANDING, connection.getPolicy() );
+    assertTrue( connection.isSticky() );
+    assertEquals( 3, connection.getMaxFailures() );
+    assertEquals( 10, connection.getEjectTime() );
+    assertEquals( 5, connection.getStatementCacheSize() );
+    assertEquals( 2, connection.getReplicas().size() );
+    assertEquals( "a", connection.getReplicas().get( 0 ).getId() );
+    assertEquals( "2", connection.getReplicas().get( 1 ).getId() );
+    assertEquals( URL + "B", connection.getReplicas().get( 1 ).getJdbc().getUrl() );
+
+    // routing state is kept between queries
+    ConnectionProvider first = connection.getInitializedConnectionProvider();
+    ConnectionProvider second = connection.getInitializedConnectionProvider();
+    assertSame( ( (ReplicatedConnectionProvider) first ).getRouter(),
+      ( (ReplicatedConnectionProvider) second ).getRouter() );
+    StatementCaches.clear();
+  }
+}
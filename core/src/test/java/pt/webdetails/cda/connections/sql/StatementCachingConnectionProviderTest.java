@@ -0,0 +1,216 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.connections.sql;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class StatementCachingConnectionProviderTest {
+
+  private static final String URL = "jdbc:hsqldb:res:sampledata";
+  private static final String QUERY = "select count(*) from ORDERFACT where YEAR_ID = ?";
+
+  private static class HsqldbConnectionProvider implements ConnectionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Connection> connections = new ArrayList<Connection>();
+
+    @Override
+    public Connection createConnection( String user, String password ) throws SQLException {
+      try {
+        Class.forName( "org.hsqldb.jdbcDriver" );
+      } catch ( ClassNotFoundException e ) {
+        throw new SQLException( e );
+      }
+      Connection connection = DriverManager.getConnection( URL, "sa", "" );
+      connections.add( connection );
+      return connection;
+    }
+
+    @Override
+    public Object getConnectionHash() {
+      return URL;
+    }
+  }
+
+  private static int count( Connection connection, int year ) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement( QUERY );
+    try {
+      statement.setInt( 1, year );
+      ResultSet resultSet = statement.executeQuery();
+      assertTrue( resultSet.next() );
+      return resultSet.getInt( 1 );
+    } finally {
+      statement.close();
+    }
+  }
+
+  @Test
+  public void testStatementReused() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementCachingConnectionProvider caching =
+      new StatementCachingConnectionProvider( URL, provider, 10, 2, 60000L );
+    assertSame( URL, caching.getConnectionHash() );
+
+    Connection connection = caching.createConnection( null, null );
+    int count2004 = count( connection, 2004 );
+    assertTrue( count2004 > 0 );
+    connection.close();
+    assertTrue( connection.isClosed() );
+    assertEquals( 1, caching.getIdleConnections() );
+    assertFalse( provider.connections.get( 0 ).isClosed() );
+
+    connection = caching.createConnection( null, null );
+    assertEquals( 1, provider.connections.size() );
+    assertEquals( count2004, count( connection, 2004 ) );
+    // parameters were cleared, values are bound again
+    assertEquals( count( connection, 2005 ), count( connection, 2005 ) );
+    connection.close();
+
+    assertEquals( 3, caching.getHits() );
+    assertEquals( 1, caching.getMisses() );
+    assertEquals( 0.75, caching.getHitRatio(), 0.001 );
+    assertEquals( 1, caching.getConnectionsOpened() );
+
+    caching.close();
+    assertEquals( 0, caching.getIdleConnections() );
+    assertTrue( provider.connections.get( 0 ).isClosed() );
+  }
+
+  @Test
+  public void testStatementSettingsRestored() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementCachingConnectionProvider caching =
+      new StatementCachingConnectionProvider( URL, provider, 10, 2, 60000L );
+
+    Connection connection = caching.createConnection( null, null );
+    PreparedStatement statement = connection.prepareStatement( QUERY );
+    statement.setMaxRows( 1 );
+    statement.setQueryTimeout( 30 );
+    statement.setInt( 1, 2004 );
+    statement.executeQuery();
+    assertSame( connection, statement.getConnection() );
+    // left open, released along with the connection
+    connection.close();
+
+    connection = caching.createConnection( null, null );
+    statement = connection.prepareStatement( QUERY );
+    assertEquals( 0, statement.getMaxRows() );
+    assertEquals( 0, statement.getQueryTimeout() );
+    statement.close();
+    assertTrue( statement.isClosed() );
+    connection.close();
+    assertEquals( 1, caching.getHits() );
+    caching.close();
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementCachingConnectionProvider caching =
+      new StatementCachingConnectionProvider( URL, provider, 1, 2, 60000L );
+
+    Connection connection = caching.createConnection( null, null );
+    PreparedStatement first = connection.prepareStatement( QUERY );
+    // cache full and its only statement in use
+    PreparedStatement second = connection.prepareStatement( QUERY );
+    assertNotSame( first, second );
+    second.close();
+    first.close();
+    connection.prepareStatement( "select count(*) from ORDERFACT" ).close();
+    assertEquals( 1, caching.getEvictions() );
+    connection.prepareStatement( QUERY ).close();
+    assertEquals( 2, caching.getEvictions() );
+    assertEquals( 0, caching.getHits() );
+    connection.close();
+    caching.close();
+  }
+
+  @Test
+  public void testIdleConnections() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementCachingConnectionProvider caching =
+      new StatementCachingConnectionProvider( URL, provider, 10, 1, 60000L );
+
+    Connection first = caching.createConnection( "a", null, 0 );
+    Connection second = caching.createConnection( "a", null, 0 );
+    first.close();
+    second.close();
+    // only one kept
+    assertEquals( 1, caching.getIdleConnections() );
+    assertTrue( provider.connections.get( 1 ).isClosed() );
+
+    // not for other users
+    caching.createConnection( "b", null, 0 ).close();
+    assertEquals( 3, caching.getConnectionsOpened() );
+
+    caching.closeExpired( System.currentTimeMillis() + 60000L );
+    assertEquals( 0, caching.getIdleConnections() );
+    assertTrue( provider.connections.get( 0 ).isClosed() );
+  }
+
+  @Test
+  public void testProvidersPerSize() {
+    initBareEngine( getMockEnvironment() );
+    HsqldbConnectionProvider connectionProvider = new HsqldbConnectionProvider();
+    try {
+      ConnectionProvider small = StatementCaches.get( "small", connectionProvider, 2 );
+      assertSame( small, StatementCaches.get( "small", new HsqldbConnectionProvider(), 2 ) );
+      ConnectionProvider large = StatementCaches.get( "large", connectionProvider, 8 );
+      assertNotSame( small, large );
+      // neither replaces the other
+      assertSame( small, StatementCaches.get( "small", connectionProvider, 2 ) );
+      assertSame( large, StatementCaches.get( "large", connectionProvider, 8 ) );
+      assertSame( connectionProvider, StatementCaches.get( "off", connectionProvider, 0 ) );
+    } finally {
+      StatementCaches.clear();
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    initBareEngine( getMockEnvironment() );
+    HsqldbConnectionProvider connectionProvider = new HsqldbConnectionProvider();
+    try {
+      StatementCachingConnectionProvider caching =
+        (StatementCachingConnectionProvider) StatementCaches.get( "clear", connectionProvider, 2 );
+      assertTrue( StatementCaches.isEvicting() );
+      Connection connection = caching.createConnection( "a", null, 0 );
+      assertTrue( count( connection, 2003 ) > 0 );
+      connection.close();
+      assertEquals( 1, caching.getIdleConnections() );
+    } finally {
+      StatementCaches.clear();
+    }
+    assertFalse( StatementCaches.isEvicting() );
+    assertTrue( connectionProvider.connections.get( 0 ).isClosed() );
+  }
+}
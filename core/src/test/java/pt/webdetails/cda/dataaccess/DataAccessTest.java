@@ -13,6 +13,7 @@
 
 package pt.webdetails.cda.dataaccess;
 
+import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -23,18 +24,29 @@ import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 import pt.webdetails.cda.connections.ConnectionCatalog;
 import pt.webdetails.cda.connections.ConnectionCatalog.ConnectionType;
+import pt.webdetails.cda.connections.ConnectionCircuitBreaker;
 import pt.webdetails.cda.dataaccess.SimpleDataAccess.IDataSourceQuery;
 import pt.webdetails.cda.events.QueryErrorEvent;
+import pt.webdetails.cda.query.QueryDeadline;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.CdaSettings;
+import pt.webdetails.cda.settings.UnknownDataAccessException;
+import pt.webdetails.cda.utils.MetadataTableModel;
 import pt.webdetails.cda.xml.DomVisitor;
 import pt.webdetails.cpf.messaging.IEventPublisher;
 
 import javax.swing.table.TableModel;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
@@ -96,7 +108,8 @@ public class DataAccessTest {
     CdaSettings settings = mock( CdaSettings.class );
     when( settings.getDataAccess( "a" ) ).thenReturn( da );
     when( settings.getDataAccess( "b" ) ).thenReturn( db );
-    final ArrayList<String> params = new ArrayList<>();
+    // iterations run concurrently
+    final List<String> params = Collections.synchronizedList( new ArrayList<>() );
     DataAccess dataAccess = new TestDataAccess( "dataAccess", "test" ) {
       protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
         params.add( queryOptions.getParameter( "p1" ).getStringValue()
@@ -118,6 +131,166 @@ public class DataAccessTest {
     assertEquals( 4, params.size() );
   }
 
+  @Test
+  public void testIterableParametersUnion() throws Exception {
+    DataAccess da = new TestDataAccess( "a", "a" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        return new SimpleTableModel( new Object[] { "a1" }, new Object[] { "a2" } );
+      }
+    };
+    DataAccess db = new TestDataAccess( "b", "b" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        return new SimpleTableModel( new Object[] { "b1" }, new Object[] { "b2" } );
+      }
+    };
+    CdaSettings settings = mock( CdaSettings.class );
+    when( settings.getDataAccess( "a" ) ).thenReturn( da );
+    when( settings.getDataAccess( "b" ) ).thenReturn( db );
+    DataAccess dataAccess = new TestDataAccess( "dataAccess", "test" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        SimpleTableModel tableModel = new SimpleTableModel( new Object[] {
+          queryOptions.getParameter( "p1" ).getStringValue() + ":" + queryOptions.getParameter( "p2" ).getStringValue()
+        } );
+        tableModel.setColumnNames( "value" );
+        tableModel.setColumnClasses( String.class );
+        return tableModel;
+      }
+    };
+    dataAccess.setCdaSettings( settings );
+    QueryOptions opts = new QueryOptions();
+    opts.setDataAccessId( "dataAccess" );
+    opts.addParameter( "p1", "$FOREACH(a, 0)" );
+    opts.addParameter( "p2", "$FOREACH(b, 0)" );
+    opts.addSetting( AbstractDataAccess.FOREACH_UNION_SETTING, "true" );
+    opts.setSortBy( Collections.singletonList( "0D" ) );
+    opts.setPaginate( true );
+    opts.setPageStart( 0 );
+    opts.setPageSize( 3 );
+
+    TableModel result = dataAccess.doQuery( opts );
+    assertEquals( 3, result.getColumnCount() );
+    assertEquals( "value", result.getColumnName( 0 ) );
+    assertEquals( 3, result.getRowCount() );
+    assertEquals( "4", ( (MetadataTableModel) result ).getMetadata( "totalRows" ) );
+    String[] expected = { "a2:b2", "a2:b1", "a1:b2" };
+    for ( int r = 0; r < expected.length; r++ ) {
+      assertEquals( expected[ r ], result.getValueAt( r, 0 ) );
+      // iterated values follow the results
+      for ( int c = 1; c < 3; c++ ) {
+        String value = (String) result.getValueAt( r, c );
+        int part = "p1".equals( result.getColumnName( c ) ) ? 0 : 1;
+        assertEquals( expected[ r ].split( ":" )[ part ], value );
+      }
+    }
+  }
+
+  @Test
+  public void testEvaluatedOncePerRequest() throws Exception {
+    final AtomicInteger childQueries = new AtomicInteger();
+    final DataAccess child = new TestDataAccess( "child", "child" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        childQueries.incrementAndGet();
+        return new SimpleTableModel( new Object[] { queryOptions.getParameter( "p" ).getStringValue() } );
+      }
+    };
+    DataAccess parent = new TestDataAccess( "parent", "parent" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        try {
+          // same child twice, like both sides of a join
+          TableModel first = child.doQuery( (QueryOptions) queryOptions.clone() );
+          TableModel second = child.doQuery( (QueryOptions) queryOptions.clone() );
+          assertSame( first, second );
+          QueryOptions otherOptions = (QueryOptions) queryOptions.clone();
+          otherOptions.setParameter( "p", "other" );
+          child.doQuery( otherOptions );
+          return first;
+        } catch ( CloneNotSupportedException e ) {
+          throw new QueryException( "clone", e );
+        }
+      }
+    };
+    assertFalse( child.isCacheEnabled() );
+    QueryOptions opts = new QueryOptions();
+    opts.addParameter( "p", "value" );
+
+    TableModel result = parent.doQuery( opts );
+    assertEquals( "value", result.getValueAt( 0, 0 ) );
+    assertEquals( 2, childQueries.get() );
+    assertNull( opts.getEvaluationContext() );
+
+    // a new request evaluates again
+    parent.doQuery( opts );
+    assertEquals( 4, childQueries.get() );
+  }
+
+  @Test( timeout = 10000 )
+  public void testCyclicUnion() throws Exception {
+    final CdaSettings settings = mock( CdaSettings.class );
+    DataAccess leaf = new TestDataAccess( "leaf", "leaf" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        return new SimpleTableModel( new Object[] { "leaf" } );
+      }
+    };
+    // second member, likely queried from a pool thread
+    DataAccess back = new ForwardingDataAccess( "back", settings, "union" );
+    DataAccess union = new UnionCompoundDataAccess( DocumentHelper.parseText(
+      "<DataAccess id=\"union\" type=\"union\"><Member id=\"leaf\"/><Member id=\"back\"/></DataAccess>" )
+      .getRootElement() );
+    // siblings querying each other
+    DataAccess left = new ForwardingDataAccess( "left", settings, "right" );
+    DataAccess right = new ForwardingDataAccess( "right", settings, "left" );
+    DataAccess pair = new UnionCompoundDataAccess( DocumentHelper.parseText(
+      "<DataAccess id=\"pair\" type=\"union\"><Member id=\"left\"/><Member id=\"right\"/></DataAccess>" )
+      .getRootElement() );
+    for ( DataAccess dataAccess : new DataAccess[] { leaf, back, union, left, right, pair } ) {
+      dataAccess.setCdaSettings( settings );
+      when( settings.getDataAccess( dataAccess.getId() ) ).thenReturn( dataAccess );
+    }
+
+    for ( DataAccess cyclic : new DataAccess[] { union, pair } ) {
+      try {
+        cyclic.doQuery( new QueryOptions() );
+        fail( "cyclic" );
+      } catch ( QueryException e ) {
+        Throwable cause = e;
+        while ( cause.getCause() != null && !String.valueOf( cause.getMessage() ).contains( "depends on itself" ) ) {
+          cause = cause.getCause();
+        }
+        assertTrue( cause.getMessage(), cause.getMessage().contains( "depends on itself" ) );
+      }
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    final List<QueryDeadline> deadlines = new ArrayList<QueryDeadline>();
+    DataAccess dataAccess = new TestDataAccess( "timed", "timed" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        deadlines.add( queryOptions.getDeadline() );
+        return new SimpleTableModel( new Object[] { "value" } );
+      }
+    };
+    ( (AbstractDataAccess) dataAccess ).setTimeout( 5 );
+
+    QueryOptions opts = new QueryOptions();
+    dataAccess.doQuery( opts );
+    assertTrue( deadlines.get( 0 ).getRemainingMillis() <= 5000 );
+    assertNull( opts.getDeadline() );
+
+    // request timeout is shorter
+    opts.addSetting( AbstractDataAccess.TIMEOUT_SETTING, "2" );
+    dataAccess.doQuery( opts );
+    assertTrue( deadlines.get( 1 ).getRemainingMillis() <= 2000 );
+
+    opts.setDeadline( new QueryDeadline( 0 ) );
+    try {
+      dataAccess.doQuery( opts );
+      fail( "deadline passed" );
+    } catch ( QueryTimeoutException e ) {
+      assertEquals( 2, deadlines.size() );
+    }
+  }
+
   @Test
   public void testQueryDataSource() throws Exception {
     ICdaEnvironment env = getMockEnvironment();
@@ -177,6 +350,67 @@ public class DataAccessTest {
     verify( pub, times( 1 ) ).publish( any( QueryErrorEvent.class ) );
   }
 
+  @Test
+  public void testDataSourceFailure() {
+    assertTrue( SimpleDataAccess.isDataSourceFailure( new QueryException( "db", new SQLException( "down" ) ) ) );
+    assertFalse( SimpleDataAccess.isDataSourceFailure( new QueryTimeoutException( "deadline" ) ) );
+    assertFalse( SimpleDataAccess.isDataSourceFailure(
+      new QueryException( "Error parsing parameters ", new InvalidParameterException( "bad", null ) ) ) );
+    assertFalse( SimpleDataAccess.isDataSourceFailure( new IllegalStateException( "bug" ) ) );
+  }
+
+  @Test
+  public void testCancelledQueriesDontOpenBreaker() throws Exception {
+    ICdaEnvironment env = getMockEnvironment();
+    when( env.getEventPublisher() ).thenReturn( mock( IEventPublisher.class ) );
+    initBareEngine( env );
+    final ConnectionCircuitBreaker breaker = new ConnectionCircuitBreaker( "test", 50, 0, 0, 4, 2, 60000, 1 );
+    final AtomicBoolean cancel = new AtomicBoolean();
+    TestSimpleDataAccess dataAccess = new TestSimpleDataAccess( "id", "name", null, "q", "test" ) {
+      protected IDataSourceQuery performRawQuery( ParameterDataRow parameterDataRow ) throws QueryException {
+        if ( cancel.get() ) {
+          // the request gave up on the query, the driver reports it was cancelled
+          QueryDeadline.currentScope().getDeadline().cancel();
+        }
+        throw new QueryException( "Failed", new SQLException( "Statement cancelled" ) );
+      }
+
+      protected ConnectionCircuitBreaker getCircuitBreaker() {
+        return breaker;
+      }
+    };
+    dataAccess.setCdaSettings( mock( CdaSettings.class ) );
+    dataAccess.setCacheEnabled( false );
+
+    cancel.set( true );
+    for ( int i = 0; i < 4; i++ ) {
+      QueryOptions queryOptions = new QueryOptions();
+      queryOptions.setDeadline( new QueryDeadline( 60000 ) );
+      try {
+        dataAccess.doQuery( queryOptions );
+        fail( "no exception" );
+      } catch ( QueryTimeoutException e ) {
+        // expected
+      }
+    }
+    assertEquals( ConnectionCircuitBreaker.State.CLOSED, breaker.getState() );
+    assertEquals( 0, breaker.getFailed() );
+
+    // the same errors when not cancelled do open it
+    cancel.set( false );
+    for ( int i = 0; i < 2; i++ ) {
+      QueryOptions queryOptions = new QueryOptions();
+      queryOptions.setDeadline( new QueryDeadline( 60000 ) );
+      try {
+        dataAccess.doQuery( queryOptions );
+        fail( "no exception" );
+      } catch ( QueryException e ) {
+        assertFalse( e instanceof QueryTimeoutException );
+      }
+    }
+    assertEquals( ConnectionCircuitBreaker.State.OPEN, breaker.getState() );
+  }
+
   abstract static class TestDataAccess extends AbstractDataAccess {
     public TestDataAccess( String id, String name ) {
       super( id, name );
@@ -197,6 +431,28 @@ public class DataAccessTest {
     }
   }
 
+  /**
+   * Returns the results of another data access.
+   */
+  static class ForwardingDataAccess extends TestDataAccess {
+    private final CdaSettings settings;
+    private final String targetId;
+
+    ForwardingDataAccess( String id, CdaSettings settings, String targetId ) {
+      super( id, id );
+      this.settings = settings;
+      this.targetId = targetId;
+    }
+
+    protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+      try {
+        return settings.getDataAccess( targetId ).doQuery( (QueryOptions) queryOptions.clone() );
+      } catch ( CloneNotSupportedException | UnknownDataAccessException e ) {
+        throw new QueryException( "forward", e );
+      }
+    }
+  }
+
   abstract static class TestSimpleDataAccess extends SimpleDataAccess {
 
     public TestSimpleDataAccess( String id, String name, String connectionId, String query, String queryType ) {
@@ -0,0 +1,133 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class ParallelQueryExecutorTest {
+
+  private static ExecutorService pool;
+
+  @BeforeClass
+  public static void init() {
+    initBareEngine( getMockEnvironment() );
+    pool = Executors.newFixedThreadPool( 2 );
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    pool.shutdownNow();
+  }
+
+  @Test( timeout = 10000 )
+  public void testResultsInTaskOrder() throws Exception {
+    final CountDownLatch lastDone = new CountDownLatch( 1 );
+    List<Callable<String>> tasks = Arrays.<Callable<String>>asList(
+      () -> {
+        // finishes after the others
+        assertTrue( lastDone.await( 5, TimeUnit.SECONDS ) );
+        return "first";
+      },
+      () -> "second",
+      () -> {
+        lastDone.countDown();
+        return "third";
+      } );
+    assertEquals( Arrays.asList( "first", "second", "third" ), ParallelQueryExecutor.invokeAll( tasks, pool ) );
+  }
+
+  @Test( timeout = 10000 )
+  public void testCallerRunsUnstartedTasks() throws Exception {
+    // a pool that never gets to run anything
+    ExecutorService busy = mock( ExecutorService.class );
+    final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for ( int i = 0; i < 3; i++ ) {
+      final int value = i;
+      tasks.add( () -> {
+        threads.add( Thread.currentThread() );
+        return value;
+      } );
+    }
+    assertEquals( Arrays.asList( 0, 1, 2 ), ParallelQueryExecutor.invokeAll( tasks, busy ) );
+    assertEquals( Collections.nCopies( 3, Thread.currentThread() ), threads );
+  }
+
+  @Test
+  public void testNoThreads() throws Exception {
+    final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+    List<Callable<Thread>> tasks = new ArrayList<Callable<Thread>>();
+    for ( int i = 0; i < 3; i++ ) {
+      final int value = i;
+      tasks.add( () -> {
+        order.add( value );
+        return Thread.currentThread();
+      } );
+    }
+    assertEquals( Collections.nCopies( 3, Thread.currentThread() ), ParallelQueryExecutor.invokeAll( tasks, null ) );
+    assertEquals( Arrays.asList( 0, 1, 2 ), order );
+  }
+
+  @Test( timeout = 10000 )
+  public void testFailure() throws Exception {
+    final QueryException failure = new QueryException( "failed", null );
+    List<Callable<String>> tasks = Arrays.<Callable<String>>asList(
+      () -> "ok",
+      () -> {
+        throw failure;
+      },
+      () -> "also ok" );
+    try {
+      ParallelQueryExecutor.invokeAll( tasks, pool );
+      fail( "no exception" );
+    } catch ( QueryException e ) {
+      assertSame( failure, e );
+    }
+
+    final IllegalStateException bug = new IllegalStateException( "bug" );
+    tasks = Arrays.<Callable<String>>asList(
+      () -> "ok",
+      () -> {
+        throw bug;
+      } );
+    try {
+      ParallelQueryExecutor.invokeAll( tasks, null );
+      fail( "no exception" );
+    } catch ( QueryException e ) {
+      assertNotSame( bug, e );
+      assertSame( bug, e.getCause() );
+    }
+  }
+}
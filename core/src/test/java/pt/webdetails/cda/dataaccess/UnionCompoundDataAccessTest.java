@@ -0,0 +1,132 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess;
+
+import org.dom4j.DocumentHelper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+import pt.webdetails.cda.query.QueryOptions;
+import pt.webdetails.cda.settings.CdaSettings;
+
+import javax.swing.table.TableModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static pt.webdetails.cda.test.util.CdaTestHelper.getMockEnvironment;
+import static pt.webdetails.cda.test.util.CdaTestHelper.initBareEngine;
+
+public class UnionCompoundDataAccessTest {
+
+  @BeforeClass
+  public static void init() {
+    AbstractDataAccess.shutdownCache();
+    initBareEngine( getMockEnvironment() );
+  }
+
+  @Test( timeout = 10000 )
+  public void testMemberOrder() throws Exception {
+    CdaSettings settings = mock( CdaSettings.class );
+    // earlier members take longer, results still follow the declared order
+    String[] ids = { "top", "first", "second", "bottom" };
+    for ( int i = 0; i < ids.length; i++ ) {
+      member( settings, ids[ i ], ( ids.length - i ) * 50L, table( new Class<?>[] { String.class }, ids[ i ] ) );
+    }
+    // Top and Bottom go around the members wherever they're declared
+    DataAccess union = union( settings, "<Bottom id=\"bottom\"/><Member id=\"first\"/><Top id=\"top\"/>"
+      + "<Member id=\"second\"/>" );
+
+    TableModel result = union.doQuery( new QueryOptions() );
+    assertEquals( ids.length, result.getRowCount() );
+    for ( int r = 0; r < ids.length; r++ ) {
+      assertEquals( ids[ r ], result.getValueAt( r, 0 ) );
+    }
+  }
+
+  @Test
+  public void testColumnTypes() throws Exception {
+    CdaSettings settings = mock( CdaSettings.class );
+    member( settings, "longs", 0, table( new Class<?>[] { Long.class, Long.class, Long.class }, 1L, 2L, 3L ) );
+    member( settings, "mixed", 0, table( new Class<?>[] { Long.class, Double.class, String.class }, 4L, 5.0, "6" ) );
+    DataAccess union = union( settings, "<Member id=\"longs\"/><Member id=\"mixed\"/>" );
+
+    TableModel result = union.doQuery( new QueryOptions() );
+    assertEquals( 2, result.getRowCount() );
+    assertEquals( Long.class, result.getColumnClass( 0 ) );
+    assertEquals( Number.class, result.getColumnClass( 1 ) );
+    assertEquals( Object.class, result.getColumnClass( 2 ) );
+    assertEquals( 5.0, result.getValueAt( 1, 1 ) );
+    assertEquals( "6", result.getValueAt( 1, 2 ) );
+  }
+
+  @Test( timeout = 10000 )
+  public void testFailingMember() throws Exception {
+    CdaSettings settings = mock( CdaSettings.class );
+    member( settings, "ok", 0, table( new Class<?>[] { String.class }, "ok" ) );
+    DataAccess failing = new DataAccessTest.TestDataAccess( "failing", "failing" ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        throw new QueryException( "member failed", null );
+      }
+    };
+    failing.setCdaSettings( settings );
+    when( settings.getDataAccess( "failing" ) ).thenReturn( failing );
+    DataAccess union = union( settings, "<Member id=\"ok\"/><Member id=\"failing\"/><Member id=\"ok\"/>" );
+
+    try {
+      union.doQuery( new QueryOptions() );
+      fail( "member failed" );
+    } catch ( QueryException e ) {
+      Throwable cause = e;
+      while ( cause.getCause() != null && !"member failed".equals( cause.getMessage() ) ) {
+        cause = cause.getCause();
+      }
+      assertEquals( "member failed", cause.getMessage() );
+    }
+  }
+
+  private static TableModel table( Class<?>[] classes, Object... row ) {
+    String[] names = new String[ classes.length ];
+    for ( int c = 0; c < names.length; c++ ) {
+      names[ c ] = "c" + c;
+    }
+    TypedTableModel table = new TypedTableModel( names, classes );
+    table.addRow( row );
+    return table;
+  }
+
+  private static void member( CdaSettings settings, String id, final long delayMs, final TableModel table )
+    throws Exception {
+    DataAccess member = new DataAccessTest.TestDataAccess( id, id ) {
+      protected TableModel queryDataSource( QueryOptions queryOptions ) throws QueryException {
+        try {
+          Thread.sleep( delayMs );
+        } catch ( InterruptedException e ) {
+          throw new QueryException( "interrupted", e );
+        }
+        return table;
+      }
+    };
+    member.setCdaSettings( settings );
+    when( settings.getDataAccess( id ) ).thenReturn( member );
+  }
+
+  private static DataAccess union( CdaSettings settings, String members ) throws Exception {
+    DataAccess union = new UnionCompoundDataAccess( DocumentHelper.parseText(
+      "<DataAccess id=\"union\" type=\"union\">" + members + "</DataAccess>" ).getRootElement() );
+    union.setCdaSettings( settings );
+    return union;
+  }
+}
@@ -0,0 +1,120 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.dataaccess.sql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SqlQueryRewriterTest {
+
+  private static final String QUERY = "select a, b from t where c = ${c}";
+
+  @Test
+  public void testGeneric() {
+    SqlQueryRewriter rewriter = new SqlQueryRewriter( SqlDialect.GENERIC ).orderBy( 1, false ).orderBy( 0, true );
+    assertEquals( "SELECT * FROM (\n" + QUERY + "\n) cda_query ORDER BY 2 DESC, 1 ASC", rewriter.rewrite( QUERY ) );
+    rewriter.page( 40, 20 );
+    assertEquals( "SELECT * FROM (\n" + QUERY + "\n) cda_query ORDER BY 2 DESC, 1 ASC LIMIT 20 OFFSET 40",
+      rewriter.rewrite( QUERY ) );
+    assertEquals( "SELECT COUNT(*) FROM (\n" + QUERY + "\n) cda_query", rewriter.count( QUERY + " ; " ) );
+  }
+
+  @Test
+  public void testDialects() {
+    assertEquals(
+      "SELECT * FROM (\n" + QUERY + "\n) cda_query ORDER BY 1 ASC NULLS FIRST OFFSET 0 ROWS FETCH NEXT 5 ROWS ONLY",
+      new SqlQueryRewriter( SqlDialect.ORACLE ).orderBy( 0, true ).page( 0, 5 ).rewrite( QUERY ) );
+    assertEquals( "SELECT * FROM (\n" + QUERY + "\n) cda_query ORDER BY 1 DESC NULLS LAST LIMIT 5 OFFSET 10",
+      new SqlQueryRewriter( SqlDialect.POSTGRESQL ).orderBy( 0, false ).page( 10, 5 ).rewrite( QUERY ) );
+    assertEquals(
+      "SELECT * FROM (\n" + QUERY + "\n) cda_query ORDER BY (SELECT NULL) OFFSET 10 ROWS FETCH NEXT 5 ROWS ONLY",
+      new SqlQueryRewriter( SqlDialect.SQLSERVER ).page( 10, 5 ).rewrite( QUERY ) );
+  }
+
+  @Test
+  public void testInnerOrderBy() {
+    final String query = "select a, \"b c\" from t where c = ${c}";
+    final String ordered = query + "\n  order by \"b c\" desc, A -- newest first\n;";
+    assertTrue( SqlQueryRewriter.hasOrderBy( ordered ) );
+    SqlQueryRewriter rewriter = new SqlQueryRewriter( SqlDialect.SQLSERVER ).page( 10, 5 );
+    assertTrue( rewriter.keepOrder( ordered, Arrays.asList( "a", "b c" ) ) );
+    assertTrue( rewriter.isOrdered() );
+    // SQL Server doesn't allow an ORDER BY in a subquery, moved out
+    assertEquals( "SELECT * FROM (\n" + query + "\n) cda_query ORDER BY 2 DESC, 1"
+      + " OFFSET 10 ROWS FETCH NEXT 5 ROWS ONLY", rewriter.rewrite( ordered ) );
+    assertEquals( "SELECT COUNT(*) FROM (\n" + query + "\n) cda_query", rewriter.count( ordered ) );
+    // after the sort columns, not repeating them
+    assertEquals( "SELECT * FROM (\n" + query + "\n) cda_query ORDER BY 1 ASC, 2 DESC"
+      + " OFFSET 10 ROWS FETCH NEXT 5 ROWS ONLY", rewriter.orderBy( 0, true ).rewrite( ordered ) );
+
+    // expressions and columns not in the results can't be moved out
+    final SqlQueryRewriter generic = new SqlQueryRewriter( SqlDialect.GENERIC );
+    assertFalse( generic.keepOrder( query + " order by t.a", Arrays.asList( "a" ) ) );
+    assertFalse( generic.keepOrder( query + " order by d", Arrays.asList( "a" ) ) );
+    assertFalse( generic.keepOrder( query + " order by 3", Arrays.asList( "a" ) ) );
+    // limiting the rows, kept in the subquery
+    final String limited = query + " order by a limit 10";
+    assertFalse( generic.keepOrder( limited, Arrays.asList( "a" ) ) );
+    assertEquals( "SELECT COUNT(*) FROM (\n" + limited + "\n) cda_query", generic.count( limited ) );
+
+    // not at the end of the query
+    assertFalse( SqlQueryRewriter.hasOrderBy( "select a, rank() over (order by b) from t" ) );
+    assertFalse( SqlQueryRewriter.hasOrderBy( "select a from ( select a from t order by a ) x" ) );
+    assertFalse( SqlQueryRewriter.hasOrderBy( "select a from t where b = ') order by a' /* order by b */" ) );
+    assertTrue( generic.keepOrder( query, Arrays.asList( "a" ) ) );
+  }
+
+  @Test
+  public void testSearch() {
+    SqlQueryRewriter rewriter = new SqlQueryRewriter( SqlDialect.GENERIC )
+      .search( Arrays.asList( "a", "b\"c" ), Arrays.asList( "t0", "t1" ) ).orderBy( 0, true );
+    String where = " WHERE (LOWER(CAST(\"a\" AS VARCHAR(4000))) LIKE ${t0} ESCAPE '!'"
+      + " OR LOWER(CAST(\"b\"\"c\" AS VARCHAR(4000))) LIKE ${t0} ESCAPE '!')"
+      + " AND (LOWER(CAST(\"a\" AS VARCHAR(4000))) LIKE ${t1} ESCAPE '!'"
+      + " OR LOWER(CAST(\"b\"\"c\" AS VARCHAR(4000))) LIKE ${t1} ESCAPE '!')";
+    assertEquals( "SELECT * FROM (\n" + QUERY + "\n) cda_query" + where + " ORDER BY 1 ASC",
+      rewriter.rewrite( QUERY ) );
+    assertEquals( "SELECT COUNT(*) FROM (\n" + QUERY + "\n) cda_query" + where, rewriter.count( QUERY ) );
+
+    assertEquals( "CAST(\"a\" AS TEXT) ILIKE ? ESCAPE '!'",
+      SqlDialect.POSTGRESQL.containsIgnoreCase( SqlDialect.POSTGRESQL.quoteIdentifier( "a" ), "?" ) );
+    assertEquals( "`a``b`", SqlDialect.MYSQL.quoteIdentifier( "a`b" ) );
+    assertEquals( "%100!%!_!!x%", SqlDialect.likePattern( "100%_!X" ) );
+  }
+
+  @Test
+  public void testProject() {
+    SqlQueryRewriter rewriter = new SqlQueryRewriter( SqlDialect.GENERIC )
+      .project( Arrays.asList( "a", "b", "c" ), new boolean[] { true, false, true } );
+    assertEquals( "SELECT \"a\", CAST(NULL AS VARCHAR(1)) AS \"b\", \"c\" FROM (\n" + QUERY + "\n) cda_query",
+      rewriter.rewrite( QUERY ) );
+    assertEquals( "SELECT COUNT(*) FROM (\n" + QUERY + "\n) cda_query", rewriter.count( QUERY ) );
+  }
+
+  @Test
+  public void testDetection() {
+    assertEquals( SqlDialect.POSTGRESQL, SqlDialect.fromUrl( "jdbc:postgresql://localhost/db" ) );
+    assertEquals( SqlDialect.GENERIC, SqlDialect.fromUrl( "jdbc:hsqldb:res:sampledata" ) );
+    assertNull( SqlDialect.fromUrl( "jdbc:vertica://localhost/db" ) );
+    assertEquals( SqlDialect.SQLSERVER, SqlDialect.fromProductName( "Microsoft SQL Server" ) );
+    assertEquals( SqlDialect.GENERIC, SqlDialect.fromProductName( "HSQL Database Engine" ) );
+    assertEquals( SqlDialect.MYSQL, SqlDialect.parse( " mysql " ) );
+    assertTrue( new SqlQueryRewriter( null ).isEmpty() );
+  }
+}
@@ -0,0 +1,119 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.dataaccess.sql;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.modules.misc.datafactory.sql.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StatementTuningConnectionProviderTest {
+
+  private static final String URL = "jdbc:hsqldb:res:sampledata";
+
+  private static class HsqldbConnectionProvider implements ConnectionProvider {
+
+    private static final long serialVersionUID = 1L;
+
+    private Connection lastConnection;
+
+    @Override
+    public Connection createConnection( String user, String password ) throws SQLException {
+      try {
+        Class.forName( "org.hsqldb.jdbcDriver" );
+      } catch ( ClassNotFoundException e ) {
+        throw new SQLException( e );
+      }
+      lastConnection = DriverManager.getConnection( URL, "sa", "" );
+      return lastConnection;
+    }
+
+    @Override
+    public Object getConnectionHash() {
+      return URL;
+    }
+  }
+
+  @Test
+  public void testStatementSettings() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementTuningConnectionProvider tuning =
+      new StatementTuningConnectionProvider( provider, new SqlStatementSettings( 500, 30, true, true ), 0 );
+    assertSame( URL, tuning.getConnectionHash() );
+
+    Connection connection = tuning.createConnection( null, null );
+    try {
+      assertTrue( connection.isReadOnly() );
+      PreparedStatement prepared = connection.prepareStatement( "select count(*) from ORDERFACT where YEAR_ID = ?",
+        ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY );
+      assertEquals( 500, prepared.getFetchSize() );
+      assertEquals( 30, prepared.getQueryTimeout() );
+      assertEquals( ResultSet.TYPE_FORWARD_ONLY, prepared.getResultSetType() );
+      prepared.setInt( 1, 2004 );
+      ResultSet resultSet = prepared.executeQuery();
+      assertTrue( resultSet.next() );
+      assertTrue( resultSet.getInt( 1 ) > 0 );
+      resultSet.close();
+      prepared.close();
+
+      Statement statement = connection.createStatement();
+      assertEquals( 500, statement.getFetchSize() );
+      assertEquals( 30, statement.getQueryTimeout() );
+      statement.close();
+    } finally {
+      connection.close();
+    }
+    assertTrue( provider.lastConnection.isClosed() );
+  }
+
+  @Test
+  public void testDefaults() throws Exception {
+    HsqldbConnectionProvider provider = new HsqldbConnectionProvider();
+    StatementTuningConnectionProvider tuning = new StatementTuningConnectionProvider( provider, null, 0 );
+    assertFalse( tuning.isTuning() );
+    Connection connection = tuning.createConnection( null, null );
+    try {
+      // nothing to apply, not wrapped
+      assertSame( provider.lastConnection, connection );
+    } finally {
+      connection.close();
+    }
+
+    tuning =
+      new StatementTuningConnectionProvider( provider, new SqlStatementSettings( null, null, false, false ), 200 );
+    assertTrue( tuning.isTuning() );
+    connection = tuning.createConnection( null, null );
+    try {
+      assertFalse( connection.isReadOnly() );
+      Statement statement = connection.createStatement( ResultSet.TYPE_SCROLL_INSENSITIVE,
+        ResultSet.CONCUR_READ_ONLY );
+      assertEquals( 200, statement.getFetchSize() );
+      assertEquals( 0, statement.getQueryTimeout() );
+      assertEquals( ResultSet.TYPE_SCROLL_INSENSITIVE, statement.getResultSetType() );
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+}
@@ -26,6 +26,7 @@ import javax.swing.table.TableModel;
 
 import org.junit.Test;
 
+import pt.webdetails.cda.dataaccess.TableModelRowCursor;
 import pt.webdetails.cda.test.util.CdaTestHelper.SimpleTableModel;
 import pt.webdetails.cda.utils.MetadataTableModel;
 import pt.webdetails.cpf.Util;
@@ -124,6 +125,36 @@ public class JsonExporterTest {
     assertJsonEquals( "call arg value", expectArg, obj );
   }
 
+  @Test
+  public void testCursorExport() throws Exception {
+    TableModel table = BasicExportExamples.getTestTable1();
+
+    final TimeZone tz = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault( TimeZone.getTimeZone( "GMT" ) );
+      JsonExporter exporter = new JsonExporter( Collections.singletonMap( "callback", "callMe" ) );
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      exporter.export( out, new TableModelRowCursor( table ) );
+      Matcher callRegex = Pattern.compile( "\\s*callMe[(](.*)[)]\\s*;\\s*", Pattern.DOTALL )
+        .matcher( Util.toString( out.toByteArray() ) );
+      assertTrue( "makes callback", callRegex.matches() );
+      final String expected = "{\"metadata\":[\n"
+        + "  {\"colName\":\"The Integer\",\"colType\":\"Numeric\",\"colIndex\":0},"
+        + "  {\"colName\":\"The String\",\"colType\":\"String\",\"colIndex\":1},"
+        + "  {\"colName\":\"The Numeric\",\"colType\":\"Numeric\",\"colIndex\":2},"
+        + "  {\"colName\":\"The Date\",\"colType\":\"Date\",\"colIndex\":3},"
+        + "  {\"colName\":\"The Calculation\",\"colType\":\"Numeric\",\"colIndex\":4}],"
+        + "\"resultset\":[\n"
+        + "  [1,\"One\",1.05, \"Sun Jan 01 00:01:01 GMT 2012\", -12.34567890123456789],"
+        + "  [-2,\"Two > One\", -1.05, null, 987654321.123456789],"
+        + "  [9223372036854775807, \"Many\", 1.7976931348623157E308, \"Thu Jan 01 00:00:00 GMT 1970\",4.9E-325]],"
+        + "\"queryInfo\":{\"totalRows\":\"3\"}}";
+      assertJsonEquals( "streamed json export", expected, callRegex.group( 1 ) );
+    } finally {
+      TimeZone.setDefault( tz );
+    }
+  }
+
   private String exportToJsonString( TableModel table ) throws ExporterException {
     return exportToJsonString( table, Collections.<String, String>emptyMap() );
   }
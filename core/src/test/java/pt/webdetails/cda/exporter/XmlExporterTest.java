@@ -19,6 +19,7 @@ import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
 import org.junit.Test;
 
+import pt.webdetails.cda.dataaccess.TableModelRowCursor;
 import pt.webdetails.cda.test.util.TableModelChecker;
 import pt.webdetails.cda.test.util.CdaTestHelper.SimpleTableModel;
 import pt.webdetails.cda.utils.MetadataTableModel;
@@ -93,6 +94,29 @@ public class XmlExporterTest {
     checker.assertEquals( new SimpleTableModel( new Object[] { "", "", "", "", "" } ), result );
   }
 
+  @Test
+  public void testCursorExport() throws Exception {
+    final TimeZone tz = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault( TimeZone.getTimeZone( "GMT" ) );
+
+      TableModel table = BasicExportExamples.getTestTable1();
+      XmlExporter exporter = new XmlExporter( Collections.<String, String>emptyMap() );
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      exporter.export( out, new TableModelRowCursor( table ) );
+      XmlStringTable streamed = new XmlStringTable( new ByteArrayInputStream( out.toByteArray() ) );
+
+      XmlStringTable exported = exportToXmlStringTable( table );
+      TableModelChecker checker = new TableModelChecker();
+      checker.assertEquals( exported, streamed );
+      for ( int i = 0; i < exported.getColumnCount(); i++ ) {
+        assertEquals( exported.getColumnType( i ), streamed.getColumnType( i ) );
+      }
+    } finally {
+      TimeZone.setDefault( tz );
+    }
+  }
+
   private XmlStringTable exportToXmlStringTable( TableModel table ) throws Exception {
     return exportToXmlStringTable( table, Collections.<String, String>emptyMap() );
   }
@@ -13,22 +13,34 @@
 
 package pt.webdetails.cda.filetests;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.LinkedList;
 import javax.swing.table.TableModel;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
 import pt.webdetails.cda.CdaEngine;
 import pt.webdetails.cda.cache.IQueryCache;
 import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
+import pt.webdetails.cda.connections.ConnectionBulkhead;
+import pt.webdetails.cda.connections.ConnectionBulkheads;
 import pt.webdetails.cda.dataaccess.AbstractDataAccess;
+import pt.webdetails.cda.dataaccess.PREDataAccess;
+import pt.webdetails.cda.dataaccess.QueryRejectedException;
+import pt.webdetails.cda.dataaccess.RowCursor;
 import pt.webdetails.cda.dataaccess.SqlDataAccess;
+import pt.webdetails.cda.exporter.ExportedQueryResult;
+import pt.webdetails.cda.exporter.ExportedStreamQueryResult;
 import pt.webdetails.cda.query.QueryOptions;
 import pt.webdetails.cda.settings.CdaSettings;
 import pt.webdetails.cda.test.util.CdaTestHelper;
 import pt.webdetails.cda.test.util.CdaTestHelper.SimpleTableModel;
 import pt.webdetails.cda.test.util.TableModelChecker;
+import pt.webdetails.cda.utils.MetadataTableModel;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.spy;
@@ -159,4 +171,252 @@ public class SqlTest extends CdaTestCase {
     checker.setBigDecimalComparison( 3, "1e-14" );
     checker.assertEquals( expected, result );
   }
+
+  public void testSortPushdown() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-pushdown.cda" );
+    final CdaEngine engine = getEngine();
+    final TableModelChecker checker = new TableModelChecker( true, true );
+
+    final int[][] pages = { { 0, 0 }, { 0, 10 }, { 30, 25 }, { 900, 500 } };
+    for ( int[] page : pages ) {
+      final TableModel[] results = new TableModel[ 2 ];
+      final String[] ids = { "pushdown", "inMemory" };
+      for ( int i = 0; i < ids.length; i++ ) {
+        QueryOptions queryOptions = new QueryOptions();
+        queryOptions.setDataAccessId( ids[ i ] );
+        queryOptions.setSortBy( Arrays.asList( "1D", "2A" ) );
+        queryOptions.setPaginate( page[ 1 ] > 0 );
+        queryOptions.setPageStart( page[ 0 ] );
+        queryOptions.setPageSize( page[ 1 ] );
+        results[ i ] = engine.doQuery( cdaSettings, queryOptions );
+      }
+      checker.assertEquals( results[ 1 ], results[ 0 ] );
+      assertEquals( ( (MetadataTableModel) results[ 1 ] ).getMetadata( "totalRows" ),
+        ( (MetadataTableModel) results[ 0 ] ).getMetadata( "totalRows" ) );
+    }
+  }
+
+  public void testOrderedQueryPushdown() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-pushdown.cda" );
+    final CdaEngine engine = getEngine();
+    final TableModelChecker checker = new TableModelChecker( true, true );
+
+    final int[][] pages = { { 0, 10 }, { 30, 25 }, { 900, 500 } };
+    final String[][] sorts = { {}, { "2A" } };
+    for ( int[] page : pages ) {
+      for ( String[] sort : sorts ) {
+        final String[] ids = { "ordered", "orderedByExpression", "orderedInMemory" };
+        final TableModel[] results = new TableModel[ ids.length ];
+        for ( int i = 0; i < ids.length; i++ ) {
+          QueryOptions queryOptions = new QueryOptions();
+          queryOptions.setDataAccessId( ids[ i ] );
+          queryOptions.setSortBy( Arrays.asList( sort ) );
+          queryOptions.setPaginate( true );
+          queryOptions.setPageStart( page[ 0 ] );
+          queryOptions.setPageSize( page[ 1 ] );
+          results[ i ] = engine.doQuery( cdaSettings, queryOptions );
+        }
+        // pages keep the query's own order, as in memory
+        checker.assertEquals( results[ 2 ], results[ 0 ] );
+        checker.assertEquals( results[ 2 ], results[ 1 ] );
+      }
+    }
+  }
+
+  public void testFilterPushdown() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-pushdown.cda" );
+    final CdaEngine engine = getEngine();
+    final TableModelChecker checker = new TableModelChecker( true, true );
+
+    final String[][] searches = { { "s18_1 101", "0,1" }, { "_17", null }, { "%", null } };
+    for ( String[] search : searches ) {
+      final TableModel[] results = new TableModel[ 2 ];
+      final String[] ids = { "pushdown", "inMemory" };
+      for ( int i = 0; i < ids.length; i++ ) {
+        QueryOptions queryOptions = new QueryOptions();
+        queryOptions.setDataAccessId( ids[ i ] );
+        queryOptions.setSortBy( Arrays.asList( "1D", "2A" ) );
+        queryOptions.setPaginate( true );
+        queryOptions.setPageStart( 0 );
+        queryOptions.setPageSize( 10 );
+        queryOptions.addSetting( "dtFilter", search[ 0 ] );
+        if ( search[ 1 ] != null ) {
+          queryOptions.addSetting( "dtSearchableColumns", search[ 1 ] );
+        }
+        results[ i ] = engine.doQuery( cdaSettings, queryOptions );
+      }
+      checker.assertEquals( results[ 1 ], results[ 0 ] );
+      assertEquals( ( (MetadataTableModel) results[ 1 ] ).getMetadata( "totalRows" ),
+        ( (MetadataTableModel) results[ 0 ] ).getMetadata( "totalRows" ) );
+    }
+  }
+
+  public void testProjectionPushdown() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-pushdown.cda" );
+    final CdaEngine engine = getEngine();
+    final TableModelChecker checker = new TableModelChecker( true, true );
+
+    final String[][] outputColumnNames = { {}, { "ORDERNUMBER", "ORDERLINENUMBER" },
+      { "ORDERNUMBER", "ORDERLINENUMBER", "TOTAL" } };
+    for ( String[] outputColumnName : outputColumnNames ) {
+      final TableModel[] results = new TableModel[ 2 ];
+      final String[] ids = { "projection", "projectionInMemory" };
+      for ( int i = 0; i < ids.length; i++ ) {
+        QueryOptions queryOptions = new QueryOptions();
+        queryOptions.setDataAccessId( ids[ i ] );
+        queryOptions.setSortBy( Arrays.asList( "0A", "1A" ) );
+        queryOptions.setOutputColumnName( Arrays.asList( outputColumnName ) );
+        results[ i ] = engine.doQuery( cdaSettings, queryOptions );
+      }
+      checker.assertEquals( results[ 1 ], results[ 0 ] );
+    }
+  }
+
+  public void testMaxRows() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-limits.cda" );
+    final CdaEngine engine = getEngine();
+
+    QueryOptions queryOptions = new QueryOptions();
+    queryOptions.setDataAccessId( "maxRows" );
+    TableModel result = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 10, result.getRowCount() );
+    assertEquals( "true", ( (MetadataTableModel) result ).getMetadata( PREDataAccess.TRUNCATED_METADATA ) );
+
+    // requests may only lower the limit
+    queryOptions.addSetting( PREDataAccess.MAX_ROWS_SETTING, "5" );
+    result = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 5, result.getRowCount() );
+    assertEquals( "true", ( (MetadataTableModel) result ).getMetadata( PREDataAccess.TRUNCATED_METADATA ) );
+    queryOptions.addSetting( PREDataAccess.MAX_ROWS_SETTING, "1000" );
+    result = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 10, result.getRowCount() );
+
+    queryOptions = new QueryOptions();
+    queryOptions.setDataAccessId( "fitsMaxRows" );
+    result = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 3, result.getRowCount() );
+    assertNull( ( (MetadataTableModel) result ).getMetadata( PREDataAccess.TRUNCATED_METADATA ) );
+    queryOptions.addSetting( PREDataAccess.MAX_ROWS_SETTING, "2" );
+    result = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 2, result.getRowCount() );
+    assertEquals( "true", ( (MetadataTableModel) result ).getMetadata( PREDataAccess.TRUNCATED_METADATA ) );
+  }
+
+  public void testStatementSettings() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-limits.cda" );
+    final CdaEngine engine = getEngine();
+
+    final SqlDataAccess dataAccess = (SqlDataAccess) cdaSettings.getDataAccess( "statement" );
+    assertEquals( Integer.valueOf( 1000 ), dataAccess.getStatementSettings().getFetchSize() );
+    assertEquals( Integer.valueOf( 60 ), dataAccess.getStatementSettings().getQueryTimeout() );
+    assertTrue( dataAccess.getStatementSettings().isReadOnly() );
+    assertTrue( dataAccess.getStatementSettings().isForwardOnly() );
+
+    final TableModel[] results = new TableModel[ 2 ];
+    final String[] ids = { "statement", "noStatement" };
+    for ( int i = 0; i < ids.length; i++ ) {
+      QueryOptions queryOptions = new QueryOptions();
+      queryOptions.setDataAccessId( ids[ i ] );
+      queryOptions.setSortBy( Arrays.asList( "0A", "1A" ) );
+      results[ i ] = engine.doQuery( cdaSettings, queryOptions );
+    }
+    new TableModelChecker( true, true ).assertEquals( results[ 1 ], results[ 0 ] );
+  }
+
+  public void testReplicatedConnection() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-replicated.cda" );
+    final CdaEngine engine = getEngine();
+
+    QueryOptions queryOptions = new QueryOptions();
+    queryOptions.setDataAccessId( "single" );
+    queryOptions.setSortBy( Arrays.asList( "0A" ) );
+    final TableModel expected = engine.doQuery( cdaSettings, queryOptions );
+
+    queryOptions.setDataAccessId( "replicated" );
+    for ( int i = 0; i < 3; i++ ) {
+      new TableModelChecker( true, true ).assertEquals( expected, engine.doQuery( cdaSettings, queryOptions ) );
+    }
+    queryOptions.setParameter( "year", "2005" );
+    assertEquals( 1, engine.doQuery( cdaSettings, queryOptions ).getRowCount() );
+  }
+
+  public void testCursor() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-cursor.cda" );
+    final CdaEngine engine = getEngine();
+    final SqlDataAccess dataAccess = (SqlDataAccess) cdaSettings.getDataAccess( "1" );
+
+    QueryOptions queryOptions = new QueryOptions();
+    queryOptions.setDataAccessId( "1" );
+    queryOptions.addParameter( "status", new String[] { "Shipped", "Cancelled" } );
+    final TableModel expected = engine.doQuery( cdaSettings, queryOptions );
+    assertEquals( 5, expected.getRowCount() );
+
+    assertTrue( dataAccess.canOpenCursor( queryOptions ) );
+    final TypedTableModel streamed;
+    try ( RowCursor cursor = dataAccess.openCursor( queryOptions ) ) {
+      final String[] names = new String[ cursor.getColumnCount() ];
+      final Class<?>[] classes = new Class<?>[ names.length ];
+      for ( int i = 0; i < names.length; i++ ) {
+        names[ i ] = cursor.getColumnName( i );
+        classes[ i ] = cursor.getColumnClass( i );
+      }
+      streamed = new TypedTableModel( names, classes );
+      while ( cursor.next() ) {
+        final Object[] row = new Object[ names.length ];
+        for ( int i = 0; i < names.length; i++ ) {
+          row[ i ] = cursor.getValue( i );
+        }
+        streamed.addRow( row );
+      }
+    }
+    TableModelChecker checker = new TableModelChecker( false, true );
+    checker.setDoubleComparison( 2, 1e-8 );
+    checker.assertEquals( expected, streamed );
+
+    queryOptions.setOutputType( "json" );
+    final ExportedQueryResult result = engine.doExportQuery( cdaSettings, queryOptions );
+    assertTrue( result instanceof ExportedStreamQueryResult );
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    result.writeOut( out );
+    final JSONObject json = new JSONObject( out.toString( "UTF-8" ) );
+    final JSONArray resultset = json.getJSONArray( "resultset" );
+    assertEquals( expected.getRowCount(), resultset.length() );
+    assertEquals( expected.getValueAt( 0, 0 ), resultset.getJSONArray( 0 ).get( 0 ) );
+    assertEquals( "5", json.getJSONObject( "queryInfo" ).getString( "totalRows" ) );
+
+    // sorted results need all rows first
+    queryOptions.setSortBy( Arrays.asList( "2D" ) );
+    assertFalse( dataAccess.canOpenCursor( queryOptions ) );
+    assertFalse( engine.doExportQuery( cdaSettings, queryOptions ) instanceof ExportedStreamQueryResult );
+  }
+
+  public void testRejectedCursorExport() throws Exception {
+    final CdaSettings cdaSettings = parseSettingsFile( "sample-sql-cursor.cda" );
+    final CdaEngine engine = getEngine();
+
+    QueryOptions queryOptions = new QueryOptions();
+    queryOptions.setDataAccessId( "limited" );
+    queryOptions.setOutputType( "json" );
+    final ConnectionBulkhead bulkhead =
+      ConnectionBulkheads.get( cdaSettings.getId(), cdaSettings.getConnection( "2" ) );
+    bulkhead.acquire();
+    try {
+      engine.doExportQuery( cdaSettings, queryOptions );
+      fail( "a rejected query must fail before its results are written" );
+    } catch ( QueryRejectedException e ) {
+      // expected, the connection's only slot is taken
+    } finally {
+      bulkhead.release();
+    }
+
+    final ExportedQueryResult result = engine.doExportQuery( cdaSettings, queryOptions );
+    assertTrue( result instanceof ExportedStreamQueryResult );
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    result.writeOut( out );
+    assertTrue( new JSONObject( out.toString( "UTF-8" ) ).getJSONArray( "resultset" ).length() > 0 );
+
+    // the exported query gave its slot back
+    bulkhead.acquire();
+    bulkhead.release();
+  }
 }
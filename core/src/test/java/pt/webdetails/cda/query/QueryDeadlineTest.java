@@ -0,0 +1,100 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.query;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import pt.webdetails.cda.dataaccess.QueryTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryDeadlineTest {
+
+  @Test
+  public void testLimit() {
+    assertNull( QueryDeadline.limit( null, 0 ) );
+    QueryDeadline deadline = QueryDeadline.limit( null, 60000 );
+    assertSame( deadline, QueryDeadline.limit( deadline, 0 ) );
+    assertSame( deadline, QueryDeadline.limit( deadline, 120000 ) );
+
+    QueryDeadline shorter = QueryDeadline.limit( deadline, 1000 );
+    assertTrue( shorter.getDeadline() < deadline.getDeadline() );
+    assertTrue( shorter.getRemainingMillis() <= 1000 );
+
+    deadline.cancel();
+    assertTrue( shorter.isCancelled() );
+  }
+
+  @Test
+  public void testCheck() throws Exception {
+    new QueryDeadline( 60000 ).check( "query" );
+    try {
+      new QueryDeadline( 0 ).check( "query" );
+      fail( "deadline passed" );
+    } catch ( QueryTimeoutException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCancelledWhenExpired() throws Exception {
+    final CountDownLatch cancelled = new CountDownLatch( 1 );
+    try ( QueryDeadline.Scope scope = new QueryDeadline( 50 ).enter() ) {
+      assertSame( scope, QueryDeadline.currentScope() );
+      scope.onCancel( cancelled::countDown );
+      assertTrue( cancelled.await( 5, TimeUnit.SECONDS ) );
+      assertTrue( scope.isCancelled() );
+    }
+    assertNull( QueryDeadline.currentScope() );
+  }
+
+  @Test
+  public void testCancel() {
+    final AtomicInteger cancelled = new AtomicInteger();
+    QueryDeadline request = new QueryDeadline( 60000 );
+    QueryDeadline dataAccess = QueryDeadline.limit( request, 30000 );
+    try ( QueryDeadline.Scope outer = request.enter() ) {
+      outer.onCancel( cancelled::incrementAndGet );
+      try ( QueryDeadline.Scope inner = dataAccess.enter() ) {
+        assertSame( inner, QueryDeadline.currentScope() );
+        inner.onCancel( cancelled::incrementAndGet );
+        request.cancel();
+        assertTrue( inner.isCancelled() );
+        assertEquals( 2, cancelled.get() );
+      }
+      assertSame( outer, QueryDeadline.currentScope() );
+      // already cancelled, runs right away
+      outer.onCancel( cancelled::incrementAndGet );
+      assertEquals( 3, cancelled.get() );
+    }
+    assertTrue( dataAccess.isExpired() );
+  }
+
+  @Test
+  public void testClosedScopeNotCancelled() {
+    QueryDeadline deadline = new QueryDeadline( 60000 );
+    QueryDeadline.Scope scope = deadline.enter();
+    scope.close();
+    deadline.cancel();
+    assertFalse( scope.isCancelled() );
+  }
+}
@@ -167,6 +167,7 @@ public class CdaTestHelper {
         }
       } );
     Mockito.when( env.getBaseConfig() ).thenReturn( conf );
+    Mockito.when( env.inCurrentContext( any() ) ).thenAnswer( invocation -> invocation.getArguments()[ 0 ] );
     return env;
   }
 
@@ -0,0 +1,64 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils;
+
+import org.junit.Test;
+import pt.webdetails.cda.dataaccess.ColumnDefinition;
+import pt.webdetails.cda.dataaccess.DataAccess.OutputMode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnProjectionTest {
+
+  private static final List<String> COLUMNS = Arrays.asList( "A", "B", "C", "D" );
+
+  @Test
+  public void testOutputs() {
+    List<ColumnDefinition> none = Collections.emptyList();
+    assertArrayEquals( new boolean[] { false, true, false, true },
+      ColumnProjection.getUsedColumns( COLUMNS, none, Arrays.asList( 3, 1 ), OutputMode.INCLUDE ) );
+    assertArrayEquals( new boolean[] { true, false, true, false },
+      ColumnProjection.getUsedColumns( COLUMNS, none, Arrays.asList( 3, 1 ), OutputMode.EXCLUDE ) );
+    assertNull(
+      ColumnProjection.getUsedColumns( COLUMNS, none, Collections.<Integer>emptyList(), OutputMode.INCLUDE ) );
+    assertNull( ColumnProjection.getUsedColumns( COLUMNS, none, Arrays.asList( 4 ), OutputMode.INCLUDE ) );
+  }
+
+  @Test
+  public void testFormulaReferences() {
+    List<ColumnDefinition> calculated = Arrays.asList(
+      calculated( "E", "=[B] * 2" ),
+      calculated( "F", "=[E] + [C]" ),
+      calculated( "G", "=[A]" ) );
+    assertArrayEquals( new boolean[] { false, true, true, false, true, true, false },
+      ColumnProjection.getUsedColumns( COLUMNS, calculated, Arrays.asList( 5 ), OutputMode.INCLUDE ) );
+    assertArrayEquals( new boolean[] { true, false, false, true, false, false, true },
+      ColumnProjection.getUsedColumns( COLUMNS, calculated, Arrays.asList( 3, 6 ), OutputMode.INCLUDE ) );
+    // unknown reference
+    assertNull( ColumnProjection.getUsedColumns( COLUMNS, Arrays.asList( calculated( "E", "=[X]" ) ),
+      Arrays.asList( 4 ), OutputMode.INCLUDE ) );
+  }
+
+  private static ColumnDefinition calculated( String name, String formula ) {
+    ColumnDefinition column = new ColumnDefinition();
+    column.setType( ColumnDefinition.TYPE.CALCULATED_COLUMN );
+    column.setName( name );
+    column.setFormula( formula );
+    return column;
+  }
+}
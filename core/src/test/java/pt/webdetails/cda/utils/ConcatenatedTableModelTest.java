@@ -0,0 +1,81 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.utils;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+
+import javax.swing.table.TableModel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConcatenatedTableModelTest {
+
+  @Test
+  public void testConcatenation() {
+    TypedTableModel first = new TypedTableModel( new String[] { "year", "total" },
+      new Class<?>[] { Long.class, Double.class } );
+    first.addRow( new Object[] { 2003L, 1.0 } );
+    first.addRow( new Object[] { 2004L, 2.0 } );
+    TypedTableModel empty = new TypedTableModel( new String[] { "year", "total" },
+      new Class<?>[] { Long.class, Double.class } );
+    TypedTableModel narrow = new TypedTableModel( new String[] { "year" }, new Class<?>[] { Long.class } );
+    narrow.addRow( new Object[] { 2005L } );
+
+    TableModel union = new ConcatenatedTableModel( Arrays.asList( first, empty, narrow, empty ) );
+    assertEquals( 3, union.getRowCount() );
+    assertEquals( 2, union.getColumnCount() );
+    assertEquals( "total", union.getColumnName( 1 ) );
+    assertEquals( 2003L, union.getValueAt( 0, 0 ) );
+    assertEquals( 2.0, union.getValueAt( 1, 1 ) );
+    assertEquals( 2005L, union.getValueAt( 2, 0 ) );
+    // narrower tables are padded
+    assertNull( union.getValueAt( 2, 1 ) );
+  }
+
+  @Test
+  public void testColumnTypes() {
+    TypedTableModel longs = new TypedTableModel( new String[] { "a", "b", "c" },
+      new Class<?>[] { Long.class, Long.class, Object.class } );
+    TypedTableModel doubles = new TypedTableModel( new String[] { "a", "b", "c" },
+      new Class<?>[] { Long.class, Double.class, String.class } );
+    TypedTableModel strings = new TypedTableModel( new String[] { "a", "b", "c" },
+      new Class<?>[] { Long.class, String.class, String.class } );
+
+    TableModel union = new ConcatenatedTableModel( Arrays.asList( longs, doubles ) );
+    assertEquals( Long.class, union.getColumnClass( 0 ) );
+    assertEquals( Number.class, union.getColumnClass( 1 ) );
+    // all null columns don't count
+    assertEquals( String.class, union.getColumnClass( 2 ) );
+
+    // order doesn't matter
+    union = new ConcatenatedTableModel( Arrays.asList( doubles, longs ) );
+    assertEquals( Number.class, union.getColumnClass( 1 ) );
+
+    union = new ConcatenatedTableModel( Arrays.asList( longs, doubles, strings ) );
+    assertEquals( Object.class, union.getColumnClass( 1 ) );
+  }
+
+  @Test
+  public void testNestedViewsAreFlattened() {
+    TypedTableModel table = new TypedTableModel( new String[] { "a" }, new Class<?>[] { Integer.class } );
+    table.addRow( new Object[] { 1 } );
+    TableModel nested = new ConcatenatedTableModel( Arrays.asList( table, table ) );
+    TableModel union = new ConcatenatedTableModel( Arrays.asList( nested, table ) );
+    assertEquals( 3, union.getRowCount() );
+    assertEquals( 1, union.getValueAt( 2, 0 ) );
+  }
+}
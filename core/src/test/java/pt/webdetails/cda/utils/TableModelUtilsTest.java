@@ -163,6 +163,50 @@ public class TableModelUtilsTest {
 
   }
 
+  @Test
+  public void testSortedPage() throws Exception {
+    TypedTableModel tm = new TypedTableModel(
+      new String[] { "id", "name", "value" },
+      new Class<?>[] { Long.class, String.class, Double.class }, 8 );
+    tm.addRow( 1L, "b", 3.0d );
+    tm.addRow( 2L, "A", 1.5d );
+    tm.addRow( 3L, null, 7.0d );
+    tm.addRow( 4L, "c", 1.5d );
+    tm.addRow( 5L, "a", 9.0d );
+    tm.addRow( 6L, "d", null );
+    tm.addRow( 7L, "B", 0.5d );
+    tm.addRow( 8L, "e", 2.0d );
+    DataAccess dataAccess = mock( DataAccess.class );
+    when( dataAccess.getType() ).thenReturn( "any type" );
+    when( dataAccess.getColumnDefinitions() ).thenReturn( new ArrayList<ColumnDefinition>( 0 ) );
+    when( dataAccess.getOutputs( 1 ) ).thenReturn( new ArrayList<Integer>() );
+    QueryOptions opts = new QueryOptions();
+    opts.setSortBy( new ArrayList<>( Arrays.asList( "2A", "1D" ) ) );
+    opts.setPaginate( true );
+    opts.setPageStart( 2 );
+    opts.setPageSize( 3 );
+
+    MetadataTableModel result = (MetadataTableModel) TableModelUtils.postProcessTableModel( dataAccess, opts, tm );
+    TableModelChecker checker = new TableModelChecker();
+    // nulls first, equal values keep the second sort column
+    checker.assertEquals( new SimpleTableModel(
+      new Object[] { 4L, "c", 1.5d },
+      new Object[] { 2L, "A", 1.5d },
+      new Object[] { 8L, "e", 2.0d } ), result );
+    Assert.assertEquals( "8", result.getMetadata( "totalRows" ) );
+    Assert.assertEquals( "2", result.getMetadata( "pageStart" ) );
+
+    // ties keep their original order
+    opts.setSortBy( new ArrayList<>( Arrays.asList( "2" ) ) );
+    opts.setPageStart( 0 );
+    result = (MetadataTableModel) TableModelUtils.postProcessTableModel( dataAccess, opts, tm );
+    checker.assertEquals( new SimpleTableModel(
+      new Object[] { 6L, "d", null },
+      new Object[] { 7L, "B", 0.5d },
+      new Object[] { 2L, "A", 1.5d } ), result );
+    Assert.assertEquals( "8", result.getMetadata( "totalRows" ) );
+  }
+
   private class TableModelUtilsForTest {
 
     private TypedTableModel typedTableModel;
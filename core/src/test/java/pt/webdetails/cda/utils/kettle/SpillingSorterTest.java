@@ -0,0 +1,89 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package pt.webdetails.cda.utils.kettle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpillingSorterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testInMemory() throws Exception {
+    TypedTableModel table = new TypedTableModel(
+      new String[] { "name", "value" }, new Class<?>[] { String.class, Double.class }, 5 );
+    table.addRow( "b", 2.0d );
+    table.addRow( "", 1.0d );
+    table.addRow( "A", 2.0d );
+    table.addRow( "a", null );
+    table.addRow( "C", 1.0d );
+    SpillingSorter sorter = new SpillingSorter( 0, null );
+    // empty strings first, case insensitive
+    assertArrayEquals( new int[] { 1, 2, 3, 0, 4 }, sorter.sort( table, Arrays.asList( "0A" ) ) );
+    assertArrayEquals( new int[] { 0, 2, 4, 1, 3 }, sorter.sort( table, Arrays.asList( "1D", "0D" ) ) );
+  }
+
+  @Test
+  public void testSpillMatchesInMemory() throws Exception {
+    TypedTableModel table = randomTable( 5000 );
+    List<String> sortBy = Arrays.asList( "1A", "2D", "3", "0" );
+    int[] expected = new SpillingSorter( 0, null ).sort( table, sortBy );
+
+    File spillDirectory = new File( temp.getRoot(), "spill" );
+    SpillingSorter sorter = new SpillingSorter( 4 * 1024, spillDirectory );
+    long spilledRuns = SpillingSorter.getStatistics().get( "spilledRuns" );
+    assertTrue( sorter.getRunSize( table, new int[] { 1, 2, 3, 0 } ) * SpillingSorter.MAX_MERGE_WIDTH < 5000 );
+
+    assertArrayEquals( expected, sorter.sort( table, sortBy ) );
+    assertTrue( SpillingSorter.getStatistics().get( "spilledRuns" ) > spilledRuns + SpillingSorter.MAX_MERGE_WIDTH );
+    assertTrue( SpillingSorter.getStatistics().get( "largestSpill" ) > 0 );
+    // runs are gone
+    assertEquals( 0, spillDirectory.list().length );
+  }
+
+  @Test( expected = SortException.class )
+  public void testInvalidSortBy() throws Exception {
+    new SpillingSorter( 0, null ).sort( randomTable( 1 ), Arrays.asList( "7A" ) );
+  }
+
+  private static TypedTableModel randomTable( int rows ) {
+    TypedTableModel table = new TypedTableModel(
+      new String[] { "id", "name", "value", "when" },
+      new Class<?>[] { Long.class, String.class, BigDecimal.class, Date.class }, rows );
+    Random random = new Random( 42 );
+    for ( int i = 0; i < rows; i++ ) {
+      table.addRow(
+        (long) i,
+        random.nextInt( 20 ) == 0 ? null : "name " + random.nextInt( 30 ),
+        new BigDecimal( random.nextInt( 10 ) ),
+        random.nextBoolean() ? new Date( random.nextInt( 1000 ) ) : new Timestamp( random.nextInt( 1000 ) ) );
+    }
+    return table;
+  }
+}
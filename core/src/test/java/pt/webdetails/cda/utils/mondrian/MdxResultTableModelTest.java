@@ -0,0 +1,93 @@
+/*!
+ * Copyright 2002 - 2026 Webdetails, a Hitachi Vantara company. All rights reserved.
+ *
+ * This software was developed by Webdetails and is provided under the terms
+ * of the Mozilla Public License, Version 2.0, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to  http://mozilla.org/MPL/2.0/. The Initial Developer is Webdetails.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+
+package pt.webdetails.cda.utils.mondrian;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MdxResultTableModelTest {
+
+  private static TypedTableModel createBanded() {
+    TypedTableModel banded = new TypedTableModel(
+      new String[] { "Product", "Time", "Sales", "Quantity", "::column::0" },
+      new Class<?>[] { String.class, String.class, Object.class, Object.class, Object.class } );
+    banded.addRow( "Cars", "2003", 10.5d, null, "x" );
+    banded.addRow( "Cars", "2004", null, new BigDecimal( "2" ), "y" );
+    banded.addRow( "Ships", "2003", 3d, 4d, "z" );
+    banded.addRow( "Ships", "2004", 7.25d, null, null );
+    return banded;
+  }
+
+  private static void assertSameValues( TypedTableModel expected, MdxResultTableModel actual ) {
+    assertEquals( expected.getRowCount(), actual.getRowCount() );
+    for ( int r = 0; r < expected.getRowCount(); r++ ) {
+      for ( int c = 0; c < actual.getColumnCount(); c++ ) {
+        assertEquals( "row " + r + ", column " + c, expected.getValueAt( r, c ), actual.getValueAt( r, c ) );
+      }
+    }
+  }
+
+  @Test
+  public void testCopy() {
+    TypedTableModel banded = createBanded();
+    MdxResultTableModel table = MdxResultTableModel.of( banded );
+    assertEquals( 5, table.getColumnCount() );
+    assertEquals( "Time", table.getColumnName( 1 ) );
+    assertEquals( String.class, table.getColumnClass( 0 ) );
+    // first value's class
+    assertEquals( Double.class, table.getColumnClass( 2 ) );
+    assertEquals( BigDecimal.class, table.getColumnClass( 3 ) );
+    assertSameValues( banded, table );
+    assertNull( table.getValueAt( 1, 2 ) );
+  }
+
+  @Test
+  public void testWithColumnNames() {
+    TypedTableModel banded = createBanded();
+    MdxResultTableModel table =
+      MdxResultTableModel.of( banded ).withColumnNames( new String[] { "product", "time", "sales", "quantity" } );
+    assertEquals( 4, table.getColumnCount() );
+    assertEquals( "sales", table.getColumnName( 2 ) );
+    assertEquals( Double.class, table.getColumnClass( 2 ) );
+    assertSameValues( banded, table );
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    TypedTableModel banded = createBanded();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream( bytes );
+    out.writeObject( MdxResultTableModel.of( banded ) );
+    out.close();
+    ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+    MdxResultTableModel table = (MdxResultTableModel) in.readObject();
+    assertEquals( "Quantity", table.getColumnName( 3 ) );
+    assertEquals( Double.class, table.getColumnClass( 2 ) );
+    assertSameValues( banded, table );
+  }
+
+  @Test( expected = IndexOutOfBoundsException.class )
+  public void testRowOutOfBounds() {
+    MdxResultTableModel.of( createBanded() ).getValueAt( 4, 0 );
+  }
+}
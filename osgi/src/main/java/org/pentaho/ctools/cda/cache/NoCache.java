@@ -3,12 +3,15 @@ package org.pentaho.ctools.cda.cache;
 import pt.webdetails.cda.cache.IQueryCache;
 import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 
 import javax.swing.table.TableModel;
 import java.util.Collections;
 
 public class NoCache implements IQueryCache {
+  private final CacheStatistics statistics = new CacheStatistics();
+
   @Override
   public void putTableModel(TableCacheKey key, TableModel table, int ttlSec, ExtraCacheInfo cacheInfo) {
 
@@ -16,6 +19,7 @@ public class NoCache implements IQueryCache {
 
   @Override
   public TableModel getTableModel(TableCacheKey key) {
+    statistics.miss();
     return null;
   }
 
@@ -49,6 +53,11 @@ public class NoCache implements IQueryCache {
     return null;
   }
 
+  @Override
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
   @Override
   public void shutdownIfRunning() {
 
@@ -18,6 +18,7 @@ import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IPlatformReadyListener;
 import org.pentaho.platform.api.engine.PluginLifecycleException;
 
+import pt.webdetails.cda.connections.sql.StatementCaches;
 import pt.webdetails.cda.utils.streaming.SQLStreamingReportDataFactory;
 import pt.webdetails.cda.utils.mondrian.CompactBandedMDXDataFactory;
 import pt.webdetails.cda.utils.mondrian.ExtBandedMDXDataFactory;
@@ -67,6 +68,8 @@ public class CdaLifecycleListener extends SimpleLifeCycleListener implements IPl
 
 
   public void unLoaded() throws PluginLifecycleException {
+    // close cached statements and their connections, and stop closing idle ones
+    StatementCaches.clear();
   }
 
   @Override
@@ -17,8 +17,12 @@ import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.pentaho.platform.api.engine.IParameterProvider;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.engine.core.solution.SimpleParameterProvider;
@@ -26,15 +30,23 @@ import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.web.http.api.resources.utils.SystemUtils;
 
+import pt.webdetails.cda.connections.ConnectionBulkhead;
+import pt.webdetails.cda.connections.ConnectionBulkheads;
+import pt.webdetails.cda.connections.ConnectionCircuitBreaker;
+import pt.webdetails.cda.connections.ConnectionCircuitBreakers;
 import pt.webdetails.cda.connections.InvalidConnectionException;
+import pt.webdetails.cda.connections.sql.StatementCachingConnectionProvider;
+import pt.webdetails.cda.connections.sql.StatementCaches;
 import pt.webdetails.cda.dataaccess.AbstractDataAccess;
 import pt.webdetails.cda.dataaccess.DataAccessConnectionDescriptor;
+import pt.webdetails.cda.dataaccess.QueryRejectedException;
 import pt.webdetails.cda.exporter.ExportOptions;
 import pt.webdetails.cda.exporter.ExportedQueryResult;
 import pt.webdetails.cda.exporter.Exporter;
 import pt.webdetails.cda.exporter.ExporterException;
 import pt.webdetails.cda.exporter.TableExporter;
 import pt.webdetails.cda.exporter.UnsupportedExporterException;
+import pt.webdetails.cda.query.QueryPriority;
 import pt.webdetails.cda.services.CacheManager;
 import pt.webdetails.cda.services.Editor;
 import pt.webdetails.cda.services.ExtEditor;
@@ -49,6 +61,7 @@ import pt.webdetails.cda.utils.CorsUtil;
 import pt.webdetails.cda.utils.DoQueryParameters;
 import pt.webdetails.cda.utils.Messages;
 import pt.webdetails.cda.utils.QueryParameters;
+import pt.webdetails.cda.utils.kettle.SpillingSorter;
 import pt.webdetails.cpf.PluginEnvironment;
 import pt.webdetails.cpf.messaging.JsonGeneratorSerializable;
 import pt.webdetails.cpf.messaging.JsonResult;
@@ -172,6 +185,10 @@ public class CdaUtils {
 
       return toStreamingOutput( result );
     } catch ( Exception ex ) {
+      if ( ExceptionUtils.indexOfType( ex, QueryRejectedException.class ) >= 0 ) {
+        // connection is overloaded, clients may retry later
+        throw new WebApplicationException( ex, Response.Status.SERVICE_UNAVAILABLE );
+      }
       throw new WebApplicationException( ex, Response.Status.INTERNAL_SERVER_ERROR );
     }
   }
@@ -245,6 +262,10 @@ public class CdaUtils {
       try {
         result.writeOut( out );
       } catch ( ExporterException e ) {
+        if ( ExceptionUtils.indexOfType( e, QueryRejectedException.class ) >= 0 ) {
+          // connection is overloaded, clients may retry later
+          throw new WebApplicationException( e, Response.Status.SERVICE_UNAVAILABLE );
+        }
         throw new WebApplicationException( e );
       }
     };
@@ -416,6 +437,115 @@ public class CdaUtils {
     return msg;
   }
 
+  /**
+   * Lists concurrency limits and usage of every connection queried so far.
+   */
+  @GET
+  @Path( "/connectionStatistics" )
+  @Produces( MimeTypes.JSON )
+  public Response connectionStatistics() throws JSONException {
+    if ( !SystemUtils.canAdminister() ) {
+      return Response.status( Status.FORBIDDEN ).build();
+    }
+    JSONArray result = new JSONArray();
+    for ( ConnectionBulkhead bulkhead : ConnectionBulkheads.getAll() ) {
+      JSONObject connection = new JSONObject();
+      connection.put( "connection", bulkhead.getName() );
+      connection.put( "maxConcurrent", bulkhead.getMaxConcurrent() );
+      connection.put( "reservedInteractive", bulkhead.getReservedInteractive() );
+      connection.put( "maxQueued", bulkhead.getMaxQueued() );
+      connection.put( "active", bulkhead.getActive() );
+      connection.put( "queued", bulkhead.getQueued() );
+      JSONObject byPriority = new JSONObject();
+      for ( QueryPriority priority : QueryPriority.values() ) {
+        JSONObject counts = new JSONObject();
+        counts.put( "active", bulkhead.getActive( priority ) );
+        counts.put( "queued", bulkhead.getQueued( priority ) );
+        byPriority.put( priority.name().toLowerCase(), counts );
+      }
+      connection.put( "priorities", byPriority );
+      connection.put( "completed", bulkhead.getCompleted() );
+      connection.put( "rejected", bulkhead.getRejected() );
+      connection.put( "timedOut", bulkhead.getTimedOut() );
+      connection.put( "averageWaitTime", bulkhead.getAverageWaitTime() );
+      result.put( connection );
+    }
+    return Response.ok( result.toString( 2 ) ).build();
+  }
+
+  /**
+   * State of the circuit breaker of every connection queried so far.
+   *
+   * @param reset closes all breakers first, forgetting past failures, and re-reads their settings
+   */
+  @GET
+  @Path( "/circuitBreakerStatistics" )
+  @Produces( MimeTypes.JSON )
+  public Response circuitBreakerStatistics( @DefaultValue( "false" ) @QueryParam( "reset" ) boolean reset )
+    throws JSONException {
+    if ( !SystemUtils.canAdminister() ) {
+      return Response.status( Status.FORBIDDEN ).build();
+    }
+    if ( reset ) {
+      ConnectionCircuitBreakers.clear();
+    }
+    JSONArray result = new JSONArray();
+    for ( ConnectionCircuitBreaker breaker : ConnectionCircuitBreakers.getAll() ) {
+      JSONObject connection = new JSONObject();
+      connection.put( "connection", breaker.getName() );
+      connection.put( "state", breaker.getState().name() );
+      connection.put( "recorded", breaker.getRecorded() );
+      connection.put( "failed", breaker.getFailed() );
+      connection.put( "slow", breaker.getSlow() );
+      connection.put( "rejected", breaker.getRejected() );
+      result.put( connection );
+    }
+    return Response.ok( result.toString( 2 ) ).build();
+  }
+
+  /**
+   * Prepared statement cache usage of every sql.jdbc connection keeping its connections open.
+   */
+  @GET
+  @Path( "/statementCacheStatistics" )
+  @Produces( MimeTypes.JSON )
+  public Response statementCacheStatistics() throws JSONException {
+    if ( !SystemUtils.canAdminister() ) {
+      return Response.status( Status.FORBIDDEN ).build();
+    }
+    JSONArray result = new JSONArray();
+    for ( StatementCachingConnectionProvider cache : StatementCaches.getAll() ) {
+      JSONObject connection = new JSONObject();
+      connection.put( "connection", cache.getName() );
+      connection.put( "statementCacheSize", cache.getStatementCacheSize() );
+      connection.put( "hits", cache.getHits() );
+      connection.put( "misses", cache.getMisses() );
+      connection.put( "hitRatio", cache.getHitRatio() );
+      connection.put( "evictions", cache.getEvictions() );
+      connection.put( "connectionsOpened", cache.getConnectionsOpened() );
+      connection.put( "idleConnections", cache.getIdleConnections() );
+      result.put( connection );
+    }
+    return Response.ok( result.toString( 2 ) ).build();
+  }
+
+  /**
+   * Sort statistics, including the size of runs spilled to disk.
+   */
+  @GET
+  @Path( "/sortStatistics" )
+  @Produces( MimeTypes.JSON )
+  public Response sortStatistics() throws JSONException {
+    if ( !SystemUtils.canAdminister() ) {
+      return Response.status( Status.FORBIDDEN ).build();
+    }
+    JSONObject result = new JSONObject();
+    for ( Map.Entry<String, Long> statistic : SpillingSorter.getStatistics().entrySet() ) {
+      result.put( statistic.getKey(), statistic.getValue() );
+    }
+    return Response.ok( result.toString( 2 ) ).build();
+  }
+
   /**
    * Flushes mondrian schema used by MDX connection(s)
    * @param path CDA file path
@@ -19,12 +19,15 @@ import org.pentaho.platform.security.policy.rolebased.actions.RepositoryCreateAc
 import org.pentaho.reporting.libraries.formula.FormulaContext;
 
 import pt.webdetails.cda.cache.IQueryCache;
+import pt.webdetails.cda.push.PentahoContext;
 import pt.webdetails.cda.utils.framework.PluginUtils;
 import pt.webdetails.cpf.bean.IBeanFactory;
 import pt.webdetails.cpf.repository.api.IContentAccessFactory;
 import pt.webdetails.cpf.session.IUserSession;
 import pt.webdetails.cpf.session.PentahoSessionUtils;
 
+import java.util.concurrent.Callable;
+
 public abstract class PentahoBaseCdaEnvironment extends BaseCdaEnvironment implements ICdaEnvironment {
   private IQueryCache cacheImpl;
   private IAuthorizationPolicy authorizationPolicy;
@@ -70,6 +73,15 @@ public abstract class PentahoBaseCdaEnvironment extends BaseCdaEnvironment imple
     return new PentahoSessionUtils().getCurrentSession();
   }
 
+  /**
+   * Runs the task with the current session, security and MDC context.
+   */
+  @Override
+  public <T> Callable<T> inCurrentContext( final Callable<T> task ) {
+    final PentahoContext context = PentahoContext.capture();
+    return () -> context.call( task );
+  }
+
   public boolean canCreateContent() {
     if ( authorizationPolicy == null ) {
       authorizationPolicy = PentahoSystem.get( IAuthorizationPolicy.class );
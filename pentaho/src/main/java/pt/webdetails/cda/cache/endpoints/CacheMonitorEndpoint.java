@@ -15,6 +15,7 @@ package pt.webdetails.cda.cache.endpoints;
 
 import java.io.IOException;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -55,11 +56,26 @@ public class CacheMonitorEndpoint {
   @Produces( MimeTypes.JSON )
   public String getCached(
     @QueryParam( "cdaSettingsId" ) String cdaSettingsId,
-    @QueryParam( "dataAccessId" ) String dataAccessId )
+    @QueryParam( "dataAccessId" ) String dataAccessId,
+    @QueryParam( "pageStart" ) @DefaultValue( "0" ) int pageStart,
+    @QueryParam( "pageSize" ) @DefaultValue( "-1" ) int pageSize )
     throws WebApplicationException, IOException {
     checkAdminPermission();
     try {
-      return getMonitor().listQueriesInCache( cdaSettingsId, dataAccessId ).toString( INDENT_FACTOR );
+      return getMonitor().listQueriesInCache( cdaSettingsId, dataAccessId, pageStart, pageSize )
+        .toString( INDENT_FACTOR );
+    } catch ( JSONException e ) {
+      throw new WebApplicationException( e );
+    }
+  }
+
+  @GET
+  @Path( "/statistics" )
+  @Produces( MimeTypes.JSON )
+  public String getStatistics() throws WebApplicationException, IOException {
+    checkAdminPermission();
+    try {
+      return getMonitor().getCacheStatistics().toString( INDENT_FACTOR );
     } catch ( JSONException e ) {
       throw new WebApplicationException( e );
     }
@@ -104,6 +120,30 @@ public class CacheMonitorEndpoint {
     }
   }
 
+  @POST
+  @Path( "/export" )
+  @Produces( MimeTypes.JSON )
+  public String exportCache( @FormParam( "file" ) String fileName ) throws WebApplicationException, IOException {
+    checkAdminPermission();
+    try {
+      return getMonitor().exportCache( fileName ).toString( INDENT_FACTOR );
+    } catch ( Exception e ) {
+      return getJsonError( e );
+    }
+  }
+
+  @POST
+  @Path( "/import" )
+  @Produces( MimeTypes.JSON )
+  public String importCache( @FormParam( "file" ) String fileName ) throws WebApplicationException, IOException {
+    checkAdminPermission();
+    try {
+      return getMonitor().importCache( fileName ).toString( INDENT_FACTOR );
+    } catch ( Exception e ) {
+      return getJsonError( e );
+    }
+  }
+
   @POST
   @Path( "/shutdown" )
   @Produces( MimeTypes.JSON )
@@ -62,7 +62,9 @@ public class CacheMonitorHandler extends JsonCallHandler {
       public JSONObject execute( IParameterProvider params ) throws JSONException, ExporterException, IOException {
         String cdaSettingsId = params.getStringParameter( "cdaSettingsId", null );
         String dataAccessId = params.getStringParameter( "dataAccessId", null );
-        return monitor.listQueriesInCache( cdaSettingsId, dataAccessId );
+        int pageStart = (int) params.getLongParameter( "pageStart", 0 );
+        int pageSize = (int) params.getLongParameter( "pageSize", -1 );
+        return monitor.listQueriesInCache( cdaSettingsId, dataAccessId, pageStart, pageSize );
       }
     } );
 
@@ -76,6 +78,15 @@ public class CacheMonitorHandler extends JsonCallHandler {
       }
     } );
 
+    registerMethod( "statistics", new JsonCallHandler.Method() {
+      /**
+       * get cache wide counters
+       */
+      public JSONObject execute( IParameterProvider params ) throws JSONException {
+        return monitor.getCacheStatistics();
+      }
+    } );
+
     registerMethod( "getDetails", new JsonCallHandler.Method() {
       /**
        * get details on a particular cached item
@@ -25,6 +25,7 @@ import org.pentaho.platform.api.repository2.unified.UnifiedRepositoryAccessDenie
 
 import pt.webdetails.cda.CdaEngine;
 import pt.webdetails.cda.query.QueryOptions;
+import pt.webdetails.cda.query.QueryPriority;
 import pt.webdetails.cda.settings.CdaSettings;
 
 /**
@@ -73,6 +74,7 @@ public class CdaCacheWarmer implements IVarArgsAction {
     }
     // ensure cache is refreshed
     queryOpts.setCacheBypass( true );
+    queryOpts.setPriority( QueryPriority.BACKGROUND );
     return queryOpts;
   }
 
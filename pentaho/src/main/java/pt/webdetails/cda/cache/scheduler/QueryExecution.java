@@ -19,6 +19,7 @@ import org.json.JSONObject;
 
 import pt.webdetails.cda.AccessDeniedException;
 import pt.webdetails.cda.query.QueryOptions;
+import pt.webdetails.cda.query.QueryPriority;
 import pt.webdetails.cda.settings.CdaSettings;
 import pt.webdetails.cda.settings.CdaSettingsReadException;
 import pt.webdetails.cda.settings.SettingsManager;
@@ -86,6 +87,7 @@ public class QueryExecution {
     }
     // ensure cache is refreshed
     queryOpts.setCacheBypass( true );
+    queryOpts.setPriority( QueryPriority.BACKGROUND );
     return queryOpts;
   }
 }
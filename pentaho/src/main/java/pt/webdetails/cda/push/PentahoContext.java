@@ -21,11 +21,13 @@ import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.util.concurrent.Callable;
+
 /**
  * The {@code PentahoContext} class implements a memento pattern
  * of various thread-local state which constitute a Pentaho session and request context.
  */
-class PentahoContext {
+public class PentahoContext {
   private final IPentahoRequestContext requestContext;
   private final IPentahoSession session;
   private final Authentication authentication;
@@ -52,6 +54,16 @@ class PentahoContext {
     }
   }
 
+  public <T> T call( Callable<T> callable ) throws Exception {
+    PentahoContext original = PentahoContext.capture();
+    try {
+      setCurrent();
+      return callable.call();
+    } finally {
+      original.setCurrent();
+    }
+  }
+
   private void setCurrent() {
     PentahoRequestContextHolder.setRequestContext( requestContext );
     PentahoSessionHolder.setSession( session );
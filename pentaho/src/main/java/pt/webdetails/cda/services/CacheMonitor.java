@@ -13,18 +13,26 @@
 
 package pt.webdetails.cda.services;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import pt.webdetails.cda.cache.IExportableQueryCache;
 import pt.webdetails.cda.cache.IQueryCache;
+import pt.webdetails.cda.cache.QueryCacheSnapshot;
 import pt.webdetails.cda.cache.TableCacheKey;
 import pt.webdetails.cda.cache.monitor.CacheElementInfo;
+import pt.webdetails.cda.cache.monitor.CacheStatistics;
 import pt.webdetails.cda.cache.monitor.ExtraCacheInfo;
 import pt.webdetails.cda.dataaccess.AbstractDataAccess;
 import pt.webdetails.cda.utils.framework.JsonCallHandler;
@@ -53,10 +61,16 @@ public class CacheMonitor extends BaseService {
     public static final String DATA_ACCESS_ID = "dataAccessId";
     public static final String COUNT = "count";
     public static final String ITEMS = "items";
+    public static final String BYTES = "bytes";
+    public static final String HITS = "hits";
+    public static final String MISSES = "misses";
+    public static final String HIT_RATIO = "hitRatio";
   }
 
   private static class ErrorMsgs {
     public static final String CACHE_ITEM_NOT_FOUND = "Cache element no longer in cache.";
+    public static final String NO_FILE = "No snapshot file given.";
+    public static final String SNAPSHOT_NOT_SUPPORTED = "Cache doesn't support snapshots.";
   }
 
   /**
@@ -67,24 +81,27 @@ public class CacheMonitor extends BaseService {
    * @return JSON
    */
   public JSONObject listQueriesInCache( String cdaSettingsId, String dataAccessId ) throws JSONException, IOException {
+    return listQueriesInCache( cdaSettingsId, dataAccessId, 0, -1 );
+  }
+
+  /**
+   * "cached" method, one page at a time
+   *
+   * @param cdaSettingsId
+   * @param dataAccessId
+   * @param pageStart     entries to skip
+   * @param pageSize      maximum number of entries; negative for all
+   * @return JSON
+   */
+  public JSONObject listQueriesInCache( String cdaSettingsId, String dataAccessId, int pageStart, int pageSize )
+    throws JSONException, IOException {
 
     JSONArray results = new JSONArray();
 
     IQueryCache cdaCache = AbstractDataAccess.getCdaCache();
+    CacheStatistics statistics = cdaCache.getStatistics();
 
-    for ( TableCacheKey key : cdaCache.getKeys() ) {
-
-      ExtraCacheInfo info = cdaCache.getCacheEntryInfo( key );
-      if ( info == null ) {
-        continue;
-      }
-
-      if ( !StringUtils.equals( cdaSettingsId, info.getCdaSettingsId() ) ||
-        ( dataAccessId != null && !StringUtils
-          .equals( dataAccessId, info.getDataAccessId() ) ) ) {//not what we're looking for
-        continue;
-      }
-
+    for ( TableCacheKey key : statistics.getKeys( cdaSettingsId, dataAccessId, pageStart, pageSize ) ) {
       CacheElementInfo cacheInfo = cdaCache.getElementInfo( key );
       if ( cacheInfo != null ) {
         results.put( cacheInfo.toJson() );
@@ -94,6 +111,7 @@ public class CacheMonitor extends BaseService {
     JSONObject result = new JSONObject();
     result.put( ResultFields.CDA_SETTINGS_ID, cdaSettingsId );
     result.put( ResultFields.DATA_ACCESS_ID, dataAccessId );
+    result.put( ResultFields.COUNT, statistics.getEntryCount( cdaSettingsId, dataAccessId ) );
     result.put( ResultFields.ITEMS, results );
 
     JSONObject response = new JSONObject();
@@ -142,44 +160,17 @@ public class CacheMonitor extends BaseService {
    */
   public JSONObject getCachedQueriesOverview( String cdaSettingsIdFilter ) throws JSONException {
 
-    HashMap<String, HashMap<String, Integer>> cdaMap = new HashMap<String, HashMap<String, Integer>>();
-
     IQueryCache cdaCache = AbstractDataAccess.getCdaCache();
     JSONArray results = new JSONArray();
 
-    for ( TableCacheKey key : cdaCache.getKeys() ) {
-
-      ExtraCacheInfo info = cdaCache.getCacheEntryInfo( key );
-
-      if ( info == null ) {
-        continue;
-      }
-
-      String cdaSettingsId = info.getCdaSettingsId();
-      String dataAccessId = info.getDataAccessId();
-
-      if ( cdaSettingsIdFilter != null && !cdaSettingsIdFilter.equals( cdaSettingsId ) ) {
-        continue;
-      }
-
-      //aggregate occurrences
-      HashMap<String, Integer> dataAccessIdMap = cdaMap.get( cdaSettingsId );
-      if ( dataAccessIdMap == null ) {
-        dataAccessIdMap = new HashMap<String, Integer>();
-        dataAccessIdMap.put( dataAccessId, 1 );
-        cdaMap.put( cdaSettingsId, dataAccessIdMap );
-      } else {
-        Integer count = dataAccessIdMap.get( dataAccessId );
-        if ( count == null ) {
-          dataAccessIdMap.put( dataAccessId, 1 );
-        } else {
-          dataAccessIdMap.put( dataAccessId, ++count );
-        }
-      }
-    }
-
-    for ( String cdaSettingsId : cdaMap.keySet() ) {
-      getOverviewForCdaSettingsId( cdaMap, results, cdaSettingsId );
+    for ( CacheStatistics.GroupStatistics group : cdaCache.getStatistics().getGroups( cdaSettingsIdFilter ) ) {
+      JSONObject queryInfo = new JSONObject();
+      queryInfo.put( ResultFields.CDA_SETTINGS_ID, group.getCdaSettingsId() );
+      queryInfo.put( ResultFields.DATA_ACCESS_ID, group.getDataAccessId() );
+      queryInfo.put( ResultFields.COUNT, group.getEntries() );
+      queryInfo.put( ResultFields.BYTES, group.getBytes() );
+      queryInfo.put( ResultFields.HITS, group.getHits() );
+      results.put( queryInfo );
     }
 
     JSONObject result = new JSONObject();
@@ -188,24 +179,18 @@ public class CacheMonitor extends BaseService {
     return result;
   }
 
-
   /**
-   * @param cdaMap
-   * @param results
-   * @param cdaSettingsId
-   * @throws JSONException
+   * Cache wide counters.
    */
-  private static void getOverviewForCdaSettingsId( HashMap<String, HashMap<String, Integer>> cdaMap, JSONArray results,
-                                                   String cdaSettingsId ) throws JSONException {
-    for ( String dataAccessId : cdaMap.get( cdaSettingsId ).keySet() ) {
-      Integer count = cdaMap.get( cdaSettingsId ).get( dataAccessId );
-      JSONObject queryInfo = new JSONObject();
-      queryInfo.put( ResultFields.CDA_SETTINGS_ID, cdaSettingsId );
-      queryInfo.put( ResultFields.DATA_ACCESS_ID, dataAccessId );
-      queryInfo.put( ResultFields.COUNT, count.intValue() );
-
-      results.put( queryInfo );
-    }
+  public JSONObject getCacheStatistics() throws JSONException {
+    CacheStatistics statistics = AbstractDataAccess.getCdaCache().getStatistics();
+    JSONObject result = new JSONObject();
+    result.put( ResultFields.COUNT, statistics.getEntryCount() );
+    result.put( ResultFields.BYTES, statistics.getByteSize() );
+    result.put( ResultFields.HITS, statistics.getHits() );
+    result.put( ResultFields.MISSES, statistics.getMisses() );
+    result.put( ResultFields.HIT_RATIO, statistics.getHitRatio() );
+    return getOkJson( result );
   }
 
   /**
@@ -240,6 +225,53 @@ public class CacheMonitor extends BaseService {
     return getOkJson( result );
   }
 
+  /**
+   * Dumps the cache contents to a file in the server's snapshot directory.
+   *
+   * @param fileName snapshot file to create, relative to the snapshot directory
+   * @return number of exported entries
+   * @see QueryCacheSnapshot#getFile(String)
+   */
+  public JSONObject exportCache( String fileName ) throws JSONException, IOException {
+    if ( StringUtils.isEmpty( fileName ) ) {
+      return getErrorJson( ErrorMsgs.NO_FILE );
+    }
+    IQueryCache cdaCache = AbstractDataAccess.getCdaCache();
+    if ( !( cdaCache instanceof IExportableQueryCache ) ) {
+      return getErrorJson( ErrorMsgs.SNAPSHOT_NOT_SUPPORTED );
+    }
+    File file = QueryCacheSnapshot.getFile( fileName );
+    if ( !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs() ) {
+      throw new IOException( "Unable to create snapshot directory " + file.getParentFile() );
+    }
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream( file );
+      return getOkJson( QueryCacheSnapshot.write( (IExportableQueryCache) cdaCache, out ) );
+    } finally {
+      IOUtils.closeQuietly( out );
+    }
+  }
+
+  /**
+   * Loads a cache snapshot from a file in the server's snapshot directory, skipping expired entries.
+   *
+   * @param fileName snapshot file created by {@link #exportCache(String)}
+   * @return number of imported entries
+   */
+  public JSONObject importCache( String fileName ) throws JSONException, IOException, ClassNotFoundException {
+    if ( StringUtils.isEmpty( fileName ) ) {
+      return getErrorJson( ErrorMsgs.NO_FILE );
+    }
+    InputStream in = null;
+    try {
+      in = new FileInputStream( QueryCacheSnapshot.getFile( fileName ) );
+      return getOkJson( QueryCacheSnapshot.read( AbstractDataAccess.getCdaCache(), in ) );
+    } finally {
+      IOUtils.closeQuietly( in );
+    }
+  }
+
   /**
    * @return
    * @throws JSONException